@@ -0,0 +1,159 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.brickred.socialauth.util.AccessGrant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization of a session holding a SocialAuthManager with an OAuth 2.0
+ * and an OAuth 1.0a provider connected, as done by session replication. The
+ * "full" form serializes what a session used to carry: the whole
+ * configuration and, for each provider, its configuration, strategy, grant
+ * and cached profile. The "compact" form is the current serialized manager.
+ * The size of a session is printed at the end of the run, and by
+ * {@link #main(String[])}. The setup sets the shared configuration of the
+ * JVM with {@link SocialAuthConfig#setShared(SocialAuthConfig)}, so the
+ * benchmark must run in a fresh fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionBenchmark {
+
+	@Param({ "full", "compact" })
+	public String form;
+
+	private Serializable session;
+
+	@Setup
+	public void setup() throws Exception {
+		Properties props = new Properties();
+		props.put("api.github.com.consumer_key", "a5f3b9c2d1e0f4a7b6c5");
+		props.put("api.github.com.consumer_secret",
+				"9f8e7d6c5b4a39281706f5e4d3c2b1a098f7e6d5");
+		props.put("twitter.com.consumer_key", "xvz1evFS4wEEPTGEFPHBog");
+		props.put("twitter.com.consumer_secret",
+				"kAcSOqF21Fu85e7zjz7ZN2U4ZRhfV3WpwPAoE3Z7kBw");
+		SocialAuthConfig config = new SocialAuthConfig();
+		config.load(props);
+		SocialAuthConfig.setShared(config);
+		SocialAuthManager manager = new SocialAuthManager();
+		manager.setSocialAuthConfig(config);
+		manager.connect(grant("github", "e72e16c7e42f292c6912e7710c838347ae178b4a",
+				null));
+		manager.connect(grant("twitter",
+				"370773112-GmHxMAgYyLbNEtIKZeRNFsMKPR9EyMZeS9weJAEb",
+				"LswwdoUaIvS8ltyTt5jkRh4J50vUPVVHtR2YPi5kE"));
+		if ("compact".equals(form)) {
+			session = manager;
+			return;
+		}
+		SocialAuthConfig unshared = new SocialAuthConfig();
+		unshared.load(props);
+		ArrayList<Object> graph = new ArrayList<Object>();
+		graph.add(unshared);
+		for (String id : manager.getConnectedProvidersIds()) {
+			AbstractProvider provider = (AbstractProvider) manager
+					.getProvider(id);
+			graph.add(config.getProviderConfig(id));
+			graph.add(provider.getOauthStrategy());
+			graph.add(provider.getAccessGrant());
+			graph.add(profile(id));
+		}
+		session = graph;
+	}
+
+	@TearDown(Level.Trial)
+	public void printSize() throws Exception {
+		System.out.println(form + " session: " + serialize().length + " bytes");
+	}
+
+	@Benchmark
+	public byte[] serialize() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(session);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Prints the size of a session in both forms.
+	 */
+	public static void main(final String[] args) throws Exception {
+		for (String f : new String[] { "full", "compact" }) {
+			SessionBenchmark b = new SessionBenchmark();
+			b.form = f;
+			b.setup();
+			b.printSize();
+		}
+	}
+
+	private static AccessGrant grant(final String providerId,
+			final String key, final String secret) {
+		AccessGrant grant = new AccessGrant(key, secret);
+		grant.setProviderId(providerId);
+		grant.setPermission(Permission.ALL);
+		grant.setExpiresIn(3600);
+		return grant;
+	}
+
+	private static Profile profile(final String providerId) {
+		Profile p = new Profile();
+		p.setProviderId(providerId);
+		p.setValidatedId("12345678");
+		p.setFirstName("Zoë");
+		p.setLastName("Ångström");
+		p.setFullName("Zoë Ångström");
+		p.setDisplayName("zoe");
+		p.setEmail("zoe@example.com");
+		p.setLocation("Montréal, Canada");
+		p.setProfileImageURL("https://avatars.example.com/u/12345678?v=4");
+		return p;
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Realistic request parameters shared by the benchmarks: the OAuth protocol
+ * parameters followed by API parameters having ASCII, accented, CJK and emoji
+ * values.
+ */
+final class BenchmarkData {
+
+	static final String URL = "https://api.twitter.com/1.1/statuses/update.json";
+
+	private static final String[] OAUTH_PARAMS = {
+			Constants.OAUTH_CONSUMER_KEY, "xvz1evFS4wEEPTGEFPHBog",
+			Constants.OAUTH_NONCE, "13186229581",
+			Constants.OAUTH_SIGNATURE_METHOD, Constants.HMACSHA1_SIGNATURE,
+			Constants.OAUTH_TIMESTAMP, "1318622958",
+			Constants.OAUTH_TOKEN,
+			"370773112-GmHxMAgYyLbNEtIKZeRNFsMKPR9EyMZeS9weJAEb",
+			Constants.OAUTH_VERSION, "1.0" };
+
+	private static final String[] VALUES = { "true", "42",
+			"Hello Ladies + Gentlemen, a signed OAuth request!",
+			"Café crème brûlée à Montréal",
+			"東京の天気は晴れ",
+			"Ship it 🚀🎉", "https://example.com/a?b=c&d=e",
+			"Привет, мир" };
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * Creates the parameters of a signed request.
+	 * 
+	 * @param count
+	 *            the number of parameters, including the 6 OAuth ones
+	 * @return the parameters
+	 */
+	static Map<String, String> params(final int count) {
+		Map<String, String> params = new LinkedHashMap<String, String>();
+		for (int i = 0; i < OAUTH_PARAMS.length && params.size() < count; i += 2) {
+			params.put(OAUTH_PARAMS[i], OAUTH_PARAMS[i + 1]);
+		}
+		Random random = new Random(count);
+		for (int i = 0; params.size() < count; i++) {
+			params.put("param_" + i, VALUES[random.nextInt(VALUES.length)]);
+		}
+		return params;
+	}
+}
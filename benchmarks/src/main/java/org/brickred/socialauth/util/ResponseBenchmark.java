@@ -0,0 +1,97 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading of a JSON response body as a String, from an in-memory response so
+ * only the read loop is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseBenchmark {
+
+	@Param({ "1024", "65536" })
+	public int size;
+
+	@Param({ "false", "true" })
+	public boolean gzip;
+
+	private Map<String, String> headers;
+	private byte[] body;
+
+	@Setup
+	public void setup() throws Exception {
+		StringBuilder sb = new StringBuilder("{\"data\":[");
+		for (int i = 0; sb.length() < size; i++) {
+			if (i > 0) {
+				sb.append(",\n");
+			}
+			sb.append("{\"id\":\"").append(100000 + i)
+					.append("\",\"name\":\"Zoë Ångström ").append(i)
+					.append("\"}");
+		}
+		sb.append("]}");
+		body = sb.toString().getBytes("UTF-8");
+		headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		headers.put("Content-Type", "application/json; charset=UTF-8");
+		if (gzip) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			GZIPOutputStream gz = new GZIPOutputStream(out);
+			gz.write(body);
+			gz.close();
+			body = out.toByteArray();
+			headers.put(Constants.CONTENT_ENCODING_HEADER,
+					Constants.GZIP_CONTENT_ENCODING);
+		}
+	}
+
+	@Benchmark
+	public String getResponseBodyAsString() throws Exception {
+		return new Response(200, headers, body)
+				.getResponseBodyAsString(Constants.ENCODING);
+	}
+}
@@ -23,85 +23,292 @@
  */
 package org.brickred.socialauth;
 
+import java.io.ObjectStreamException;
 import java.io.Serializable;
-import java.lang.reflect.Constructor;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.brickred.socialauth.exception.SocialAuthException;
+import org.brickred.socialauth.oauthstrategy.OAuth2;
 import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
 import org.brickred.socialauth.plugin.Plugin;
 import org.brickred.socialauth.util.AccessGrant;
+import org.brickred.socialauth.util.AccessGrantCodec;
+import org.brickred.socialauth.util.AsyncCallback;
+import org.brickred.socialauth.util.AsyncExecutor;
+import org.brickred.socialauth.util.Constants;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.ProviderSupport;
+import org.brickred.socialauth.util.Response;
 
 /**
  * It implements AuthProvider interface and provides some methods for
- * registering and getting plugins.
+ * registering and getting plugins. It also gives every provider the
+ * asynchronous calls of {@link AsyncAuthProvider}.
  * 
  * @author tarunn@brickred.com
  * 
  */
-public abstract class AbstractProvider implements AuthProvider, Serializable {
+public abstract class AbstractProvider implements AsyncAuthProvider,
+		Serializable {
 
 	private static final long serialVersionUID = -7827145708317886744L;
 
-	private Map<Class<? extends Plugin>, Class<? extends Plugin>> pluginsMap;
+	private transient PluginRegistry pluginRegistry;
 
-	private final Logger LOG = Logger.getLogger(this.getClass().getName());
+	private transient ConcurrentMap<Class<?>, Plugin> plugins;
+	private transient Executor asyncExecutor;
+
+	private boolean pluginsRegistered;
+
+	private static final Logger LOG = Logger.getLogger(AbstractProvider.class
+			.getName());
 
 	public AbstractProvider() throws Exception {
-		pluginsMap = new HashMap<Class<? extends Plugin>, Class<? extends Plugin>>();
 	}
 
+	/**
+	 * Returns the plugin implementing the given interface. The plugin is
+	 * created on first use and then reused by this provider.
+	 */
 	@Override
 	public <T> T getPlugin(final Class<T> clazz) throws Exception {
-		Class<? extends Plugin> plugin = pluginsMap.get(clazz);
-		Constructor<? extends Plugin> cons = plugin
-				.getConstructor(ProviderSupport.class);
-		ProviderSupport support = new ProviderSupport(getOauthStrategy());
-		Plugin obj = cons.newInstance(support);
-		return (T) obj;
+		ConcurrentMap<Class<?>, Plugin> cache = plugins;
+		if (cache == null) {
+			cache = new ConcurrentHashMap<Class<?>, Plugin>();
+			plugins = cache;
+		}
+		Plugin plugin = cache.get(clazz);
+		if (plugin == null) {
+			plugin = getPluginRegistry().newPlugin(clazz,
+					new ProviderSupport(getOauthStrategy()));
+			Plugin existing = cache.putIfAbsent(clazz, plugin);
+			if (existing != null) {
+				plugin = existing;
+			}
+		}
+		return clazz.cast(plugin);
 	}
 
 	@Override
 	public boolean isSupportedPlugin(final Class<? extends Plugin> clazz) {
-		if (pluginsMap.containsKey(clazz)) {
-			return true;
-		} else {
+		try {
+			return getPluginRegistry().isSupported(clazz);
+		} catch (Exception e) {
+			LOG.log(Level.WARNING, "Unable to load plugins", e);
 			return false;
 		}
 	}
 
 	@Override
 	public final void registerPlugins() throws Exception {
-		LOG.info("Loading plugins");
-		List<String> pluginsList = getPluginsList();
-		if (pluginsList != null && !pluginsList.isEmpty()) {
-			for (String s : pluginsList) {
-				LOG.info("Loading plugin :: " + s);
-				Class<? extends Plugin> clazz = Class.forName(s).asSubclass(
-						Plugin.class);
-				// getting constructor only for checking
-				Constructor<? extends Plugin> cons = clazz
-						.getConstructor(ProviderSupport.class);
-				Class<?> interfaces[] = clazz.getInterfaces();
-				for (Class<?> c : interfaces) {
-					if (Plugin.class.isAssignableFrom(c)) {
-						pluginsMap.put(c.asSubclass(Plugin.class), clazz);
-					}
-				}
+		setPluginRegistry(PluginRegistry.getRegistry(getClass(),
+				getPluginsList()));
+	}
+
+	/**
+	 * Uses plugins which have already been resolved for another instance of
+	 * the same provider.
+	 * 
+	 * @param registry
+	 *            the plugin registry of the provider
+	 */
+	final void setPluginRegistry(final PluginRegistry registry) {
+		pluginRegistry = registry;
+		pluginsRegistered = true;
+		plugins = null;
+	}
+
+	private PluginRegistry getPluginRegistry() throws Exception {
+		PluginRegistry registry = pluginRegistry;
+		if (registry == null) {
+			if (!pluginsRegistered) {
+				return PluginRegistry.EMPTY;
 			}
+			// transient, lost by serialization
+			registry = PluginRegistry.getRegistry(getClass(), getPluginsList());
+			pluginRegistry = registry;
+		}
+		return registry;
+	}
+
+	/**
+	 * Gives the access grant back to a provider rebuilt after
+	 * deserialization. Providers whose {@link #setAccessGrant(AccessGrant)}
+	 * calls the provider override it to only keep the grant.
+	 * 
+	 * @param accessGrant
+	 *            the deserialized access grant
+	 * @throws Exception
+	 */
+	protected void restoreAccessGrant(final AccessGrant accessGrant)
+			throws Exception {
+		setAccessGrant(accessGrant);
+	}
+
+	/**
+	 * Serializes a connected provider as its id and access grant only; the
+	 * configuration, strategy and plugins are rebuilt from
+	 * {@link SocialAuthConfig#getShared()} on deserialization. A provider
+	 * which is not connected yet is serialized with its whole state, as it
+	 * may hold a request token.
+	 */
+	protected Object writeReplace() throws ObjectStreamException {
+		AccessGrant grant = getAccessGrant();
+		if (grant == null || grant.getKey() == null || getProviderId() == null) {
+			return this;
 		}
+		return new SerializedProvider(getProviderId(),
+				AccessGrantCodec.encode(grant));
 	}
 
+	/**
+	 * Renews the access token with {@link #renewAccessGrant(AccessGrant)} and
+	 * uses the new grant for the next calls.
+	 */
 	@Override
-	public void refreshToken(AccessGrant accessGrant)
+	public void refreshToken(final AccessGrant accessGrant)
 			throws SocialAuthException {
-		throw new SocialAuthException("Not implemented for given provider");
+		AccessGrant renewed = renewAccessGrant(accessGrant);
+		try {
+			setAccessGrant(renewed);
+		} catch (SocialAuthException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new SocialAuthException(e);
+		}
+	}
 
+	/**
+	 * Obtains a new grant from the given one without changing the state of
+	 * this provider, so it can run on another thread than the one using the
+	 * provider. By default the OAuth 2.0 refresh_token grant is used when the
+	 * provider uses OAuth 2.0 and the given grant holds a refresh token.
+	 * Providers with another renewal mechanism override it.
+	 * 
+	 * @param accessGrant
+	 *            the grant to renew
+	 * @return the new grant
+	 * @throws SocialAuthException
+	 */
+	protected AccessGrant renewAccessGrant(final AccessGrant accessGrant)
+			throws SocialAuthException {
+		OAuthStrategyBase strategy = getOauthStrategy();
+		if (!(strategy instanceof OAuth2)
+				|| accessGrant.getAttribute(Constants.REFRESH_TOKEN) == null) {
+			throw new SocialAuthException("Not implemented for given provider");
+		}
+		try {
+			return ((OAuth2) strategy).renewAccessGrant(accessGrant);
+		} catch (SocialAuthException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new SocialAuthException(e);
+		}
+	}
+
+	/**
+	 * Replaces the access grant with a renewed one, unless the grant has been
+	 * changed since the renewal started, for example by a new connection.
+	 * 
+	 * @param expected
+	 *            the grant which was renewed
+	 * @param renewed
+	 *            the new grant
+	 * @return true if the grant was replaced
+	 * @throws Exception
+	 */
+	final synchronized boolean replaceAccessGrant(final AccessGrant expected,
+			final AccessGrant renewed) throws Exception {
+		if (getAccessGrant() != expected) {
+			return false;
+		}
+		setAccessGrant(renewed);
+		return true;
+	}
+
+	/**
+	 * Returns the contacts of {@link #getContactList()} as a stream. Providers
+	 * which support paging override it to fetch the pages lazily.
+	 */
+	@Override
+	public ContactStream getContactStream() throws Exception {
+		return new ContactStream() {
+			private boolean fetched;
+
+			@Override
+			protected List<Contact> fetchNextPage() throws Exception {
+				if (fetched) {
+					return null;
+				}
+				fetched = true;
+				return getContactList();
+			}
+		};
+	}
+
+	/**
+	 * The state of a provider is not thread safe, its asynchronous calls are
+	 * run one after the other.
+	 */
+	private synchronized Executor getAsyncExecutor() {
+		if (asyncExecutor == null) {
+			asyncExecutor = AsyncExecutor.newSerialExecutor();
+		}
+		return asyncExecutor;
+	}
+
+	@Override
+	public Future<Profile> getUserProfileAsync(
+			final AsyncCallback<Profile> callback) {
+		return AsyncExecutor.submit(new Callable<Profile>() {
+			@Override
+			public Profile call() throws Exception {
+				return getUserProfile();
+			}
+		}, callback, getAsyncExecutor());
+	}
+
+	@Override
+	public Future<List<Contact>> getContactListAsync(
+			final AsyncCallback<List<Contact>> callback) {
+		return AsyncExecutor.submit(new Callable<List<Contact>>() {
+			@Override
+			public List<Contact> call() throws Exception {
+				return getContactList();
+			}
+		}, callback, getAsyncExecutor());
+	}
+
+	@Override
+	public Future<Response> updateStatusAsync(final String msg,
+			final AsyncCallback<Response> callback) {
+		return AsyncExecutor.submit(new Callable<Response>() {
+			@Override
+			public Response call() throws Exception {
+				return updateStatus(msg);
+			}
+		}, callback, getAsyncExecutor());
+	}
+
+	@Override
+	public Future<Response> apiAsync(final String url,
+			final String methodType, final Map<String, String> params,
+			final Map<String, String> headerParams, final String body,
+			final AsyncCallback<Response> callback) {
+		return AsyncExecutor.submit(new Callable<Response>() {
+			@Override
+			public Response call() throws Exception {
+				return api(url, methodType, params, headerParams, body);
+			}
+		}, callback, getAsyncExecutor());
 	}
 
 	/**
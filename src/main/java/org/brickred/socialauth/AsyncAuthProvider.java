@@ -0,0 +1,102 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import org.brickred.socialauth.util.AsyncCallback;
+import org.brickred.socialauth.util.Response;
+
+/**
+ * Asynchronous counterpart of the {@link AuthProvider} calls which go to the
+ * provider. Each method returns immediately with a {@link Future} and, if a
+ * callback is given, notifies it once the call is complete so the request
+ * thread does not have to wait for the provider.
+ * 
+ * The calls are run on the executor configured through
+ * {@link org.brickred.socialauth.util.AsyncExecutor}. A provider instance is
+ * not thread safe, so its asynchronous calls are run one after the other;
+ * they should not overlap with synchronous calls on the same provider. When
+ * the executor is saturated, the returned Future fails with a
+ * RejectedExecutionException and the callback is notified of the failure.
+ * 
+ */
+public interface AsyncAuthProvider extends AuthProvider {
+
+	/**
+	 * Retrieves the user profile asynchronously.
+	 * 
+	 * @param callback
+	 *            callback notified with the profile, may be null
+	 * @return Future of the profile
+	 */
+	public Future<Profile> getUserProfileAsync(AsyncCallback<Profile> callback);
+
+	/**
+	 * Gets the list of contacts of the user asynchronously.
+	 * 
+	 * @param callback
+	 *            callback notified with the contacts, may be null
+	 * @return Future of the contact list
+	 */
+	public Future<List<Contact>> getContactListAsync(
+			AsyncCallback<List<Contact>> callback);
+
+	/**
+	 * Updates the status on the chosen provider asynchronously.
+	 * 
+	 * @param msg
+	 *            Message to be shown as user's status
+	 * @param callback
+	 *            callback notified with the response, may be null
+	 * @return Future of the response
+	 */
+	public Future<Response> updateStatusAsync(String msg,
+			AsyncCallback<Response> callback);
+
+	/**
+	 * Makes OAuth signed HTTP request asynchronously. See
+	 * {@link AuthProvider#api(String, String, Map, Map, String)}
+	 * 
+	 * @param url
+	 *            URL to make HTTP request.
+	 * @param methodType
+	 *            Method type can be GET, POST or PUT
+	 * @param params
+	 *            Any additional parameters whose signature need to compute.
+	 * @param headerParams
+	 *            Any additional parameters need to pass as Header Parameters
+	 * @param body
+	 *            Request Body
+	 * @param callback
+	 *            callback notified with the response, may be null
+	 * @return Future of the response
+	 */
+	public Future<Response> apiAsync(String url, String methodType,
+			Map<String, String> params, Map<String, String> headerParams,
+			String body, AsyncCallback<Response> callback);
+}
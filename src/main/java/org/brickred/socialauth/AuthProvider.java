@@ -105,6 +105,16 @@ public interface AuthProvider {
 	 */
 	public List<Contact> getContactList() throws Exception;
 
+	/**
+	 * Gets the contacts of the user as a lazy stream. Pages are fetched from
+	 * the provider only when the caller iterates past the contacts already
+	 * received.
+	 * 
+	 * @return ContactStream over the contacts of the user
+	 * @throws Exception
+	 */
+	public ContactStream getContactStream() throws Exception;
+
 	/**
 	 * Retrieves the user profile.
 	 * 
@@ -165,7 +175,9 @@ public interface AuthProvider {
 	public String getProviderId();
 
 	/**
-	 * Stores access grant for the provider *
+	 * Stores access grant for the provider. Implementations synchronize on
+	 * the provider, which {@link TokenRefreshScheduler} holds while it swaps
+	 * a refreshed grant in.
 	 * 
 	 * @param accessGrant
 	 *            It contains the access token and other information
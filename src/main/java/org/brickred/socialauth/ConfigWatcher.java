@@ -0,0 +1,129 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reloads a {@link SocialAuthConfig} whenever its properties file changes. The
+ * directory of the file is watched from a daemon thread. A file which cannot
+ * be read or loaded leaves the current configuration in place.
+ */
+final class ConfigWatcher implements Closeable, Runnable {
+
+	private static final Logger LOG = Logger.getLogger(ConfigWatcher.class
+			.getName());
+
+	// editors write a file in several steps
+	private static final long SETTLE_TIME = 100;
+
+	private final SocialAuthConfig config;
+	private final Path file;
+	private final WatchService watchService;
+	private volatile boolean closed;
+
+	ConfigWatcher(final SocialAuthConfig config, final Path file)
+			throws IOException {
+		this.config = config;
+		this.file = file.toAbsolutePath();
+		Path dir = this.file.getParent();
+		watchService = dir.getFileSystem().newWatchService();
+		dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+		LOG.fine("Watching configuration file " + this.file);
+		Thread thread = new Thread(this, "socialauth-config-watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (!closed) {
+				WatchKey key = watchService.take();
+				boolean changed = isChanged(key);
+				Thread.sleep(SETTLE_TIME);
+				while ((key = watchService.poll()) != null) {
+					changed |= isChanged(key);
+				}
+				if (changed) {
+					reload();
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			// closed
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private boolean isChanged(final WatchKey key) {
+		boolean changed = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == OVERFLOW
+					|| file.getFileName().equals(event.context())) {
+				changed = true;
+			}
+		}
+		key.reset();
+		return changed;
+	}
+
+	private void reload() {
+		if (closed || !Files.isRegularFile(file)) {
+			return;
+		}
+		try {
+			InputStream in = Files.newInputStream(file);
+			try {
+				config.reload(in);
+			} finally {
+				in.close();
+			}
+		} catch (Exception e) {
+			LOG.log(Level.WARNING, "Unable to reload configuration file "
+					+ file, e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		watchService.close();
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth;
+
+import java.lang.reflect.Constructor;
+import java.util.logging.Logger;
+
+import org.brickred.socialauth.exception.SocialAuthConfigurationException;
+import org.brickred.socialauth.util.OAuthConfig;
+
+/**
+ * Provider factory of a provider implementation class. The constructor is
+ * resolved once, and the plugin registry of the first created provider is
+ * shared by all the providers it creates.
+ */
+final class ConstructorProviderFactory implements ProviderFactory {
+
+	private static final Logger LOG = Logger
+			.getLogger(ConstructorProviderFactory.class.getName());
+
+	private final Class<? extends AuthProvider> providerClass;
+	private final Constructor<? extends AuthProvider> constructor;
+	private volatile PluginRegistry pluginRegistry;
+
+	ConstructorProviderFactory(final Class<?> clazz)
+			throws SocialAuthConfigurationException {
+		if (!AuthProvider.class.isAssignableFrom(clazz)) {
+			throw new SocialAuthConfigurationException(clazz.getName()
+					+ " is not an AuthProvider");
+		}
+		providerClass = clazz.asSubclass(AuthProvider.class);
+		Constructor<? extends AuthProvider> cons;
+		try {
+			cons = providerClass.getConstructor(OAuthConfig.class);
+		} catch (NoSuchMethodException me) {
+			LOG.warning(clazz.getName() + " does not implement a constructor "
+					+ clazz.getName() + "(OAuthConfig config)");
+			try {
+				cons = providerClass.getConstructor();
+			} catch (NoSuchMethodException e) {
+				throw new SocialAuthConfigurationException(e);
+			}
+		}
+		constructor = cons;
+	}
+
+	@Override
+	public AuthProvider createProvider(final OAuthConfig config)
+			throws Exception {
+		AuthProvider provider;
+		if (constructor.getParameterTypes().length == 1) {
+			provider = constructor.newInstance(config);
+		} else {
+			provider = constructor.newInstance();
+		}
+		if (provider instanceof AbstractProvider) {
+			AbstractProvider p = (AbstractProvider) provider;
+			PluginRegistry registry = pluginRegistry;
+			if (registry == null) {
+				registry = PluginRegistry.getRegistry(providerClass,
+						p.getPluginsList());
+				pluginRegistry = registry;
+			}
+			p.setPluginRegistry(registry);
+		} else {
+			provider.registerPlugins();
+		}
+		return provider;
+	}
+
+	/**
+	 * @return true if the factory creates instances of the given class
+	 */
+	boolean creates(final Class<?> clazz) {
+		return providerClass == clazz;
+	}
+
+	@Override
+	public String toString() {
+		return "ConstructorProviderFactory[" + providerClass.getName() + "]";
+	}
+}
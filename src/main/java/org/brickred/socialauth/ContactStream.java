@@ -0,0 +1,98 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates lazily over the contacts of the user. The contacts are fetched one
+ * page at a time, following the native paging of the provider, and the next
+ * page is only requested once the current one has been consumed. A caller
+ * which stops iterating never downloads the remaining pages.
+ * 
+ * As {@link Iterator} methods cannot throw checked exceptions, a failure while
+ * fetching a page is thrown as an {@link IllegalStateException} whose cause is
+ * the original exception.
+ * 
+ */
+public abstract class ContactStream implements Iterator<Contact>,
+		Iterable<Contact> {
+
+	private Iterator<Contact> page;
+	private boolean finished;
+
+	/**
+	 * Fetches the next page of contacts.
+	 * 
+	 * @return the contacts of the next page, or null if there are no more
+	 *         pages
+	 * @throws Exception
+	 */
+	protected abstract List<Contact> fetchNextPage() throws Exception;
+
+	@Override
+	public boolean hasNext() {
+		while (page == null || !page.hasNext()) {
+			if (finished) {
+				return false;
+			}
+			List<Contact> contacts;
+			try {
+				contacts = fetchNextPage();
+			} catch (Exception e) {
+				finished = true;
+				throw new IllegalStateException(
+						"Unable to fetch the next page of contacts", e);
+			}
+			if (contacts == null) {
+				finished = true;
+				page = null;
+				return false;
+			}
+			page = contacts.iterator();
+		}
+		return true;
+	}
+
+	@Override
+	public Contact next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return page.next();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Iterator<Contact> iterator() {
+		return this;
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth;
+
+import java.lang.reflect.Constructor;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import org.brickred.socialauth.exception.SocialAuthException;
+import org.brickred.socialauth.plugin.Plugin;
+import org.brickred.socialauth.util.ProviderSupport;
+
+/**
+ * Immutable map of plugin constructors by plugin interface. A registry is
+ * resolved once for a provider class and its list of plugins, and then shared
+ * by all the instances of that provider.
+ */
+final class PluginRegistry {
+
+	static final PluginRegistry EMPTY = new PluginRegistry(
+			Collections.<Class<? extends Plugin>, Constructor<? extends Plugin>> emptyMap());
+
+	private static final Logger LOG = Logger.getLogger(PluginRegistry.class
+			.getName());
+
+	private static final ConcurrentMap<String, PluginRegistry> REGISTRIES = new ConcurrentHashMap<String, PluginRegistry>();
+
+	private final Map<Class<? extends Plugin>, Constructor<? extends Plugin>> constructors;
+
+	private PluginRegistry(
+			final Map<Class<? extends Plugin>, Constructor<? extends Plugin>> constructors) {
+		this.constructors = constructors;
+	}
+
+	/**
+	 * Gets the registry of a provider class, resolving the plugin classes on
+	 * first use.
+	 * 
+	 * @param providerClass
+	 *            the provider class
+	 * @param pluginsList
+	 *            fully qualified plugin class names of the provider
+	 * @return the plugin registry
+	 * @throws Exception
+	 */
+	static PluginRegistry getRegistry(final Class<?> providerClass,
+			final List<String> pluginsList) throws Exception {
+		if (pluginsList == null || pluginsList.isEmpty()) {
+			return EMPTY;
+		}
+		String key = providerClass.getName() + pluginsList;
+		PluginRegistry registry = REGISTRIES.get(key);
+		if (registry == null) {
+			registry = new PluginRegistry(resolve(pluginsList));
+			PluginRegistry existing = REGISTRIES.putIfAbsent(key, registry);
+			if (existing != null) {
+				registry = existing;
+			}
+		}
+		return registry;
+	}
+
+	/**
+	 * Checks if a plugin interface is implemented by one of the plugins
+	 * 
+	 * @param clazz
+	 *            the plugin interface
+	 * @return true if the plugin is supported
+	 */
+	boolean isSupported(final Class<?> clazz) {
+		return constructors.containsKey(clazz);
+	}
+
+	/**
+	 * Creates the plugin implementing the given interface.
+	 * 
+	 * @param clazz
+	 *            the plugin interface
+	 * @param support
+	 *            the provider support given to the plugin
+	 * @return the new plugin
+	 * @throws Exception
+	 */
+	Plugin newPlugin(final Class<?> clazz, final ProviderSupport support)
+			throws Exception {
+		Constructor<? extends Plugin> cons = constructors.get(clazz);
+		if (cons == null) {
+			throw new SocialAuthException(clazz.getName()
+					+ " plugin is not supported");
+		}
+		return cons.newInstance(support);
+	}
+
+	private static Map<Class<? extends Plugin>, Constructor<? extends Plugin>> resolve(
+			final List<String> pluginsList) throws Exception {
+		LOG.info("Loading plugins");
+		Map<Class<? extends Plugin>, Constructor<? extends Plugin>> map = new HashMap<Class<? extends Plugin>, Constructor<? extends Plugin>>();
+		for (String s : pluginsList) {
+			LOG.info("Loading plugin :: " + s);
+			Class<? extends Plugin> clazz = Class.forName(s).asSubclass(
+					Plugin.class);
+			Constructor<? extends Plugin> cons = clazz
+					.getConstructor(ProviderSupport.class);
+			Class<?> interfaces[] = clazz.getInterfaces();
+			for (Class<?> c : interfaces) {
+				if (Plugin.class.isAssignableFrom(c)) {
+					map.put(c.asSubclass(Plugin.class), cons);
+				}
+			}
+		}
+		return Collections.unmodifiableMap(map);
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+
+import org.brickred.socialauth.util.AccessGrant;
+import org.brickred.socialauth.util.AccessGrantCodec;
+import org.brickred.socialauth.util.OAuthConfig;
+
+/**
+ * Serialized form of a connected provider: its id and its encoded access
+ * grant. The provider is rebuilt from the shared {@link SocialAuthConfig}
+ * when it is deserialized.
+ */
+class SerializedProvider implements Serializable {
+
+	private static final long serialVersionUID = -3408218873626640447L;
+	private final String providerId;
+	private final byte[] grant;
+
+	SerializedProvider(final String providerId, final byte[] grant) {
+		this.providerId = providerId;
+		this.grant = grant;
+	}
+
+	private Object readResolve() throws ObjectStreamException {
+		SocialAuthConfig config = SocialAuthConfig.getShared();
+		if (config == null) {
+			throw new InvalidObjectException(
+					"No loaded SocialAuthConfig to rebuild provider "
+							+ providerId);
+		}
+		try {
+			AccessGrant accessGrant = AccessGrantCodec.decode(grant);
+			OAuthConfig providerConfig = config.getProviderConfig(providerId);
+			AuthProvider provider = config.getProviderFactory(providerConfig)
+					.createProvider(providerConfig);
+			if (accessGrant.getPermission() != null) {
+				provider.setPermission(accessGrant.getPermission());
+			}
+			if (provider instanceof AbstractProvider) {
+				((AbstractProvider) provider).restoreAccessGrant(accessGrant);
+			} else {
+				provider.setAccessGrant(accessGrant);
+			}
+			return provider;
+		} catch (Exception e) {
+			InvalidObjectException ex = new InvalidObjectException(
+					"Cannot rebuild provider " + providerId);
+			ex.initCause(e);
+			throw ex;
+		}
+	}
+}
@@ -25,47 +25,87 @@
 
 package org.brickred.socialauth;
 
+import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.brickred.socialauth.exception.SocialAuthConfigurationException;
 import org.brickred.socialauth.exception.SocialAuthException;
+import org.brickred.socialauth.metrics.Instrumentation;
+import org.brickred.socialauth.metrics.JmxInstrumentation;
+import org.brickred.socialauth.metrics.MetricsExporter;
+import org.brickred.socialauth.metrics.MetricsInstrumentation;
+import org.brickred.socialauth.metrics.NoOpInstrumentation;
+import org.brickred.socialauth.util.AccessGrantStore;
+import org.brickred.socialauth.util.CircuitBreaker;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.FeedCache;
+import org.brickred.socialauth.util.HttpTransport;
+import org.brickred.socialauth.util.FileAccessGrantStore;
 import org.brickred.socialauth.util.HttpUtil;
+import org.brickred.socialauth.util.InMemoryAccessGrantStore;
 import org.brickred.socialauth.util.OAuthConfig;
+import org.brickred.socialauth.util.PooledHttpTransport;
+import org.brickred.socialauth.util.RateLimiter;
+import org.brickred.socialauth.util.RequestTokenPool;
 
 /**
  * This class is used to load the configuration for all providers. Load() method
  * is used to upload the configuration. Configuration can be loaded through
  * InputStream, Properties or from file. An instance of this class is passed to
  * SocialAuthManager for configuring providers.
+ * <p>
+ * The configuration is held in an immutable {@link Snapshot}, replaced as a
+ * whole when a provider is registered or when the configuration is reloaded.
+ * Reading the configuration takes no lock, and a provider keeps the
+ * configuration it was created with.
+ * </p>
+ * <p>
+ * The HTTP, response cache, request token pool and token refresh settings
+ * are process-wide. Only the shared configuration, see {@link #getShared()},
+ * applies them when it is loaded or reloaded; a setting removed from its
+ * properties is reset to its default. The other configurations ignore them.
+ * </p>
  * 
  * @author tarunn@brickred.com
  * 
  */
 public class SocialAuthConfig implements Serializable {
 
-	private static final long serialVersionUID = 1298666003842985895L;
+	private static final long serialVersionUID = -4127836403176457062L;
 	private static final String OAUTH_CONSUMER_PROPS = "oauth_consumer.properties";
-	private Map<String, Class<?>> providersImplMap;
-	private Map<String, OAuthConfig> providersConfig;
-	private Properties applicationProperties;
-	private Map<String, String> domainMap;
-	private boolean configSetup;
+	private static final String READ_TIMEOUT_SUFFIX = ".read_timeout";
+	// registered providers and configurations, without the properties
+	private Snapshot base;
+	private volatile Snapshot snapshot;
+	private transient Map<String, ProviderFactory> providerFactories;
+	private transient AccessGrantStore accessGrantStore;
+	private transient Path source;
+	private transient ConfigWatcher watcher;
 	private static final Logger LOG = Logger.getLogger(SocialAuthConfig.class.getName());
 	private static SocialAuthConfig DEFAULT = new SocialAuthConfig();
+	private static volatile SocialAuthConfig shared;
 	private boolean isConfigLoaded;
 
 	/**
@@ -77,8 +117,31 @@ public class SocialAuthConfig implements Serializable {
 		return DEFAULT;
 	}
 
+	/**
+	 * Returns the configuration shared by the application, to which
+	 * deserialized providers and managers are bound. Unless it is set with
+	 * {@link #setShared(SocialAuthConfig)}, it is the first loaded
+	 * configuration.
+	 * 
+	 * @return the shared configuration, or null if none is loaded
+	 */
+	public static SocialAuthConfig getShared() {
+		return shared;
+	}
+
+	/**
+	 * Updates the configuration shared by the application. Its process-wide
+	 * settings are applied the next time it is loaded or reloaded.
+	 * 
+	 * @param config
+	 *            the loaded configuration
+	 */
+	public static void setShared(final SocialAuthConfig config) {
+		shared = config;
+	}
+
 	public SocialAuthConfig() {
-		providersImplMap = new HashMap<String, Class<?>>();
+		Map<String, Class<?>> providersImplMap = new HashMap<String, Class<?>>();
 		providersImplMap.put(Constants.FACEBOOK,
 				org.brickred.socialauth.provider.FacebookImpl.class);
 		providersImplMap.put(Constants.FOURSQUARE,
@@ -112,7 +175,7 @@ public class SocialAuthConfig implements Serializable {
 		providersImplMap.put(Constants.FLICKR,
 				org.brickred.socialauth.provider.FlickerImpl.class);
 
-		domainMap = new HashMap<String, String>();
+		Map<String, String> domainMap = new HashMap<String, String>();
 		domainMap.put(Constants.GOOGLE, "www.google.com");
 		domainMap.put(Constants.YAHOO, "api.login.yahoo.com");
 		domainMap.put(Constants.TWITTER, "twitter.com");
@@ -130,14 +193,20 @@ public class SocialAuthConfig implements Serializable {
 		domainMap.put(Constants.GITHUB, "api.github.com");
 		domainMap.put(Constants.FLICKR, "www.flickr.com");
 
-		providersConfig = new HashMap<String, OAuthConfig>();
+		Map<String, OAuthConfig> providersConfig = new HashMap<String, OAuthConfig>();
+		providerFactories = new ConcurrentHashMap<String, ProviderFactory>();
 
 		OAuthConfig c = new OAuthConfig("openid", "openid");
 		providersConfig.put(Constants.OPENID, c);
 
+		base = new Snapshot(providersImplMap, providersConfig, domainMap,
+				new Properties(), false);
+		snapshot = base;
 	}
 
-	private void registerProviders() throws Exception {
+	private void registerProviders(final Properties applicationProperties,
+			final Map<String, Class<?>> providersImplMap,
+			final Map<String, String> domainMap) throws Exception {
 		for (Object key : applicationProperties.keySet()) {
 			String str = key.toString();
 			if (str.startsWith("socialauth.")) {
@@ -160,20 +229,136 @@ public class SocialAuthConfig implements Serializable {
 	public void addProvider(final String pname, final Class<?> clazz)
 			throws Exception {
 		LOG.fine("Registering a provider " + pname);
-		providersImplMap.put(pname, clazz);
+		synchronized (this) {
+			base = base.withProvider(pname, clazz);
+			snapshot = snapshot.withProvider(pname, clazz);
+		}
+		getProviderFactories().remove(pname);
+	}
+
+	/**
+	 * Registers the factory creating the instances of a provider. It replaces
+	 * the factory built from the provider implementation class.
+	 * 
+	 * @param pname
+	 *            provider name or id
+	 * @param factory
+	 *            the provider factory
+	 */
+	public void addProviderFactory(final String pname,
+			final ProviderFactory factory) {
+		LOG.fine("Registering a provider factory " + pname);
+		getProviderFactories().put(pname, factory);
+	}
+
+	/**
+	 * Retrieves the factory creating the instances of a provider. Factories of
+	 * the configured providers are built when the configuration is loaded, the
+	 * others are built on first use from the provider implementation class.
+	 * 
+	 * @param config
+	 *            the provider configuration
+	 * @return the provider factory
+	 * @throws SocialAuthConfigurationException
+	 */
+	public ProviderFactory getProviderFactory(final OAuthConfig config)
+			throws SocialAuthConfigurationException {
+		Map<String, ProviderFactory> factories = getProviderFactories();
+		ProviderFactory factory = factories.get(config.getId());
+		if (factory == null || !isFactoryOf(factory, config)) {
+			if (config.getProviderImplClass() == null) {
+				throw new SocialAuthConfigurationException(
+						"Provider Impl class not found for " + config.getId());
+			}
+			factory = new ConstructorProviderFactory(
+					config.getProviderImplClass());
+			// a configuration of a previous snapshot keeps its own factory
+			OAuthConfig current = snapshot.providersConfig.get(config.getId());
+			if (current == null
+					|| current.getProviderImplClass() == config
+							.getProviderImplClass()) {
+				factories.put(config.getId(), factory);
+			}
+		}
+		return factory;
+	}
+
+	private static boolean isFactoryOf(final ProviderFactory factory,
+			final OAuthConfig config) {
+		return !(factory instanceof ConstructorProviderFactory)
+				|| ((ConstructorProviderFactory) factory).creates(config
+						.getProviderImplClass());
+	}
+
+	private Map<String, ProviderFactory> getProviderFactories() {
+		if (providerFactories == null) {
+			// transient, lost by serialization
+			providerFactories = new ConcurrentHashMap<String, ProviderFactory>();
+		}
+		return providerFactories;
+	}
+
+	private void registerProviderFactories(final Snapshot config)
+			throws SocialAuthConfigurationException {
+		Map<String, ProviderFactory> factories = getProviderFactories();
+		for (OAuthConfig conf : config.providersConfig.values()) {
+			if (conf.getProviderImplClass() == null) {
+				continue;
+			}
+			ProviderFactory factory = factories.get(conf.getId());
+			if (factory == null || !isFactoryOf(factory, conf)) {
+				factories.put(conf.getId(), new ConstructorProviderFactory(
+						conf.getProviderImplClass()));
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the store of the access grants, which lets any manager
+	 * rebuild the providers of a user.
+	 * 
+	 * @return the access grant store, or null if grants are only kept in the
+	 *         session
+	 */
+	public AccessGrantStore getAccessGrantStore() {
+		return accessGrantStore;
+	}
+
+	/**
+	 * Updates the store of the access grants. A store is also created when
+	 * the configuration has the grantStore.directory or the
+	 * grantStore.maxEntries property.
+	 * 
+	 * @param accessGrantStore
+	 *            the access grant store
+	 */
+	public void setAccessGrantStore(final AccessGrantStore accessGrantStore) {
+		this.accessGrantStore = accessGrantStore;
+	}
+
+	/**
+	 * Returns the current configuration. A request reading the configuration
+	 * several times reads it from the same snapshot, which a reload does not
+	 * change.
+	 * 
+	 * @return the current configuration snapshot
+	 */
+	public Snapshot getSnapshot() {
+		return snapshot;
 	}
 
 	/**
 	 * Returns the application configuration properties
 	 * 
-	 * @return the application configuration properties
+	 * @return a copy of the application configuration properties
 	 */
 	public Properties getApplicationProperties() {
-		return applicationProperties;
+		return snapshot.getApplicationProperties();
 	}
 
 	/**
-	 * Setter for application configuration properties.
+	 * Setter for application configuration properties. The configuration is
+	 * reloaded if it is already loaded.
 	 * 
 	 * @param applicationProperties
 	 *            the application configuration properties
@@ -181,8 +366,11 @@ public class SocialAuthConfig implements Serializable {
 	public void setApplicationProperties(final Properties applicationProperties)
 			throws Exception {
 		LOG.fine("Loading application properties");
-		this.applicationProperties = applicationProperties;
-		load(this.applicationProperties);
+		if (isConfigLoaded) {
+			reload(applicationProperties);
+		} else {
+			load(applicationProperties);
+		}
 	}
 
 	/**
@@ -197,14 +385,7 @@ public class SocialAuthConfig implements Serializable {
 	public void load(final InputStream inputStream) throws Exception {
 		if (!isConfigLoaded) {
 			LOG.fine("Loading application configuration through input stream.");
-			Properties props = new Properties();
-			try {
-				props.load(inputStream);
-				load(props);
-			} catch (IOException ie) {
-				throw new IOException(
-						"Could not load configuration from input stream");
-			}
+			load(readProperties(inputStream));
 		}
 	}
 
@@ -215,30 +396,39 @@ public class SocialAuthConfig implements Serializable {
 	 *            application configuration properties
 	 * @throws Exception
 	 */
-	public void load(final Properties properties) throws Exception {
+	public synchronized void load(final Properties properties)
+			throws Exception {
 		if (!isConfigLoaded) {
 			LOG.fine("Loading application configuration");
-			LOG.log(Level.FINE,"Given properties are : {0}",properties);
-			this.applicationProperties = properties;
-			registerProviders();
-			loadProvidersConfig();
-			setProxy();
-			String timeout = null;
-			if (applicationProperties
-					.containsKey(Constants.HTTP_CONNECTION_TIMEOUT)) {
-				timeout = applicationProperties.getProperty(
-						Constants.HTTP_CONNECTION_TIMEOUT).trim();
+			boolean claimed;
+			synchronized (SocialAuthConfig.class) {
+				claimed = shared == null;
+				if (claimed) {
+					shared = this;
+				}
 			}
-			if (timeout != null && !timeout.isEmpty()) {
-				int time = 0;
-				try {
-					time = Integer.parseInt(timeout);
-				} catch (NumberFormatException ne) {
-					LOG.warning("Http connection timout is not an integer in configuration");
+			try {
+				apply(properties);
+			} catch (Exception e) {
+				if (claimed) {
+					synchronized (SocialAuthConfig.class) {
+						if (shared == this) {
+							shared = null;
+						}
+					}
 				}
-				HttpUtil.setConnectionTimeout(time);
+				throw e;
 			}
 			isConfigLoaded = true;
+			String watch = properties.getProperty(Constants.CONFIG_WATCH);
+			if (source != null && watch != null
+					&& Boolean.parseBoolean(watch.trim())) {
+				try {
+					watch(source);
+				} catch (IOException e) {
+					LOG.log(Level.WARNING, "Unable to watch " + source, e);
+				}
+			}
 		}
 	}
 
@@ -254,13 +444,18 @@ public class SocialAuthConfig implements Serializable {
 		if (!isConfigLoaded) {
 			LOG.fine("Loading application configuration from file " + fileName);
 			ClassLoader loader = SocialAuthConfig.class.getClassLoader();
-			try {
-				InputStream in = loader.getResourceAsStream(fileName);
-				load(in);
-			} catch (NullPointerException ne) {
+			URL url = loader.getResource(fileName);
+			if (url == null) {
 				throw new FileNotFoundException(fileName
 						+ " file is not found in your class path");
 			}
+			source = toPath(url);
+			InputStream in = url.openStream();
+			try {
+				load(in);
+			} finally {
+				in.close();
+			}
 		}
 	}
 
@@ -277,6 +472,185 @@ public class SocialAuthConfig implements Serializable {
 		}
 	}
 
+	/**
+	 * Replaces the loaded application configuration by the given properties.
+	 * The providers created before keep the previous configuration, the
+	 * providers created afterwards get the new one. If the properties are
+	 * invalid, the previous configuration is kept.
+	 * 
+	 * @param properties
+	 *            application configuration properties
+	 * @throws Exception
+	 */
+	public synchronized void reload(final Properties properties)
+			throws Exception {
+		if (!isConfigLoaded) {
+			load(properties);
+		} else if (snapshot.applicationProperties.equals(properties)) {
+			LOG.fine("Application configuration is unchanged");
+		} else {
+			LOG.info("Reloading application configuration");
+			apply(properties);
+		}
+	}
+
+	/**
+	 * Replaces the loaded application configuration by the one of the given
+	 * input stream.
+	 * 
+	 * @param inputStream
+	 *            property file input stream which contains the configuration.
+	 * @throws Exception
+	 */
+	public void reload(final InputStream inputStream) throws Exception {
+		reload(readProperties(inputStream));
+	}
+
+	/**
+	 * Reloads the application configuration from the file it was loaded from,
+	 * or from oauth_consumer.properties file.
+	 * 
+	 * @throws Exception
+	 */
+	public void reload() throws Exception {
+		Path file = source;
+		InputStream in;
+		if (file != null) {
+			in = Files.newInputStream(file);
+		} else {
+			ClassLoader loader = SocialAuthConfig.class.getClassLoader();
+			in = loader.getResourceAsStream(OAUTH_CONSUMER_PROPS);
+			if (in == null) {
+				throw new FileNotFoundException(OAUTH_CONSUMER_PROPS
+						+ " file is not found in your class path");
+			}
+		}
+		try {
+			reload(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reloads the application configuration whenever the given properties
+	 * file changes. This is implicitly done for the file loaded from the class
+	 * path if "config.watch" property is true. A previous watch of this
+	 * configuration is stopped. The watching thread keeps the configuration
+	 * and its class loader, a web application stops it with {@link #close()}.
+	 * 
+	 * @param file
+	 *            the properties file
+	 * @return the watch, to close to stop reloading the configuration
+	 * @throws IOException
+	 */
+	public synchronized Closeable watch(final Path file) throws IOException {
+		if (watcher != null) {
+			watcher.close();
+		}
+		source = file;
+		watcher = new ConfigWatcher(this, file);
+		return watcher;
+	}
+
+	/**
+	 * Stops watching the properties file of this configuration. A web
+	 * application calls it from the contextDestroyed method of a
+	 * ServletContextListener, otherwise the watching thread keeps the class
+	 * loader of the application after it is undeployed.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		if (watcher != null) {
+			LOG.fine("Closing configuration watcher");
+			watcher.close();
+			watcher = null;
+		}
+	}
+
+	private static Properties readProperties(final InputStream inputStream)
+			throws IOException {
+		Properties props = new Properties();
+		try {
+			props.load(inputStream);
+		} catch (IOException ie) {
+			throw new IOException(
+					"Could not load configuration from input stream");
+		}
+		return props;
+	}
+
+	private static Path toPath(final URL url) {
+		if (!"file".equals(url.getProtocol())) {
+			return null;
+		}
+		try {
+			return Paths.get(url.toURI());
+		} catch (URISyntaxException e) {
+			return null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Builds the snapshot of the given properties and, for the shared
+	 * configuration, applies the process-wide settings. Everything that can
+	 * fail is built before any setting is applied, and the snapshot is only
+	 * published once everything is applied, so a failure leaves the current
+	 * configuration in place.
+	 */
+	private void apply(final Properties properties) throws Exception {
+		Properties props = new Properties();
+		props.putAll(properties);
+		Map<String, Class<?>> providersImplMap = new HashMap<String, Class<?>>(
+				base.providersImplMap);
+		Map<String, String> domainMap = new HashMap<String, String>(
+				base.domainMap);
+		Map<String, OAuthConfig> providersConfig = new HashMap<String, OAuthConfig>(
+				base.providersConfig);
+		registerProviders(props, providersImplMap, domainMap);
+		loadProvidersConfig(props, providersImplMap, domainMap,
+				providersConfig);
+		Snapshot next = new Snapshot(providersImplMap, providersConfig,
+				domainMap, props, true);
+		registerProviderFactories(next);
+		AccessGrantStore store = createGrantStore(props);
+		// the previous properties tell which settings are removed
+		Properties previous = isConfigLoaded ? snapshot.applicationProperties
+				: new Properties();
+		boolean global = shared == this;
+		HttpTransport transport = null;
+		Instrumentation metrics = null;
+		if (global) {
+			transport = createTransport(props, previous);
+			try {
+				metrics = createInstrumentation(props, previous);
+			} catch (Exception e) {
+				if (transport != null) {
+					transport.shutdown();
+				}
+				throw e;
+			}
+			setProxy(props, previous);
+			setConnectionTimeout(props, previous);
+			setReadTimeouts(next, previous);
+			setTransport(props, transport);
+			setInstrumentation(metrics);
+			setResponseCache(props);
+			setTokenRefresh(props);
+		} else {
+			LOG.warning("This configuration is not the shared one, its HTTP,"
+					+ " cache and token settings are ignored");
+		}
+		if (store != null) {
+			accessGrantStore = store;
+		}
+		setRequestTokenPool(props, next, global);
+		snapshot = next;
+	}
+
 	/**
 	 * Updates the provider specific configuration.
 	 * 
@@ -290,20 +664,26 @@ public class SocialAuthConfig implements Serializable {
 			final OAuthConfig config) throws Exception {
 		config.setId(providerId);
 		LOG.fine("Adding provider configuration :" + config);
-		providersConfig.put(providerId, config);
-		if (config.getProviderImplClass() != null) {
-			providersImplMap.put(providerId, config.getProviderImplClass());
-			domainMap.put(providerId, providerId);
-		}
-		if (!providersImplMap.containsKey(providerId)) {
-			throw new SocialAuthException("Provider Impl class not found");
-		} else if (config.getProviderImplClass() == null) {
-			config.setProviderImplClass(providersImplMap.get(providerId));
+		synchronized (this) {
+			boolean implClass = config.getProviderImplClass() != null;
+			if (!implClass) {
+				Class<?> clazz = snapshot.providersImplMap.get(providerId);
+				if (clazz == null) {
+					throw new SocialAuthException("Provider Impl class not found");
+				}
+				config.setProviderImplClass(clazz);
+			}
+			base = base.withProviderConfig(providerId, config, implClass);
+			snapshot = snapshot.withProviderConfig(providerId, config,
+					implClass);
 		}
-		configSetup = true;
+		getProviderFactories().remove(providerId);
 	}
 
-	private void loadProvidersConfig() {
+	private void loadProvidersConfig(final Properties applicationProperties,
+			final Map<String, Class<?>> providersImplMap,
+			final Map<String, String> domainMap,
+			final Map<String, OAuthConfig> providersConfig) {
 		for (Map.Entry<String, String> entry : domainMap.entrySet()) {
 			String key = entry.getKey();
 			String value = entry.getValue();
@@ -350,6 +730,10 @@ public class SocialAuthConfig implements Serializable {
 						conf.setAccessTokenUrl(tokenUrl.trim());
 					}
 				}
+				int parallel = getIntProperty(applicationProperties, value + ".max_parallel_requests");
+				if (parallel > 0) {
+					conf.setMaxParallelRequests(parallel);
+				}
 				if (applicationProperties.containsKey(value + ".plugins")) {
 					String pluginsStr = applicationProperties.getProperty(
 							value + ".plugins").trim();
@@ -383,7 +767,6 @@ public class SocialAuthConfig implements Serializable {
 						+ " is not available");
 			}
 		}
-		configSetup = true;
 	}
 
 	/**
@@ -397,48 +780,204 @@ public class SocialAuthConfig implements Serializable {
 	 */
 	public OAuthConfig getProviderConfig(final String id)
 			throws SocialAuthException, SocialAuthConfigurationException {
-		OAuthConfig config = providersConfig.get(id);
-		if (config == null) {
-			try {
-				new URL(id);
-				config = getProviderConfig(Constants.OPENID);
-				if (config != null) {
-					config.setId(id);
+		return snapshot.getProviderConfig(id);
+	}
+
+	protected boolean isConfigSetup() {
+		return snapshot.configSetup;
+	}
+
+	/**
+	 * @return true if the access grants of the connected providers are
+	 *         refreshed before they expire
+	 */
+	public boolean isTokenRefreshEnabled() {
+		String value = snapshot
+				.getApplicationProperty(Constants.TOKEN_REFRESH_ENABLED);
+		return value != null && Boolean.parseBoolean(value.trim());
+	}
+
+	/**
+	 * The shared configuration is serialized as a reference, resolved to the
+	 * shared configuration of the deserializing application.
+	 */
+	private Object writeReplace() throws ObjectStreamException {
+		return this == shared ? new SharedReference() : this;
+	}
+
+	private static class SharedReference implements Serializable {
+		private static final long serialVersionUID = 5043713283562371402L;
+
+		private Object readResolve() throws ObjectStreamException {
+			SocialAuthConfig config = shared;
+			if (config == null) {
+				throw new InvalidObjectException(
+						"No shared SocialAuthConfig is loaded");
+			}
+			return config;
+		}
+	}
+
+	/**
+	 * Immutable state of a configuration: the provider implementations, the
+	 * provider configurations and the application properties. It is never
+	 * modified, a new snapshot replaces it instead.
+	 */
+	public static final class Snapshot implements Serializable {
+		private static final long serialVersionUID = 3521718795093612707L;
+		private final Map<String, Class<?>> providersImplMap;
+		private final Map<String, OAuthConfig> providersConfig;
+		private final Map<String, String> domainMap;
+		private final Properties applicationProperties;
+		private final boolean configSetup;
+
+		private Snapshot(final Map<String, Class<?>> providersImplMap,
+				final Map<String, OAuthConfig> providersConfig,
+				final Map<String, String> domainMap,
+				final Properties applicationProperties,
+				final boolean configSetup) {
+			this.providersImplMap = Collections
+					.unmodifiableMap(new HashMap<String, Class<?>>(
+							providersImplMap));
+			this.providersConfig = Collections
+					.unmodifiableMap(new HashMap<String, OAuthConfig>(
+							providersConfig));
+			this.domainMap = Collections
+					.unmodifiableMap(new HashMap<String, String>(domainMap));
+			this.applicationProperties = applicationProperties;
+			this.configSetup = configSetup;
+		}
+
+		private Snapshot withProvider(final String pname, final Class<?> clazz) {
+			Map<String, Class<?>> impls = new HashMap<String, Class<?>>(
+					providersImplMap);
+			impls.put(pname, clazz);
+			return new Snapshot(impls, providersConfig, domainMap,
+					applicationProperties, configSetup);
+		}
+
+		private Snapshot withProviderConfig(final String providerId,
+				final OAuthConfig config, final boolean implClass) {
+			Map<String, OAuthConfig> configs = new HashMap<String, OAuthConfig>(
+					providersConfig);
+			configs.put(providerId, config);
+			Map<String, Class<?>> impls = new HashMap<String, Class<?>>(
+					providersImplMap);
+			impls.put(providerId, config.getProviderImplClass());
+			Map<String, String> domains = domainMap;
+			if (implClass) {
+				domains = new HashMap<String, String>(domainMap);
+				domains.put(providerId, providerId);
+			}
+			return new Snapshot(impls, configs, domains,
+					applicationProperties, true);
+		}
+
+		/**
+		 * Retrieves the configuration of given provider
+		 * 
+		 * @param id
+		 *            the provider id
+		 * @return the configuration of given provider
+		 * @throws SocialAuthException
+		 * @throws SocialAuthConfigurationException
+		 */
+		public OAuthConfig getProviderConfig(final String id)
+				throws SocialAuthException, SocialAuthConfigurationException {
+			OAuthConfig config = providersConfig.get(id);
+			if (config == null) {
+				try {
+					new URL(id);
+					config = getProviderConfig(Constants.OPENID);
+					if (config != null) {
+						config = copyOf(config, id);
+					}
+				} catch (MalformedURLException me) {
+					throw new SocialAuthException(id
+							+ " is not a provider or valid OpenId URL");
 				}
-			} catch (MalformedURLException me) {
-				throw new SocialAuthException(id
-						+ " is not a provider or valid OpenId URL");
 			}
+			if (config == null) {
+				throw new SocialAuthConfigurationException("Configuration of "
+						+ id + " provider is not found");
+			}
+
+			if (config.get_consumerSecret().length() <= 0) {
+				throw new SocialAuthConfigurationException(id
+						+ " consumer_secret value is null");
+			}
+			if (config.get_consumerKey().length() <= 0) {
+				throw new SocialAuthConfigurationException(id
+						+ " consumer_key value is null");
+			}
+			return config;
+		}
+
+		/**
+		 * @return the ids of the configured providers
+		 */
+		public Set<String> getProviderIds() {
+			return providersConfig.keySet();
 		}
-		if (config == null) {
-			throw new SocialAuthConfigurationException("Configuration of " + id
-					+ " provider is not found");
+
+		/**
+		 * Returns the value of an application configuration property
+		 * 
+		 * @param name
+		 *            the property name
+		 * @return the property value, or null if it is not set
+		 */
+		public String getApplicationProperty(final String name) {
+			return applicationProperties.getProperty(name);
 		}
 
-		if (config.get_consumerSecret().length() <= 0) {
-			throw new SocialAuthConfigurationException(id
-					+ " consumer_secret value is null");
+		/**
+		 * @return a copy of the application configuration properties
+		 */
+		public Properties getApplicationProperties() {
+			Properties props = new Properties();
+			props.putAll(applicationProperties);
+			return props;
 		}
-		if (config.get_consumerKey().length() <= 0) {
-			throw new SocialAuthConfigurationException(id
-					+ " consumer_key value is null");
+
+		/**
+		 * @return true if a provider is configured
+		 */
+		public boolean isConfigSetup() {
+			return configSetup;
 		}
-		return config;
-	}
 
-	protected boolean isConfigSetup() {
-		return configSetup;
+		/**
+		 * The OpenId configuration is shared by the OpenId URLs, each of them
+		 * gets its own copy.
+		 */
+		private static OAuthConfig copyOf(final OAuthConfig config,
+				final String id) {
+			OAuthConfig copy = new OAuthConfig(config.get_consumerKey(),
+					config.get_consumerSecret(), config.get_signatureMethod(),
+					config.get_transportName());
+			copy.setId(id);
+			copy.setProviderImplClass(config.getProviderImplClass());
+			copy.setCustomPermissions(config.getCustomPermissions());
+			copy.setRequestTokenUrl(config.getRequestTokenUrl());
+			copy.setAuthenticationUrl(config.getAuthenticationUrl());
+			copy.setAccessTokenUrl(config.getAccessTokenUrl());
+			copy.setRegisteredPlugins(config.getRegisteredPlugins());
+			copy.setPluginsScopes(config.getPluginsScopes());
+			copy.setMaxParallelRequests(config.getMaxParallelRequests());
+			return copy;
+		}
 	}
 
-	private void setProxy() {
+	private void setProxy(final Properties props, final Properties previous) {
 		String proxyHost = null;
 		String proxyPort = null;
-		if (applicationProperties.containsKey(Constants.PROXY_HOST)) {
-			proxyHost = applicationProperties.getProperty(Constants.PROXY_HOST)
+		if (props.containsKey(Constants.PROXY_HOST)) {
+			proxyHost = props.getProperty(Constants.PROXY_HOST)
 					.trim();
 		}
-		if (applicationProperties.containsKey(Constants.PROXY_PORT)) {
-			proxyPort = applicationProperties.getProperty(Constants.PROXY_PORT)
+		if (props.containsKey(Constants.PROXY_PORT)) {
+			proxyPort = props.getProperty(Constants.PROXY_PORT)
 					.trim();
 		}
 		if (proxyHost != null && !proxyHost.isEmpty()) {
@@ -451,7 +990,285 @@ public class SocialAuthConfig implements Serializable {
 				}
 			}
 			HttpUtil.setProxyConfig(proxyHost, port);
+		} else if (previous.containsKey(Constants.PROXY_HOST)) {
+			LOG.fine("Removing proxy");
+			HttpUtil.removeProxyConfig();
+		}
+	}
+
+	private void setConnectionTimeout(final Properties props,
+			final Properties previous) {
+		String timeout = null;
+		if (props.containsKey(Constants.HTTP_CONNECTION_TIMEOUT)) {
+			timeout = props.getProperty(Constants.HTTP_CONNECTION_TIMEOUT)
+					.trim();
+		}
+		if (timeout != null && !timeout.isEmpty()) {
+			int time = 0;
+			try {
+				time = Integer.parseInt(timeout);
+			} catch (NumberFormatException ne) {
+				LOG.warning("Http connection timout is not an integer in configuration");
+			}
+			HttpUtil.setConnectionTimeout(time);
+		} else if (previous.containsKey(Constants.HTTP_CONNECTION_TIMEOUT)) {
+			HttpUtil.setConnectionTimeout(0);
+		}
+	}
+
+	/**
+	 * Declares the domains of the configured providers with their read
+	 * timeout. A read timeout removed from the properties falls back to the
+	 * one of all the providers.
+	 */
+	private void setReadTimeouts(final Snapshot next,
+			final Properties previous) {
+		Properties props = next.applicationProperties;
+		for (Map.Entry<String, String> entry : next.domainMap.entrySet()) {
+			if (next.providersConfig.containsKey(entry.getKey())) {
+				String domain = entry.getValue();
+				HttpUtil.addDomain(domain);
+				int readTimeout = getIntProperty(props, domain
+						+ READ_TIMEOUT_SUFFIX);
+				if (readTimeout > 0) {
+					HttpUtil.setReadTimeout(domain, readTimeout);
+				}
+			}
+		}
+		for (String name : previous.stringPropertyNames()) {
+			if (name.endsWith(READ_TIMEOUT_SUFFIX)
+					&& getIntProperty(props, name) <= 0) {
+				HttpUtil.setReadTimeout(name.substring(0, name.length()
+						- READ_TIMEOUT_SUFFIX.length()), 0);
+			}
+		}
+	}
+
+	private HttpTransport createTransport(final Properties props,
+			final Properties previous) throws Exception {
+		if (!isSet(props, Constants.HTTP_TRANSPORT)) {
+			// a removed transport goes back to the default one
+			return isSet(previous, Constants.HTTP_TRANSPORT)
+					? new PooledHttpTransport() : null;
+		}
+		if (isUnchanged(props, Constants.HTTP_TRANSPORT)) {
+			return null;
+		}
+		String className = props.getProperty(Constants.HTTP_TRANSPORT).trim();
+		LOG.fine("Creating HTTP transport : " + className);
+		return Class.forName(className).asSubclass(HttpTransport.class)
+				.newInstance();
+	}
+
+	private void setTransport(final Properties props,
+			final HttpTransport transport) {
+		if (transport != null) {
+			HttpUtil.setTransport(transport);
+		}
+		HttpUtil.setMaxConnectionsPerRoute(getIntProperty(props,
+				Constants.HTTP_MAX_CONNECTIONS_PER_ROUTE,
+				PooledHttpTransport.DEFAULT_MAX_PER_ROUTE));
+		HttpUtil.setConnectionIdleTimeout(getIntProperty(props,
+				Constants.HTTP_CONNECTION_IDLE_TIMEOUT,
+				PooledHttpTransport.DEFAULT_IDLE_TIMEOUT));
+		HttpUtil.setReadTimeout(getIntProperty(props,
+				Constants.HTTP_READ_TIMEOUT, HttpUtil.DEFAULT_READ_TIMEOUT));
+		HttpUtil.setMaxRetries(getIntProperty(props,
+				Constants.HTTP_MAX_RETRIES, HttpUtil.DEFAULT_MAX_RETRIES));
+		HttpUtil.setRetryBackoff(getIntProperty(props,
+				Constants.HTTP_RETRY_BACKOFF, HttpUtil.DEFAULT_RETRY_BACKOFF));
+		CircuitBreaker breaker = CircuitBreaker.getInstance();
+		breaker.setFailureThreshold(getIntProperty(props,
+				Constants.HTTP_CIRCUIT_BREAKER_FAILURES,
+				CircuitBreaker.DEFAULT_FAILURE_THRESHOLD));
+		breaker.setOpenTime(getIntProperty(props,
+				Constants.HTTP_CIRCUIT_BREAKER_OPEN_TIME,
+				(int) CircuitBreaker.DEFAULT_OPEN_TIME));
+		RateLimiter limiter = RateLimiter.getInstance();
+		limiter.setMaxWait(getIntProperty(props, Constants.HTTP_RATE_LIMIT_MAX_WAIT));
+		limiter.setReserve(getIntProperty(props, Constants.HTTP_RATE_LIMIT_RESERVE));
+		HttpUtil.setMaxResponseBodySize(getIntProperty(props,
+				Constants.HTTP_MAX_RESPONSE_BODY_SIZE,
+				HttpUtil.DEFAULT_MAX_RESPONSE_BODY_SIZE));
+	}
+
+	private void setResponseCache(final Properties props) {
+		FeedCache cache = FeedCache.getInstance();
+		cache.setMaxEntries(getIntProperty(props, Constants.HTTP_CACHE_MAX_ENTRIES));
+		// the endpoints removed from the configuration fall back to the default
+		cache.clearTimeToLives();
+		if (!cache.isEnabled()) {
+			return;
+		}
+		cache.setDefaultTimeToLive(getIntProperty(props, Constants.HTTP_CACHE_TTL));
+		String prefix = Constants.HTTP_CACHE_TTL + ".";
+		for (String name : props.stringPropertyNames()) {
+			if (name.startsWith(prefix) && name.length() > prefix.length()) {
+				String endpoint = name.substring(prefix.length());
+				LOG.fine("Caching responses of " + endpoint);
+				cache.setTimeToLive(endpoint, getIntProperty(props, name));
+			}
+		}
+	}
+
+	private Instrumentation createInstrumentation(final Properties props,
+			final Properties previous) throws Exception {
+		if (!isSet(props, Constants.METRICS_INSTRUMENTATION)) {
+			return isSet(previous, Constants.METRICS_INSTRUMENTATION)
+					? NoOpInstrumentation.INSTANCE : null;
+		}
+		if (isUnchanged(props, Constants.METRICS_INSTRUMENTATION,
+				Constants.METRICS_EXPORTERS, Constants.METRICS_EXPORT_INTERVAL)) {
+			return null;
+		}
+		String value = props.getProperty(Constants.METRICS_INSTRUMENTATION)
+				.trim();
+		LOG.fine("Setting metrics instrumentation : " + value);
+		Instrumentation metrics;
+		if ("jmx".equalsIgnoreCase(value)) {
+			metrics = new JmxInstrumentation();
+		} else {
+			metrics = Class.forName(value).asSubclass(Instrumentation.class)
+					.newInstance();
+		}
+		if (metrics instanceof MetricsInstrumentation) {
+			MetricsInstrumentation collector = (MetricsInstrumentation) metrics;
+			String exporters = props
+					.getProperty(Constants.METRICS_EXPORTERS);
+			if (exporters != null) {
+				for (String className : exporters.split(",")) {
+					if (!className.trim().isEmpty()) {
+						collector.addExporter(Class.forName(className.trim())
+								.asSubclass(MetricsExporter.class)
+								.newInstance());
+					}
+				}
+			}
+			collector.setExportInterval(getIntProperty(props, Constants.METRICS_EXPORT_INTERVAL));
+		}
+		return metrics;
+	}
+
+	private void setInstrumentation(final Instrumentation metrics) {
+		if (metrics == null) {
+			return;
+		}
+		Instrumentation old = HttpUtil.getInstrumentation();
+		HttpUtil.setInstrumentation(metrics);
+		if (old instanceof MetricsInstrumentation) {
+			((MetricsInstrumentation) old).shutdown();
+		}
+	}
+
+	private AccessGrantStore createGrantStore(final Properties props)
+			throws Exception {
+		if (accessGrantStore != null) {
+			return null;
+		}
+		String directory = props
+				.getProperty(Constants.GRANT_STORE_DIRECTORY);
+		if (directory != null && !directory.trim().isEmpty()) {
+			LOG.fine("Storing access grants in " + directory);
+			return new FileAccessGrantStore(Paths.get(directory.trim()));
+		}
+		int maxEntries = getIntProperty(props, Constants.GRANT_STORE_MAX_ENTRIES);
+		if (maxEntries > 0) {
+			return new InMemoryAccessGrantStore(maxEntries);
+		}
+		return null;
+	}
+
+	private void setRequestTokenPool(final Properties props,
+			final Snapshot next, final boolean global) {
+		RequestTokenPool pool = RequestTokenPool.getInstance();
+		if (global) {
+			pool.setMaxAge(getIntProperty(props, Constants.OAUTH1_REQUEST_TOKEN_POOL_MAX_AGE));
+			pool.setSize(getIntProperty(props, Constants.OAUTH1_REQUEST_TOKEN_POOL_SIZE));
+		}
+		// the pooled tokens are keyed by consumer key, a token obtained with
+		// a previous secret or URL must not be handed out
+		if (isConfigLoaded
+				&& !isSameProviders(snapshot.providersConfig,
+						next.providersConfig)) {
+			LOG.fine("Discarding the pooled request tokens");
+			pool.clear();
+		}
+	}
+
+	private static boolean isSameProviders(
+			final Map<String, OAuthConfig> current,
+			final Map<String, OAuthConfig> next) {
+		if (!current.keySet().equals(next.keySet())) {
+			return false;
+		}
+		for (Map.Entry<String, OAuthConfig> entry : current.entrySet()) {
+			OAuthConfig a = entry.getValue();
+			OAuthConfig b = next.get(entry.getKey());
+			if (!isEqual(a.get_consumerKey(), b.get_consumerKey())
+					|| !isEqual(a.get_consumerSecret(), b.get_consumerSecret())
+					|| !isEqual(a.getRequestTokenUrl(), b.getRequestTokenUrl())
+					|| !isEqual(a.getCustomPermissions(),
+							b.getCustomPermissions())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isEqual(final String a, final String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/**
+	 * A reload keeps the transport and the instrumentation, with their
+	 * connections and measures, when their properties are unchanged.
+	 */
+	private boolean isUnchanged(final Properties props, final String... names) {
+		if (!isConfigLoaded) {
+			return false;
+		}
+		Properties current = snapshot.applicationProperties;
+		for (String name : names) {
+			String value = props.getProperty(name);
+			if (value == null ? current.getProperty(name) != null : !value
+					.equals(current.getProperty(name))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void setTokenRefresh(final Properties props) {
+		TokenRefreshScheduler.getInstance().setRefreshMargin(Math.max(0,
+				getIntProperty(props, Constants.TOKEN_REFRESH_MARGIN,
+						(int) TokenRefreshScheduler.DEFAULT_REFRESH_MARGIN)));
+	}
+
+	private static boolean isSet(final Properties props, final String name) {
+		String value = props.getProperty(name);
+		return value != null && !value.trim().isEmpty();
+	}
+
+	private static int getIntProperty(final Properties props,
+			final String name) {
+		return getIntProperty(props, name, 0);
+	}
+
+	/**
+	 * Gets an integer property, or the given default when it is not set or
+	 * not an integer.
+	 */
+	private static int getIntProperty(final Properties props,
+			final String name, final int defaultValue) {
+		String value = props.getProperty(name);
+		if (value != null && !value.trim().isEmpty()) {
+			try {
+				return Integer.parseInt(value.trim());
+			} catch (NumberFormatException ne) {
+				LOG.warning(name + " is not an integer in configuration");
+			}
 		}
+		return defaultValue;
 	}
 
 }
@@ -0,0 +1,197 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The state of one user for a {@link SocialAuthService}: the provider being
+ * authenticated, the connected providers and the requested permissions. It
+ * is small, created per user, typically kept in the HTTP session, and safe to
+ * use from concurrent requests of the same user.
+ */
+public class SocialAuthContext implements Serializable {
+
+	private static final long serialVersionUID = 4236195418075938218L;
+	private String userId;
+	private String providerId;
+	private AuthProvider authProvider;
+	private String currentProviderId;
+	private Map<String, AuthProvider> providers;
+	private Map<String, Permission> permissions;
+	private Set<String> storeMisses;
+
+	public SocialAuthContext() {
+	}
+
+	/**
+	 * @param userId
+	 *            the id of the user in the access grant store
+	 */
+	public SocialAuthContext(final String userId) {
+		this.userId = userId;
+	}
+
+	/**
+	 * Retrieves the id of the user in the access grant store.
+	 * 
+	 * @return the user id, or null if grants are not stored
+	 */
+	public synchronized String getUserId() {
+		return userId;
+	}
+
+	/**
+	 * Updates the id of the user in the access grant store.
+	 * 
+	 * @param userId
+	 *            the user id
+	 */
+	public synchronized void setUserId(final String userId) {
+		this.userId = userId;
+		storeMisses = null;
+	}
+
+	/**
+	 * Retrieves the last connected provider.
+	 * 
+	 * @return the last connected provider, or null
+	 */
+	public synchronized String getCurrentProviderId() {
+		return currentProviderId;
+	}
+
+	synchronized void setPending(final String id, final AuthProvider provider) {
+		providerId = id;
+		authProvider = provider;
+	}
+
+	/**
+	 * Takes the provider being authenticated, so that only one of concurrent
+	 * callbacks verifies it.
+	 * 
+	 * @return the pending provider, or null if none is pending
+	 */
+	synchronized Pending takePendingProvider() {
+		if (providerId == null || authProvider == null) {
+			return null;
+		}
+		Pending pending = new Pending(providerId, authProvider);
+		providerId = null;
+		return pending;
+	}
+
+	/**
+	 * Gives back a provider taken by {@link #takePendingProvider()} whose
+	 * verification failed, unless another authentication was started since.
+	 * 
+	 * @param pending
+	 *            the provider taken
+	 */
+	synchronized void restorePending(final Pending pending) {
+		if (providerId == null) {
+			providerId = pending.id;
+			authProvider = pending.provider;
+		}
+	}
+
+	synchronized void setConnected(final String id, final AuthProvider provider) {
+		putProvider(id, provider);
+		authProvider = provider;
+		currentProviderId = id;
+		if (id.equals(providerId)) {
+			providerId = null;
+		}
+	}
+
+	synchronized AuthProvider getProvider(final String id) {
+		return providers == null ? null : providers.get(id);
+	}
+
+	synchronized void putProvider(final String id, final AuthProvider provider) {
+		if (providers == null) {
+			providers = new HashMap<String, AuthProvider>(4);
+		}
+		providers.put(id, provider);
+		if (storeMisses != null) {
+			storeMisses.remove(id);
+		}
+	}
+
+	synchronized AuthProvider removeProvider(final String id) {
+		if (storeMisses != null) {
+			storeMisses.remove(id);
+		}
+		return providers == null ? null : providers.remove(id);
+	}
+
+	/**
+	 * Tells if the access grant store was already found without a usable
+	 * grant of the given provider, so it is not queried again for this user.
+	 */
+	synchronized boolean isStoreMiss(final String id) {
+		return storeMisses != null && storeMisses.contains(id);
+	}
+
+	synchronized void setStoreMiss(final String id) {
+		if (storeMisses == null) {
+			storeMisses = new HashSet<String>(4);
+		}
+		storeMisses.add(id);
+	}
+
+	synchronized List<String> getProviderIds() {
+		return providers == null ? new ArrayList<String>()
+				: new ArrayList<String>(providers.keySet());
+	}
+
+	static final class Pending {
+		final String id;
+		final AuthProvider provider;
+
+		Pending(final String id, final AuthProvider provider) {
+			this.id = id;
+			this.provider = provider;
+		}
+	}
+
+	synchronized Permission getPermission(final String id) {
+		return permissions == null ? null : permissions.get(id);
+	}
+
+	synchronized void setPermission(final String id,
+			final Permission permission) {
+		if (permissions == null) {
+			permissions = new HashMap<String, Permission>(4);
+		}
+		permissions.put(id, permission);
+	}
+}
@@ -26,9 +26,6 @@
 package org.brickred.socialauth;
 
 import java.io.Serializable;
-import java.lang.reflect.Constructor;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -37,13 +34,14 @@ import java.util.logging.Logger;
 import org.brickred.socialauth.exception.AccessTokenExpireException;
 import org.brickred.socialauth.exception.SocialAuthConfigurationException;
 import org.brickred.socialauth.exception.SocialAuthException;
-import org.brickred.socialauth.exception.SocialAuthManagerStateException;
 import org.brickred.socialauth.util.AccessGrant;
-import org.brickred.socialauth.util.OAuthConfig;
+import org.brickred.socialauth.util.AccessGrantStore;
 
 /**
  * This class manages the Map of all the connected providers by using this
- * manager.
+ * manager. It is meant to be kept per user, in the HTTP session; an
+ * application serving many users can instead share one
+ * {@link SocialAuthService} and keep a {@link SocialAuthContext} per user.
  * 
  * @author tarunn@brickred.com
  * 
@@ -51,17 +49,13 @@ import org.brickred.socialauth.util.OAuthConfig;
 public class SocialAuthManager implements Serializable {
 
 	private static final long serialVersionUID = 1620459182486095613L;
-	private final Logger LOG = Logger.getLogger(SocialAuthManager.class.getName());
-	private AuthProvider authProvider;
-	private String providerId;
-	private String currentProviderId;
-	private final Map<String, AuthProvider> providersMap;
+	private static final Logger LOG = Logger.getLogger(SocialAuthManager.class.getName());
 	private SocialAuthConfig socialAuthConfig;
-	private final Map<String, Permission> permissionsMap;
+	private transient SocialAuthService service;
+	private final SocialAuthContext context;
 
 	public SocialAuthManager() {
-		providersMap = new HashMap<String, AuthProvider>();
-		permissionsMap = new HashMap<String, Permission>();
+		context = new SocialAuthContext();
 	}
 
 	/**
@@ -84,18 +78,34 @@ public class SocialAuthManager implements Serializable {
 	public void setSocialAuthConfig(final SocialAuthConfig socialAuthConfig)
 			throws Exception {
 		LOG.fine("Setting socialauth config");
-		if (socialAuthConfig == null) {
-			throw new SocialAuthConfigurationException(
-					"SocialAuthConfig is null");
-		} else {
-			if (!socialAuthConfig.isConfigSetup()) {
-				throw new SocialAuthConfigurationException(
-						"Configuration is not provided. Call load() method of SocialAuthConfig class to set up configuration");
-			}
-		}
+		service = new SocialAuthService(socialAuthConfig);
 		this.socialAuthConfig = socialAuthConfig;
 	}
 
+	/**
+	 * Retrieves the id of the user whose grants are kept in the access grant
+	 * store of the configuration.
+	 * 
+	 * @return the user id
+	 */
+	public String getUserId() {
+		return context.getUserId();
+	}
+
+	/**
+	 * Updates the id of the user of this manager. When the configuration has
+	 * an {@link AccessGrantStore}, the grants of the connected providers are
+	 * saved under this id, and the providers of the user are rebuilt from the
+	 * store when they are not in this manager, for example on another node of
+	 * a cluster.
+	 * 
+	 * @param userId
+	 *            the user id
+	 */
+	public void setUserId(final String userId) {
+		context.setUserId(userId);
+	}
+
 	/**
 	 * This is the most important action. It provides the URL which will be used
 	 * for authentication with the provider
@@ -111,9 +121,7 @@ public class SocialAuthManager implements Serializable {
 	 */
 	public String getAuthenticationUrl(final String id, final String successUrl)
 			throws Exception {
-		LOG.fine("Getting Authentication URL for provider " + id
-				+ ", with success url : " + successUrl);
-		return getAuthURL(id, successUrl, null);
+		return getService().getAuthenticationUrl(context, id, successUrl, null);
 	}
 
 	/**
@@ -135,33 +143,8 @@ public class SocialAuthManager implements Serializable {
 	public String getAuthenticationUrl(final String id,
 			final String successUrl, final Permission permission)
 			throws Exception {
-		LOG.fine("Getting Authentication URL for provider " + id
-				+ ", with success url : " + successUrl);
-		return getAuthURL(id, successUrl, permission);
-	}
-
-	private String getAuthURL(final String id, final String successUrl,
-			final Permission permission) throws Exception {
-		String url;
-		providerId = id;
-		if (socialAuthConfig == null) {
-			throw new SocialAuthConfigurationException(
-					"SocialAuth configuration is null.");
-		}
-		if (providersMap.get(id) != null) {
-			url = successUrl;
-			authProvider = providersMap.get(id);
-		} else {
-			authProvider = getProviderInstance(id);
-			if (permissionsMap.get(id) != null) {
-				authProvider.setPermission(permissionsMap.get(id));
-			}
-			if (permission != null) {
-				authProvider.setPermission(permission);
-			}
-			url = authProvider.getLoginRedirectURL(successUrl);
-		}
-		return url;
+		return getService().getAuthenticationUrl(context, id, successUrl,
+				permission);
 	}
 
 	/**
@@ -176,17 +159,7 @@ public class SocialAuthManager implements Serializable {
 	 */
 	public AuthProvider connect(final Map<String, String> requestParams)
 			throws Exception {
-		if (providerId == null || authProvider == null) {
-			throw new SocialAuthManagerStateException();
-		}
-		LOG.info("Connecting provider : " + providerId);
-		if (providersMap.get(providerId) == null) {
-			authProvider.verifyResponse(requestParams);
-			providersMap.put(providerId, authProvider);
-		}
-		currentProviderId = providerId;
-		providerId = null;
-		return authProvider;
+		return getService().connect(context, requestParams);
 	}
 
 	/**
@@ -204,20 +177,8 @@ public class SocialAuthManager implements Serializable {
 	 */
 	public AccessGrant createAccessGrant(final String providerId,
 			final String authCode, final String redirectURL) throws Exception {
-		this.providerId = providerId;
-		if (socialAuthConfig == null) {
-			throw new SocialAuthConfigurationException(
-					"SocialAuth configuration is null.");
-		}
-		getAuthenticationUrl(providerId, redirectURL);
-		if (providersMap.get(providerId) != null) {
-			authProvider = providersMap.get(providerId);
-		}
-		Map<String, String> map = new HashMap<String, String>();
-		map.put("code", authCode);
-		connect(map);
-		LOG.fine("Access Grant Object :: " + authProvider.getAccessGrant());
-		return authProvider.getAccessGrant();
+		return getService().createAccessGrant(context, providerId, authCode,
+				redirectURL);
 	}
 
 	/**
@@ -228,14 +189,14 @@ public class SocialAuthManager implements Serializable {
 	 * @return True if provider is disconnected or false if not.
 	 */
 	public boolean disconnectProvider(final String id) {
-		if (providersMap.get(id) != null) {
-			AuthProvider p = providersMap.get(id);
-			p.logout();
-			providersMap.remove(id);
-			return true;
+		if (socialAuthConfig == null) {
+			AuthProvider p = context.removeProvider(id);
+			if (p != null) {
+				p.logout();
+			}
+			return p != null;
 		}
-		return false;
-
+		return service().disconnectProvider(context, id);
 	}
 
 	/**
@@ -249,17 +210,7 @@ public class SocialAuthManager implements Serializable {
 	public AuthProvider connect(final AccessGrant accessGrant)
 			throws SocialAuthConfigurationException,
 			AccessTokenExpireException, SocialAuthException {
-		if (accessGrant.getProviderId() == null || accessGrant.getKey() == null) {
-			throw new SocialAuthException("access grant is not valid");
-		}
-		LOG.fine("Connecting provider : " + accessGrant.getProviderId()
-				+ ", from given access grant");
-		AuthProvider provider = getProviderInstance(accessGrant.getProviderId());
-		provider.setAccessGrant(accessGrant);
-		authProvider = provider;
-		currentProviderId = accessGrant.getProviderId();
-		providersMap.put(currentProviderId, authProvider);
-		return provider;
+		return getService().connect(context, accessGrant);
 	}
 
 	/**
@@ -274,17 +225,7 @@ public class SocialAuthManager implements Serializable {
 	 */
 	public AuthProvider refreshToken(final AccessGrant accessGrant)
 			throws SocialAuthConfigurationException, SocialAuthException {
-		if (accessGrant.getProviderId() == null || accessGrant.getKey() == null) {
-			throw new SocialAuthException("access grant is not valid");
-		}
-		LOG.fine("Connecting provider : " + accessGrant.getProviderId()
-				+ ", from given access grant");
-		AuthProvider provider = getProviderInstance(accessGrant.getProviderId());
-		provider.refreshToken(accessGrant);
-		authProvider = provider;
-		currentProviderId = accessGrant.getProviderId();
-		providersMap.put(currentProviderId, authProvider);
-		return provider;
+		return getService().refreshToken(context, accessGrant);
 	}
 
 	/**
@@ -295,10 +236,10 @@ public class SocialAuthManager implements Serializable {
 	 * @return provider connected status
 	 */
 	public boolean isConnected(final String providerId) {
-		if (providersMap.containsKey(providerId)) {
-			return true;
+		if (socialAuthConfig == null) {
+			return context.getProvider(providerId) != null;
 		}
-		return false;
+		return service().isConnected(context, providerId);
 	}
 
 	/**
@@ -309,35 +250,10 @@ public class SocialAuthManager implements Serializable {
 	 * @return the instance of given provider
 	 */
 	public AuthProvider getProvider(final String providerId) {
-		return providersMap.get(providerId);
-	}
-
-	private AuthProvider getProviderInstance(final String id)
-			throws SocialAuthConfigurationException, SocialAuthException {
-		OAuthConfig config = socialAuthConfig.getProviderConfig(id);
-		Class<?> obj = config.getProviderImplClass();
-		AuthProvider provider;
-		try {
-			Constructor<?> cons = obj.getConstructor(OAuthConfig.class);
-			provider = (AuthProvider) cons.newInstance(config);
-		} catch (NoSuchMethodException me) {
-			LOG.warning(obj.getName() + " does not implement a constructor "
-					+ obj.getName() + "(Poperties props)");
-			try {
-				provider = (AuthProvider) obj.newInstance();
-			} catch (Exception e) {
-				throw new SocialAuthConfigurationException(e);
-			}
-		} catch (Exception e) {
-			throw new SocialAuthConfigurationException(e);
-		}
-		try {
-			provider.registerPlugins();
-		} catch (Exception e) {
-			throw new SocialAuthConfigurationException(e);
+		if (socialAuthConfig == null) {
+			return context.getProvider(providerId);
 		}
-
-		return provider;
+		return service().getProvider(context, providerId);
 	}
 
 	/**
@@ -346,11 +262,7 @@ public class SocialAuthManager implements Serializable {
 	 * @return List of connected providers ids string.
 	 */
 	public List<String> getConnectedProvidersIds() {
-		List<String> list = new ArrayList<String>();
-		for (Map.Entry<String, AuthProvider> entry : providersMap.entrySet()) {
-			list.add(entry.getKey());
-		}
-		return list;
+		return context.getProviderIds();
 	}
 
 	/**
@@ -359,10 +271,8 @@ public class SocialAuthManager implements Serializable {
 	 * @return AuthProvider object
 	 */
 	public AuthProvider getCurrentAuthProvider() {
-		if (currentProviderId != null) {
-			return providersMap.get(currentProviderId);
-		}
-		return null;
+		String id = context.getCurrentProviderId();
+		return id == null ? null : getProvider(id);
 	}
 
 	/**
@@ -376,7 +286,30 @@ public class SocialAuthManager implements Serializable {
 	 */
 	public void setPermission(final String providerId,
 			final Permission permission) {
-		permissionsMap.put(providerId, permission);
+		context.setPermission(providerId, permission);
+	}
+
+	private SocialAuthService getService()
+			throws SocialAuthConfigurationException {
+		if (socialAuthConfig == null) {
+			throw new SocialAuthConfigurationException(
+					"SocialAuth configuration is null.");
+		}
+		return service();
+	}
+
+	private SocialAuthService service() {
+		SocialAuthService s = service;
+		if (s == null) {
+			// transient, lost by serialization
+			try {
+				s = new SocialAuthService(socialAuthConfig);
+			} catch (SocialAuthConfigurationException e) {
+				throw new IllegalStateException(e);
+			}
+			service = s;
+		}
+		return s;
 	}
 
 }
@@ -0,0 +1,453 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.brickred.socialauth.exception.AccessTokenExpireException;
+import org.brickred.socialauth.exception.SocialAuthConfigurationException;
+import org.brickred.socialauth.exception.SocialAuthException;
+import org.brickred.socialauth.exception.SocialAuthManagerStateException;
+import org.brickred.socialauth.util.AccessGrant;
+import org.brickred.socialauth.util.AccessGrantStore;
+import org.brickred.socialauth.util.AsyncCallback;
+import org.brickred.socialauth.util.OAuthConfig;
+
+/**
+ * Thread safe variant of {@link SocialAuthManager}, shared by all the users of
+ * an application. It only holds the configuration; the state of each user is
+ * given as a {@link SocialAuthContext}, so the configuration, provider
+ * factories and plugin metadata are shared instead of being referenced from
+ * every session.
+ */
+public class SocialAuthService {
+
+	private static final Logger LOG = Logger.getLogger(SocialAuthService.class
+			.getName());
+	private final SocialAuthConfig socialAuthConfig;
+
+	/**
+	 * @param socialAuthConfig
+	 *            the loaded configuration
+	 * @throws SocialAuthConfigurationException
+	 *             if the configuration is null or not loaded
+	 */
+	public SocialAuthService(final SocialAuthConfig socialAuthConfig)
+			throws SocialAuthConfigurationException {
+		if (socialAuthConfig == null) {
+			throw new SocialAuthConfigurationException(
+					"SocialAuthConfig is null");
+		}
+		if (!socialAuthConfig.isConfigSetup()) {
+			throw new SocialAuthConfigurationException(
+					"Configuration is not provided. Call load() method of SocialAuthConfig class to set up configuration");
+		}
+		this.socialAuthConfig = socialAuthConfig;
+	}
+
+	/**
+	 * Retrieves the socialauth config
+	 * 
+	 * @return the socialauth config
+	 */
+	public SocialAuthConfig getSocialAuthConfig() {
+		return socialAuthConfig;
+	}
+
+	/**
+	 * Provides the URL which will be used for authentication with the
+	 * provider.
+	 * 
+	 * @param context
+	 *            the user context
+	 * @param id
+	 *            the provider id
+	 * @param successUrl
+	 *            success page URL on which provider will redirect after
+	 *            authentication
+	 * @param permission
+	 *            the permission to ask, or null for the configured one
+	 * @return the URL string which will be used for authentication with
+	 *         provider, or the success URL if the provider is already
+	 *         connected
+	 * @throws Exception
+	 */
+	public String getAuthenticationUrl(final SocialAuthContext context,
+			final String id, final String successUrl,
+			final Permission permission) throws Exception {
+		LOG.fine("Getting Authentication URL for provider " + id
+				+ ", with success url : " + successUrl);
+		AuthProvider connected = getProvider(context, id);
+		if (connected != null) {
+			context.setPending(id, connected);
+			return successUrl;
+		}
+		AuthProvider provider = getProviderInstance(id);
+		Permission configured = context.getPermission(id);
+		if (configured != null) {
+			provider.setPermission(configured);
+		}
+		if (permission != null) {
+			provider.setPermission(permission);
+		}
+		String url = provider.getLoginRedirectURL(successUrl);
+		context.setPending(id, provider);
+		return url;
+	}
+
+	/**
+	 * Verifies the user when the external provider redirects back to our
+	 * application.
+	 * 
+	 * @param context
+	 *            the user context
+	 * @param requestParams
+	 *            the request parameters
+	 * @return the connected provider
+	 * @throws Exception
+	 */
+	public AuthProvider connect(final SocialAuthContext context,
+			final Map<String, String> requestParams) throws Exception {
+		SocialAuthContext.Pending pending = context.takePendingProvider();
+		if (pending == null) {
+			throw new SocialAuthManagerStateException();
+		}
+		String id = pending.id;
+		AuthProvider provider = pending.provider;
+		LOG.info("Connecting provider : " + id);
+		AuthProvider previous = context.getProvider(id);
+		if (previous == null) {
+			try {
+				provider.verifyResponse(requestParams);
+			} catch (Exception e) {
+				context.restorePending(pending);
+				throw e;
+			}
+			storeGrant(context, provider);
+		}
+		context.setConnected(id, provider);
+		scheduleRefresh(context, previous, provider);
+		return provider;
+	}
+
+	/**
+	 * Generates access token and creates a object of AccessGrant
+	 * 
+	 * @param context
+	 *            the user context
+	 * @param providerId
+	 *            the provider id
+	 * @param authCode
+	 *            auth code for generating access token
+	 * @param redirectURL
+	 *            return url which is given while registering app with provider
+	 *            to generate client id and secret
+	 * @return the AccessGrant object
+	 * @throws Exception
+	 */
+	public AccessGrant createAccessGrant(final SocialAuthContext context,
+			final String providerId, final String authCode,
+			final String redirectURL) throws Exception {
+		getAuthenticationUrl(context, providerId, redirectURL, null);
+		Map<String, String> map = new HashMap<String, String>();
+		map.put("code", authCode);
+		AuthProvider provider = connect(context, map);
+		return provider.getAccessGrant();
+	}
+
+	/**
+	 * Creates the provider with given access grant
+	 * 
+	 * @param context
+	 *            the user context
+	 * @param accessGrant
+	 *            the access grant
+	 * @return the AuthProvider
+	 * @throws SocialAuthConfigurationException
+	 * @throws AccessTokenExpireException
+	 * @throws SocialAuthException
+	 */
+	public AuthProvider connect(final SocialAuthContext context,
+			final AccessGrant accessGrant)
+			throws SocialAuthConfigurationException,
+			AccessTokenExpireException, SocialAuthException {
+		checkGrant(accessGrant);
+		AuthProvider provider = getProviderInstance(accessGrant.getProviderId());
+		provider.setAccessGrant(accessGrant);
+		AuthProvider previous = context.getProvider(accessGrant
+				.getProviderId());
+		context.setConnected(accessGrant.getProviderId(), provider);
+		storeGrant(context, provider);
+		scheduleRefresh(context, previous, provider);
+		return provider;
+	}
+
+	/**
+	 * Makes a call for a provider to get RefreshToken and returns object of
+	 * that provider
+	 * 
+	 * @param context
+	 *            the user context
+	 * @param accessGrant
+	 *            AccessGrant object which contains access token
+	 * @return the provider object
+	 * @throws SocialAuthConfigurationException
+	 * @throws SocialAuthException
+	 */
+	public AuthProvider refreshToken(final SocialAuthContext context,
+			final AccessGrant accessGrant)
+			throws SocialAuthConfigurationException, SocialAuthException {
+		checkGrant(accessGrant);
+		AuthProvider provider = getProviderInstance(accessGrant.getProviderId());
+		provider.refreshToken(accessGrant);
+		AuthProvider previous = context.getProvider(accessGrant
+				.getProviderId());
+		context.setConnected(accessGrant.getProviderId(), provider);
+		storeGrant(context, provider);
+		scheduleRefresh(context, previous, provider);
+		return provider;
+	}
+
+	/**
+	 * It disconnects with provider
+	 * 
+	 * @param context
+	 *            the user context
+	 * @param id
+	 *            the provider id
+	 * @return True if provider is disconnected or false if not.
+	 */
+	public boolean disconnectProvider(final SocialAuthContext context,
+			final String id) {
+		boolean removed = false;
+		AccessGrantStore store = getGrantStore(context);
+		if (store != null) {
+			try {
+				removed = store.remove(context.getUserId(), id);
+			} catch (SocialAuthException e) {
+				LOG.log(Level.WARNING, "Cannot remove stored access grant of "
+						+ id, e);
+			}
+		}
+		AuthProvider p = context.removeProvider(id);
+		if (p != null) {
+			if (socialAuthConfig.isTokenRefreshEnabled()) {
+				TokenRefreshScheduler.getInstance().unregister(p);
+			}
+			p.logout();
+			return true;
+		}
+		return removed;
+	}
+
+	/**
+	 * Returns True if given provider is connected otherwise returns False. A
+	 * provider found in the access grant store is kept in the context, so the
+	 * store is only queried once.
+	 * 
+	 * @param context
+	 *            the user context
+	 * @param providerId
+	 *            the provider id
+	 * @return provider connected status
+	 */
+	public boolean isConnected(final SocialAuthContext context,
+			final String providerId) {
+		return getProvider(context, providerId) != null;
+	}
+
+	/**
+	 * Retrieves the instance of given provider, rebuilt from the access grant
+	 * store if it is not in the context. A store without a usable grant is not
+	 * queried again until the provider is connected or disconnected.
+	 * 
+	 * @param context
+	 *            the user context
+	 * @param providerId
+	 *            the provider id
+	 * @return the instance of given provider, or null if it is not connected
+	 */
+	public AuthProvider getProvider(final SocialAuthContext context,
+			final String providerId) {
+		AuthProvider provider = context.getProvider(providerId);
+		if (provider == null && !context.isStoreMiss(providerId)) {
+			provider = restoreProvider(context, providerId);
+		}
+		return provider;
+	}
+
+	/**
+	 * Returns the list of connected providers ids.
+	 * 
+	 * @param context
+	 *            the user context
+	 * @return List of connected providers ids string.
+	 */
+	public List<String> getConnectedProvidersIds(final SocialAuthContext context) {
+		return context.getProviderIds();
+	}
+
+	/**
+	 * Retrieves the provider which is last connected.
+	 * 
+	 * @param context
+	 *            the user context
+	 * @return AuthProvider object
+	 */
+	public AuthProvider getCurrentAuthProvider(final SocialAuthContext context) {
+		String id = context.getCurrentProviderId();
+		return id == null ? null : getProvider(context, id);
+	}
+
+	/**
+	 * Sets the permission asked to a provider for the given user.
+	 * 
+	 * @param context
+	 *            the user context
+	 * @param providerId
+	 *            the provider id for which permission need to be set
+	 * @param permission
+	 *            Permission object which can be Permission.AUHTHENTICATE_ONLY,
+	 *            Permission.ALL, Permission.DEFAULT
+	 */
+	public void setPermission(final SocialAuthContext context,
+			final String providerId, final Permission permission) {
+		context.setPermission(providerId, permission);
+	}
+
+	private void checkGrant(final AccessGrant accessGrant)
+			throws SocialAuthException {
+		if (accessGrant.getProviderId() == null || accessGrant.getKey() == null) {
+			throw new SocialAuthException("access grant is not valid");
+		}
+		LOG.fine("Connecting provider : " + accessGrant.getProviderId()
+				+ ", from given access grant");
+	}
+
+	private AuthProvider getProviderInstance(final String id)
+			throws SocialAuthConfigurationException, SocialAuthException {
+		OAuthConfig config = socialAuthConfig.getProviderConfig(id);
+		ProviderFactory factory = socialAuthConfig.getProviderFactory(config);
+		try {
+			return factory.createProvider(config);
+		} catch (Exception e) {
+			throw new SocialAuthConfigurationException(e);
+		}
+	}
+
+	private AccessGrantStore getGrantStore(final SocialAuthContext context) {
+		if (context.getUserId() == null) {
+			return null;
+		}
+		return socialAuthConfig.getAccessGrantStore();
+	}
+
+	private void storeGrant(final SocialAuthContext context,
+			final AuthProvider provider) {
+		AccessGrantStore store = getGrantStore(context);
+		AccessGrant grant = provider.getAccessGrant();
+		if (store == null || grant == null) {
+			return;
+		}
+		if (grant.getProviderId() == null) {
+			grant.setProviderId(provider.getProviderId());
+		}
+		try {
+			store.save(context.getUserId(), grant);
+		} catch (SocialAuthException e) {
+			LOG.log(Level.WARNING, "Cannot store access grant of "
+					+ grant.getProviderId(), e);
+		}
+	}
+
+	/**
+	 * Keeps the grant of a connected provider valid when the token refresh is
+	 * enabled. The refreshed grants are saved in the access grant store; the
+	 * callback only references the user id, so the registration does not keep
+	 * the context of the user alive.
+	 */
+	private void scheduleRefresh(final SocialAuthContext context,
+			final AuthProvider previous, final AuthProvider provider) {
+		if (!socialAuthConfig.isTokenRefreshEnabled()) {
+			return;
+		}
+		TokenRefreshScheduler scheduler = TokenRefreshScheduler.getInstance();
+		if (previous != null && previous != provider) {
+			scheduler.unregister(previous);
+		}
+		final String userId = context.getUserId();
+		scheduler.register(provider, new AsyncCallback<AccessGrant>() {
+			@Override
+			public void onSuccess(final AccessGrant grant) {
+				AccessGrantStore store = socialAuthConfig.getAccessGrantStore();
+				if (userId == null || store == null) {
+					return;
+				}
+				try {
+					store.save(userId, grant);
+				} catch (SocialAuthException e) {
+					LOG.log(Level.WARNING, "Cannot store access grant of "
+							+ grant.getProviderId(), e);
+				}
+			}
+
+			@Override
+			public void onFailure(final Throwable e) {
+				// logged by the scheduler, retried until the grant expires
+			}
+		});
+	}
+
+	private AuthProvider restoreProvider(final SocialAuthContext context,
+			final String id) {
+		AccessGrantStore store = getGrantStore(context);
+		if (store == null) {
+			return null;
+		}
+		try {
+			AccessGrant grant = store.load(context.getUserId(), id);
+			if (grant == null) {
+				context.setStoreMiss(id);
+				return null;
+			}
+			LOG.fine("Connecting provider : " + id + ", from stored grant");
+			AuthProvider provider = getProviderInstance(id);
+			provider.setAccessGrant(grant);
+			context.putProvider(id, provider);
+			scheduleRefresh(context, null, provider);
+			return provider;
+		} catch (AccessTokenExpireException e) {
+			LOG.fine("Stored access grant of " + id + " is expired");
+			context.setStoreMiss(id);
+		} catch (Exception e) {
+			LOG.log(Level.WARNING, "Cannot restore provider " + id, e);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,487 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.brickred.socialauth.exception.SocialAuthException;
+import org.brickred.socialauth.util.AccessGrant;
+import org.brickred.socialauth.util.AccessGrantCodec;
+import org.brickred.socialauth.util.AsyncCallback;
+import org.brickred.socialauth.util.Constants;
+
+/**
+ * Renews the access grants of registered providers before they expire. Each
+ * provider is refreshed through {@link AuthProvider#refreshToken(AccessGrant)}
+ * a margin before the expiry time of its grant, so the provider keeps working
+ * with a valid token. Concurrent refreshes of the same provider are
+ * coalesced: callers of {@link #refresh(AuthProvider)} share the refresh in
+ * progress.
+ * <p>
+ * The timer runs on a single daemon thread and the refresh calls on a small
+ * pool of their own, so a slow token endpoint neither holds the timer nor
+ * the {@link org.brickred.socialauth.util.AsyncExecutor}. When the pool is
+ * busy, a refresh is rejected. A failed or rejected refresh is retried every
+ * minute until the grant expires. Grants without a known expiry time are not
+ * scheduled.
+ * </p>
+ * <p>
+ * A refresh renews a copy of the grant without using the provider, then
+ * swaps the new grant in at once, unless the provider got another grant in
+ * the meantime. The swap holds the lock of the provider, which
+ * {@link AuthProvider#setAccessGrant(AccessGrant)} takes as well.
+ * </p>
+ * <p>
+ * The scheduler only keeps weak references to the providers: the
+ * registration of a provider which is not used anymore, for example because
+ * its session expired, is dropped.
+ * {@link SocialAuthService} registers the connected providers when the
+ * "tokenRefresh.enabled" property is true, and unregisters them when they
+ * are disconnected.
+ * </p>
+ */
+public class TokenRefreshScheduler {
+
+	/**
+	 * Default time before expiry at which a grant is refreshed, in
+	 * milliseconds.
+	 */
+	public static final long DEFAULT_REFRESH_MARGIN = 5 * 60 * 1000L;
+
+	private static final long RETRY_DELAY = 60 * 1000L;
+	private static final int REFRESH_THREADS = 2;
+	private static final int MAX_QUEUED_REFRESHES = 256;
+
+	private static final Logger LOG = Logger
+			.getLogger(TokenRefreshScheduler.class.getName());
+
+	private static volatile TokenRefreshScheduler instance;
+
+	private final ScheduledExecutorService timer;
+	private final ExecutorService refresher;
+	// weak keys, guarded by itself
+	private final Map<AuthProvider, Registration> registrations = new WeakHashMap<AuthProvider, Registration>();
+	private volatile long refreshMargin = DEFAULT_REFRESH_MARGIN;
+
+	/**
+	 * Creates a scheduler with its own timer thread.
+	 */
+	public TokenRefreshScheduler() {
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+				1, new ThreadFactory() {
+					@Override
+					public Thread newThread(final Runnable r) {
+						Thread t = new Thread(r, "socialauth-token-refresh");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		executor.setRemoveOnCancelPolicy(true);
+		timer = executor;
+		refresher = newRefresher();
+	}
+
+	/**
+	 * Creates a scheduler using the given timer, for example a container
+	 * managed scheduled executor.
+	 * 
+	 * @param timer
+	 *            the executor which triggers the refreshes
+	 */
+	public TokenRefreshScheduler(final ScheduledExecutorService timer) {
+		this(timer, newRefresher());
+	}
+
+	/**
+	 * Creates a scheduler using the given executors, for example container
+	 * managed ones. The refresher should reject the refreshes it cannot run
+	 * soon rather than run them in the timer thread.
+	 * 
+	 * @param timer
+	 *            the executor which triggers the refreshes
+	 * @param refresher
+	 *            the executor which runs the refreshes
+	 */
+	public TokenRefreshScheduler(final ScheduledExecutorService timer,
+			final ExecutorService refresher) {
+		this.timer = timer;
+		this.refresher = refresher;
+	}
+
+	private static ExecutorService newRefresher() {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(REFRESH_THREADS,
+				REFRESH_THREADS, 60L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(MAX_QUEUED_REFRESHES),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(final Runnable r) {
+						Thread t = new Thread(r, "socialauth-token-refresh-"
+								+ count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				}, new ThreadPoolExecutor.AbortPolicy());
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * Retrieves the shared scheduler, created on first use.
+	 * 
+	 * @return the shared scheduler
+	 */
+	public static TokenRefreshScheduler getInstance() {
+		TokenRefreshScheduler s = instance;
+		if (s == null) {
+			synchronized (TokenRefreshScheduler.class) {
+				s = instance;
+				if (s == null) {
+					s = new TokenRefreshScheduler();
+					instance = s;
+				}
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Sets the time before expiry at which grants are refreshed. For grants
+	 * living less than twice this margin, half of their lifetime is used.
+	 * 
+	 * @param millis
+	 *            the margin in milliseconds
+	 */
+	public void setRefreshMargin(final long millis) {
+		if (millis < 0) {
+			throw new IllegalArgumentException("Negative refresh margin");
+		}
+		refreshMargin = millis;
+	}
+
+	/**
+	 * Retrieves the time before expiry at which grants are refreshed.
+	 * 
+	 * @return the margin in milliseconds
+	 */
+	public long getRefreshMargin() {
+		return refreshMargin;
+	}
+
+	/**
+	 * Registers a provider whose access grant should be kept valid.
+	 * 
+	 * @param provider
+	 *            the connected provider
+	 * @param callback
+	 *            notified with the new grant after each refresh, or with the
+	 *            failure, so that the grant can be stored again. May be null.
+	 */
+	public void register(final AuthProvider provider,
+			final AsyncCallback<AccessGrant> callback) {
+		Registration reg = new Registration(provider, callback);
+		Registration previous;
+		synchronized (registrations) {
+			previous = registrations.put(provider, reg);
+		}
+		if (previous != null) {
+			previous.cancel();
+		}
+		reg.schedule(nextDelay(provider.getAccessGrant()));
+	}
+
+	/**
+	 * Stops refreshing the grant of the given provider, for example when the
+	 * user disconnects. A refresh in progress is not interrupted.
+	 * 
+	 * @param provider
+	 *            the registered provider
+	 */
+	public void unregister(final AuthProvider provider) {
+		Registration reg;
+		synchronized (registrations) {
+			reg = registrations.remove(provider);
+		}
+		if (reg != null) {
+			reg.cancel();
+		}
+	}
+
+	/**
+	 * Refreshes the grant of the given provider now, or joins the refresh
+	 * already in progress. The provider is registered if it was not.
+	 * 
+	 * @param provider
+	 *            the connected provider
+	 * @return Future of the new access grant
+	 */
+	public Future<AccessGrant> refresh(final AuthProvider provider) {
+		Registration reg;
+		synchronized (registrations) {
+			reg = registrations.get(provider);
+			if (reg == null) {
+				reg = new Registration(provider, null);
+				registrations.put(provider, reg);
+			}
+		}
+		return reg.refresh();
+	}
+
+	/**
+	 * Cancels every registration and stops the timer.
+	 */
+	public void shutdown() {
+		List<Registration> regs;
+		synchronized (registrations) {
+			regs = new ArrayList<Registration>(registrations.values());
+			registrations.clear();
+		}
+		for (Registration reg : regs) {
+			reg.cancel();
+		}
+		timer.shutdown();
+		refresher.shutdown();
+	}
+
+	private long nextDelay(final AccessGrant grant) {
+		Long expiresAt = grant == null ? null : grant.getExpiresAt();
+		if (expiresAt == null) {
+			return -1;
+		}
+		long margin = refreshMargin;
+		Object expires = grant.getAttribute(Constants.EXPIRES);
+		if (expires instanceof Number) {
+			margin = Math.min(margin, ((Number) expires).longValue() * 500L);
+		}
+		return Math.max(0L,
+				expiresAt.longValue() - margin - System.currentTimeMillis());
+	}
+
+	/**
+	 * Number of registered providers which have not been collected yet.
+	 * 
+	 * @return the number of registrations
+	 */
+	public int size() {
+		synchronized (registrations) {
+			return registrations.size();
+		}
+	}
+
+	/**
+	 * Renews a copy of the grant of the provider and swaps the new grant in.
+	 * Providers which are not an {@link AbstractProvider} are refreshed
+	 * through {@link AuthProvider#refreshToken(AccessGrant)}, holding the lock
+	 * of their {@link AuthProvider#setAccessGrant(AccessGrant)}.
+	 */
+	private static AccessGrant renew(final AuthProvider provider)
+			throws Exception {
+		AccessGrant current = provider.getAccessGrant();
+		if (current == null) {
+			throw new SocialAuthException("Provider is not connected");
+		}
+		if (!(provider instanceof AbstractProvider)) {
+			synchronized (provider) {
+				provider.refreshToken(current);
+				return provider.getAccessGrant();
+			}
+		}
+		AbstractProvider p = (AbstractProvider) provider;
+		AccessGrant renewed = p.renewAccessGrant(AccessGrantCodec
+				.decode(AccessGrantCodec.encode(current)));
+		if (renewed.getProviderId() == null) {
+			renewed.setProviderId(current.getProviderId());
+		}
+		if (!p.replaceAccessGrant(current, renewed)) {
+			LOG.fine("Access grant of " + provider.getProviderId()
+					+ " changed during the refresh");
+			return provider.getAccessGrant();
+		}
+		return renewed;
+	}
+
+	private class Registration implements Runnable {
+		private final WeakReference<AuthProvider> provider;
+		private final String providerId;
+		private final AsyncCallback<AccessGrant> callback;
+		private ScheduledFuture<?> next;
+		private FutureTask<AccessGrant> inFlight;
+		private boolean cancelled;
+
+		Registration(final AuthProvider provider,
+				final AsyncCallback<AccessGrant> callback) {
+			this.provider = new WeakReference<AuthProvider>(provider);
+			this.providerId = provider.getProviderId();
+			this.callback = callback;
+		}
+
+		@Override
+		public void run() {
+			refresh();
+		}
+
+		synchronized void schedule(final long delay) {
+			if (cancelled || inFlight != null) {
+				return;
+			}
+			if (delay < 0) {
+				LOG.fine("No expiry time for " + providerId
+						+ " grant, not scheduled");
+				return;
+			}
+			next = timer.schedule(this, delay, TimeUnit.MILLISECONDS);
+		}
+
+		synchronized void cancel() {
+			cancelled = true;
+			if (next != null) {
+				next.cancel(false);
+				next = null;
+			}
+		}
+
+		synchronized Future<AccessGrant> refresh() {
+			if (inFlight != null) {
+				return inFlight;
+			}
+			if (next != null) {
+				next.cancel(false);
+				next = null;
+			}
+			RefreshTask task = new RefreshTask(new Callable<AccessGrant>() {
+				@Override
+				public AccessGrant call() throws Exception {
+					AuthProvider p = provider.get();
+					if (p == null) {
+						cancel();
+						throw new SocialAuthException(
+								"Provider is not used anymore");
+					}
+					return renew(p);
+				}
+			});
+			inFlight = task;
+			try {
+				refresher.execute(task);
+			} catch (RejectedExecutionException e) {
+				task.reject(e);
+			}
+			return task;
+		}
+
+		private void completed(final FutureTask<AccessGrant> task) {
+			AccessGrant grant = null;
+			Throwable failure = null;
+			try {
+				grant = task.get();
+			} catch (ExecutionException e) {
+				failure = e.getCause();
+			} catch (CancellationException e) {
+				failure = e;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failure = e;
+			}
+			synchronized (this) {
+				inFlight = null;
+				if (cancelled) {
+					return;
+				}
+			}
+			long delay;
+			if (failure == null) {
+				LOG.fine("Access grant of " + providerId + " refreshed");
+				delay = nextDelay(grant);
+			} else {
+				LOG.log(Level.WARNING, "Cannot refresh access grant of "
+						+ providerId, failure);
+				delay = retryDelay();
+			}
+			schedule(delay);
+			if (callback == null) {
+				return;
+			}
+			try {
+				if (failure == null) {
+					callback.onSuccess(grant);
+				} else {
+					callback.onFailure(failure);
+				}
+			} catch (RuntimeException e) {
+				LOG.log(Level.WARNING, "Token refresh callback failed", e);
+			}
+		}
+
+		private final class RefreshTask extends FutureTask<AccessGrant> {
+
+			RefreshTask(final Callable<AccessGrant> call) {
+				super(call);
+			}
+
+			void reject(final RejectedExecutionException e) {
+				setException(e);
+			}
+
+			@Override
+			protected void done() {
+				completed(this);
+			}
+		}
+
+		private long retryDelay() {
+			AuthProvider p = provider.get();
+			AccessGrant grant = p == null ? null : p.getAccessGrant();
+			Long expiresAt = grant == null ? null : grant.getExpiresAt();
+			if (expiresAt == null
+					|| System.currentTimeMillis() + RETRY_DELAY >= expiresAt
+							.longValue()) {
+				return -1;
+			}
+			return RETRY_DELAY;
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The cumulative statistics of the calls to an endpoint of a provider. It is
+ * only made of atomic counters, so it can be updated by concurrent requests
+ * and read at any time.
+ */
+public class EndpointStats {
+
+	/**
+	 * Upper bounds in milliseconds of the latency histogram buckets; the last
+	 * bucket of {@link #getLatencyHistogram()} counts the slower calls.
+	 */
+	private static final long[] LATENCY_BUCKETS = { 5, 10, 25, 50, 100, 250,
+			500, 1000, 2500, 5000, 10000 };
+
+	private final String provider;
+	private final String endpoint;
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong bytesSent = new AtomicLong();
+	private final AtomicLong bytesReceived = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong reused = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+	private final AtomicLongArray statusCounts = new AtomicLongArray(6);
+	private final AtomicLongArray latencies = new AtomicLongArray(
+			LATENCY_BUCKETS.length + 1);
+
+	EndpointStats(final String provider, final String endpoint) {
+		this.provider = provider;
+		this.endpoint = endpoint;
+	}
+
+	void record(final int status, final long nanos, final long sent,
+			final int retryCount, final boolean connectionReused) {
+		requests.incrementAndGet();
+		int statusClass = status / 100;
+		if (statusClass < 0 || statusClass > 5) {
+			statusClass = 0;
+		}
+		statusCounts.incrementAndGet(statusClass);
+		totalNanos.addAndGet(nanos);
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+		long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+		int bucket = 0;
+		while (bucket < LATENCY_BUCKETS.length
+				&& millis > LATENCY_BUCKETS[bucket]) {
+			bucket++;
+		}
+		latencies.incrementAndGet(bucket);
+		if (sent > 0) {
+			bytesSent.addAndGet(sent);
+		}
+		if (retryCount > 0) {
+			retries.addAndGet(retryCount);
+		}
+		if (connectionReused) {
+			reused.incrementAndGet();
+		}
+	}
+
+	void addBytesReceived(final long bytes) {
+		bytesReceived.addAndGet(bytes);
+	}
+
+	/**
+	 * @return the provider domain, as configured, or the host called
+	 */
+	public String getProvider() {
+		return provider;
+	}
+
+	/**
+	 * @return the path called, or "*" for the paths beyond the maximum number
+	 *         of endpoints tracked per provider
+	 */
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * @return the number of requests
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * Retrieves the number of requests answered with a status of the given
+	 * class.
+	 * 
+	 * @param statusClass
+	 *            1 to 5 for the 1xx to 5xx statuses, 0 for the requests which
+	 *            got no response
+	 * @return the number of requests
+	 */
+	public long getStatusCount(final int statusClass) {
+		return statusCounts.get(statusClass);
+	}
+
+	/**
+	 * @return the size of the request bodies sent
+	 */
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	/**
+	 * @return the size of the response contents received
+	 */
+	public long getBytesReceived() {
+		return bytesReceived.get();
+	}
+
+	/**
+	 * @return the number of retried attempts
+	 */
+	public long getRetries() {
+		return retries.get();
+	}
+
+	/**
+	 * @return the number of requests sent on a kept-alive connection
+	 */
+	public long getReusedConnections() {
+		return reused.get();
+	}
+
+	/**
+	 * @return the mean latency in milliseconds
+	 */
+	public double getMeanLatencyMillis() {
+		long count = requests.get();
+		return count == 0 ? 0 : totalNanos.get() / 1e6 / count;
+	}
+
+	/**
+	 * @return the highest latency in milliseconds
+	 */
+	public double getMaxLatencyMillis() {
+		return maxNanos.get() / 1e6;
+	}
+
+	/**
+	 * @return the upper bounds in milliseconds of the histogram buckets but
+	 *         the last one
+	 */
+	public static long[] getLatencyBuckets() {
+		return LATENCY_BUCKETS.clone();
+	}
+
+	/**
+	 * @return the number of requests per latency bucket
+	 */
+	public long[] getLatencyHistogram() {
+		long[] counts = new long[latencies.length()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = latencies.get(i);
+		}
+		return counts;
+	}
+
+	/**
+	 * Estimates a latency percentile from the histogram.
+	 * 
+	 * @param percentile
+	 *            the percentile, between 0 and 1
+	 * @return the upper bound of the bucket holding the percentile, or the
+	 *         highest latency when it is in the last bucket
+	 */
+	public double getLatencyPercentileMillis(final double percentile) {
+		long[] counts = getLatencyHistogram();
+		long total = 0;
+		for (long c : counts) {
+			total += c;
+		}
+		long rank = (long) Math.ceil(total * percentile);
+		long seen = 0;
+		for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+			seen += counts[i];
+			if (seen >= rank && seen > 0) {
+				return LATENCY_BUCKETS[i];
+			}
+		}
+		return getMaxLatencyMillis();
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.metrics;
+
+/**
+ * Receives the measures of the HTTP calls made to the providers by
+ * {@link org.brickred.socialauth.util.HttpUtil}, which covers the profile,
+ * contacts, token exchange and plugin calls. Implementations are called on the
+ * request threads, so they must be thread-safe and should only update
+ * counters; formatting and publishing belong to a {@link MetricsExporter}.
+ * <p>
+ * An implementation is registered with
+ * {@link org.brickred.socialauth.util.HttpUtil#setInstrumentation(Instrumentation)}
+ * or through the "metrics.instrumentation" property in the configuration
+ * file.
+ * </p>
+ */
+public interface Instrumentation {
+
+	/**
+	 * Called once per request, after its last attempt.
+	 * 
+	 * @param provider
+	 *            the provider domain, as configured, or the host called
+	 * @param endpoint
+	 *            the path called
+	 * @param status
+	 *            the HTTP status, 0 if no response was received
+	 * @param nanos
+	 *            the time spent until the response status, retries included
+	 * @param bytesSent
+	 *            the size of the request body
+	 * @param retries
+	 *            the number of attempts made before the last one
+	 * @param connectionReused
+	 *            true if the last attempt was sent on a kept-alive connection
+	 */
+	public void requestCompleted(String provider, String endpoint, int status,
+			long nanos, long bytesSent, int retries, boolean connectionReused);
+
+	/**
+	 * Called when the content of a response has been read or discarded.
+	 * 
+	 * @param provider
+	 *            the provider domain, as configured, or the host called
+	 * @param endpoint
+	 *            the path called
+	 * @param bytesReceived
+	 *            the size of the content, as transferred
+	 */
+	public void responseRead(String provider, String endpoint,
+			long bytesReceived);
+}
@@ -0,0 +1,97 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * {@link MetricsInstrumentation} registering a {@link ProviderMetrics} MBean
+ * named <code>org.brickred.socialauth:type=ProviderMetrics,provider=...</code>
+ * for each provider called. It is selected with the value "jmx" of the
+ * "metrics.instrumentation" property.
+ */
+public class JmxInstrumentation extends MetricsInstrumentation {
+
+	/**
+	 * Domain of the MBean names
+	 */
+	public static final String JMX_DOMAIN = "org.brickred.socialauth";
+
+	private static final Logger LOG = Logger.getLogger(JmxInstrumentation.class
+			.getName());
+
+	private final MBeanServer server;
+	private final Set<ObjectName> names = new CopyOnWriteArraySet<ObjectName>();
+
+	/**
+	 * Registers the MBeans in the platform MBean server.
+	 */
+	public JmxInstrumentation() {
+		this(ManagementFactory.getPlatformMBeanServer());
+	}
+
+	public JmxInstrumentation(final MBeanServer server) {
+		this.server = server;
+	}
+
+	@Override
+	protected void providerAdded(final String provider) {
+		try {
+			ObjectName name = new ObjectName(JMX_DOMAIN
+					+ ":type=ProviderMetrics,provider="
+					+ ObjectName.quote(provider));
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(new ProviderMetrics(this, provider), name);
+			names.add(name);
+		} catch (Exception e) {
+			LOG.warning("Unable to register the metrics of " + provider
+					+ " : " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Stops the periodic export and unregisters the MBeans.
+	 */
+	@Override
+	public void shutdown() {
+		super.shutdown();
+		for (ObjectName name : names) {
+			try {
+				server.unregisterMBean(name);
+			} catch (Exception e) {
+				LOG.fine("Unable to unregister " + name);
+			}
+			names.remove(name);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.metrics;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link MetricsExporter} writing one line per endpoint to java.util.logging.
+ */
+public class LoggingMetricsExporter implements MetricsExporter {
+
+	private static final Logger LOG = Logger
+			.getLogger(LoggingMetricsExporter.class.getName());
+
+	@Override
+	public void export(final List<EndpointStats> stats) {
+		if (!LOG.isLoggable(Level.INFO)) {
+			return;
+		}
+		for (EndpointStats s : stats) {
+			LOG.info(s.getProvider() + s.getEndpoint() + " requests="
+					+ s.getRequests() + " 2xx=" + s.getStatusCount(2)
+					+ " 4xx=" + s.getStatusCount(4) + " 5xx="
+					+ s.getStatusCount(5) + " failed=" + s.getStatusCount(0)
+					+ " mean=" + s.getMeanLatencyMillis() + "ms p99<="
+					+ s.getLatencyPercentileMillis(0.99) + "ms max="
+					+ s.getMaxLatencyMillis() + "ms retries=" + s.getRetries()
+					+ " reused=" + s.getReusedConnections() + " sent="
+					+ s.getBytesSent() + " received=" + s.getBytesReceived());
+		}
+	}
+}
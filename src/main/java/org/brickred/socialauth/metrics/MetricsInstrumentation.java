@@ -0,0 +1,236 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link Instrumentation} keeping {@link EndpointStats} per provider and
+ * endpoint in memory, and handing them periodically to the registered
+ * {@link MetricsExporter}s. Recording a call only looks up two maps and
+ * updates atomic counters.
+ */
+public class MetricsInstrumentation implements Instrumentation {
+
+	/**
+	 * Default maximum number of endpoints tracked per provider
+	 */
+	public static final int DEFAULT_MAX_ENDPOINTS = 256;
+
+	/**
+	 * Endpoint gathering the calls beyond the maximum number of endpoints
+	 */
+	public static final String OTHER_ENDPOINTS = "*";
+
+	private static final Logger LOG = Logger
+			.getLogger(MetricsInstrumentation.class.getName());
+
+	private final ConcurrentMap<String, ConcurrentMap<String, EndpointStats>> providers = new ConcurrentHashMap<String, ConcurrentMap<String, EndpointStats>>();
+	private final List<MetricsExporter> exporters = new CopyOnWriteArrayList<MetricsExporter>();
+	private volatile int maxEndpoints = DEFAULT_MAX_ENDPOINTS;
+	private ScheduledExecutorService scheduler;
+
+	@Override
+	public void requestCompleted(final String provider, final String endpoint,
+			final int status, final long nanos, final long bytesSent,
+			final int retries, final boolean connectionReused) {
+		getStats(provider, endpoint).record(status, nanos, bytesSent, retries,
+				connectionReused);
+	}
+
+	@Override
+	public void responseRead(final String provider, final String endpoint,
+			final long bytesReceived) {
+		getStats(provider, endpoint).addBytesReceived(bytesReceived);
+	}
+
+	/**
+	 * Sets the maximum number of endpoints tracked per provider. The calls to
+	 * the other endpoints are counted under {@link #OTHER_ENDPOINTS}, which
+	 * keeps the memory bounded when the paths hold ids.
+	 * 
+	 * @param max
+	 *            the maximum number of endpoints
+	 */
+	public void setMaxEndpoints(final int max) {
+		if (max > 0) {
+			maxEndpoints = max;
+		}
+	}
+
+	/**
+	 * @return the providers called so far
+	 */
+	public List<String> getProviders() {
+		return new ArrayList<String>(providers.keySet());
+	}
+
+	/**
+	 * @return the statistics of all the endpoints called so far
+	 */
+	public List<EndpointStats> getStats() {
+		List<EndpointStats> stats = new ArrayList<EndpointStats>();
+		for (ConcurrentMap<String, EndpointStats> endpoints : providers
+				.values()) {
+			stats.addAll(endpoints.values());
+		}
+		return stats;
+	}
+
+	/**
+	 * @param provider
+	 *            the provider domain
+	 * @return the statistics of the endpoints of a provider called so far
+	 */
+	public List<EndpointStats> getStats(final String provider) {
+		ConcurrentMap<String, EndpointStats> endpoints = providers
+				.get(provider);
+		if (endpoints == null) {
+			return new ArrayList<EndpointStats>();
+		}
+		return new ArrayList<EndpointStats>(endpoints.values());
+	}
+
+	/**
+	 * Adds an exporter, called at each export interval.
+	 * 
+	 * @param exporter
+	 *            the exporter
+	 */
+	public void addExporter(final MetricsExporter exporter) {
+		exporters.add(exporter);
+	}
+
+	public void removeExporter(final MetricsExporter exporter) {
+		exporters.remove(exporter);
+	}
+
+	/**
+	 * Starts exporting the statistics periodically. This will be implicitly
+	 * called if "metrics.exportInterval" property is given in properties file
+	 * 
+	 * @param millis
+	 *            the export interval in milliseconds
+	 */
+	public synchronized void setExportInterval(final long millis) {
+		if (scheduler != null) {
+			scheduler.shutdown();
+			scheduler = null;
+		}
+		if (millis <= 0) {
+			return;
+		}
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+				1, new ThreadFactory() {
+					@Override
+					public Thread newThread(final Runnable r) {
+						Thread t = new Thread(r, "socialauth-metrics-exporter");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				export();
+			}
+		}, millis, millis, TimeUnit.MILLISECONDS);
+		scheduler = executor;
+	}
+
+	/**
+	 * Hands the current statistics to every exporter. A failing exporter does
+	 * not prevent the others from running.
+	 */
+	public void export() {
+		if (exporters.isEmpty()) {
+			return;
+		}
+		List<EndpointStats> stats = getStats();
+		for (MetricsExporter exporter : exporters) {
+			try {
+				exporter.export(stats);
+			} catch (Exception e) {
+				LOG.log(Level.WARNING, "Unable to export metrics with "
+						+ exporter.getClass().getName(), e);
+			}
+		}
+	}
+
+	/**
+	 * Stops the periodic export.
+	 */
+	public void shutdown() {
+		setExportInterval(0);
+	}
+
+	/**
+	 * Called the first time a provider is called.
+	 * 
+	 * @param provider
+	 *            the provider domain
+	 */
+	protected void providerAdded(final String provider) {
+	}
+
+	private EndpointStats getStats(final String provider, final String endpoint) {
+		ConcurrentMap<String, EndpointStats> endpoints = providers
+				.get(provider);
+		if (endpoints == null) {
+			ConcurrentMap<String, EndpointStats> created = new ConcurrentHashMap<String, EndpointStats>();
+			endpoints = providers.putIfAbsent(provider, created);
+			if (endpoints == null) {
+				endpoints = created;
+				providerAdded(provider);
+			}
+		}
+		String key = endpoint == null || endpoint.isEmpty() ? "/" : endpoint;
+		EndpointStats stats = endpoints.get(key);
+		if (stats == null) {
+			if (endpoints.size() >= maxEndpoints) {
+				key = OTHER_ENDPOINTS;
+				stats = endpoints.get(key);
+			}
+			if (stats == null) {
+				EndpointStats created = new EndpointStats(provider, key);
+				stats = endpoints.putIfAbsent(key, created);
+				if (stats == null) {
+					stats = created;
+				}
+			}
+		}
+		return stats;
+	}
+}
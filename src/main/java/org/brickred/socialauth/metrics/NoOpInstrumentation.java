@@ -0,0 +1,50 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.metrics;
+
+/**
+ * Default {@link Instrumentation}, which records nothing.
+ */
+public final class NoOpInstrumentation implements Instrumentation {
+
+	/**
+	 * The shared instance
+	 */
+	public static final NoOpInstrumentation INSTANCE = new NoOpInstrumentation();
+
+	private NoOpInstrumentation() {
+	}
+
+	@Override
+	public void requestCompleted(final String provider, final String endpoint,
+			final int status, final long nanos, final long bytesSent,
+			final int retries, final boolean connectionReused) {
+	}
+
+	@Override
+	public void responseRead(final String provider, final String endpoint,
+			final long bytesReceived) {
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.metrics;
+
+import java.util.List;
+
+/**
+ * Standard MBean exposing the statistics of a provider, registered by
+ * {@link JmxInstrumentation}. The values are summed on each read.
+ */
+public class ProviderMetrics implements ProviderMetricsMBean {
+
+	private final MetricsInstrumentation instrumentation;
+	private final String provider;
+
+	public ProviderMetrics(final MetricsInstrumentation instrumentation,
+			final String provider) {
+		this.instrumentation = instrumentation;
+		this.provider = provider;
+	}
+
+	@Override
+	public long getRequests() {
+		long total = 0;
+		for (EndpointStats s : stats()) {
+			total += s.getRequests();
+		}
+		return total;
+	}
+
+	@Override
+	public long getSuccessCount() {
+		return getStatusCount(2);
+	}
+
+	@Override
+	public long getClientErrorCount() {
+		return getStatusCount(4);
+	}
+
+	@Override
+	public long getServerErrorCount() {
+		return getStatusCount(5);
+	}
+
+	@Override
+	public long getFailureCount() {
+		return getStatusCount(0);
+	}
+
+	@Override
+	public long getBytesSent() {
+		long total = 0;
+		for (EndpointStats s : stats()) {
+			total += s.getBytesSent();
+		}
+		return total;
+	}
+
+	@Override
+	public long getBytesReceived() {
+		long total = 0;
+		for (EndpointStats s : stats()) {
+			total += s.getBytesReceived();
+		}
+		return total;
+	}
+
+	@Override
+	public long getRetries() {
+		long total = 0;
+		for (EndpointStats s : stats()) {
+			total += s.getRetries();
+		}
+		return total;
+	}
+
+	@Override
+	public long getReusedConnections() {
+		long total = 0;
+		for (EndpointStats s : stats()) {
+			total += s.getReusedConnections();
+		}
+		return total;
+	}
+
+	@Override
+	public double getMeanLatencyMillis() {
+		double total = 0;
+		long count = 0;
+		for (EndpointStats s : stats()) {
+			total += s.getMeanLatencyMillis() * s.getRequests();
+			count += s.getRequests();
+		}
+		return count == 0 ? 0 : total / count;
+	}
+
+	@Override
+	public double getMaxLatencyMillis() {
+		double max = 0;
+		for (EndpointStats s : stats()) {
+			max = Math.max(max, s.getMaxLatencyMillis());
+		}
+		return max;
+	}
+
+	@Override
+	public long[] getLatencyBuckets() {
+		return EndpointStats.getLatencyBuckets();
+	}
+
+	@Override
+	public long[] getLatencyHistogram() {
+		long[] total = null;
+		for (EndpointStats s : stats()) {
+			long[] counts = s.getLatencyHistogram();
+			if (total == null) {
+				total = counts;
+			} else {
+				for (int i = 0; i < total.length; i++) {
+					total[i] += counts[i];
+				}
+			}
+		}
+		return total == null ? new long[0] : total;
+	}
+
+	@Override
+	public String[] getEndpoints() {
+		List<EndpointStats> stats = stats();
+		String[] lines = new String[stats.size()];
+		for (int i = 0; i < lines.length; i++) {
+			EndpointStats s = stats.get(i);
+			lines[i] = s.getEndpoint() + " requests=" + s.getRequests()
+					+ " mean=" + s.getMeanLatencyMillis() + "ms max="
+					+ s.getMaxLatencyMillis() + "ms";
+		}
+		return lines;
+	}
+
+	private long getStatusCount(final int statusClass) {
+		long total = 0;
+		for (EndpointStats s : stats()) {
+			total += s.getStatusCount(statusClass);
+		}
+		return total;
+	}
+
+	private List<EndpointStats> stats() {
+		return instrumentation.getStats(provider);
+	}
+}
@@ -25,10 +25,9 @@
 
 package org.brickred.socialauth.oauthstrategy;
 
-import java.io.BufferedReader;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import java.util.logging.Logger;
 
@@ -38,17 +37,21 @@ import org.brickred.socialauth.exception.SocialAuthConfigurationException;
 import org.brickred.socialauth.exception.SocialAuthException;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.FeedCache;
 import org.brickred.socialauth.util.HttpUtil;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.OAuthConsumer;
+import org.brickred.socialauth.util.OpenIdAssociationCache;
 import org.brickred.socialauth.util.OpenIdConsumer;
+import org.brickred.socialauth.util.RateLimiter;
 import org.brickred.socialauth.util.Response;
 
 public class Hybrid implements OAuthStrategyBase {
 
 	private static final long serialVersionUID = -1331047094086589944L;
-	private final Logger LOG = Logger.getLogger(Hybrid.class.getName());
+	private static final Logger LOG = Logger.getLogger(Hybrid.class.getName());
 
 	private AccessGrant requestToken;
 	private AccessGrant accessToken;
@@ -68,27 +71,10 @@ public class Hybrid implements OAuthStrategyBase {
 
 	@Override
 	public String getLoginRedirectURL(final String successUrl) throws Exception {
-		String associationURL = OpenIdConsumer.getAssociationURL(endpoints
-				.get(Constants.OAUTH_REQUEST_TOKEN_URL));
-		Response r = HttpUtil.doHttpRequest(associationURL,
-				MethodType.GET.toString(), null, null);
-		StringBuffer sb = new StringBuffer();
-		String assocHandle = "";
-		try {
-			BufferedReader reader = new BufferedReader(new InputStreamReader(
-					r.getInputStream(), "UTF-8"));
-			String line = null;
-			while ((line = reader.readLine()) != null) {
-				sb.append(line).append("\n");
-				if ("assoc_handle:".equals(line.substring(0, 13))) {
-					assocHandle = line.substring(13);
-					break;
-				}
-			}
-			LOG.fine("ASSOCCIATION : " + assocHandle);
-		} catch (Exception exc) {
-			throw new SocialAuthException("Failed to read response from  ");
-		}
+		String assocHandle = OpenIdAssociationCache.getInstance()
+				.getAssociationHandle(
+						endpoints.get(Constants.OAUTH_REQUEST_TOKEN_URL));
+		LogUtil.fine(LOG, "ASSOCCIATION : ", assocHandle);
 
 		String realm;
 		if (successUrl.indexOf("/", 9) > 0) {
@@ -105,7 +91,7 @@ public class Hybrid implements OAuthStrategyBase {
 		String url = OpenIdConsumer.getRequestTokenURL(
 				endpoints.get(Constants.OAUTH_REQUEST_TOKEN_URL), successUrl,
 				realm, assocHandle, consumerURL, scope);
-		LOG.info("Redirection to following URL should happen : " + url);
+		LogUtil.info(LOG, "Redirection to following URL should happen : ", url);
 		return url;
 	}
 
@@ -122,6 +108,12 @@ public class Hybrid implements OAuthStrategyBase {
 			throw new ProviderStateException();
 		}
 
+		if (requestParams.get(OpenIdConsumer.OPENID_INVALIDATE_HANDLE) != null) {
+			LOG.fine("The association handle is reported as invalid");
+			OpenIdAssociationCache.getInstance().invalidate(
+					endpoints.get(Constants.OAUTH_REQUEST_TOKEN_URL));
+		}
+
 		LOG.fine("Running OpenID discovery");
 		String reqTokenStr = "";
 		if (this.scope != null) {
@@ -168,7 +160,7 @@ public class Hybrid implements OAuthStrategyBase {
 			throw new SocialAuthException(
 					"Please call verifyResponse function first to get Access Token");
 		}
-		return oauth.httpGet(url, null, accessToken);
+		return cachedGet(url, null);
 	}
 
 	@Override
@@ -183,15 +175,20 @@ public class Hybrid implements OAuthStrategyBase {
 		}
 		if (MethodType.GET.toString().equals(methodType)) {
 			try {
-				response = oauth.httpGet(url, headerParams, accessToken);
+				response = cachedGet(url, headerParams);
 			} catch (Exception ie) {
 				throw new SocialAuthException(
 						"Error while making request to URL : " + url, ie);
 			}
 		} else if (MethodType.PUT.toString().equals(methodType)) {
 			try {
-				response = oauth.httpPut(url, params, headerParams, body,
-						accessToken);
+				response = limited(url, new Callable<Response>() {
+					@Override
+					public Response call() throws Exception {
+						return oauth.httpPut(url, params, headerParams, body,
+								accessToken);
+					}
+				});
 			} catch (Exception e) {
 				throw new SocialAuthException(
 						"Error while making request to URL : " + url, e);
@@ -244,4 +241,29 @@ public class Hybrid implements OAuthStrategyBase {
 	public AccessGrant getAccessGrant() {
 		return accessToken;
 	}
+
+	private Response cachedGet(final String url,
+			final Map<String, String> headerParams) throws Exception {
+		final AccessGrant token = accessToken;
+		return FeedCache.getInstance().execute(url, token, headerParams,
+				new FeedCache.Fetcher() {
+					@Override
+					public Response fetch(final Map<String, String> headers)
+							throws Exception {
+						return RateLimiter.getInstance().execute(providerId,
+								token, url, new Callable<Response>() {
+									@Override
+									public Response call() throws Exception {
+										return oauth.httpGet(url, headers, token);
+									}
+								});
+					}
+				});
+	}
+
+	private Response limited(final String url, final Callable<Response> call)
+			throws Exception {
+		return RateLimiter.getInstance().execute(providerId, accessToken, url,
+				call);
+	}
 }
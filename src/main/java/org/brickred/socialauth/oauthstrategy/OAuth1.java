@@ -27,6 +27,7 @@ package org.brickred.socialauth.oauthstrategy;
 
 import java.io.InputStream;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import java.util.logging.Logger;
 
@@ -35,15 +36,19 @@ import org.brickred.socialauth.exception.ProviderStateException;
 import org.brickred.socialauth.exception.SocialAuthException;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.FeedCache;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.OAuthConsumer;
+import org.brickred.socialauth.util.RateLimiter;
+import org.brickred.socialauth.util.RequestTokenPool;
 import org.brickred.socialauth.util.Response;
 
 public class OAuth1 implements OAuthStrategyBase {
 
 	private static final long serialVersionUID = -447820298609650347L;
-	private final Logger LOG = Logger.getLogger(OAuth1.class.getName());
+	private static final Logger LOG = Logger.getLogger(OAuth1.class.getName());
 
 	private AccessGrant accessToken;
 	private AccessGrant requestToken;
@@ -66,7 +71,7 @@ public class OAuth1 implements OAuthStrategyBase {
 		LOG.info("Determining URL for redirection");
 		providerState = true;
 		LOG.fine("Call to fetch Request Token");
-		requestToken = oauth.getRequestToken(
+		requestToken = RequestTokenPool.getInstance().getRequestToken(oauth,
 				endpoints.get(Constants.OAUTH_REQUEST_TOKEN_URL), successUrl);
 		String authUrl = endpoints.get(Constants.OAUTH_AUTHORIZATION_URL);
 		if (scope != null) {
@@ -78,8 +83,8 @@ public class OAuth1 implements OAuthStrategyBase {
 		}
 		StringBuilder urlBuffer = oauth.buildAuthUrl(authUrl, requestToken,
 				successUrl);
-		LOG.info("Redirection to following URL should happen : "
-				+ urlBuffer.toString());
+		LogUtil.info(LOG, "Redirection to following URL should happen : ",
+				urlBuffer);
 		return urlBuffer.toString();
 	}
 
@@ -123,7 +128,29 @@ public class OAuth1 implements OAuthStrategyBase {
 
 	@Override
 	public Response executeFeed(final String url) throws Exception {
-		return oauth.httpGet(url, null, accessToken);
+		return cachedGet(url, null, accessToken);
+	}
+
+	/**
+	 * Sends a GET request signed with the given access token. Unlike the other
+	 * calls, which use the access token of this strategy, it can be called
+	 * from several threads at once: the consumer and the signer hold no state
+	 * of a request, so each call is signed on its own.
+	 * 
+	 * @param url
+	 *            the URL to get
+	 * @param token
+	 *            the access token to sign the request with
+	 * @return Response object
+	 * @throws Exception
+	 */
+	public Response executeFeed(final String url, final AccessGrant token)
+			throws Exception {
+		if (token == null) {
+			throw new SocialAuthException(
+					"Please call verifyResponse function first to get Access Token");
+		}
+		return cachedGet(url, null, token);
 	}
 
 	@Override
@@ -138,23 +165,33 @@ public class OAuth1 implements OAuthStrategyBase {
 		}
 		if (MethodType.GET.toString().equals(methodType)) {
 			try {
-				response = oauth.httpGet(urlStr, headerParams, accessToken);
+				response = cachedGet(urlStr, headerParams, accessToken);
 			} catch (Exception ie) {
 				throw new SocialAuthException(
 						"Error while making request to URL : " + urlStr, ie);
 			}
 		} else if (MethodType.PUT.toString().equals(methodType)) {
 			try {
-				response = oauth.httpPut(urlStr, params, headerParams, body,
-						accessToken);
+				response = limited(urlStr, new Callable<Response>() {
+					@Override
+					public Response call() throws Exception {
+						return oauth.httpPut(urlStr, params, headerParams, body,
+								accessToken);
+					}
+				});
 			} catch (Exception e) {
 				throw new SocialAuthException(
 						"Error while making request to URL : " + urlStr, e);
 			}
 		} else if (MethodType.POST.toString().equals(methodType)) {
 			try {
-				response = oauth.httpPost(urlStr, params, headerParams, body,
-						accessToken);
+				response = limited(urlStr, new Callable<Response>() {
+					@Override
+					public Response call() throws Exception {
+						return oauth.httpPost(urlStr, params, headerParams, body,
+								accessToken);
+					}
+				});
 			} catch (Exception e) {
 				throw new SocialAuthException(
 						"Error while making request to URL : " + urlStr, e);
@@ -196,4 +233,28 @@ public class OAuth1 implements OAuthStrategyBase {
 		return accessToken;
 	}
 
+	private Response cachedGet(final String url,
+			final Map<String, String> headerParams, final AccessGrant token)
+			throws Exception {
+		return FeedCache.getInstance().execute(url, token, headerParams,
+				new FeedCache.Fetcher() {
+					@Override
+					public Response fetch(final Map<String, String> headers)
+							throws Exception {
+						return RateLimiter.getInstance().execute(providerId,
+								token, url, new Callable<Response>() {
+									@Override
+									public Response call() throws Exception {
+										return oauth.httpGet(url, headers, token);
+									}
+								});
+					}
+				});
+	}
+
+	private Response limited(final String url, final Callable<Response> call)
+			throws Exception {
+		return RateLimiter.getInstance().execute(providerId, accessToken, url,
+				call);
+	}
 }
@@ -33,6 +33,7 @@ import java.net.URLEncoder;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
 import javax.json.Json;
@@ -47,16 +48,19 @@ import org.brickred.socialauth.exception.ProviderStateException;
 import org.brickred.socialauth.exception.SocialAuthException;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.FeedCache;
 import org.brickred.socialauth.util.HttpUtil;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.OAuthConsumer;
+import org.brickred.socialauth.util.RateLimiter;
 import org.brickred.socialauth.util.Response;
 
 public class OAuth2 implements OAuthStrategyBase {
 
 	private static final long serialVersionUID = -8431902665718727947L;
-	private final Logger LOG = Logger.getLogger(OAuth2.class.getName());
+	private static final Logger LOG = Logger.getLogger(OAuth2.class.getName());
 	private AccessGrant accessGrant;
 	private OAuthConsumer oauth;
 	private boolean providerState;
@@ -97,7 +101,7 @@ public class OAuth2 implements OAuthStrategyBase {
 		}
 		String url = sb.toString();
 
-		LOG.info("Redirection to following URL should happen : " + url);
+		LogUtil.info(LOG, "Redirection to following URL should happen : ", url);
 		return url;
 	}
 
@@ -121,14 +125,14 @@ public class OAuth2 implements OAuthStrategyBase {
 			}
 			accessGrant = new AccessGrant();
 			accessGrant.setKey(accessToken);
-			accessGrant.setAttribute(Constants.EXPIRES, expires);
+			accessGrant.setExpiresIn(expires);
 			if (permission != null) {
 				accessGrant.setPermission(permission);
 			} else {
 				accessGrant.setPermission(Permission.ALL);
 			}
 			accessGrant.setProviderId(providerId);
-			LOG.fine(accessGrant.toString());
+			LogUtil.fine(LOG, "Access Grant : ", accessGrant);
 			return accessGrant;
 		}
 
@@ -140,9 +144,8 @@ public class OAuth2 implements OAuthStrategyBase {
 		if (code == null || code.length() == 0) {
 			throw new SocialAuthException("Verification code is null");
 		}
-		LOG.fine("Verification Code : " + code);
+		LogUtil.fine(LOG, "Verification Code : ", code);
 		String acode;
-		String accessToken = null;
 		try {
 			acode = URLEncoder.encode(code, "UTF-8");
 		} catch (Exception e) {
@@ -167,18 +170,85 @@ public class OAuth2 implements OAuthStrategyBase {
 		try {
 			if (MethodType.GET.toString().equals(methodType)) {
 				authURL = sb.toString();
-				LOG.fine("URL for Access Token request : " + authURL);
+				LogUtil.fine(LOG, "URL for Access Token request : ", authURL);
 				response = HttpUtil.doHttpRequest(authURL, methodType, null,
 						null);
 			} else {
 				authURL = endpoints.get(Constants.OAUTH_ACCESS_TOKEN_URL);
-				LOG.fine("URL for Access Token request : " + authURL);
+				LogUtil.fine(LOG, "URL for Access Token request : ", authURL);
 				response = HttpUtil.doHttpRequest(authURL, methodType,
 						sb.toString(), null);
 			}
 		} catch (Exception e) {
 			throw new SocialAuthException("Error in url : " + authURL, e);
 		}
+		accessGrant = parseAccessGrant(response, authURL);
+		return accessGrant;
+	}
+
+	/**
+	 * Obtains a new access token from the refresh token of the given grant,
+	 * with the OAuth 2.0 refresh_token grant type. The refresh token is kept
+	 * when the provider does not issue a new one.
+	 * 
+	 * @param grant
+	 *            the grant to renew, holding a refresh_token attribute
+	 * @return the new access grant, which is also used for the next calls
+	 * @throws Exception
+	 */
+	public AccessGrant refreshAccessGrant(final AccessGrant grant)
+			throws Exception {
+		AccessGrant ag = renewAccessGrant(grant);
+		accessGrant = ag;
+		return ag;
+	}
+
+	/**
+	 * Obtains a new access token from the refresh token of the given grant,
+	 * like {@link #refreshAccessGrant(AccessGrant)}, without using it for the
+	 * next calls. It does not change the state of this strategy, so it can be
+	 * called from another thread than the one using it.
+	 * 
+	 * @param grant
+	 *            the grant to renew, holding a refresh_token attribute
+	 * @return the new access grant
+	 * @throws Exception
+	 */
+	public AccessGrant renewAccessGrant(final AccessGrant grant)
+			throws Exception {
+		Object refreshToken = grant.getAttribute(Constants.REFRESH_TOKEN);
+		if (refreshToken == null) {
+			throw new SocialAuthException("No refresh token in access grant");
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append("client_id=").append(oauth.getConfig().get_consumerKey());
+		sb.append("&client_secret=").append(
+				oauth.getConfig().get_consumerSecret());
+		sb.append("&refresh_token=").append(
+				HttpUtil.encodeURIComponent(refreshToken.toString()));
+		sb.append("&grant_type=refresh_token");
+		String authURL = endpoints.get(Constants.OAUTH_ACCESS_TOKEN_URL);
+		LogUtil.fine(LOG, "URL for Refresh Token request : ", authURL);
+		Response response;
+		try {
+			response = HttpUtil.doHttpRequest(authURL,
+					MethodType.POST.toString(), sb.toString(), null);
+		} catch (Exception e) {
+			throw new SocialAuthException("Error in url : " + authURL, e);
+		}
+		AccessGrant ag = parseAccessGrant(response, authURL);
+		if (ag.getAttribute(Constants.REFRESH_TOKEN) == null) {
+			ag.setAttribute(Constants.REFRESH_TOKEN, refreshToken);
+		}
+		if (grant.getPermission() != null) {
+			ag.setPermission(grant.getPermission());
+		}
+		return ag;
+	}
+
+	private AccessGrant parseAccessGrant(final Response response,
+			final String authURL) throws Exception {
+		String accessToken = null;
 		String result;
 		try {
 			result = response.getResponseBodyAsString(Constants.ENCODING);
@@ -231,26 +301,25 @@ public class OAuth2 implements OAuthStrategyBase {
 						+ authURL);
 			}
 		}
-		LOG.fine("Access Token : " + accessToken);
-		LOG.fine("Expires : " + expires);
-		if (accessToken != null) {
-			accessGrant = new AccessGrant();
-			accessGrant.setKey(accessToken);
-			accessGrant.setAttribute(Constants.EXPIRES, expires);
-			if (attributes.size() > 0) {
-				accessGrant.setAttributes(attributes);
-			}
-			if (permission != null) {
-				accessGrant.setPermission(permission);
-			} else {
-				accessGrant.setPermission(Permission.ALL);
-			}
-			accessGrant.setProviderId(providerId);
-		} else {
+		LogUtil.fine(LOG, "Access Token : ", accessToken);
+		LogUtil.fine(LOG, "Expires : ", expires);
+		if (accessToken == null) {
 			throw new SocialAuthException(
 					"Access token and expires not found from " + authURL);
 		}
-		return accessGrant;
+		AccessGrant ag = new AccessGrant();
+		ag.setKey(accessToken);
+		ag.setExpiresIn(expires);
+		if (attributes.size() > 0) {
+			ag.setAttributes(attributes);
+		}
+		if (permission != null) {
+			ag.setPermission(permission);
+		} else {
+			ag.setPermission(Permission.ALL);
+		}
+		ag.setProviderId(providerId);
+		return ag;
 	}
 
 	@Override
@@ -272,9 +341,8 @@ public class OAuth2 implements OAuthStrategyBase {
 		char separator = url.indexOf('?') == -1 ? '?' : '&';
 		String urlStr = url + separator + accessTokenParameterName + "="
 				+ accessGrant.getKey();
-		LOG.fine("Calling URL : " + urlStr);
-		return HttpUtil.doHttpRequest(urlStr, MethodType.GET.toString(), null,
-				null);
+		LogUtil.fine(LOG, "Calling URL : ", urlStr);
+		return cachedGet(url, urlStr, null);
 	}
 
 	@Override
@@ -330,11 +398,27 @@ public class OAuth2 implements OAuthStrategyBase {
 
 			}
 		}
-		LOG.fine("Calling URL	:	" + reqURL);
-		LOG.fine("Body		:	" + bodyStr);
-		LOG.fine("Header Params	:	" + headerParams);
-		return HttpUtil
-				.doHttpRequest(reqURL, methodType, bodyStr, headerParams);
+		LogUtil.fine(LOG, "Calling URL	:	", reqURL);
+		LogUtil.fine(LOG, "Body		:	", bodyStr);
+		LogUtil.fine(LOG, "Header Params	:	", headerParams);
+		if (MethodType.GET.toString().equals(methodType)) {
+			String cacheURL = url;
+			if (params != null && params.size() > 0) {
+				cacheURL += (url.indexOf('?') == -1 ? "?" : "&")
+						+ HttpUtil.buildParams(params);
+			}
+			return cachedGet(cacheURL, reqURL, headerParams);
+		}
+		final String requestURL = reqURL;
+		final String requestBody = bodyStr;
+		return RateLimiter.getInstance().execute(providerId, accessGrant,
+				requestURL, new Callable<Response>() {
+					@Override
+					public Response call() throws Exception {
+						return HttpUtil.doHttpRequest(requestURL, methodType,
+								requestBody, headerParams);
+					}
+				});
 	}
 
 	@Override
@@ -373,4 +457,29 @@ public class OAuth2 implements OAuthStrategyBase {
 	public AccessGrant getAccessGrant() {
 		return accessGrant;
 	}
+
+	/**
+	 * Makes a GET request through the response cache. The cache key uses the
+	 * URL without the access token, which is hashed separately.
+	 */
+	private Response cachedGet(final String cacheURL, final String reqURL,
+			final Map<String, String> headerParams) throws Exception {
+		final AccessGrant token = accessGrant;
+		return FeedCache.getInstance().execute(cacheURL, token, headerParams,
+				new FeedCache.Fetcher() {
+					@Override
+					public Response fetch(final Map<String, String> headers)
+							throws Exception {
+						return RateLimiter.getInstance().execute(providerId,
+								token, reqURL, new Callable<Response>() {
+									@Override
+									public Response call() throws Exception {
+										return HttpUtil.doHttpRequest(reqURL,
+												MethodType.GET.toString(),
+												null, headers);
+									}
+								});
+					}
+				});
+	}
 }
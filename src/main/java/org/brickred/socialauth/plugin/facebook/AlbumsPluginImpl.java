@@ -38,6 +38,7 @@ import org.brickred.socialauth.Album;
 import org.brickred.socialauth.Photo;
 import org.brickred.socialauth.plugin.AlbumsPlugin;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.ProviderSupport;
 import org.brickred.socialauth.util.Response;
@@ -54,7 +55,7 @@ public class AlbumsPluginImpl implements AlbumsPlugin, Serializable {
 	private static final String ALBUMS_URL = "https://graph.facebook.com/me/albums";
 	private static final String ALBUM_PHOTOS_URL = "https://graph.facebook.com/%1$s/photos";
 	private static final String ALBUM_COVER_URL = "https://graph.facebook.com/%1$s/picture?access_token=%2$s";
-	private final Logger LOG = Logger.getLogger(this.getClass().getName());
+	private static final Logger LOG = Logger.getLogger(AlbumsPluginImpl.class.getName());
 
 	private ProviderSupport providerSupport;
 
@@ -67,11 +68,11 @@ public class AlbumsPluginImpl implements AlbumsPlugin, Serializable {
 		Response response = providerSupport.api(ALBUMS_URL,
 				MethodType.GET.toString(), null, null, null);
 		String respStr = response.getResponseBodyAsString(Constants.ENCODING);
-		LOG.fine("Albums JSON :: " + respStr);
+		LogUtil.fine(LOG, "Albums JSON :: ", respStr);
 		List<Album> albums = new ArrayList<Album>();
 		JsonObject resp = Json.createReader(new StringReader(respStr)).readObject();
 		JsonArray data = resp.getJsonArray("data");
-		LOG.fine("Albums count : " + data.size());
+		LogUtil.fine(LOG, "Albums count : ", data.size());
 		for (int i = 0; i < data.size(); i++) {
 			Album album = new Album();
 			JsonObject obj = data.getJsonObject(i);
@@ -104,10 +105,10 @@ public class AlbumsPluginImpl implements AlbumsPlugin, Serializable {
 				String.format(ALBUM_PHOTOS_URL, id), MethodType.GET.toString(),
 				null, null, null);
 		String respStr = response.getResponseBodyAsString(Constants.ENCODING);
-		LOG.info("Getting Photos of Album :: " + id);
+		LogUtil.info(LOG, "Getting Photos of Album :: ", id);
 		JsonObject resp = Json.createReader(new StringReader(respStr)).readObject();
         JsonArray data = resp.getJsonArray("data");
-		LOG.fine("Photos count : " + data.size());
+		LogUtil.fine(LOG, "Photos count : ", data.size());
 		List<Photo> photos = new ArrayList<Photo>();
 		for (int i = 0; i < data.size(); i++) {
 			Photo photo = new Photo();
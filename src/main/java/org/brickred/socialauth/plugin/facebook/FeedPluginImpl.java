@@ -40,6 +40,7 @@ import org.brickred.socialauth.Feed;
 import org.brickred.socialauth.exception.SocialAuthException;
 import org.brickred.socialauth.plugin.FeedPlugin;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.ProviderSupport;
 import org.brickred.socialauth.util.Response;
 
@@ -55,7 +56,7 @@ public class FeedPluginImpl implements FeedPlugin, Serializable {
 	private static final String FEED_URL = "https://graph.facebook.com/me/feed";
 	private static final DateFormat dateFormat = new SimpleDateFormat(
 			"yyyy-MM-dd'T'hh:mm:ssz");
-	private final Logger LOG = Logger.getLogger(FeedPluginImpl.class.getName());
+	private static final Logger LOG = Logger.getLogger(FeedPluginImpl.class.getName());
 
 	private ProviderSupport providerSupport;
 
@@ -72,7 +73,7 @@ public class FeedPluginImpl implements FeedPlugin, Serializable {
 					.getResponseBodyAsString(Constants.ENCODING);
 			JsonObject resp = Json.createReader(new StringReader(respStr)).readObject();
 	        JsonArray data = resp.getJsonArray("data");
-			LOG.fine("Feeds count : " + data.size());
+			LogUtil.fine(LOG, "Feeds count : ", data.size());
 			for (int i = 0; i < data.size(); i++) {
 				Feed feed = new Feed();
 				JsonObject obj = data.getJsonObject(i);
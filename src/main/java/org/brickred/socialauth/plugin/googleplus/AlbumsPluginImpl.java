@@ -34,6 +34,7 @@ import org.brickred.socialauth.Album;
 import org.brickred.socialauth.Photo;
 import org.brickred.socialauth.exception.ServerDataException;
 import org.brickred.socialauth.plugin.AlbumsPlugin;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.ProviderSupport;
 import org.brickred.socialauth.util.Response;
@@ -54,7 +55,7 @@ public class AlbumsPluginImpl implements AlbumsPlugin, Serializable {
 	private static final String PHOTOS_URL = "https://picasaweb.google.com/data/feed/api/user/default/albumid/";
 	private static final String ALBUM_NAMESPACE = "http://schemas.google.com/photos/2007";
 	private static final String MEDIA_NAMESPACE = "http://search.yahoo.com/mrss/";
-	private final Logger LOG = Logger.getLogger(this.getClass().getName());
+	private static final Logger LOG = Logger.getLogger(AlbumsPluginImpl.class.getName());
 
 	private ProviderSupport providerSupport;
 
@@ -69,7 +70,7 @@ public class AlbumsPluginImpl implements AlbumsPlugin, Serializable {
 
 		Element root;
 		try {
-			root = XMLParseUtil.loadXmlResource(response.getInputStream());
+			root = XMLParseUtil.loadXmlResource(response.asInputStream());
 		} catch (Exception e) {
 			throw new ServerDataException(
 					"Failed to parse the albums from response." + ALBUMS_URL, e);
@@ -80,7 +81,7 @@ public class AlbumsPluginImpl implements AlbumsPlugin, Serializable {
 		if (root != null) {
 			NodeList albumList = root.getElementsByTagName("entry");
 			if (albumList != null && albumList.getLength() > 0) {
-				LOG.info("Found albums : " + albumList.getLength());
+				LogUtil.info(LOG, "Found albums : ", albumList.getLength());
 				for (int i = 0; i < albumList.getLength(); i++) {
 					Album album = new Album();
 					Element p = (Element) albumList.item(i);
@@ -139,7 +140,8 @@ public class AlbumsPluginImpl implements AlbumsPlugin, Serializable {
 					albums.add(album);
 				}
 			} else {
-				LOG.info("No albums were obtained from : " + ALBUMS_URL);
+				LogUtil.info(LOG, "No albums were obtained from : ",
+						ALBUMS_URL);
 			}
 		}
 
@@ -150,11 +152,11 @@ public class AlbumsPluginImpl implements AlbumsPlugin, Serializable {
 
 		Response response = providerSupport.api(PHOTOS_URL + id,
 				MethodType.GET.toString(), null, null, null);
-		LOG.info("Getting Photos of Album :: " + id);
+		LogUtil.info(LOG, "Getting Photos of Album :: ", id);
 
 		Element root;
 		try {
-			root = XMLParseUtil.loadXmlResource(response.getInputStream());
+			root = XMLParseUtil.loadXmlResource(response.asInputStream());
 		} catch (Exception e) {
 			throw new ServerDataException(
 					"Failed to parse the photos from response." + PHOTOS_URL
@@ -166,7 +168,7 @@ public class AlbumsPluginImpl implements AlbumsPlugin, Serializable {
 		if (root != null) {
 			NodeList photoList = root.getElementsByTagName("entry");
 			if (photoList != null && photoList.getLength() > 0) {
-				LOG.info("Found photos : " + photoList.getLength());
+				LogUtil.info(LOG, "Found photos : ", photoList.getLength());
 				for (int i = 0; i < photoList.getLength(); i++) {
 					Photo photo = new Photo();
 					Element pl = (Element) photoList.item(i);
@@ -229,7 +231,8 @@ public class AlbumsPluginImpl implements AlbumsPlugin, Serializable {
 					photos.add(photo);
 				}
 			} else {
-				LOG.info("No photos were obtained from : " + PHOTOS_URL);
+				LogUtil.info(LOG, "No photos were obtained from : ",
+						PHOTOS_URL);
 			}
 		}
 		return photos;
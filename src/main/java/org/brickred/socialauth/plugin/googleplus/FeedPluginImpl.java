@@ -42,6 +42,7 @@ import org.brickred.socialauth.Feed;
 import org.brickred.socialauth.exception.SocialAuthException;
 import org.brickred.socialauth.plugin.FeedPlugin;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.ProviderSupport;
 import org.brickred.socialauth.util.Response;
 
@@ -59,7 +60,7 @@ public class FeedPluginImpl implements FeedPlugin, Serializable {
 	private static final DateFormat dateFormat = new SimpleDateFormat(
 			"yyyy-MM-dd'T'hh:mm:ss.SSS'Z'");
 
-	private final Logger LOG = Logger.getLogger(this.getClass().getName());
+	private static final Logger LOG = Logger.getLogger(FeedPluginImpl.class.getName());
 
 	public FeedPluginImpl(final ProviderSupport providerSupport) {
 		this.providerSupport = providerSupport;
@@ -86,7 +87,7 @@ public class FeedPluginImpl implements FeedPlugin, Serializable {
 					.getResponseBodyAsString(Constants.ENCODING);
 			JsonObject resp = Json.createReader(new StringReader(respStr)).readObject();
             JsonArray items = resp.getJsonArray("items");
-			LOG.fine("Feeds count : " + items.size());
+			LogUtil.fine(LOG, "Feeds count : ", items.size());
 			for (int i = 0; i < items.size(); i++) {
 				Feed feed = new Feed();
 				JsonObject obj = items.getJsonObject(i);
@@ -41,6 +41,7 @@ import org.brickred.socialauth.Feed;
 import org.brickred.socialauth.exception.SocialAuthException;
 import org.brickred.socialauth.plugin.FeedPlugin;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.ProviderSupport;
 import org.brickred.socialauth.util.Response;
 
@@ -54,7 +55,7 @@ public class FeedPluginImpl implements FeedPlugin, Serializable {
 	private static final long serialVersionUID = 7322246222894929129L;
 
 	private static final String FEED_URL = "https://api.instagram.com/v1/users/self/feed";
-	private final Logger LOG = Logger.getLogger(FeedPluginImpl.class.getName());
+	private static final Logger LOG = Logger.getLogger(FeedPluginImpl.class.getName());
 
 	private ProviderSupport providerSupport;
 
@@ -72,10 +73,10 @@ public class FeedPluginImpl implements FeedPlugin, Serializable {
 			Response response = providerSupport.api(FEED_URL);
 			String respStr = response
 					.getResponseBodyAsString(Constants.ENCODING);
-			LOG.fine("Feed Json response :: " + respStr);
+			LogUtil.fine(LOG, "Feed Json response :: ", respStr);
 			JsonObject resp = Json.createReader(new StringReader(respStr)).readObject();
             JsonArray data = resp.getJsonArray("data");
-			LOG.fine("Feeds count : " + data.size());
+			LogUtil.fine(LOG, "Feeds count : ", data.size());
 			for (int i = 0; i < data.size(); i++) {
 				Feed feed = new Feed();
 				JsonObject obj = data.getJsonObject(i);
@@ -36,6 +36,7 @@ import org.brickred.socialauth.exception.ServerDataException;
 import org.brickred.socialauth.exception.SocialAuthException;
 import org.brickred.socialauth.plugin.CareerPlugin;
 import org.brickred.socialauth.util.DateComponents;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.ProviderSupport;
 import org.brickred.socialauth.util.Response;
 import org.brickred.socialauth.util.XMLParseUtil;
@@ -53,7 +54,7 @@ public class CareerPluginImpl implements CareerPlugin, Serializable {
 	private static final long serialVersionUID = -1733773634998485298L;
 
 	private ProviderSupport providerSupport;
-	private final Logger LOG = Logger.getLogger(this.getClass().getName());
+	private static final Logger LOG = Logger.getLogger(CareerPluginImpl.class.getName());
 
 	private static final String PROFILE_URL = "http://api.linkedin.com/v1/people/~:(id,phone-numbers,headline,educations,positions,recommendations-received)";
 
@@ -63,7 +64,7 @@ public class CareerPluginImpl implements CareerPlugin, Serializable {
 
 	@Override
 	public Career getCareerDetails() throws Exception {
-		LOG.info("Fetching career details from " + PROFILE_URL);
+		LogUtil.info(LOG, "Fetching career details from ", PROFILE_URL);
 		Response serviceResponse = null;
 		try {
 			serviceResponse = providerSupport.api(PROFILE_URL);
@@ -75,7 +76,7 @@ public class CareerPluginImpl implements CareerPlugin, Serializable {
 		Element root;
 		try {
 			root = XMLParseUtil.loadXmlResource(serviceResponse
-					.getInputStream());
+					.asInputStream());
 		} catch (Exception e) {
 			throw new ServerDataException(
 					"Failed to parse the career details from response."
@@ -94,7 +95,7 @@ public class CareerPluginImpl implements CareerPlugin, Serializable {
 			// get educations
 			NodeList educations = root.getElementsByTagName("education");
 			if (educations != null && educations.getLength() > 0) {
-				LOG.fine("Educations count " + educations.getLength());
+				LogUtil.fine(LOG, "Educations count ", educations.getLength());
 				educationsArr = new Education[educations.getLength()];
 				for (int i = 0; i < educations.getLength(); i++) {
 					Education educationObj = new Education();
@@ -144,7 +145,7 @@ public class CareerPluginImpl implements CareerPlugin, Serializable {
 			// get positions
 			NodeList positions = root.getElementsByTagName("position");
 			if (positions != null && positions.getLength() > 0) {
-				LOG.fine("Positions count " + positions.getLength());
+				LogUtil.fine(LOG, "Positions count ", positions.getLength());
 				positionsArr = new Position[positions.getLength()];
 				for (int i = 0; i < positions.getLength(); i++) {
 					Position positionnObj = new Position();
@@ -220,8 +221,8 @@ public class CareerPluginImpl implements CareerPlugin, Serializable {
 			NodeList recommendations = root
 					.getElementsByTagName("recommendation");
 			if (recommendations != null && recommendations.getLength() > 0) {
-				LOG.fine("Recommendations count "
-						+ recommendations.getLength());
+				LogUtil.fine(LOG, "Recommendations count ",
+						recommendations.getLength());
 				recommendationsArr = new Recommendation[recommendations
 						.getLength()];
 				for (int i = 0; i < recommendations.getLength(); i++) {
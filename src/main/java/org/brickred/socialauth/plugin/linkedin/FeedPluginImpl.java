@@ -41,6 +41,7 @@ import org.brickred.socialauth.Feed;
 import org.brickred.socialauth.exception.ServerDataException;
 import org.brickred.socialauth.exception.SocialAuthException;
 import org.brickred.socialauth.plugin.FeedPlugin;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.ProviderSupport;
 import org.brickred.socialauth.util.Response;
 import org.brickred.socialauth.util.XMLParseUtil;
@@ -58,7 +59,7 @@ public class FeedPluginImpl implements FeedPlugin, Serializable {
 	private static final long serialVersionUID = 497690659988355485L;
 	private static final String FEED_URL = "http://api.linkedin.com/v1/people/~/network/updates";
 	private static final Map<String, String> UPDATE_TYPES;
-	private final Logger LOG = Logger.getLogger(this.getClass().getName());
+	private static final Logger LOG = Logger.getLogger(FeedPluginImpl.class.getName());
 
 	private ProviderSupport providerSupport;
 
@@ -147,7 +148,7 @@ public class FeedPluginImpl implements FeedPlugin, Serializable {
 	 */
 	@Override
 	public List<Feed> getFeeds() throws Exception {
-		LOG.info("Getting feeds from URL : " + FEED_URL);
+		LogUtil.info(LOG, "Getting feeds from URL : ", FEED_URL);
 		Response serviceResponse = null;
 		List<Feed> list;
 		try {
@@ -164,7 +165,7 @@ public class FeedPluginImpl implements FeedPlugin, Serializable {
 		Element root;
 		try {
 			root = XMLParseUtil.loadXmlResource(serviceResponse
-					.getInputStream());
+					.asInputStream());
 			list = getStatusFeed(root);
 
 		} catch (Exception e) {
@@ -178,7 +179,7 @@ public class FeedPluginImpl implements FeedPlugin, Serializable {
 		NodeList nodes = root.getElementsByTagName("update");
 		List<Feed> list = new ArrayList<Feed>();
 		if (nodes != null && nodes.getLength() > 0) {
-			LOG.fine("Feeds count :: " + nodes.getLength());
+			LogUtil.fine(LOG, "Feeds count :: ", nodes.getLength());
 			for (int i = 1; i <= nodes.getLength(); i++) {
 				String type = xPath.evaluate("//update[" + i + "]/update-type",
 						root);
@@ -40,6 +40,7 @@ import org.brickred.socialauth.Album;
 import org.brickred.socialauth.Photo;
 import org.brickred.socialauth.plugin.AlbumsPlugin;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.ProviderSupport;
 import org.brickred.socialauth.util.Response;
 
@@ -53,7 +54,7 @@ public class AlbumsPluginImpl implements AlbumsPlugin, Serializable {
 
 	private static final long serialVersionUID = -4810906169491380470L;
 	private static final String FEED_URL = "https://api.twitter.com/1.1/statuses/home_timeline.json?include_entities=true&count=100";
-	private final Logger LOG = Logger.getLogger(this.getClass().getName());
+	private static final Logger LOG = Logger.getLogger(AlbumsPluginImpl.class.getName());
 	private HashMap<String, List<Photo>> photo_data = new HashMap<String, List<Photo>>();
 
 	private ProviderSupport providerSupport;
@@ -66,13 +67,13 @@ public class AlbumsPluginImpl implements AlbumsPlugin, Serializable {
 	public List<Album> getAlbums() throws Exception {
 		Response response = null;
 		List<Album> albums = new ArrayList<Album>();
-		LOG.info("Getting feeds from URL : " + FEED_URL);
+		LogUtil.info(LOG, "Getting feeds from URL : ", FEED_URL);
 
 		response = providerSupport.api(FEED_URL);
 		String respStr = response.getResponseBodyAsString(Constants.ENCODING);
-		LOG.fine("Feeds json string :: " + respStr);
+		LogUtil.fine(LOG, "Feeds json string :: ", respStr);
 		JsonArray jarr = Json.createReader(new StringReader(respStr)).readArray();
-		LOG.fine("Feeds count :: " + jarr.size());
+		LogUtil.fine(LOG, "Feeds count :: ", jarr.size());
 
 		for (int i = 0; i < jarr.size(); i++) {
 			Album album = new Album();
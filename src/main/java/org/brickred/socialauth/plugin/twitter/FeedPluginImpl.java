@@ -40,6 +40,7 @@ import org.brickred.socialauth.Feed;
 import org.brickred.socialauth.exception.SocialAuthException;
 import org.brickred.socialauth.plugin.FeedPlugin;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.ProviderSupport;
 import org.brickred.socialauth.util.Response;
 
@@ -55,7 +56,7 @@ public class FeedPluginImpl implements FeedPlugin, Serializable {
 	private static final String FEED_URL = "https://api.twitter.com/1.1/statuses/home_timeline.json";
 	private static final DateFormat dateFormat = new SimpleDateFormat(
 			"EEE MMM dd hh:mm:ss z yyyy");
-	private final Logger LOG = Logger.getLogger(this.getClass().getName());
+	private static final Logger LOG = Logger.getLogger(FeedPluginImpl.class.getName());
 
 	private ProviderSupport providerSupport;
 
@@ -73,14 +74,14 @@ public class FeedPluginImpl implements FeedPlugin, Serializable {
 	public List<Feed> getFeeds() throws Exception {
 		Response response = null;
 		List<Feed> list = new ArrayList<Feed>();
-		LOG.info("Getting feeds from URL : " + FEED_URL);
+		LogUtil.info(LOG, "Getting feeds from URL : ", FEED_URL);
 		try {
 			response = providerSupport.api(FEED_URL);
 			String respStr = response
 					.getResponseBodyAsString(Constants.ENCODING);
-			LOG.fine("Feeds json string :: " + respStr);
+			LogUtil.fine(LOG, "Feeds json string :: ", respStr);
 			JsonArray jarr = Json.createReader(new StringReader(respStr)).readArray();
-			LOG.fine("Feeds count :: " + jarr.size());
+			LogUtil.fine(LOG, "Feeds count :: ", jarr.size());
 			for (int i = 0; i < jarr.size(); i++) {
 				JsonObject jobj = jarr.getJsonObject(i);
 				Feed feed = new Feed();
@@ -33,14 +33,15 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.json.Json;
-import javax.json.JsonArray;
 import javax.json.JsonObject;
 
 import org.brickred.socialauth.AbstractProvider;
 import org.brickred.socialauth.Contact;
+import org.brickred.socialauth.ContactStream;
 import org.brickred.socialauth.Permission;
 import org.brickred.socialauth.Profile;
 import org.brickred.socialauth.exception.AccessTokenExpireException;
@@ -52,7 +53,10 @@ import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.BirthDate;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.FieldMapping;
 import org.brickred.socialauth.util.HttpUtil;
+import org.brickred.socialauth.util.JsonStreamUtil;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.Response;
@@ -73,7 +77,39 @@ public class FacebookImpl extends AbstractProvider {
 	private static final String PUBLIC_PROFILE_URL = "http://www.facebook.com/profile.php?id=";
 	private static final String IMAGE_UPLOAD_URL = "https://graph.facebook.com/me/photos";
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger LOG = Logger.getLogger(FacebookImpl.class.getName());
+	private static final FieldMapping<Profile> PROFILE_MAPPING = FieldMapping
+			.builder(Profile.class).map("id", "validatedId")
+			.map("name", "fullName").map("first_name", "firstName")
+			.map("last_name", "lastName").map("email", "email")
+			.map("location.name", "location")
+			.map("birthday", new FieldMapping.Setter<Profile>() {
+				@Override
+				public void set(final Profile p, final String bstr) {
+					String[] arr = bstr.split("/");
+					BirthDate bd = new BirthDate();
+					if (arr.length > 0) {
+						bd.setMonth(Integer.parseInt(arr[0]));
+					}
+					if (arr.length > 1) {
+						bd.setDay(Integer.parseInt(arr[1]));
+					}
+					if (arr.length > 2) {
+						bd.setYear(Integer.parseInt(arr[2]));
+					}
+					p.setDob(bd);
+				}
+			}).map("gender", "gender")
+			.map("locale", new FieldMapping.Setter<Profile>() {
+				@Override
+				public void set(final Profile p, final String locale) {
+					String a[] = locale.split("_");
+					p.setLanguage(a[0]);
+					if (a.length > 1) {
+						p.setCountry(a[1]);
+					}
+				}
+			}).build();
+	private static final Logger LOG = Logger.getLogger(FacebookImpl.class.getName());
 
 	private Permission scope;
 	private OAuthConfig config;
@@ -137,7 +173,7 @@ public class FacebookImpl extends AbstractProvider {
 	 * @throws Exception
 	 */
 	@Override
-	public void setAccessGrant(final AccessGrant accessGrant)
+	public synchronized void setAccessGrant(final AccessGrant accessGrant)
 			throws AccessTokenExpireException, SocialAuthException {
 		this.accessGrant = accessGrant;
 		authenticationStrategy.setAccessGrant(accessGrant);
@@ -198,70 +234,29 @@ public class FacebookImpl extends AbstractProvider {
 	}
 
 	private Profile authFacebookLogin() throws Exception {
-		String presp;
-
+		Response response;
 		try {
-			Response response = authenticationStrategy.executeFeed(PROFILE_URL);
-			presp = response.getResponseBodyAsString(Constants.ENCODING);
+			response = authenticationStrategy.executeFeed(PROFILE_URL);
 		} catch (Exception e) {
 			throw new SocialAuthException("Error while getting profile from "
 					+ PROFILE_URL, e);
 		}
 		try {
-			LOG.fine("User Profile : " + presp);
-			JsonObject resp = Json.createReader(new StringReader(presp)).readObject();
-			Profile p = new Profile();
-			p.setValidatedId(resp.getString("id"));
-			if (resp.containsKey("name")&&!resp.isNull("name")) {
-				p.setFullName(resp.getString("name"));
-			}
-			if (resp.containsKey("first_name")&&!resp.isNull("first_name")) {
-				p.setFirstName(resp.getString("first_name"));
-			}
-			if (resp.containsKey("last_name")&&!resp.isNull("last_name")) {
-				p.setLastName(resp.getString("last_name"));
-			}
-			if (resp.containsKey("email")&&!resp.isNull("email")) {
-				p.setEmail(resp.getString("email"));
-			}
-			if (resp.containsKey("location")&&!resp.isNull("location")) {
-				p.setLocation(resp.getJsonObject("location").getString("name"));
-			}
-			if (resp.containsKey("birthday")&&!resp.isNull("birthday")) {
-				String bstr = resp.getString("birthday");
-				String[] arr = bstr.split("/");
-				BirthDate bd = new BirthDate();
-				if (arr.length > 0) {
-					bd.setMonth(Integer.parseInt(arr[0]));
-				}
-				if (arr.length > 1) {
-					bd.setDay(Integer.parseInt(arr[1]));
-				}
-				if (arr.length > 2) {
-					bd.setYear(Integer.parseInt(arr[2]));
-				}
-				p.setDob(bd);
-			}
-			if (resp.containsKey("gender")&&!resp.isNull("gender")) {
-				p.setGender(resp.getString("gender"));
+			Profile p = PROFILE_MAPPING.readJson(response, new Profile());
+			LogUtil.fine(LOG, "User Profile : ", p);
+			if (p.getValidatedId() == null) {
+				throw new ServerDataException("No id in the user profile");
 			}
 			p.setProfileImageURL(String.format(PROFILE_IMAGE_URL,
-					resp.getString("id")));
-			if(resp.containsKey("locale")&&!resp.isNull("locale")){
-    			String locale = resp.getString("locale");
-    			if (locale != null) {
-    				String a[] = locale.split("_");
-    				p.setLanguage(a[0]);
-    				p.setCountry(a[1]);
-    			}
-			}
+					p.getValidatedId()));
 			p.setProviderId(getProviderId());
 			userProfile = p;
 			return p;
 
 		} catch (Exception ex) {
 			throw new ServerDataException(
-					"Failed to parse the user profile json : " + presp, ex);
+					"Failed to parse the user profile json from " + PROFILE_URL,
+					ex);
 		}
 	}
 
@@ -276,7 +271,7 @@ public class FacebookImpl extends AbstractProvider {
 
 	@Override
 	public Response updateStatus(final String msg) throws Exception {
-		LOG.info("Updating status : " + msg);
+		LogUtil.info(LOG, "Updating status : ", msg);
 		if (msg == null || msg.trim().length() == 0) {
 			throw new ServerDataException("Status cannot be blank");
 		}
@@ -311,49 +306,128 @@ public class FacebookImpl extends AbstractProvider {
 
 	@Override
 	public List<Contact> getContactList() throws Exception {
-		List<Contact> plist = new ArrayList<Contact>();
-		LOG.info("Fetching contacts from " + CONTACTS_URL);
-		String respStr;
+		final List<Contact> plist = new ArrayList<Contact>();
+		LogUtil.info(LOG, "Fetching contacts from ", CONTACTS_URL);
+		Response response;
 		try {
-			Response response = authenticationStrategy
-					.executeFeed(CONTACTS_URL);
-			respStr = response.getResponseBodyAsString(Constants.ENCODING);
+			response = authenticationStrategy.executeFeed(CONTACTS_URL);
 		} catch (Exception e) {
 			throw new SocialAuthException("Error while getting contacts from "
 					+ CONTACTS_URL, e);
 		}
 		try {
-			LOG.fine("User Contacts list in json : " + respStr);
-			JsonObject resp = Json.createReader(new StringReader(respStr)).readObject();
-			JsonArray data = resp.getJsonArray("data");
-			LOG.fine("Found contacts : " + data.size());
-			for (int i = 0; i < data.size(); i++) {
-				JsonObject obj = data.getJsonObject(i);
-				Contact p = new Contact();
-				String name = obj.getString("name");
-				if (name != null) {
-					String nameArr[] = name.split(" ");
-					if (nameArr.length > 1) {
-						p.setFirstName(nameArr[0]);
-						p.setLastName(nameArr[1]);
-					} else {
-						p.setFirstName(obj.getString("name"));
-					}
-					p.setDisplayName(name);
-				}
-				p.setId(obj.getString("id"));
-				p.setProfileUrl(PUBLIC_PROFILE_URL + obj.getString("id"));
-				p.setProfileImageURL(String.format(PROFILE_IMAGE_URL,
-						obj.getString("id")));
-				plist.add(p);
-			}
+			JsonStreamUtil.streamArray(response,
+					new JsonStreamUtil.ElementHandler() {
+						@Override
+						public void handle(final JsonObject obj) {
+							plist.add(toContact(obj));
+						}
+					}, "data");
+			LogUtil.fine(LOG, "Found contacts : ", plist.size());
 		} catch (Exception e) {
 			throw new ServerDataException(
-					"Failed to parse the user profile json : " + respStr, e);
+					"Failed to parse the user contacts json from "
+							+ CONTACTS_URL, e);
 		}
 		return plist;
 	}
 
+	/**
+	 * Gets the contacts of the user, following the "paging.next" links of
+	 * the graph API only when the caller reaches the end of a page.
+	 * 
+	 * @return ContactStream over the contacts of the user
+	 */
+	@Override
+	public ContactStream getContactStream() throws Exception {
+		return new ContactStream() {
+			private String next = CONTACTS_URL;
+
+			@Override
+			protected List<Contact> fetchNextPage() throws Exception {
+				if (next == null) {
+					return null;
+				}
+				String url = next;
+				next = null;
+				LogUtil.info(LOG, "Fetching contacts from ", url);
+				Response response;
+				try {
+					response = authenticationStrategy
+							.executeFeed(withoutAccessToken(url));
+				} catch (Exception e) {
+					throw new SocialAuthException(
+							"Error while getting contacts from " + url, e);
+				}
+				final List<Contact> page = new ArrayList<Contact>();
+				JsonObject rest;
+				try {
+					rest = JsonStreamUtil.streamArray(response,
+							new JsonStreamUtil.ElementHandler() {
+								@Override
+								public void handle(final JsonObject obj) {
+									page.add(toContact(obj));
+								}
+							}, "data");
+				} catch (Exception e) {
+					throw new ServerDataException(
+							"Failed to parse the user contacts json from "
+									+ url, e);
+				}
+				if (!page.isEmpty() && rest.containsKey("paging")) {
+					JsonObject paging = rest.getJsonObject("paging");
+					if (paging.containsKey("next")
+							&& !paging.isNull("next")) {
+						next = paging.getString("next");
+					}
+				}
+				return page;
+			}
+		};
+	}
+
+	/**
+	 * Removes the access token carried by a paging link, as the strategy adds
+	 * the one of the current grant.
+	 */
+	private static String withoutAccessToken(final String url) {
+		int query = url.indexOf('?');
+		if (query == -1) {
+			return url;
+		}
+		StringBuilder sb = new StringBuilder(url.length());
+		sb.append(url, 0, query);
+		char separator = '?';
+		for (String param : url.substring(query + 1).split("&")) {
+			if (param.isEmpty() || param.startsWith("access_token=")) {
+				continue;
+			}
+			sb.append(separator).append(param);
+			separator = '&';
+		}
+		return sb.toString();
+	}
+
+	private Contact toContact(final JsonObject obj) {
+		Contact p = new Contact();
+		String name = obj.getString("name");
+		if (name != null) {
+			String nameArr[] = name.split(" ");
+			if (nameArr.length > 1) {
+				p.setFirstName(nameArr[0]);
+				p.setLastName(nameArr[1]);
+			} else {
+				p.setFirstName(obj.getString("name"));
+			}
+			p.setDisplayName(name);
+		}
+		p.setId(obj.getString("id"));
+		p.setProfileUrl(PUBLIC_PROFILE_URL + obj.getString("id"));
+		p.setProfileImageURL(String.format(PROFILE_IMAGE_URL,
+				obj.getString("id")));
+		return p;
+	}
+
 	/**
 	 * Logout
 	 */
@@ -371,7 +445,7 @@ public class FacebookImpl extends AbstractProvider {
 	 */
 	@Override
 	public void setPermission(final Permission p) {
-		LOG.fine("Permission requested : " + p.toString());
+		LogUtil.fine(LOG, "Permission requested : ", p);
 		this.scope = p;
 		authenticationStrategy.setPermission(this.scope);
 		authenticationStrategy.setScope(getScope());
@@ -398,7 +472,7 @@ public class FacebookImpl extends AbstractProvider {
 			final Map<String, String> params,
 			final Map<String, String> headerParams, final String body)
 			throws Exception {
-		LOG.info("Calling api function for url	:	" + url);
+		LogUtil.info(LOG, "Calling api function for url	:	", url);
 		Response response = null;
 		try {
 			response = authenticationStrategy.executeFeed(url, methodType,
@@ -436,14 +510,16 @@ public class FacebookImpl extends AbstractProvider {
 	@Override
 	public Response uploadImage(final String message, final String fileName,
 			final InputStream inputStream) throws Exception {
-		LOG.info("Uploading Image :: " + fileName + ", status message :: "
-				+ message);
+		if (LOG.isLoggable(Level.INFO)) {
+			LOG.info(LogUtil.redact("Uploading Image :: " + fileName
+					+ ", status message :: " + message));
+		}
 		Map<String, String> map = new HashMap<String, String>();
 		map.put("name", message);
 		Response response = authenticationStrategy.uploadImage(
 				IMAGE_UPLOAD_URL, MethodType.POST.toString(), map, null,
 				fileName, inputStream, null);
-		LOG.info("Upload Image status::" + response.getStatus());
+		LogUtil.info(LOG, "Upload Image status::", response.getStatus());
 		return response;
 	}
 
@@ -502,7 +578,7 @@ public class FacebookImpl extends AbstractProvider {
 				if (resp.containsKey("error")) {
 					JsonObject error = resp.getJsonObject("error");
 					String message = error.getString("message");
-					LOG.fine("Error message :: " + message);
+					LogUtil.fine(LOG, "Error message :: ", message);
 					if (message != null) {
 						message = message.toLowerCase();
 					}
@@ -525,15 +601,32 @@ public class FacebookImpl extends AbstractProvider {
 		}
 	}
 
+	@Override
+	protected void restoreAccessGrant(final AccessGrant accessGrant) {
+		this.accessGrant = accessGrant;
+		authenticationStrategy.setAccessGrant(accessGrant);
+	}
+
 	@Override
 	public void refreshToken(final AccessGrant expireAccessGrant)
 			throws SocialAuthException {
+		AccessGrant ag = renewAccessGrant(expireAccessGrant);
+		accessGrant = ag;
+		authenticationStrategy.setAccessGrant(ag);
+	}
+
+	/**
+	 * Exchanges the given token for a long-lived one.
+	 */
+	@Override
+	protected AccessGrant renewAccessGrant(final AccessGrant expireAccessGrant)
+			throws SocialAuthException {
 		LOG.fine("Getting refrash token");
 		String url = ENDPOINTS.get(Constants.OAUTH_ACCESS_TOKEN_URL)
 				+ "?grant_type=fb_exchange_token&client_id=%1$s&client_secret=%2$s&fb_exchange_token=%3$s";
 		url = String.format(url, config.get_consumerKey(),
 				config.get_consumerSecret(), expireAccessGrant.getKey());
-		LOG.fine("URL for Refresh Token :: " + url);
+		LogUtil.fine(LOG, "URL for Refresh Token :: ", url);
 		Response response = HttpUtil.doHttpRequest(url,
 				MethodType.GET.toString(), null, null);
 		String result = null;
@@ -555,17 +648,18 @@ public class FacebookImpl extends AbstractProvider {
 				if (kv[0].equals("access_token")) {
 					ag.setKey(kv[1]);
 				} else if (kv[0].equals("expires")) {
-					ag.setAttribute(Constants.EXPIRES, Integer.valueOf(kv[1]));
+					ag.setExpiresIn(Integer.valueOf(kv[1]));
 				} else if (kv[0].equals("expires_in")) {
-					ag.setAttribute(Constants.EXPIRES, Integer.valueOf(kv[1]));
+					ag.setExpiresIn(Integer.valueOf(kv[1]));
 				} else {
 					attributes.put(kv[0], kv[1]);
 				}
 			}
 		}
 		ag.setAttributes(attributes);
-		LOG.fine("Refresh token Access Grant ::" + ag);
-		accessGrant = ag;
-		authenticationStrategy.setAccessGrant(ag);
+		ag.setProviderId(expireAccessGrant.getProviderId());
+		ag.setPermission(expireAccessGrant.getPermission());
+		LogUtil.fine(LOG, "Refresh token Access Grant ::", ag);
+		return ag;
 	}
 }
\ No newline at end of file
@@ -49,9 +49,12 @@ import org.brickred.socialauth.oauthstrategy.OAuth1;
 import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.FieldMapping;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.Response;
 import org.brickred.socialauth.util.XMLParseUtil;
+import org.brickred.socialauth.util.XMLStreamUtil.XMLRecord;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
@@ -69,7 +72,32 @@ public class FlickerImpl extends AbstractProvider implements AuthProvider,
 	private static final String PROFILE_URL = "http://api.flickr.com/services/rest/?method=flickr.people.getInfo&user_id=%1$s&apikey=%2$s";
 	private static final String CONTACT_URL = "http://api.flickr.com/services/rest/?method=flickr.contacts.getList&user_id=%1$s&apikey=%2$s";
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger LOG = Logger.getLogger(FlickerImpl.class.getName());
+	private static final FieldMapping<Profile> PROFILE_MAPPING = FieldMapping
+			.builder(Profile.class)
+			.mapXml("person", new FieldMapping.XMLSetter<Profile>() {
+				@Override
+				public void set(final Profile profile, final XMLRecord p) {
+					if (profile.getValidatedId() != null) {
+						return;
+					}
+					profile.setFullName(p.getElementData("realname"));
+					profile.setDisplayName(p.getElementData("username"));
+					profile.setCountry(p.getElementData("location"));
+					String id = p.getAttribute("id");
+					String iconfarm = p.getAttribute("iconfarm");
+					String iconserver = p.getAttribute("iconserver");
+					String buddyurl = "http://farm" + iconfarm
+							+ ".staticflickr.com/" + iconserver
+							+ "/buddyicons/" + id + ".jpg";
+					profile.setValidatedId(id);
+					if (iconserver.equalsIgnoreCase("0")) {
+						profile.setProfileImageURL("http://www.flickr.com/images/buddyicon.gif");
+					} else {
+						profile.setProfileImageURL(buddyurl);
+					}
+				}
+			}).build();
+	private static final Logger LOG = Logger.getLogger(FlickerImpl.class.getName());
 
 	private Permission scope;
 	private boolean isVerify;
@@ -142,7 +170,7 @@ public class FlickerImpl extends AbstractProvider implements AuthProvider,
 	 * @throws AccessTokenExpireException
 	 */
 	@Override
-	public void setAccessGrant(final AccessGrant accessGrant)
+	public synchronized void setAccessGrant(final AccessGrant accessGrant)
 			throws AccessTokenExpireException {
 		accessToken = accessGrant;
 		isVerify = true;
@@ -191,13 +219,11 @@ public class FlickerImpl extends AbstractProvider implements AuthProvider,
 	}
 
 	private Profile getProfile() throws Exception {
-		Profile profile = new Profile();
-
 		String profileUrl = String
 				.format(PROFILE_URL, accessToken.getAttribute("user_nsid"),
 						config.get_consumerKey());
 
-		LOG.info("Obtaining user profile. Profile URL : " + profileUrl);
+		LogUtil.info(LOG, "Obtaining user profile. Profile URL : ", profileUrl);
 		Response serviceResponse = null;
 		try {
 			serviceResponse = authenticationStrategy.executeFeed(profileUrl);
@@ -206,49 +232,27 @@ public class FlickerImpl extends AbstractProvider implements AuthProvider,
 					"Failed to retrieve the user profile from  " + profileUrl,
 					e);
 		}
-		if (serviceResponse.getStatus() != 200) {
+		int status = serviceResponse.getStatus();
+		if (status != 200) {
+			serviceResponse.close();
 			throw new SocialAuthException(
 					"Failed to retrieve the user profile from  " + profileUrl
-							+ ". Status :" + serviceResponse.getStatus());
+							+ ". Status :" + status);
 		}
 
-		Element root;
+		Profile profile;
 		try {
-			root = XMLParseUtil.loadXmlResource(serviceResponse
-					.getInputStream());
+			profile = PROFILE_MAPPING.readXml(serviceResponse, new Profile());
 		} catch (Exception e) {
 			throw new ServerDataException(
 					"Failed to parse the profile from response." + profileUrl,
 					e);
 		}
-
-		if (root != null) {
-			NodeList pList = root.getElementsByTagName("person");
-			if (pList != null && pList.getLength() > 0) {
-				Element p = (Element) pList.item(0);
-				if (p != null) {
-					profile.setFullName(XMLParseUtil.getElementData(p,
-							"realname"));
-					profile.setDisplayName(XMLParseUtil.getElementData(p,
-							"username"));
-					profile.setCountry(XMLParseUtil.getElementData(p,
-							"location"));
-					String id = p.getAttribute("id");
-					String iconfarm = p.getAttribute("iconfarm");
-					String iconserver = p.getAttribute("iconserver");
-					String buddyurl = "http://farm" + iconfarm
-							+ ".staticflickr.com/" + iconserver
-							+ "/buddyicons/" + id + ".jpg";
-					profile.setValidatedId(id);
-					if (iconserver.equalsIgnoreCase("0")) {
-						profile.setProfileImageURL("http://www.flickr.com/images/buddyicon.gif");
-					} else {
-						profile.setProfileImageURL(buddyurl);
-					}
-					userProfile = profile;
-				}
-			}
+		if (profile.getValidatedId() == null) {
+			throw new ServerDataException(
+					"Failed to parse the profile from response." + profileUrl);
 		}
+		userProfile = profile;
 		return profile;
 	}
 
@@ -278,7 +282,8 @@ public class FlickerImpl extends AbstractProvider implements AuthProvider,
 				.format(CONTACT_URL, accessToken.getAttribute("user_nsid"),
 						config.get_consumerKey());
 
-		LOG.info("Obtaining user contacts. Contact URL : " + contactUrl);
+		LogUtil.info(LOG, "Obtaining user contacts. Contact URL : ",
+				contactUrl);
 		Response serviceResponse = null;
 		try {
 			serviceResponse = authenticationStrategy.executeFeed(contactUrl);
@@ -317,7 +322,8 @@ public class FlickerImpl extends AbstractProvider implements AuthProvider,
 				NodeList contactNodes = contacts
 						.getElementsByTagName("contact");
 				if (contactNodes != null && contactNodes.getLength() > 0) {
-					LOG.fine("Found contacts : " + contactNodes.getLength());
+					LogUtil.fine(LOG, "Found contacts : ",
+							contactNodes.getLength());
 					for (int i = 0; i < contactNodes.getLength(); i++) {
 						Element contact = (Element) contactNodes.item(i);
 						String id = contact.getAttribute("nsid");
@@ -352,7 +358,8 @@ public class FlickerImpl extends AbstractProvider implements AuthProvider,
 					}
 				}
 			} else {
-				LOG.fine("No contacts were obtained from : " + contactUrl);
+				LogUtil.fine(LOG, "No contacts were obtained from : ",
+						contactUrl);
 			}
 		}
 		return contactList;
@@ -375,7 +382,7 @@ public class FlickerImpl extends AbstractProvider implements AuthProvider,
 	 */
 	@Override
 	public void setPermission(final Permission p) {
-		LOG.fine("Permission requested : " + p.toString());
+		LogUtil.fine(LOG, "Permission requested : ", p);
 		this.scope = p;
 	}
 
@@ -407,7 +414,7 @@ public class FlickerImpl extends AbstractProvider implements AuthProvider,
 					"Please call verifyResponse function first to get Access Token");
 		}
 		Response response = null;
-		LOG.fine("Calling URL : " + url);
+		LogUtil.fine(LOG, "Calling URL : ", url);
 		response = authenticationStrategy.executeFeed(url, methodType, params,
 				headerParams, body);
 		return response;
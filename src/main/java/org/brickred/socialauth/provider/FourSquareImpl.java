@@ -26,7 +26,6 @@
 package org.brickred.socialauth.provider;
 
 import java.io.InputStream;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -34,8 +33,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
-import javax.json.Json;
-import javax.json.JsonArray;
 import javax.json.JsonObject;
 
 import org.brickred.socialauth.AbstractProvider;
@@ -49,6 +46,9 @@ import org.brickred.socialauth.oauthstrategy.OAuth2;
 import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.FieldMapping;
+import org.brickred.socialauth.util.JsonStreamUtil;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.Response;
 
@@ -66,7 +66,32 @@ public class FourSquareImpl extends AbstractProvider {
 	private static final String CONTACTS_URL = "https://api.foursquare.com/v2/users/self/friends";
 	private static final String VIEW_PROFILE_URL = "http://foursquare.com/user/";
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger LOG = Logger.getLogger(FourSquareImpl.class.getName());
+	private static final FieldMapping<Profile> PROFILE_MAPPING = FieldMapping
+			.builder(Profile.class).map("response.user.id", "validatedId")
+			.map("response.user.firstName", "firstName")
+			.map("response.user.lastName", "lastName")
+			.map("response.user.photo", "profileImageURL")
+			.map("response.user.gender", "gender")
+			.map("response.user.homeCity", "location")
+			.map("response.user.contact.email", "email").build();
+	private static final FieldMapping<Contact> CONTACT_MAPPING = FieldMapping
+			.builder(Contact.class).map("firstName", "firstName")
+			.map("lastName", "lastName")
+			.map("id", new FieldMapping.Setter<Contact>() {
+				@Override
+				public void set(final Contact c, final String id) {
+					c.setProfileUrl(VIEW_PROFILE_URL + id);
+					c.setId(id);
+				}
+			}).map("photo", new FieldMapping.Setter<Contact>() {
+				@Override
+				public void set(final Contact c, final String photo) {
+					if (photo.length() > 1) {
+						c.setProfileImageURL(photo);
+					}
+				}
+			}).build();
+	private static final Logger LOG = Logger.getLogger(FourSquareImpl.class.getName());
 
 	private Permission scope;
 	private String accessToken;
@@ -122,7 +147,7 @@ public class FourSquareImpl extends AbstractProvider {
 	 * @throws AccessTokenExpireException
 	 */
 	@Override
-	public void setAccessGrant(final AccessGrant accessGrant)
+	public synchronized void setAccessGrant(final AccessGrant accessGrant)
 			throws AccessTokenExpireException {
 		this.accessGrant = accessGrant;
 		accessToken = accessGrant.getKey();
@@ -178,7 +203,6 @@ public class FourSquareImpl extends AbstractProvider {
 
 	private Profile getProfile() throws Exception {
 		LOG.fine("Obtaining user profile");
-		Profile profile = new Profile();
 		Response serviceResponse;
 		try {
 			serviceResponse = authenticationStrategy.executeFeed(PROFILE_URL);
@@ -187,52 +211,16 @@ public class FourSquareImpl extends AbstractProvider {
 					"Failed to retrieve the user profile from  " + PROFILE_URL,
 					e);
 		}
-		String res;
+		Profile profile;
 		try {
-			res = serviceResponse.getResponseBodyAsString(Constants.ENCODING);
+			profile = PROFILE_MAPPING.readJson(serviceResponse, new Profile());
 		} catch (Exception exc) {
 			throw new SocialAuthException("Failed to read response from  "
 					+ PROFILE_URL, exc);
 		}
-
-		JsonObject jobj = Json.createReader(new StringReader(res)).readObject();
-		JsonObject rObj;
-		JsonObject uObj;
-		if (jobj.containsKey("response")) {
-			rObj = jobj.getJsonObject("response");
-		} else {
+		if (profile.getValidatedId() == null) {
 			throw new SocialAuthException(
-					"Failed to parse the user profile json : " + res);
-		}
-		if (rObj.containsKey("user")) {
-			uObj = rObj.getJsonObject("user");
-		} else {
-			throw new SocialAuthException(
-					"Failed to parse the user profile json : " + res);
-		}
-		if (uObj.containsKey("id")) {
-			profile.setValidatedId(uObj.getString("id"));
-		}
-		if (uObj.containsKey("firstName")&&!uObj.isNull("firstName")) {
-			profile.setFirstName(uObj.getString("firstName"));
-		}
-		if (uObj.containsKey("lastName")&&!uObj.isNull("lastName")) {
-			profile.setLastName(uObj.getString("lastName"));
-		}
-		if (uObj.containsKey("photo")&&!uObj.isNull("photo")) {
-			profile.setProfileImageURL(uObj.getString("photo"));
-		}
-		if (uObj.containsKey("gender")&&!uObj.isNull("gender")) {
-			profile.setGender(uObj.getString("gender"));
-		}
-		if (uObj.containsKey("homeCity")&&!uObj.isNull("homeCity")) {
-			profile.setLocation(uObj.getString("homeCity"));
-		}
-		if (uObj.containsKey("contact")) {
-			JsonObject cobj = uObj.getJsonObject("contact");
-			if (cobj.containsKey("email")&&!cobj.isNull("email")) {
-				profile.setEmail(cobj.getString("email"));
-			}
+					"Failed to parse the user profile json from " + PROFILE_URL);
 		}
 		profile.setProviderId(getProviderId());
 		userProfile = profile;
@@ -248,7 +236,7 @@ public class FourSquareImpl extends AbstractProvider {
 
 	@Override
 	public List<Contact> getContactList() throws Exception {
-		LOG.info("Fetching contacts from " + CONTACTS_URL);
+		LogUtil.info(LOG, "Fetching contacts from ", CONTACTS_URL);
 
 		Response serviceResponse;
 		try {
@@ -261,59 +249,34 @@ public class FourSquareImpl extends AbstractProvider {
 			throw new SocialAuthException("Error while getting contacts from "
 					+ CONTACTS_URL + "Status : " + serviceResponse.getStatus());
 		}
-		String respStr;
+		final List<Contact> plist = new ArrayList<Contact>();
+		JsonObject resp;
 		try {
-			respStr = serviceResponse
-					.getResponseBodyAsString(Constants.ENCODING);
+			resp = JsonStreamUtil.streamArray(serviceResponse,
+					new JsonStreamUtil.ElementHandler() {
+						@Override
+						public void handle(final JsonObject obj)
+								throws Exception {
+							plist.add(toContact(obj));
+						}
+					}, "response", "friends", "items");
 		} catch (Exception exc) {
 			throw new SocialAuthException("Failed to read response from  "
 					+ CONTACTS_URL, exc);
 		}
-		LOG.fine("User Contacts list in JSON " + respStr);
-		JsonObject resp = Json.createReader(new StringReader(respStr)).readObject();
-		List<Contact> plist = new ArrayList<Contact>();
-		JsonArray items = Json.createArrayBuilder().build();
-		if (resp.containsKey("response")) {
-			JsonObject robj = resp.getJsonObject("response");
-			if (robj.containsKey("friends")) {
-				JsonObject fobj = robj.getJsonObject("friends");
-				if (fobj.containsKey("items")) {
-					items = fobj.getJsonArray("items");
-				}
-			} else {
-				throw new SocialAuthException(
-						"Failed to parse the user profile json : " + respStr);
-			}
-		} else {
+		if (!resp.containsKey("response")
+				|| !resp.getJsonObject("response").containsKey("friends")) {
 			throw new SocialAuthException(
-					"Failed to parse the user profile json : " + respStr);
+					"Failed to parse the user contacts json : " + resp);
 		}
-		LOG.fine("Contacts Found : " + items.size());
-		for (int i = 0; i < items.size(); i++) {
-			JsonObject obj = items.getJsonObject(i);
-			Contact c = new Contact();
-			if (obj.containsKey("firstName")) {
-				c.setFirstName(obj.getString("firstName"));
-			}
-			if (obj.containsKey("lastName")) {
-				c.setLastName(obj.getString("lastName"));
-			}
-			if (obj.containsKey("id")) {
-				c.setProfileUrl(VIEW_PROFILE_URL + obj.getString("id"));
-				c.setId(obj.getString("id"));
-			}
-			if (obj.containsKey("photo")) {
-				String photo = obj.getString("photo");
-				if (photo.length() > 1) {
-					c.setProfileImageURL(photo);
-				}
-			}
-			plist.add(c);
-		}
-
+		LogUtil.fine(LOG, "Contacts Found : ", plist.size());
 		return plist;
 	}
 
+	private Contact toContact(final JsonObject obj) throws Exception {
+		return CONTACT_MAPPING.apply(obj, new Contact());
+	}
+
 	/**
 	 * Updates the status on the chosen provider if available. This may not be
 	 * implemented for all providers.
@@ -346,7 +309,7 @@ public class FourSquareImpl extends AbstractProvider {
 	 */
 	@Override
 	public void setPermission(final Permission p) {
-		LOG.fine("Permission requested : " + p.toString());
+		LogUtil.fine(LOG, "Permission requested : ", p);
 		scope = p;
 	}
 
@@ -373,7 +336,7 @@ public class FourSquareImpl extends AbstractProvider {
 			final Map<String, String> headerParams, final String body)
 			throws Exception {
 		Response response = null;
-		LOG.fine("Calling URL : " + url);
+		LogUtil.fine(LOG, "Calling URL : ", url);
 		try {
 			response = authenticationStrategy.executeFeed(url, methodType,
 					params, headerParams, body);
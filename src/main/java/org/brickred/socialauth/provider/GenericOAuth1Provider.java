@@ -44,6 +44,7 @@ import org.brickred.socialauth.oauthstrategy.OAuth1;
 import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.Response;
 
@@ -67,7 +68,7 @@ public class GenericOAuth1Provider extends AbstractProvider {
 
 	private static final long serialVersionUID = 1L;
 
-	private final Logger LOG = Logger.getLogger(GenericOAuth1Provider.class.getName());
+	private static final Logger LOG = Logger.getLogger(GenericOAuth1Provider.class.getName());
 
 	private Permission scope;
 	private boolean isVerify;
@@ -105,7 +106,7 @@ public class GenericOAuth1Provider extends AbstractProvider {
 	 * @throws AccessTokenExpireException
 	 */
 	@Override
-	public void setAccessGrant(final AccessGrant accessGrant)
+	public synchronized void setAccessGrant(final AccessGrant accessGrant)
 			throws AccessTokenExpireException {
 		accessToken = accessGrant;
 		isVerify = true;
@@ -170,7 +171,7 @@ public class GenericOAuth1Provider extends AbstractProvider {
 	 */
 	@Override
 	public void setPermission(final Permission p) {
-		LOG.fine("Permission requested : " + p.toString());
+		LogUtil.fine(LOG, "Permission requested : ", p);
 		this.scope = p;
 	}
 
@@ -202,7 +203,7 @@ public class GenericOAuth1Provider extends AbstractProvider {
 					"Please call verifyResponse function first to get Access Token");
 		}
 		Response response = null;
-		LOG.fine("Calling URL : " + url);
+		LogUtil.fine(LOG, "Calling URL : ", url);
 		response = authenticationStrategy.executeFeed(url, methodType, params,
 				headerParams, body);
 		return response;
@@ -46,6 +46,7 @@ import org.brickred.socialauth.oauthstrategy.OAuth2;
 import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.Response;
 
@@ -53,7 +54,7 @@ public class GenericOAuth2Provider extends AbstractProvider implements
 		AuthProvider, Serializable {
 
 	private static final long serialVersionUID = 1L;
-	private final Logger LOG = Logger.getLogger(GenericOAuth2Provider.class.getName());
+	private static final Logger LOG = Logger.getLogger(GenericOAuth2Provider.class.getName());
 	private Permission scope;
 	private OAuthConfig config;
 	private AccessGrant accessGrant;
@@ -85,7 +86,7 @@ public class GenericOAuth2Provider extends AbstractProvider implements
 	 * @throws AccessTokenExpireException
 	 */
 	@Override
-	public void setAccessGrant(final AccessGrant accessGrant)
+	public synchronized void setAccessGrant(final AccessGrant accessGrant)
 			throws AccessTokenExpireException {
 		this.accessGrant = accessGrant;
 		authenticationStrategy.setAccessGrant(accessGrant);
@@ -177,7 +178,7 @@ public class GenericOAuth2Provider extends AbstractProvider implements
 
 	@Override
 	public void setPermission(final Permission p) {
-		LOG.fine("Permission requested : " + p.toString());
+		LogUtil.fine(LOG, "Permission requested : ", p);
 		this.scope = p;
 		authenticationStrategy.setPermission(this.scope);
 		authenticationStrategy.setScope(getScope());
@@ -205,7 +206,7 @@ public class GenericOAuth2Provider extends AbstractProvider implements
 			final Map<String, String> params,
 			final Map<String, String> headerParams, final String body)
 			throws Exception {
-		LOG.info("Calling api function for url	:	" + url);
+		LogUtil.info(LOG, "Calling api function for url	:	", url);
 		Response response = null;
 		try {
 			response = authenticationStrategy.executeFeed(url, methodType,
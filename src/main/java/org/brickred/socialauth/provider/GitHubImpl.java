@@ -26,7 +26,6 @@
 package org.brickred.socialauth.provider;
 
 import java.io.InputStream;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -34,9 +33,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
-import javax.json.Json;
-import javax.json.JsonObject;
-
 import org.brickred.socialauth.AbstractProvider;
 import org.brickred.socialauth.Contact;
 import org.brickred.socialauth.Permission;
@@ -49,6 +45,8 @@ import org.brickred.socialauth.oauthstrategy.OAuth2;
 import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.FieldMapping;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.Response;
@@ -64,7 +62,12 @@ public class GitHubImpl extends AbstractProvider {
 	private static final long serialVersionUID = -3529658778980357392L;
 	private static final String PROFILE_URL = "https://api.github.com/user";
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger LOG = Logger.getLogger(this.getClass().getName());
+	private static final FieldMapping<Profile> PROFILE_MAPPING = FieldMapping
+			.builder(Profile.class).map("id", "validatedId")
+			.map("name", "fullName").map("email", "email")
+			.map("location", "location").map("avatar_url", "profileImageURL")
+			.build();
+	private static final Logger LOG = Logger.getLogger(GitHubImpl.class.getName());
 
 	private Permission scope;
 	private OAuthConfig config;
@@ -150,41 +153,26 @@ public class GitHubImpl extends AbstractProvider {
 	}
 
 	private Profile getProfile() throws Exception {
-		String presp;
-
+		Response response;
 		try {
-			Response response = authenticationStrategy.executeFeed(PROFILE_URL);
-			presp = response.getResponseBodyAsString(Constants.ENCODING);
+			response = authenticationStrategy.executeFeed(PROFILE_URL);
 		} catch (Exception e) {
 			throw new SocialAuthException("Error while getting profile from "
 					+ PROFILE_URL, e);
 		}
 		try {
-			LOG.fine("User Profile : " + presp);
-			JsonObject resp = Json.createReader(new StringReader(presp)).readObject();
-			Profile p = new Profile();
-			p.setValidatedId(resp.getString("id"));
-			if (resp.containsKey("name")) {
-				p.setFullName(resp.getString("name"));
-			}
-			if (resp.containsKey("email")) {
-				String email = resp.getString("email");
-				if (!"null".equals(email)) {
-					p.setEmail(resp.getString("email"));
-				}
-			}
-			if (resp.containsKey("location")) {
-				p.setLocation(resp.getString("location"));
-			}
-			if (resp.containsKey("avatar_url")) {
-				p.setProfileImageURL(resp.getString("avatar_url"));
+			Profile p = PROFILE_MAPPING.readJson(response, new Profile());
+			LogUtil.fine(LOG, "User Profile : ", p);
+			if (p.getValidatedId() == null) {
+				throw new ServerDataException("No id in the user profile");
 			}
 			p.setProviderId(getProviderId());
 			userProfile = p;
 			return p;
 		} catch (Exception ex) {
 			throw new ServerDataException(
-					"Failed to parse the user profile json : " + presp, ex);
+					"Failed to parse the user profile json from " + PROFILE_URL,
+					ex);
 		}
 	}
 
@@ -218,7 +206,7 @@ public class GitHubImpl extends AbstractProvider {
 
 	@Override
 	public void setPermission(final Permission p) {
-		LOG.fine("Permission requested : " + p.toString());
+		LogUtil.fine(LOG, "Permission requested : ", p);
 		this.scope = p;
 		authenticationStrategy.setPermission(this.scope);
 		authenticationStrategy.setScope(getScope());
@@ -229,7 +217,7 @@ public class GitHubImpl extends AbstractProvider {
 			final Map<String, String> params,
 			final Map<String, String> headerParams, final String body)
 			throws Exception {
-		LOG.info("Calling api function for url	:	" + url);
+		LogUtil.info(LOG, "Calling api function for url	:	", url);
 		Response response = null;
 		try {
 			response = authenticationStrategy.executeFeed(url, methodType,
@@ -252,7 +240,7 @@ public class GitHubImpl extends AbstractProvider {
 	}
 
 	@Override
-	public void setAccessGrant(final AccessGrant accessGrant)
+	public synchronized void setAccessGrant(final AccessGrant accessGrant)
 			throws AccessTokenExpireException, SocialAuthException {
 		this.accessGrant = accessGrant;
 		authenticationStrategy.setAccessGrant(accessGrant);
@@ -36,6 +36,7 @@ import java.util.logging.Logger;
 
 import org.brickred.socialauth.AbstractProvider;
 import org.brickred.socialauth.Contact;
+import org.brickred.socialauth.ContactStream;
 import org.brickred.socialauth.Permission;
 import org.brickred.socialauth.Profile;
 import org.brickred.socialauth.exception.AccessTokenExpireException;
@@ -46,13 +47,13 @@ import org.brickred.socialauth.oauthstrategy.Hybrid;
 import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.OpenIdConsumer;
 import org.brickred.socialauth.util.Response;
-import org.brickred.socialauth.util.XMLParseUtil;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import org.brickred.socialauth.util.XMLStreamUtil;
+import org.brickred.socialauth.util.XMLStreamUtil.XMLRecord;
 
 /**
  * Provider implementation for Google. Now google supports OAuth2.0 protocol, so
@@ -70,9 +71,12 @@ public class GoogleImpl extends AbstractProvider {
 	private static final long serialVersionUID = -6075582192266022341L;
 	private static final String OAUTH_SCOPE = "https://www.google.com/m8/feeds/";
 	private static final String CONTACTS_FEED_URL = "https://www.google.com/m8/feeds/contacts/default/full/?max-results=1000";
+	private static final String CONTACTS_PAGE_URL = "https://www.google.com/m8/feeds/contacts/default/full/?start-index=%1$d&max-results=%2$d";
+	private static final int CONTACTS_PAGE_SIZE = 250;
 	private static final String CONTACT_NAMESPACE = "http://schemas.google.com/g/2005";
+	private static final String[] CONTACT_FIELDS = { "email", "title", "id" };
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger LOG = Logger.getLogger(GoogleImpl.class.getName());
+	private static final Logger LOG = Logger.getLogger(GoogleImpl.class.getName());
 
 	private Permission scope;
 	private AccessGrant accessToken;
@@ -131,7 +135,7 @@ public class GoogleImpl extends AbstractProvider {
 	 * @throws AccessTokenExpireException
 	 */
 	@Override
-	public void setAccessGrant(final AccessGrant accessGrant)
+	public synchronized void setAccessGrant(final AccessGrant accessGrant)
 			throws AccessTokenExpireException {
 		this.accessToken = accessGrant;
 		authenticationStrategy.setAccessGrant(accessGrant);
@@ -147,7 +151,7 @@ public class GoogleImpl extends AbstractProvider {
 	@Override
 	public String getLoginRedirectURL(final String successUrl) throws Exception {
 		String url = authenticationStrategy.getLoginRedirectURL(successUrl);
-		LOG.info("Redirection to following URL should happen : " + url);
+		LogUtil.info(LOG, "Redirection to following URL should happen : ", url);
 		return url;
 
 	}
@@ -183,7 +187,7 @@ public class GoogleImpl extends AbstractProvider {
 	private Profile getProfile(final Map<String, String> requestParams) {
 		userProfile = OpenIdConsumer.getUserInfo(requestParams);
 		userProfile.setProviderId(getProviderId());
-		LOG.fine("User Info : " + userProfile.toString());
+		LogUtil.fine(LOG, "User Info : ", userProfile);
 		return userProfile;
 	}
 
@@ -204,7 +208,7 @@ public class GoogleImpl extends AbstractProvider {
 	 */
 	@Override
 	public List<Contact> getContactList() throws Exception {
-		LOG.info("Fetching contacts from " + CONTACTS_FEED_URL);
+		LogUtil.info(LOG, "Fetching contacts from ", CONTACTS_FEED_URL);
 		if (Permission.AUTHENTICATE_ONLY.equals(this.scope)) {
 			throw new SocialAuthException(
 					"You have not set Permission to get contacts.");
@@ -219,76 +223,130 @@ public class GoogleImpl extends AbstractProvider {
 					ie);
 		}
 		List<Contact> plist = new ArrayList<Contact>();
-		Element root;
+		readContacts(serviceResponse, CONTACTS_FEED_URL, plist);
+		return plist;
+	}
 
+	/**
+	 * Gets the contacts of the user lazily, using the start-index and
+	 * max-results parameters of the contacts feed.
+	 * 
+	 * @return ContactStream over the contacts of the user
+	 */
+	@Override
+	public ContactStream getContactStream() throws Exception {
+		if (Permission.AUTHENTICATE_ONLY.equals(this.scope)) {
+			throw new SocialAuthException(
+					"You have not set Permission to get contacts.");
+		}
+		return new ContactStream() {
+			private int startIndex = 1;
+			private boolean last;
+
+			@Override
+			protected List<Contact> fetchNextPage() throws Exception {
+				if (last) {
+					return null;
+				}
+				String url = String.format(CONTACTS_PAGE_URL, startIndex,
+						CONTACTS_PAGE_SIZE);
+				LogUtil.info(LOG, "Fetching contacts from ", url);
+				Response serviceResponse;
+				try {
+					serviceResponse = authenticationStrategy.executeFeed(url);
+				} catch (Exception ie) {
+					throw new SocialAuthException(
+							"Failed to retrieve the contacts from " + url, ie);
+				}
+				List<Contact> page = new ArrayList<Contact>();
+				int entries = readContacts(serviceResponse, url, page);
+				startIndex += entries;
+				last = entries < CONTACTS_PAGE_SIZE;
+				return page;
+			}
+		};
+	}
+
+	/**
+	 * Reads the contacts of a feed response.
+	 * 
+	 * @return the number of entries of the feed
+	 */
+	private int readContacts(final Response serviceResponse, final String url,
+			final List<Contact> plist) throws Exception {
+		int count;
 		try {
-			root = XMLParseUtil.loadXmlResource(serviceResponse
-					.getInputStream());
+			count = XMLStreamUtil.streamElements(serviceResponse, "entry",
+					CONTACT_FIELDS, new XMLStreamUtil.ElementHandler() {
+						@Override
+						public void handle(final XMLRecord element) {
+							Contact p = toContact(element);
+							if (p != null) {
+								plist.add(p);
+							}
+						}
+					});
 		} catch (Exception e) {
 			throw new ServerDataException(
-					"Failed to parse the contacts from response."
-							+ CONTACTS_FEED_URL, e);
+					"Failed to parse the contacts from response." + url, e);
 		}
-		NodeList contactsList = root.getElementsByTagName("entry");
-		if (contactsList != null && contactsList.getLength() > 0) {
-			LOG.fine("Found contacts : " + contactsList.getLength());
-			for (int i = 0; i < contactsList.getLength(); i++) {
-				Element contact = (Element) contactsList.item(i);
-				String fname = "";
-				NodeList l = contact.getElementsByTagNameNS(CONTACT_NAMESPACE,
-						"email");
-				String address = null;
-				String emailArr[] = null;
-				if (l != null && l.getLength() > 0) {
-					Element el = (Element) l.item(0);
-					if (el != null) {
-						address = el.getAttribute("address");
-					}
-					if (l.getLength() > 1) {
-						emailArr = new String[l.getLength() - 1];
-						for (int k = 1; k < l.getLength(); k++) {
-							Element e = (Element) l.item(k);
-							if (e != null) {
-								emailArr[k - 1] = e.getAttribute("address");
-							}
-						}
-					}
+		if (count > 0) {
+			LogUtil.fine(LOG, "Found contacts : ", count);
+		} else {
+			LogUtil.fine(LOG, "No contacts were obtained from the feed : ",
+					url);
+		}
+		return count;
+	}
+
+	/**
+	 * Maps a contacts feed entry, null if it has no email.
+	 */
+	private static Contact toContact(final XMLRecord contact) {
+		String address = null;
+		String emailArr[] = null;
+		List<String> emails = new ArrayList<String>();
+		for (XMLRecord el : contact.getElements("email")) {
+			if (CONTACT_NAMESPACE.equals(el.getNamespace())) {
+				emails.add(el.getAttribute("address"));
+			}
+		}
+		if (!emails.isEmpty()) {
+			address = emails.get(0);
+			if (emails.size() > 1) {
+				emailArr = emails.subList(1, emails.size()).toArray(
+						new String[emails.size() - 1]);
+			}
+		}
+		if (address == null || address.length() == 0) {
+			return null;
+		}
+		String fname = "";
+		String lname = "";
+		String dispName = contact.getElementData("title");
+		if (dispName != null) {
+			String sarr[] = dispName.split(" ");
+			if (sarr.length > 0) {
+				if (sarr.length >= 1) {
+					fname = sarr[0];
 				}
-				String lname = "";
-				String dispName = XMLParseUtil.getElementData(contact, "title");
-				if (dispName != null) {
-					String sarr[] = dispName.split(" ");
-					if (sarr.length > 0) {
-						if (sarr.length >= 1) {
-							fname = sarr[0];
-						}
-						if (sarr.length >= 2) {
-							StringBuilder sb = new StringBuilder();
-							for (int k = 1; k < sarr.length; k++) {
-								sb.append(sarr[k]).append(" ");
-							}
-							lname = sb.toString();
-						}
+				if (sarr.length >= 2) {
+					StringBuilder sb = new StringBuilder();
+					for (int k = 1; k < sarr.length; k++) {
+						sb.append(sarr[k]).append(" ");
 					}
-				}
-				String id = XMLParseUtil.getElementData(contact, "id");
-
-				if (address != null && address.length() > 0) {
-					Contact p = new Contact();
-					p.setFirstName(fname);
-					p.setLastName(lname);
-					p.setEmail(address);
-					p.setDisplayName(dispName);
-					p.setOtherEmails(emailArr);
-					p.setId(id);
-					plist.add(p);
+					lname = sb.toString();
 				}
 			}
-		} else {
-			LOG.fine("No contacts were obtained from the feed : "
-					+ CONTACTS_FEED_URL);
 		}
-		return plist;
+		Contact p = new Contact();
+		p.setFirstName(fname);
+		p.setLastName(lname);
+		p.setEmail(address);
+		p.setDisplayName(dispName);
+		p.setOtherEmails(emailArr);
+		p.setId(contact.getElementData("id"));
+		return p;
 	}
 
 	/**
@@ -308,7 +366,7 @@ public class GoogleImpl extends AbstractProvider {
 	 */
 	@Override
 	public void setPermission(final Permission p) {
-		LOG.fine("Permission requested : " + p.toString());
+		LogUtil.fine(LOG, "Permission requested : ", p);
 		this.scope = p;
 		authenticationStrategy.setPermission(scope);
 		authenticationStrategy.setScope(getScope());
@@ -342,7 +400,7 @@ public class GoogleImpl extends AbstractProvider {
 			throw new SocialAuthException(
 					"Only GET method is implemented in Google API function");
 		}
-		LOG.fine("Calling URL : " + url);
+		LogUtil.fine(LOG, "Calling URL : ", url);
 		try {
 			serviceResponse = authenticationStrategy.executeFeed(url,
 					methodType, params, headerParams, body);
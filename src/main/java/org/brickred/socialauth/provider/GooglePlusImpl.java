@@ -26,7 +26,6 @@
 package org.brickred.socialauth.provider;
 
 import java.io.InputStream;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -34,9 +33,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
-import javax.json.Json;
-import javax.json.JsonObject;
-
 import org.brickred.socialauth.AbstractProvider;
 import org.brickred.socialauth.Contact;
 import org.brickred.socialauth.Permission;
@@ -49,12 +45,13 @@ import org.brickred.socialauth.oauthstrategy.OAuth2;
 import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.FieldMapping;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.Response;
-import org.brickred.socialauth.util.XMLParseUtil;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import org.brickred.socialauth.util.XMLStreamUtil;
+import org.brickred.socialauth.util.XMLStreamUtil.XMLRecord;
 
 /**
  * Provider implementation for GooglePlus. Now google supports OAuth2.0
@@ -72,8 +69,14 @@ public class GooglePlusImpl extends AbstractProvider {
 	private static final String PROFILE_URL = "https://www.googleapis.com/oauth2/v1/userinfo";
 	private static final String CONTACTS_FEED_URL = "https://www.google.com/m8/feeds/contacts/default/full/?max-results=1000";
 	private static final String CONTACT_NAMESPACE = "http://schemas.google.com/g/2005";
+	private static final String[] CONTACT_FIELDS = { "email", "title", "id" };
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger LOG = Logger.getLogger(GooglePlusImpl.class.getName());
+	private static final FieldMapping<Profile> PROFILE_MAPPING = FieldMapping
+			.builder(Profile.class).map("id", "validatedId")
+			.map("name", "fullName").map("given_name", "firstName")
+			.map("family_name", "lastName").map("email", "email")
+			.map("gender", "gender").map("picture", "profileImageURL").build();
+	private static final Logger LOG = Logger.getLogger(GooglePlusImpl.class.getName());
 
 	private Permission scope;
 	private OAuthConfig config;
@@ -144,7 +147,7 @@ public class GooglePlusImpl extends AbstractProvider {
 	 * @throws AccessTokenExpireException
 	 */
 	@Override
-	public void setAccessGrant(final AccessGrant accessGrant)
+	public synchronized void setAccessGrant(final AccessGrant accessGrant)
 			throws AccessTokenExpireException {
 		this.accessGrant = accessGrant;
 		authenticationStrategy.setAccessGrant(accessGrant);
@@ -197,49 +200,26 @@ public class GooglePlusImpl extends AbstractProvider {
 	}
 
 	private Profile getProfile() throws Exception {
-		String presp;
-
+		Response response;
 		try {
-			Response response = authenticationStrategy.executeFeed(PROFILE_URL);
-			presp = response.getResponseBodyAsString(Constants.ENCODING);
+			response = authenticationStrategy.executeFeed(PROFILE_URL);
 		} catch (Exception e) {
 			throw new SocialAuthException("Error while getting profile from "
 					+ PROFILE_URL, e);
 		}
 		try {
-			LOG.fine("User Profile : " + presp);
-			JsonObject resp = Json.createReader(new StringReader(presp)).readObject();
-			Profile p = new Profile();
-			p.setValidatedId(resp.getString("id"));
-			if (resp.containsKey("name")) {
-				p.setFullName(resp.getString("name"));
-			}
-			if (resp.containsKey("given_name")) {
-				p.setFirstName(resp.getString("given_name"));
-			}
-			if (resp.containsKey("family_name")) {
-				p.setLastName(resp.getString("family_name"));
-			}
-			if (resp.containsKey("email")) {
-				p.setEmail(resp.getString("email"));
+			Profile p = PROFILE_MAPPING.readJson(response, new Profile());
+			LogUtil.fine(LOG, "User Profile : ", p);
+			if (p.getValidatedId() == null) {
+				throw new ServerDataException("No id in the user profile");
 			}
-			if (resp.containsKey("gender")) {
-				p.setGender(resp.getString("gender"));
-			}
-			if (resp.containsKey("picture")) {
-				p.setProfileImageURL(resp.getString("picture"));
-			}
-			if (resp.containsKey("id")) {
-				p.setValidatedId(resp.getString("id"));
-			}
-
 			p.setProviderId(getProviderId());
 			userProfile = p;
 			return p;
-
 		} catch (Exception ex) {
 			throw new ServerDataException(
-					"Failed to parse the user profile json : " + presp, ex);
+					"Failed to parse the user profile json from " + PROFILE_URL,
+					ex);
 		}
 	}
 
@@ -261,7 +241,7 @@ public class GooglePlusImpl extends AbstractProvider {
 
 	@Override
 	public List<Contact> getContactList() throws Exception {
-		LOG.info("Fetching contacts from " + CONTACTS_FEED_URL);
+		LogUtil.info(LOG, "Fetching contacts from ", CONTACTS_FEED_URL);
 		if (Permission.AUTHENTICATE_ONLY.equals(this.scope)) {
 			throw new SocialAuthException(
 					"You have not set Permission to get contacts.");
@@ -277,77 +257,80 @@ public class GooglePlusImpl extends AbstractProvider {
 					"Failed to retrieve the contacts from " + CONTACTS_FEED_URL,
 					ie);
 		}
-		List<Contact> plist = new ArrayList<Contact>();
-		Element root;
-
+		final List<Contact> plist = new ArrayList<Contact>();
+		int count;
 		try {
-			root = XMLParseUtil.loadXmlResource(serviceResponse
-					.getInputStream());
+			count = XMLStreamUtil.streamElements(serviceResponse, "entry",
+					CONTACT_FIELDS, new XMLStreamUtil.ElementHandler() {
+						@Override
+						public void handle(final XMLRecord element) {
+							Contact p = toContact(element);
+							if (p != null) {
+								plist.add(p);
+							}
+						}
+					});
 		} catch (Exception e) {
 			throw new ServerDataException(
-					"Failed to parse the contacts from response."
-							+ CONTACTS_FEED_URL, e);
+					"Failed to parse the contacts from response." + CONTACTS_FEED_URL, e);
 		}
-		NodeList contactsList = root.getElementsByTagName("entry");
-		if (contactsList != null && contactsList.getLength() > 0) {
-			LOG.fine("Found contacts : " + contactsList.getLength());
-			for (int i = 0; i < contactsList.getLength(); i++) {
-				Element contact = (Element) contactsList.item(i);
-				String fname = "";
-				NodeList l = contact.getElementsByTagNameNS(CONTACT_NAMESPACE,
-						"email");
-				String address = null;
-				String emailArr[] = null;
-				if (l != null && l.getLength() > 0) {
-					Element el = (Element) l.item(0);
-					if (el != null) {
-						address = el.getAttribute("address");
-					}
-					if (l.getLength() > 1) {
-						emailArr = new String[l.getLength() - 1];
-						for (int k = 1; k < l.getLength(); k++) {
-							Element e = (Element) l.item(k);
-							if (e != null) {
-								emailArr[k - 1] = e.getAttribute("address");
-							}
-						}
-					}
+		if (count > 0) {
+			LogUtil.fine(LOG, "Found contacts : ", count);
+		} else {
+			LogUtil.fine(LOG, "No contacts were obtained from the feed : ",
+					CONTACTS_FEED_URL);
+		}
+		return plist;
+	}
+
+	/**
+	 * Maps a contacts feed entry, null if it has no email.
+	 */
+	private static Contact toContact(final XMLRecord contact) {
+		String address = null;
+		String emailArr[] = null;
+		List<String> emails = new ArrayList<String>();
+		for (XMLRecord el : contact.getElements("email")) {
+			if (CONTACT_NAMESPACE.equals(el.getNamespace())) {
+				emails.add(el.getAttribute("address"));
+			}
+		}
+		if (!emails.isEmpty()) {
+			address = emails.get(0);
+			if (emails.size() > 1) {
+				emailArr = emails.subList(1, emails.size()).toArray(
+						new String[emails.size() - 1]);
+			}
+		}
+		if (address == null || address.length() == 0) {
+			return null;
+		}
+		String fname = "";
+		String lname = "";
+		String dispName = contact.getElementData("title");
+		if (dispName != null) {
+			String sarr[] = dispName.split(" ");
+			if (sarr.length > 0) {
+				if (sarr.length >= 1) {
+					fname = sarr[0];
 				}
-				String lname = "";
-				String dispName = XMLParseUtil.getElementData(contact, "title");
-				if (dispName != null) {
-					String sarr[] = dispName.split(" ");
-					if (sarr.length > 0) {
-						if (sarr.length >= 1) {
-							fname = sarr[0];
-						}
-						if (sarr.length >= 2) {
-							StringBuilder sb = new StringBuilder();
-							for (int k = 1; k < sarr.length; k++) {
-								sb.append(sarr[k]).append(" ");
-							}
-							lname = sb.toString();
-						}
+				if (sarr.length >= 2) {
+					StringBuilder sb = new StringBuilder();
+					for (int k = 1; k < sarr.length; k++) {
+						sb.append(sarr[k]).append(" ");
 					}
-				}
-				String id = XMLParseUtil.getElementData(contact, "id");
-
-				if (address != null && address.length() > 0) {
-					Contact p = new Contact();
-					p.setFirstName(fname);
-					p.setLastName(lname);
-					p.setEmail(address);
-					p.setDisplayName(dispName);
-					p.setOtherEmails(emailArr);
-					p.setId(id);
-					plist.add(p);
+					lname = sb.toString();
 				}
 			}
-		} else {
-			LOG.fine("No contacts were obtained from the feed : "
-					+ CONTACTS_FEED_URL);
 		}
-		return plist;
+		Contact p = new Contact();
+		p.setFirstName(fname);
+		p.setLastName(lname);
+		p.setEmail(address);
+		p.setDisplayName(dispName);
+		p.setOtherEmails(emailArr);
+		p.setId(contact.getElementData("id"));
+		return p;
 	}
 
 	/**
@@ -367,7 +350,7 @@ public class GooglePlusImpl extends AbstractProvider {
 	 */
 	@Override
 	public void setPermission(final Permission p) {
-		LOG.fine("Permission requested : " + p.toString());
+		LogUtil.fine(LOG, "Permission requested : ", p);
 		this.scope = p;
 		authenticationStrategy.setPermission(this.scope);
 		authenticationStrategy.setScope(getScope());
@@ -394,7 +377,7 @@ public class GooglePlusImpl extends AbstractProvider {
 			final Map<String, String> params,
 			final Map<String, String> headerParams, final String body)
 			throws Exception {
-		LOG.info("Calling api function for url	:	" + url);
+		LogUtil.info(LOG, "Calling api function for url	:	", url);
 		Response response = null;
 		try {
 			response = authenticationStrategy.executeFeed(url, methodType,
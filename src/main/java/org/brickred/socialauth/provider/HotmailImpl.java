@@ -26,16 +26,14 @@
 package org.brickred.socialauth.provider;
 
 import java.io.InputStream;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.json.Json;
-import javax.json.JsonArray;
 import javax.json.JsonObject;
 
 import org.brickred.socialauth.AbstractProvider;
@@ -51,6 +49,9 @@ import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.BirthDate;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.FieldMapping;
+import org.brickred.socialauth.util.JsonStreamUtil;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.Response;
@@ -73,7 +74,46 @@ public class HotmailImpl extends AbstractProvider {
 	private static final String UPDATE_STATUS_URL = "https://apis.live.net/v5.0/me/share";
 	private static final String PROFILE_PICTURE_URL = "https://apis.live.net/v5.0/me/picture?access_token=%1$s";
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger LOG = Logger.getLogger(HotmailImpl.class.getName());
+	/** The emails come in order preferred, account, personal. */
+	private static final FieldMapping.Setter<Profile> EMAIL_SETTER = new FieldMapping.Setter<Profile>() {
+		@Override
+		public void set(final Profile p, final String email) {
+			if (!email.isEmpty()
+					&& (p.getEmail() == null || p.getEmail().isEmpty())) {
+				p.setEmail(email);
+			}
+		}
+	};
+	private static final FieldMapping<Profile> PROFILE_MAPPING = FieldMapping
+			.builder(Profile.class).map("id", "validatedId")
+			.map("name", "fullName").map("first_name", "firstName")
+			.map("last_name", "lastName").map("Location", "location")
+			.map("gender", "gender")
+			.map("ThumbnailImageLink", "profileImageURL")
+			.map("birth_day", new FieldMapping.Setter<Profile>() {
+				@Override
+				public void set(final Profile p, final String day) {
+					getDob(p).setDay(Integer.parseInt(day));
+				}
+			}).map("birth_month", new FieldMapping.Setter<Profile>() {
+				@Override
+				public void set(final Profile p, final String month) {
+					getDob(p).setMonth(Integer.parseInt(month));
+				}
+			}).map("birth_year", new FieldMapping.Setter<Profile>() {
+				@Override
+				public void set(final Profile p, final String year) {
+					getDob(p).setYear(Integer.parseInt(year));
+				}
+			}).map("emails.preferred", EMAIL_SETTER)
+			.map("emails.account", EMAIL_SETTER)
+			.map("emails.personal", EMAIL_SETTER).map("locale", "language")
+			.build();
+	private static final FieldMapping<Contact> CONTACT_MAPPING = FieldMapping
+			.builder(Contact.class).map("email_hashes.0", "emailHash")
+			.map("name", "displayName").map("first_name", "firstName")
+			.map("last_name", "lastName").map("id", "id").build();
+	private static final Logger LOG = Logger.getLogger(HotmailImpl.class.getName());
 
 	private Permission scope;
 	private boolean isVerify;
@@ -137,7 +177,7 @@ public class HotmailImpl extends AbstractProvider {
 	 * @throws AccessTokenExpireException
 	 */
 	@Override
-	public void setAccessGrant(final AccessGrant accessGrant)
+	public synchronized void setAccessGrant(final AccessGrant accessGrant)
 			throws AccessTokenExpireException {
 		this.accessGrant = accessGrant;
 		scope = accessGrant.getPermission();
@@ -208,7 +248,7 @@ public class HotmailImpl extends AbstractProvider {
 			throw new SocialAuthException(
 					"You have not set permission to get contacts");
 		}
-		LOG.info("Fetching contacts from " + CONTACTS_URL);
+		LogUtil.info(LOG, "Fetching contacts from ", CONTACTS_URL);
 		return getContacts(CONTACTS_URL);
 	}
 
@@ -224,48 +264,28 @@ public class HotmailImpl extends AbstractProvider {
 			throw new SocialAuthException("Error while getting contacts from "
 					+ url + "Status : " + serviceResponse.getStatus());
 		}
-		String result;
+		final List<Contact> plist = new ArrayList<Contact>();
 		try {
-			result = serviceResponse
-					.getResponseBodyAsString(Constants.ENCODING);
+			JsonStreamUtil.streamArray(serviceResponse,
+					new JsonStreamUtil.ElementHandler() {
+						@Override
+						public void handle(final JsonObject obj)
+								throws Exception {
+							plist.add(toContact(obj));
+						}
+					}, "data");
 		} catch (Exception e) {
 			throw new ServerDataException("Failed to get response from " + url,
 					e);
 		}
-		LOG.fine("User Contacts list in JSON " + result);
-		JsonObject resp = Json.createReader(new StringReader(result)).readObject();
-		List<Contact> plist = new ArrayList<Contact>();
-		if (resp.containsKey("data")) {
-			JsonArray addArr = resp.getJsonArray("data");
-			LOG.fine("Contacts Found : " + addArr.size());
-			for (int i = 0; i < addArr.size(); i++) {
-				JsonObject obj = addArr.getJsonObject(i);
-				Contact p = new Contact();
-				if (obj.containsKey("email_hashes")) {
-					JsonArray emailArr = obj.getJsonArray("email_hashes");
-					if (emailArr.size() > 0) {
-						p.setEmailHash(emailArr.getString(0));
-					}
-				}
-				if (obj.containsKey("name")) {
-					p.setDisplayName(obj.getString("name"));
-				}
-				if (obj.containsKey("first_name")) {
-					p.setFirstName(obj.getString("first_name"));
-				}
-				if (obj.containsKey("last_name")) {
-					p.setLastName(obj.getString("last_name"));
-				}
-				if (obj.containsKey("id")) {
-					p.setId(obj.getString("id"));
-				}
-				plist.add(p);
-			}
-		}
-		serviceResponse.close();
+		LogUtil.fine(LOG, "Contacts Found : ", plist.size());
 		return plist;
 	}
 
+	private Contact toContact(final JsonObject obj) throws Exception {
+		return CONTACT_MAPPING.apply(obj, new Contact());
+	}
+
 	/**
 	 * Updates the status on the chosen provider if available. This may not be
 	 * implemented for all providers.
@@ -276,7 +296,7 @@ public class HotmailImpl extends AbstractProvider {
 	 */
 	@Override
 	public Response updateStatus(final String msg) throws Exception {
-		LOG.info("Updating status : " + msg);
+		LogUtil.info(LOG, "Updating status : ", msg);
 		if (!isVerify) {
 			throw new SocialAuthException(
 					"Please call verifyResponse function first to get Access Token");
@@ -294,7 +314,7 @@ public class HotmailImpl extends AbstractProvider {
 				MethodType.POST.toString(), null, headerParam, body);
 
 		int code = serviceResponse.getStatus();
-		LOG.fine("Status updated and return status code is :" + code);
+		LogUtil.fine(LOG, "Status updated and return status code is :", code);
 		// return 201
 		return serviceResponse;
 	}
@@ -309,7 +329,6 @@ public class HotmailImpl extends AbstractProvider {
 	}
 
 	private Profile getProfile() throws Exception {
-		Profile p = new Profile();
 		Response serviceResponse;
 		try {
 			serviceResponse = authenticationStrategy.executeFeed(PROFILE_URL);
@@ -319,70 +338,12 @@ public class HotmailImpl extends AbstractProvider {
 					e);
 		}
 
-		String result;
-		try {
-			result = serviceResponse
-					.getResponseBodyAsString(Constants.ENCODING);
-			LOG.fine("User Profile :" + result);
-		} catch (Exception e) {
-			throw new SocialAuthException("Failed to read response from  "
-					+ PROFILE_URL, e);
-		}
 		try {
-			JsonObject resp = Json.createReader(new StringReader(result)).readObject();
-			if (resp.containsKey("id")) {
-				p.setValidatedId(resp.getString("id"));
-			}
-			if (resp.containsKey("name")) {
-				p.setFullName(resp.getString("name"));
-			}
-			if (resp.containsKey("first_name")&&!resp.isNull("first_name")) {
-				p.setFirstName(resp.getString("first_name"));
-			}
-			if (resp.containsKey("last_name")&&!resp.isNull("last_name")) {
-				p.setLastName(resp.getString("last_name"));
+			Profile p = PROFILE_MAPPING.readJson(serviceResponse, new Profile());
+			LogUtil.fine(LOG, "User Profile :", p);
+			if (p.getValidatedId() == null) {
+				throw new ServerDataException("No id in the user profile");
 			}
-			if (resp.containsKey("Location")&&!resp.isNull("Location")) {
-				p.setLocation(resp.getString("Location"));
-			}
-			if (resp.containsKey("gender")&&!resp.isNull("gender")) {
-				p.setGender(resp.getString("gender"));
-			}
-			if (resp.containsKey("ThumbnailImageLink")&&!resp.isNull("ThumbnailImageLink")) {
-				p.setProfileImageURL(resp.getString("ThumbnailImageLink"));
-			}
-
-			if (resp.containsKey("birth_day") && !resp.isNull("birth_day")) {
-				BirthDate bd = new BirthDate();
-				bd.setDay(resp.getInt("birth_day"));
-				if (resp.containsKey("birth_month") && !resp.isNull("birth_month")) {
-					bd.setMonth(resp.getInt("birth_month"));
-				}
-				if (resp.containsKey("birth_year") && !resp.isNull("birth_year")) {
-					bd.setYear(resp.getInt("birth_year"));
-				}
-				p.setDob(bd);
-			}
-
-			if (resp.containsKey("emails")&&!resp.isNull("emails")) {
-				JsonObject eobj = resp.getJsonObject("emails");
-				String email = null;
-				if (eobj.containsKey("preferred")) {
-					email = eobj.getString("preferred");
-				}
-				if ((email == null || email.isEmpty()) && eobj.containsKey("account")) {
-					email = eobj.getString("account");
-				}
-				if ((email == null || email.isEmpty()) && eobj.containsKey("personal")) {
-					email = eobj.getString("personal");
-				}
-				p.setEmail(email);
-
-			}
-			if (resp.containsKey("locale")&&!resp.isNull("locale")) {
-				p.setLanguage(resp.getString("locale"));
-			}
-			serviceResponse.close();
 			p.setProviderId(getProviderId());
 			String picUrl = String.format(PROFILE_PICTURE_URL,
 					accessGrant.getKey());
@@ -391,10 +352,20 @@ public class HotmailImpl extends AbstractProvider {
 			return p;
 		} catch (Exception e) {
 			throw new SocialAuthException(
-					"Failed to parse the user profile json : " + result, e);
+					"Failed to parse the user profile json from " + PROFILE_URL,
+					e);
 		}
 	}
 
+	private static BirthDate getDob(final Profile p) {
+		BirthDate bd = p.getDob();
+		if (bd == null) {
+			bd = new BirthDate();
+			p.setDob(bd);
+		}
+		return bd;
+	}
+
 	/**
 	 * 
 	 * @param p
@@ -430,7 +401,7 @@ public class HotmailImpl extends AbstractProvider {
 			final Map<String, String> params,
 			final Map<String, String> headerParams, final String body)
 			throws Exception {
-		LOG.fine("Calling URL : " + url);
+		LogUtil.fine(LOG, "Calling URL : ", url);
 		Response serviceResponse;
 		try {
 			serviceResponse = authenticationStrategy.executeFeed(url,
@@ -440,8 +411,10 @@ public class HotmailImpl extends AbstractProvider {
 					"Error while making request to URL : " + url, e);
 		}
 		if (serviceResponse.getStatus() != 200) {
-			LOG.fine("Return statuc for URL " + url + " is "
-					+ serviceResponse.getStatus());
+			if (LOG.isLoggable(Level.FINE)) {
+				LOG.fine(LogUtil.redact("Return statuc for URL " + url + " is "
+						+ serviceResponse.getStatus()));
+			}
 			throw new SocialAuthException("Error while making request to URL :"
 					+ url + "Status : " + serviceResponse.getStatus());
 		}
@@ -27,7 +27,6 @@ Authors: Konstantinos Psychas / National Technical University of Athens
 package org.brickred.socialauth.provider;
 
 import java.io.InputStream;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -35,8 +34,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
-import javax.json.Json;
-import javax.json.JsonArray;
 import javax.json.JsonObject;
 
 import org.brickred.socialauth.AbstractProvider;
@@ -44,12 +41,16 @@ import org.brickred.socialauth.Contact;
 import org.brickred.socialauth.Permission;
 import org.brickred.socialauth.Profile;
 import org.brickred.socialauth.exception.AccessTokenExpireException;
+import org.brickred.socialauth.exception.ServerDataException;
 import org.brickred.socialauth.exception.SocialAuthException;
 import org.brickred.socialauth.exception.UserDeniedPermissionException;
 import org.brickred.socialauth.oauthstrategy.OAuth2;
 import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.FieldMapping;
+import org.brickred.socialauth.util.JsonStreamUtil;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.Response;
@@ -68,7 +69,20 @@ public class InstagramImpl extends AbstractProvider {
 	private static final String CONTACTS_URL = "https://api.instagram.com/v1/users/self/follows";
 	private static final String VIEW_PROFILE_URL = "http://instagram.com/";
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger LOG = Logger.getLogger(InstagramImpl.class.getName());
+	private static final FieldMapping<Profile> PROFILE_MAPPING = FieldMapping
+			.builder(Profile.class).map("data.id", "validatedId")
+			.map("data.full_name", "displayName")
+			.map("data.profile_picture", "profileImageURL").build();
+	private static final FieldMapping<Contact> CONTACT_MAPPING = FieldMapping
+			.builder(Contact.class).map("id", "id")
+			.map("full_name", "displayName")
+			.map("username", new FieldMapping.Setter<Contact>() {
+				@Override
+				public void set(final Contact p, final String username) {
+					p.setProfileUrl(VIEW_PROFILE_URL + username);
+				}
+			}).map("profile_picture", "profileImageURL").build();
+	private static final Logger LOG = Logger.getLogger(InstagramImpl.class.getName());
 
 	private OAuthConfig config;
 	private AccessGrant accessGrant;
@@ -134,7 +148,7 @@ public class InstagramImpl extends AbstractProvider {
 			final Map<String, String> headerParams, final String body)
 			throws Exception {
 
-		LOG.fine("Calling URL : " + url);
+		LogUtil.fine(LOG, "Calling URL : ", url);
 		try {
 			return authenticationStrategy.executeFeed(url, methodType, params,
 					headerParams, body);
@@ -151,7 +165,7 @@ public class InstagramImpl extends AbstractProvider {
 
 	@Override
 	public List<Contact> getContactList() throws Exception {
-		LOG.info("Fetching contacts from " + CONTACTS_URL);
+		LogUtil.info(LOG, "Fetching contacts from ", CONTACTS_URL);
 		Response serviceResponse;
 		try {
 			serviceResponse = authenticationStrategy.executeFeed(CONTACTS_URL);
@@ -165,47 +179,30 @@ public class InstagramImpl extends AbstractProvider {
 					+ CONTACTS_URL + "Status : " + serviceResponse.getStatus());
 		}
 
-		String respStr = serviceResponse
-				.getResponseBodyAsString(Constants.ENCODING);
-		LOG.fine("Contacts JSON string :: " + respStr);
-		List<Contact> plist = new ArrayList<Contact>();
-
-		JsonObject resp = Json.createReader(new StringReader(respStr)).readObject();	
-		if (resp.containsKey("data")) {
-		    JsonArray data = resp.getJsonArray("data");
-			for (int i = 0; i < data.size(); i++) {
-				JsonObject obj = data.getJsonObject(i);
-				Contact p = new Contact();
-				if(obj.containsKey("id"))
-				{
-	                p.setId(obj.getString("id"));
-				}
-				if(obj.containsKey("id"))
-                {
-	                p.setDisplayName(obj.getString("full_name"));
-                }
-				
-				if (p.getDisplayName() != null) {
-					String[] names = p.getDisplayName().split(" ");
-					if (names.length > 1) {
-						p.setFirstName(names[0]);
-						p.setLastName(names[1]);
-					} else {
-						p.setFirstName(p.getDisplayName());
+		final List<Contact> plist = new ArrayList<Contact>();
+		JsonStreamUtil.streamArray(serviceResponse,
+				new JsonStreamUtil.ElementHandler() {
+					@Override
+					public void handle(final JsonObject obj)
+							throws Exception {
+						plist.add(toContact(obj));
 					}
-				}
-				if(obj.containsKey("username"))
-                {
-				    p.setProfileUrl(VIEW_PROFILE_URL + obj.getString("username"));
-                }
-				if(obj.containsKey("profile_picture"))
-                {
-				    p.setProfileImageURL(obj.getString("profile_picture"));
-                }
-				plist.add(p);
+				}, "data");
+		return plist;
+	}
+
+	private Contact toContact(final JsonObject obj) throws Exception {
+		Contact p = CONTACT_MAPPING.apply(obj, new Contact());
+		if (p.getDisplayName() != null) {
+			String[] names = p.getDisplayName().split(" ");
+			if (names.length > 1) {
+				p.setFirstName(names[0]);
+				p.setLastName(names[1]);
+			} else {
+				p.setFirstName(p.getDisplayName());
 			}
 		}
-		return plist;
+		return p;
 	}
 
 	@Override
@@ -239,21 +236,13 @@ public class InstagramImpl extends AbstractProvider {
 					e);
 		}
 
-		if (response.getStatus() == 200) {
-			String respStr = response
-					.getResponseBodyAsString(Constants.ENCODING);
-			LOG.fine("Profile JSON string :: " + respStr);
-			JsonObject obj = Json.createReader(new StringReader(respStr)).readObject();
-			JsonObject data = obj.getJsonObject("data");
-			Profile p = new Profile();
-			if(data.containsKey("id"))
-			{
-			    p.setValidatedId(data.getString("id"));
+		int status = response.getStatus();
+		if (status == 200) {
+			Profile p = PROFILE_MAPPING.readJson(response, new Profile());
+			LogUtil.fine(LOG, "Profile :: ", p);
+			if (p.getValidatedId() == null) {
+				throw new ServerDataException("No id in the user profile");
 			}
-			if(data.containsKey("full_name"))
-            {
-                p.setDisplayName(data.getString("full_name"));
-            }
 			if (p.getDisplayName() != null) {
 				String[] names = p.getDisplayName().split(" ");
 				if (names.length > 1) {
@@ -263,16 +252,13 @@ public class InstagramImpl extends AbstractProvider {
 					p.setFirstName(p.getDisplayName());
 				}
 			}
-			if(data.containsKey("profile_picture"))
-            {
-                p.setProfileImageURL(data.getString("profile_picture"));
-            }
 			p.setProviderId(getProviderId());
 			return p;
 		} else {
+			response.close();
 			throw new SocialAuthException(
 					"Failed to retrieve the user profile from " + PROFILE_URL
-							+ ". Server response " + response.getStatus());
+							+ ". Server response " + status);
 		}
 	}
 
@@ -283,7 +269,7 @@ public class InstagramImpl extends AbstractProvider {
 	}
 
 	@Override
-	public void setAccessGrant(final AccessGrant accessGrant)
+	public synchronized void setAccessGrant(final AccessGrant accessGrant)
 			throws AccessTokenExpireException {
 		this.accessGrant = accessGrant;
 		authenticationStrategy.setAccessGrant(accessGrant);
@@ -291,7 +277,7 @@ public class InstagramImpl extends AbstractProvider {
 
 	@Override
 	public void setPermission(final Permission p) {
-		LOG.fine("Permission requested: " + p.toString());
+		LogUtil.fine(LOG, "Permission requested: ", p);
 		// this.scope = p;
 		authenticationStrategy.setPermission(p);
 		authenticationStrategy.setScope(getScope(p));
@@ -32,6 +32,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.brickred.socialauth.AbstractProvider;
@@ -46,12 +47,13 @@ import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.BirthDate;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.FieldMapping;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.Response;
-import org.brickred.socialauth.util.XMLParseUtil;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import org.brickred.socialauth.util.XMLStreamUtil;
+import org.brickred.socialauth.util.XMLStreamUtil.XMLRecord;
 
 /**
  * Implementation of Linkedin provider. This uses the oAuth API provided by
@@ -66,11 +68,52 @@ public class LinkedInImpl extends AbstractProvider {
 
 	private static final long serialVersionUID = -6141448721085510813L;
 	private static final String CONNECTION_URL = "http://api.linkedin.com/v1/people/~/connections:(id,first-name,last-name,public-profile-url,picture-url)";
+	private static final String[] CONNECTION_FIELDS = { "id", "first-name",
+			"last-name", "public-profile-url", "picture-url" };
 	private static final String UPDATE_STATUS_URL = "http://api.linkedin.com/v1/people/~/shares";
 	private static final String PROFILE_URL = "http://api.linkedin.com/v1/people/~:(id,first-name,last-name,languages,date-of-birth,picture-url,email-address,location:(name),phone-numbers,main-address)";
 	private static final String STATUS_BODY = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><share><comment>%1$s</comment><visibility><code>anyone</code></visibility></share>";
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger LOG = Logger.getLogger(LinkedInImpl.class.getName());
+	private static final FieldMapping<Profile> PROFILE_MAPPING = FieldMapping
+			.builder(Profile.class).map("id", "validatedId")
+			.map("first-name", "firstName").map("last-name", "lastName")
+			.map("date-of-birth.year", new FieldMapping.Setter<Profile>() {
+				@Override
+				public void set(final Profile profile, final String y) {
+					getDob(profile).setYear(Integer.parseInt(y));
+				}
+			}).map("date-of-birth.month", new FieldMapping.Setter<Profile>() {
+				@Override
+				public void set(final Profile profile, final String m) {
+					getDob(profile).setMonth(Integer.parseInt(m));
+				}
+			}).map("date-of-birth.day", new FieldMapping.Setter<Profile>() {
+				@Override
+				public void set(final Profile profile, final String d) {
+					getDob(profile).setDay(Integer.parseInt(d));
+				}
+			}).map("picture-url", "profileImageURL")
+			.map("email-address", "email").map("location.name", "location")
+			.mapXml("phone-numbers", new FieldMapping.XMLSetter<Profile>() {
+				@Override
+				public void set(final Profile profile, final XMLRecord phones) {
+					XMLRecord phoneEl = phones.getElement("phone-number");
+					if (phoneEl == null) {
+						return;
+					}
+					String type = phoneEl.getElementData("phone-type");
+					String phone = phoneEl.getElementData("phone-number");
+					if (type != null && type.length() > 0 && phone != null) {
+						getContactInfo(profile).put(type, phone);
+					}
+				}
+			}).map("main-address", new FieldMapping.Setter<Profile>() {
+				@Override
+				public void set(final Profile profile, final String address) {
+					getContactInfo(profile).put("mainAddress", address);
+				}
+			}).build();
+	private static final Logger LOG = Logger.getLogger(LinkedInImpl.class.getName());
 
 	private Permission scope;
 	private AccessGrant accessToken;
@@ -163,7 +206,7 @@ public class LinkedInImpl extends AbstractProvider {
 	 * @throws AccessTokenExpireException
 	 */
 	@Override
-	public void setAccessGrant(final AccessGrant accessGrant)
+	public synchronized void setAccessGrant(final AccessGrant accessGrant)
 			throws AccessTokenExpireException {
 		this.accessToken = accessGrant;
 		authenticationStrategy.setAccessGrant(accessGrant);
@@ -215,7 +258,7 @@ public class LinkedInImpl extends AbstractProvider {
 
 	@Override
 	public List<Contact> getContactList() throws Exception {
-		LOG.info("Fetching contacts from " + CONNECTION_URL);
+		LogUtil.info(LOG, "Fetching contacts from ", CONNECTION_URL);
 		Response serviceResponse = null;
 		try {
 			serviceResponse = authenticationStrategy
@@ -225,51 +268,49 @@ public class LinkedInImpl extends AbstractProvider {
 					"Failed to retrieve the contacts from " + CONNECTION_URL,
 					ie);
 		}
-		Element root;
+		final List<Contact> contactList = new ArrayList<Contact>();
+		int count;
 		try {
-			root = XMLParseUtil.loadXmlResource(serviceResponse
-					.getInputStream());
+			count = XMLStreamUtil.streamElements(serviceResponse, "person",
+					CONNECTION_FIELDS, new XMLStreamUtil.ElementHandler() {
+						@Override
+						public void handle(final XMLRecord p) {
+							String id = p.getElementData("id");
+							if (id == null) {
+								return;
+							}
+							Contact cont = new Contact();
+							String fname = p.getElementData("first-name");
+							if (fname != null) {
+								cont.setFirstName(fname);
+							}
+							String lname = p.getElementData("last-name");
+							if (lname != null) {
+								cont.setLastName(lname);
+							}
+							String profileUrl = p
+									.getElementData("public-profile-url");
+							if (profileUrl != null) {
+								cont.setProfileUrl(profileUrl);
+							}
+							String pictureUrl = p.getElementData("picture-url");
+							if (pictureUrl != null) {
+								cont.setProfileImageURL(pictureUrl);
+							}
+							cont.setId(id);
+							contactList.add(cont);
+						}
+					});
 		} catch (Exception e) {
 			throw new ServerDataException(
 					"Failed to parse the contacts from response."
 							+ CONNECTION_URL, e);
 		}
-		List<Contact> contactList = new ArrayList<Contact>();
-		if (root != null) {
-			NodeList pList = root.getElementsByTagName("person");
-			if (pList != null && pList.getLength() > 0) {
-				LOG.fine("Found contacts : " + pList.getLength());
-				for (int i = 0; i < pList.getLength(); i++) {
-					Element p = (Element) pList.item(i);
-					String fname = XMLParseUtil.getElementData(p, "first-name");
-					String lname = XMLParseUtil.getElementData(p, "last-name");
-					String id = XMLParseUtil.getElementData(p, "id");
-					String profileUrl = XMLParseUtil.getElementData(p,
-							"public-profile-url");
-					String pictureUrl = XMLParseUtil.getElementData(p,
-							"picture-url");
-					if (id != null) {
-						Contact cont = new Contact();
-						if (fname != null) {
-							cont.setFirstName(fname);
-						}
-						if (lname != null) {
-							cont.setLastName(lname);
-						}
-						if (profileUrl != null) {
-							cont.setProfileUrl(profileUrl);
-						}
-						if (pictureUrl != null) {
-							cont.setProfileImageURL(pictureUrl);
-						}
-						cont.setId(id);
-						contactList.add(cont);
-					}
-				}
-			} else {
-				LOG.fine("No connections were obtained from : "
-						+ CONNECTION_URL);
-			}
+		if (count > 0) {
+			LogUtil.fine(LOG, "Found contacts : ", count);
+		} else {
+			LogUtil.fine(LOG, "No connections were obtained from : ",
+					CONNECTION_URL);
 		}
 		return contactList;
 	}
@@ -286,7 +327,10 @@ public class LinkedInImpl extends AbstractProvider {
 		}
 		// message = URLEncoder.encode(message, Constants.ENCODING);
 		message = message.replace("&", "&amp;");
-		LOG.info("Updating status " + message + " on " + UPDATE_STATUS_URL);
+		if (LOG.isLoggable(Level.INFO)) {
+			LOG.info(LogUtil.redact("Updating status " + message + " on "
+					+ UPDATE_STATUS_URL));
+		}
 		Map<String, String> headerParams = new HashMap<String, String>();
 		headerParams.put("Content-Type", "text/xml;charset=UTF-8");
 		String msgBody = String.format(STATUS_BODY, message);
@@ -299,8 +343,8 @@ public class LinkedInImpl extends AbstractProvider {
 			throw new SocialAuthException("Failed to update status on "
 					+ UPDATE_STATUS_URL, ie);
 		}
-		LOG.fine("Status Updated and return status code is : "
-				+ serviceResponse.getStatus());
+		LogUtil.fine(LOG, "Status Updated and return status code is : ",
+				serviceResponse.getStatus());
 		// return 201
 		return serviceResponse;
 	}
@@ -316,7 +360,6 @@ public class LinkedInImpl extends AbstractProvider {
 
 	private Profile getProfile() throws Exception {
 		LOG.fine("Obtaining user profile");
-		Profile profile = new Profile();
 		Response serviceResponse = null;
 		try {
 			serviceResponse = authenticationStrategy.executeFeed(PROFILE_URL);
@@ -325,92 +368,50 @@ public class LinkedInImpl extends AbstractProvider {
 					"Failed to retrieve the user profile from  " + PROFILE_URL,
 					e);
 		}
-		if (serviceResponse.getStatus() != 200) {
+		int status = serviceResponse.getStatus();
+		if (status != 200) {
+			serviceResponse.close();
 			throw new SocialAuthException(
 					"Failed to retrieve the user profile from  " + PROFILE_URL
-							+ ". Staus :" + serviceResponse.getStatus());
+							+ ". Staus :" + status);
 		}
 
-		Element root;
+		Profile profile;
 		try {
-			root = XMLParseUtil.loadXmlResource(serviceResponse
-					.getInputStream());
+			profile = PROFILE_MAPPING.readXml(serviceResponse, new Profile());
 		} catch (Exception e) {
 			throw new ServerDataException(
 					"Failed to parse the profile from response." + PROFILE_URL,
 					e);
 		}
-
-		if (root != null) {
-			String fname = XMLParseUtil.getElementData(root, "first-name");
-			String lname = XMLParseUtil.getElementData(root, "last-name");
-			NodeList dob = root.getElementsByTagName("date-of-birth");
-			if (dob != null && dob.getLength() > 0) {
-				Element dobel = (Element) dob.item(0);
-				if (dobel != null) {
-					String y = XMLParseUtil.getElementData(dobel, "year");
-					String m = XMLParseUtil.getElementData(dobel, "month");
-					String d = XMLParseUtil.getElementData(dobel, "day");
-					BirthDate bd = new BirthDate();
-					if (m != null) {
-						bd.setMonth(Integer.parseInt(m));
-					}
-					if (d != null) {
-						bd.setDay(Integer.parseInt(d));
-					}
-					if (y != null) {
-						bd.setYear(Integer.parseInt(y));
-					}
-					profile.setDob(bd);
-				}
-			}
-			String picUrl = XMLParseUtil.getElementData(root, "picture-url");
-			String id = XMLParseUtil.getElementData(root, "id");
-			if (picUrl != null) {
-				profile.setProfileImageURL(picUrl);
-			}
-			String email = XMLParseUtil.getElementData(root, "email-address");
-			if (email != null) {
-				profile.setEmail(email);
-			}
-			NodeList location = root.getElementsByTagName("location");
-			if (location != null && location.getLength() > 0) {
-				Element locationEl = (Element) location.item(0);
-				String loc = XMLParseUtil.getElementData(locationEl, "name");
-				if (loc != null) {
-					profile.setLocation(loc);
-				}
-			}
-			Map<String, String> map = new HashMap<String, String>();
-			NodeList phoneNodes = root.getElementsByTagName("phone-number");
-			if (phoneNodes != null && phoneNodes.getLength() > 0) {
-				Element phoneEl = (Element) phoneNodes.item(0);
-				String type = XMLParseUtil
-						.getElementData(phoneEl, "phone-type");
-				String phone = XMLParseUtil.getElementData(phoneEl,
-						"phone-number");
-				if (type != null && type.length() > 0 && phone != null) {
-					map.put(type, phone);
-				}
-			}
-			String mainAddress = XMLParseUtil.getElementData(root,
-					"main-address");
-			if (mainAddress != null) {
-				map.put("mainAddress", mainAddress);
-			}
-			if (map != null && !map.isEmpty()) {
-				profile.setContactInfo(map);
-			}
-			profile.setFirstName(fname);
-			profile.setLastName(lname);
-			profile.setValidatedId(id);
-			profile.setProviderId(getProviderId());
-			LOG.fine("User Profile :" + profile.toString());
-			userProfile = profile;
+		if (profile.getValidatedId() == null) {
+			throw new ServerDataException(
+					"Failed to parse the profile from response." + PROFILE_URL);
 		}
+		profile.setProviderId(getProviderId());
+		LogUtil.fine(LOG, "User Profile :", profile);
+		userProfile = profile;
 		return profile;
 	}
 
+	private static BirthDate getDob(final Profile profile) {
+		BirthDate bd = profile.getDob();
+		if (bd == null) {
+			bd = new BirthDate();
+			profile.setDob(bd);
+		}
+		return bd;
+	}
+
+	private static Map<String, String> getContactInfo(final Profile profile) {
+		Map<String, String> map = profile.getContactInfo();
+		if (map == null) {
+			map = new HashMap<String, String>();
+			profile.setContactInfo(map);
+		}
+		return map;
+	}
+
 	/**
 	 * 
 	 * @param p
@@ -419,7 +420,7 @@ public class LinkedInImpl extends AbstractProvider {
 	 */
 	@Override
 	public void setPermission(final Permission p) {
-		LOG.fine("Permission requested : " + p.toString());
+		LogUtil.fine(LOG, "Permission requested : ", p);
 		this.scope = p;
 		authenticationStrategy.setPermission(this.scope);
 	}
@@ -447,7 +448,7 @@ public class LinkedInImpl extends AbstractProvider {
 			final Map<String, String> params,
 			final Map<String, String> headerParams, final String body)
 			throws Exception {
-		LOG.fine("Calling URL : " + url);
+		LogUtil.fine(LOG, "Calling URL : ", url);
 		return authenticationStrategy.executeFeed(url, methodType, params,
 				headerParams, body);
 	}
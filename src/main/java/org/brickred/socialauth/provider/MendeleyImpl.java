@@ -26,7 +26,6 @@
 package org.brickred.socialauth.provider;
 
 import java.io.InputStream;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -34,8 +33,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
-import javax.json.Json;
-import javax.json.JsonArray;
 import javax.json.JsonObject;
 
 import org.brickred.socialauth.AbstractProvider;
@@ -49,6 +46,9 @@ import org.brickred.socialauth.oauthstrategy.OAuth1;
 import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.FieldMapping;
+import org.brickred.socialauth.util.JsonStreamUtil;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.Response;
 
@@ -65,7 +65,24 @@ public class MendeleyImpl extends AbstractProvider {
 	private static final String PROFILE_URL = "https://api.mendeley.com/oapi/profiles/info/me/";
 	private static final String CONTACTS_URL = "https://api.mendeley.com/oapi/profiles/contacts/";
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger LOG = Logger.getLogger(MendeleyImpl.class.getName());
+	private static final FieldMapping<Profile> PROFILE_MAPPING = FieldMapping
+			.builder(Profile.class).map("main.profile_id", "validatedId")
+			.map("main.name", new FieldMapping.Setter<Profile>() {
+				@Override
+				public void set(final Profile p, final String name) {
+					if (name.trim().length() > 0) {
+						p.setFirstName(name);
+					}
+				}
+			}).map("main.photo", new FieldMapping.Setter<Profile>() {
+				@Override
+				public void set(final Profile p, final String photo) {
+					if (photo.trim().length() > 0) {
+						p.setProfileImageURL(photo);
+					}
+				}
+			}).build();
+	private static final Logger LOG = Logger.getLogger(MendeleyImpl.class.getName());
 
 	private Permission scope;
 	private boolean isVerify;
@@ -128,7 +145,7 @@ public class MendeleyImpl extends AbstractProvider {
 	 * @throws AccessTokenExpireException
 	 */
 	@Override
-	public void setAccessGrant(final AccessGrant accessGrant)
+	public synchronized void setAccessGrant(final AccessGrant accessGrant)
 			throws AccessTokenExpireException {
 		accessToken = accessGrant;
 		isVerify = true;
@@ -173,9 +190,8 @@ public class MendeleyImpl extends AbstractProvider {
 	}
 
 	private Profile getProfile() throws Exception {
-		Profile profile = new Profile();
 		String url = PROFILE_URL;
-		LOG.fine("Obtaining user profile. Profile URL : " + url);
+		LogUtil.fine(LOG, "Obtaining user profile. Profile URL : ", url);
 		Response serviceResponse = null;
 		try {
 			serviceResponse = authenticationStrategy.executeFeed(url);
@@ -183,44 +199,26 @@ public class MendeleyImpl extends AbstractProvider {
 			throw new SocialAuthException(
 					"Failed to retrieve the user profile from  " + url, e);
 		}
-		if (serviceResponse.getStatus() != 200) {
+		int status = serviceResponse.getStatus();
+		if (status != 200) {
+			serviceResponse.close();
 			throw new SocialAuthException(
 					"Failed to retrieve the user profile from  " + url
-							+ ". Staus :" + serviceResponse.getStatus());
-		}
-		String result;
-		try {
-			result = serviceResponse
-					.getResponseBodyAsString(Constants.ENCODING);
-			LOG.fine("User Profile :" + result);
-		} catch (Exception exc) {
-			throw new SocialAuthException("Failed to read response from  "
-					+ url, exc);
+							+ ". Staus :" + status);
 		}
 		try {
-			JsonObject pRes = Json.createReader(new StringReader(result)).readObject();
-			JsonObject pObj = pRes.getJsonObject("main");
-			if (pObj.containsKey("profile_id")) {
-				profile.setValidatedId(pObj.getString("profile_id"));
-			}
-			if (pObj.containsKey("name")) {
-				String name = pObj.getString("name");
-				if (name != null && name.trim().length() > 0) {
-					profile.setFirstName(pObj.getString("name"));
-				}
-			}
-			if (pObj.containsKey("photo")) {
-				String photo = pObj.getString("photo");
-				if (photo != null && photo.trim().length() > 0) {
-					profile.setProfileImageURL(pObj.getString("photo"));
-				}
+			Profile profile = PROFILE_MAPPING.readJson(serviceResponse,
+					new Profile());
+			LogUtil.fine(LOG, "User Profile :", profile);
+			if (profile.getValidatedId() == null) {
+				throw new ServerDataException("No id in the user profile");
 			}
 			profile.setProviderId(getProviderId());
 			userProfile = profile;
 			return profile;
 		} catch (Exception e) {
 			throw new ServerDataException(
-					"Failed to parse the user profile json : " + result, e);
+					"Failed to parse the user profile json from " + url, e);
 
 		}
 	}
@@ -251,8 +249,8 @@ public class MendeleyImpl extends AbstractProvider {
 					"Please call verifyResponse function first to get Access Token");
 		}
 		String url = CONTACTS_URL;
-		List<Contact> plist = new ArrayList<Contact>();
-		LOG.info("Fetching contacts from " + url);
+		final List<Contact> plist = new ArrayList<Contact>();
+		LogUtil.info(LOG, "Fetching contacts from ", url);
 		Response serviceResponse = null;
 		try {
 			serviceResponse = authenticationStrategy.executeFeed(url);
@@ -260,41 +258,39 @@ public class MendeleyImpl extends AbstractProvider {
 			throw new SocialAuthException(
 					"Failed to retrieve the contacts from " + url, ie);
 		}
-		String result;
 		try {
-			result = serviceResponse
-					.getResponseBodyAsString(Constants.ENCODING);
-		} catch (Exception e) {
-			throw new ServerDataException("Failed to get response from " + url);
-		}
-		try {
-			LOG.fine("User Contacts list in json : " + result);
-			JsonArray data = Json.createReader(new StringReader(result)).readArray();;
-			LOG.fine("Found contacts : " + data.size());
-			for (int i = 0; i < data.size(); i++) {
-				JsonObject obj = data.getJsonObject(i);
-				Contact p = new Contact();
-				String name = obj.getString("name");
-				if (name != null) {
-					String nameArr[] = name.split(" ");
-					if (nameArr.length > 1) {
-						p.setFirstName(nameArr[0]);
-						p.setLastName(nameArr[1]);
-					} else {
-						p.setFirstName(obj.getString("name"));
-					}
-					p.setDisplayName(name);
-				}
-				p.setId(obj.getString("profile_id"));
-				plist.add(p);
-			}
+			JsonStreamUtil.streamArray(serviceResponse,
+					new JsonStreamUtil.ElementHandler() {
+						@Override
+						public void handle(final JsonObject obj) {
+							plist.add(toContact(obj));
+						}
+					});
+			LogUtil.fine(LOG, "Found contacts : ", plist.size());
 		} catch (Exception e) {
 			throw new ServerDataException(
-					"Failed to parse the user friends json : " + result, e);
+					"Failed to parse the user friends json from " + url, e);
 		}
 		return plist;
 	}
 
+	private Contact toContact(final JsonObject obj) {
+		Contact p = new Contact();
+		String name = obj.getString("name");
+		if (name != null) {
+			String nameArr[] = name.split(" ");
+			if (nameArr.length > 1) {
+				p.setFirstName(nameArr[0]);
+				p.setLastName(nameArr[1]);
+			} else {
+				p.setFirstName(obj.getString("name"));
+			}
+			p.setDisplayName(name);
+		}
+		p.setId(obj.getString("profile_id"));
+		return p;
+	}
+
 	/**
 	 * Logout
 	 */
@@ -312,7 +308,7 @@ public class MendeleyImpl extends AbstractProvider {
 	 */
 	@Override
 	public void setPermission(final Permission p) {
-		LOG.fine("Permission requested : " + p.toString());
+		LogUtil.fine(LOG, "Permission requested : ", p);
 		this.scope = p;
 	}
 
@@ -344,7 +340,7 @@ public class MendeleyImpl extends AbstractProvider {
 					"Please call verifyResponse function first to get Access Token");
 		}
 		Response response = null;
-		LOG.fine("Calling URL : " + url);
+		LogUtil.fine(LOG, "Calling URL : ", url);
 		response = authenticationStrategy.executeFeed(url, methodType, params,
 				headerParams, body);
 		return response;
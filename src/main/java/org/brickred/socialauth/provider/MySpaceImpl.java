@@ -26,16 +26,14 @@
 package org.brickred.socialauth.provider;
 
 import java.io.InputStream;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.json.Json;
-import javax.json.JsonArray;
 import javax.json.JsonObject;
 
 import org.brickred.socialauth.AbstractProvider;
@@ -50,6 +48,9 @@ import org.brickred.socialauth.oauthstrategy.OAuth1;
 import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.FieldMapping;
+import org.brickred.socialauth.util.JsonStreamUtil;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.Response;
@@ -65,7 +66,28 @@ public class MySpaceImpl extends AbstractProvider {
 	private static final String CONTACTS_URL = "http://api.myspace.com/1.0/people/@me/@all";
 	private static final String UPDATE_STATUS_URL = "http://api.myspace.com/1.0/statusmood/@me/@self";
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger LOG = Logger.getLogger(MySpaceImpl.class.getName());
+	private static final FieldMapping<Profile> PROFILE_MAPPING = FieldMapping
+			.builder(Profile.class)
+			.map("person.displayName", new FieldMapping.Setter<Profile>() {
+				@Override
+				public void set(final Profile p, final String displayName) {
+					// the nickname is preferred
+					if (p.getDisplayName() == null) {
+						p.setDisplayName(displayName);
+					}
+				}
+			}).map("person.nickname", "displayName")
+			.map("person.id", "validatedId")
+			.map("person.name.familyName", "lastName")
+			.map("person.name.givenName", "firstName")
+			.map("person.location", "location").map("person.lang", "language")
+			.map("person.thumbnailUrl", "profileImageURL").build();
+	private static final FieldMapping<Contact> CONTACT_MAPPING = FieldMapping
+			.builder(Contact.class).map("displayName", "displayName")
+			.map("name.familyName", "lastName")
+			.map("name.givenName", "firstName")
+			.map("profileUrl", "profileUrl").map("id", "id").build();
+	private static final Logger LOG = Logger.getLogger(MySpaceImpl.class.getName());
 
 	private Permission scope;
 	private AccessGrant accessToken;
@@ -136,7 +158,7 @@ public class MySpaceImpl extends AbstractProvider {
 	 * @throws AccessTokenExpireException
 	 */
 	@Override
-	public void setAccessGrant(final AccessGrant accessGrant)
+	public synchronized void setAccessGrant(final AccessGrant accessGrant)
 			throws AccessTokenExpireException {
 		accessToken = accessGrant;
 		scope = accessGrant.getPermission();
@@ -197,7 +219,7 @@ public class MySpaceImpl extends AbstractProvider {
 			throw new SocialAuthException(
 					"Please call verifyResponse function first to get Access Token");
 		}
-		LOG.info("Fetching contacts from " + CONTACTS_URL);
+		LogUtil.info(LOG, "Fetching contacts from ", CONTACTS_URL);
 
 		Response serviceResponse = null;
 		try {
@@ -206,54 +228,35 @@ public class MySpaceImpl extends AbstractProvider {
 			throw new SocialAuthException(
 					"Failed to retrieve the contacts from " + CONTACTS_URL, ie);
 		}
-		String result;
+		final List<Contact> plist = new ArrayList<Contact>();
+		JsonObject resObj;
 		try {
-			result = serviceResponse
-					.getResponseBodyAsString(Constants.ENCODING);
-			LOG.fine("Contacts JSON :" + result);
+			resObj = JsonStreamUtil.streamArray(serviceResponse,
+					new JsonStreamUtil.ElementHandler() {
+						@Override
+						public void handle(final JsonObject fObj)
+								throws Exception {
+							if (fObj.containsKey("person")) {
+								plist.add(toContact(fObj
+										.getJsonObject("person")));
+							}
+						}
+					}, "entry");
 		} catch (Exception exc) {
 			throw new SocialAuthException("Failed to read contacts from  "
 					+ CONTACTS_URL, exc);
 		}
-		JsonArray fArr = Json.createArrayBuilder().build();
-		JsonObject resObj = Json.createReader(new StringReader(result)).readObject();
-		if (resObj.containsKey("entry")) {
-			fArr = resObj.getJsonArray("entry");
-		} else {
+		if (!resObj.containsKey("entry")) {
 			throw new ServerDataException(
-					"Failed to parse the user Contacts json : " + result);
-		}
-		List<Contact> plist = new ArrayList<Contact>();
-		for (int i = 0; i < fArr.size(); i++) {
-			JsonObject fObj = fArr.getJsonObject(i);
-			if (fObj.containsKey("person")) {
-				Contact contact = new Contact();
-				JsonObject pObj = fObj.getJsonObject("person");
-				if (pObj.containsKey("displayName")) {
-					contact.setDisplayName(pObj.getString("displayName"));
-				}
-				if (pObj.containsKey("name")) {
-					JsonObject nobj = pObj.getJsonObject("name");
-					if (nobj.containsKey("familyName")) {
-						contact.setLastName(nobj.getString("familyName"));
-					}
-					if (nobj.containsKey("givenName")) {
-						contact.setFirstName(nobj.getString("givenName"));
-					}
-				}
-
-				if (pObj.containsKey("profileUrl")) {
-					contact.setProfileUrl(pObj.getString("profileUrl"));
-				}
-				if (pObj.containsKey("id")) {
-					contact.setId(pObj.getString("id"));
-				}
-				plist.add(contact);
-			}
+					"Failed to parse the user Contacts json : " + resObj);
 		}
 		return plist;
 	}
 
+	private Contact toContact(final JsonObject pObj) throws Exception {
+		return CONTACT_MAPPING.apply(pObj, new Contact());
+	}
+
 	/**
 	 * Updates the status on the chosen provider if available. This may not be
 	 * implemented for all providers.
@@ -267,7 +270,10 @@ public class MySpaceImpl extends AbstractProvider {
 		if (msg == null || msg.trim().length() == 0) {
 			throw new ServerDataException("Status cannot be blank");
 		}
-		LOG.info("Updating status " + msg + " on " + UPDATE_STATUS_URL);
+		if (LOG.isLoggable(Level.INFO)) {
+			LOG.info(LogUtil.redact("Updating status " + msg + " on "
+					+ UPDATE_STATUS_URL));
+		}
 		String msgBody = "{\"status\":\"" + msg + "\"}";
 		Response serviceResponse = null;
 		try {
@@ -278,7 +284,8 @@ public class MySpaceImpl extends AbstractProvider {
 			throw new SocialAuthException("Failed to update status on "
 					+ UPDATE_STATUS_URL, ie);
 		}
-		LOG.info("Update Status Response :" + serviceResponse.getStatus());
+		LogUtil.info(LOG, "Update Status Response :",
+				serviceResponse.getStatus());
 		return serviceResponse;
 	}
 
@@ -299,7 +306,7 @@ public class MySpaceImpl extends AbstractProvider {
 	 */
 	@Override
 	public void setPermission(final Permission p) {
-		LOG.fine("Permission requested : " + p.toString());
+		LogUtil.fine(LOG, "Permission requested : ", p);
 		this.scope = p;
 		authenticationStrategy.setPermission(scope);
 		authenticationStrategy.setScope(getScope());
@@ -307,8 +314,6 @@ public class MySpaceImpl extends AbstractProvider {
 
 	private Profile getProfile() throws Exception {
 		LOG.fine("Obtaining user profile");
-		Profile profile = new Profile();
-
 		Response serviceResponse = null;
 		try {
 			serviceResponse = authenticationStrategy.executeFeed(PROFILE_URL);
@@ -317,56 +322,25 @@ public class MySpaceImpl extends AbstractProvider {
 					"Failed to retrieve the user profile from  " + PROFILE_URL,
 					e);
 		}
-		if (serviceResponse.getStatus() != 200) {
+		int status = serviceResponse.getStatus();
+		if (status != 200) {
+			serviceResponse.close();
 			throw new SocialAuthException(
 					"Failed to retrieve the user profile from  " + PROFILE_URL
-							+ ". Staus :" + serviceResponse.getStatus());
+							+ ". Staus :" + status);
 		}
 
-		String result;
+		Profile profile;
 		try {
-			result = serviceResponse
-					.getResponseBodyAsString(Constants.ENCODING);
-			LOG.fine("User Profile :" + result);
+			profile = PROFILE_MAPPING.readJson(serviceResponse, new Profile());
+			LogUtil.fine(LOG, "User Profile :", profile);
 		} catch (Exception exc) {
 			throw new SocialAuthException("Failed to read response from  "
 					+ PROFILE_URL, exc);
 		}
-		JsonObject pObj = Json.createObjectBuilder().build();
-		JsonObject jobj = Json.createReader(new StringReader(result)).readObject();
-		
-		if (jobj.containsKey("person")) {
-			pObj = jobj.getJsonObject("person");
-		} else {
+		if (profile.getValidatedId() == null) {
 			throw new ServerDataException(
-					"Failed to parse the user profile json : " + result);
-		}
-		if (pObj.containsKey("displayName")) {
-			profile.setDisplayName(pObj.getString("displayName"));
-		}
-		if (pObj.containsKey("id")) {
-			profile.setValidatedId(pObj.getString("id"));
-		}
-		if (pObj.containsKey("name")) {
-			JsonObject nobj = pObj.getJsonObject("name");
-			if (nobj.containsKey("familyName")) {
-				profile.setLastName(nobj.getString("familyName"));
-			}
-			if (nobj.containsKey("givenName")) {
-				profile.setFirstName(nobj.getString("givenName"));
-			}
-		}
-		if (pObj.containsKey("location")) {
-			profile.setLocation(pObj.getString("location"));
-		}
-		if (pObj.containsKey("nickname")) {
-			profile.setDisplayName(pObj.getString("nickname"));
-		}
-		if (pObj.containsKey("lang")) {
-			profile.setLanguage(pObj.getString("lang"));
-		}
-		if (pObj.containsKey("thumbnailUrl")) {
-			profile.setProfileImageURL(pObj.getString("thumbnailUrl"));
+					"Failed to parse the user profile json from " + PROFILE_URL);
 		}
 		profile.setProviderId(getProviderId());
 		userProfile = profile;
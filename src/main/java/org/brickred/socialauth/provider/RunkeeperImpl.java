@@ -26,7 +26,6 @@
 package org.brickred.socialauth.provider;
 
 import java.io.InputStream;
-import java.io.StringReader;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -38,9 +37,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
-import javax.json.Json;
-import javax.json.JsonObject;
-
 import org.brickred.socialauth.AbstractProvider;
 import org.brickred.socialauth.Contact;
 import org.brickred.socialauth.Permission;
@@ -54,6 +50,8 @@ import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.BirthDate;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.FieldMapping;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.Response;
@@ -69,7 +67,36 @@ public class RunkeeperImpl extends AbstractProvider {
 	private static final long serialVersionUID = 8644510564735754296L;
 	private static final String PROFILE_URL = "http://api.runkeeper.com/profile";
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger LOG = Logger.getLogger(RunkeeperImpl.class.getName());
+	private static final FieldMapping<Profile> PROFILE_MAPPING = FieldMapping
+			.builder(Profile.class)
+			.map("profile", new FieldMapping.Setter<Profile>() {
+				@Override
+				public void set(final Profile p, final String purl) {
+					String parr[] = purl.split("/");
+					p.setValidatedId(parr[parr.length - 1]);
+				}
+			}).map("name", "firstName").map("name", "fullName")
+			.map("location", "location")
+			.map("birthday", new FieldMapping.Setter<Profile>() {
+				@Override
+				public void set(final Profile p, final String bstr)
+						throws Exception {
+					if (bstr.matches("[A-Za-z]{3}, \\d{1,2} [A-Za-z]{3} \\d{4} \\d{2}:\\d{2}:\\d{2}")) {
+						DateFormat df = new SimpleDateFormat(
+								"EEE, dd MMM yyyy hh:mm:ss");
+						Date d = df.parse(bstr);
+						Calendar c = Calendar.getInstance();
+						c.setTime(d);
+						BirthDate bd = new BirthDate();
+						bd.setDay(c.get(Calendar.DAY_OF_MONTH));
+						bd.setYear(c.get(Calendar.YEAR));
+						bd.setMonth(c.get(Calendar.MONTH) + 1);
+						p.setDob(bd);
+					}
+				}
+			}).map("gender", "gender")
+			.map("normal_picture", "profileImageURL").build();
+	private static final Logger LOG = Logger.getLogger(RunkeeperImpl.class.getName());
 
 	private Permission scope;
 	private OAuthConfig config;
@@ -128,7 +155,7 @@ public class RunkeeperImpl extends AbstractProvider {
 	 * @throws AccessTokenExpireException
 	 */
 	@Override
-	public void setAccessGrant(final AccessGrant accessGrant)
+	public synchronized void setAccessGrant(final AccessGrant accessGrant)
 			throws AccessTokenExpireException {
 		this.accessGrant = accessGrant;
 		authenticationStrategy.setAccessGrant(accessGrant);
@@ -181,56 +208,21 @@ public class RunkeeperImpl extends AbstractProvider {
 	}
 
 	private Profile getProfile() throws Exception {
-		String presp;
+		Response response;
 		try {
 			Map<String, String> hmap = new HashMap<String, String>();
 			hmap.put("Accept", "application/vnd.com.runkeeper.Profile+json");
-			Response response = authenticationStrategy.executeFeed(PROFILE_URL,
+			response = authenticationStrategy.executeFeed(PROFILE_URL,
 					MethodType.GET.toString(), null, hmap, null);
-			presp = response.getResponseBodyAsString(Constants.ENCODING);
 		} catch (Exception e) {
 			throw new SocialAuthException("Error while getting profile from "
 					+ PROFILE_URL, e);
 		}
 		try {
-			LOG.fine("User Profile : " + presp);
-			JsonObject resp = Json.createReader(new StringReader(presp)).readObject();
-			Profile p = new Profile();
-			if (resp.containsKey("profile")) {
-				String purl = resp.getString("profile");
-				String parr[] = purl.split("/");
-				p.setValidatedId(parr[parr.length - 1]);
-			}
-			if (resp.containsKey("name")) {
-				p.setFirstName(resp.getString("name"));
-				p.setFullName(resp.getString("name"));
-			}
-
-			if (resp.containsKey("location")) {
-				p.setLocation(resp.getString("location"));
-			}
-			if (resp.containsKey("birthday")) {
-				String bstr = resp.getString("birthday");
-				if (bstr != null) {
-					if (bstr.matches("[A-Za-z]{3}, \\d{1,2} [A-Za-z]{3} \\d{4} \\d{2}:\\d{2}:\\d{2}")) {
-						DateFormat df = new SimpleDateFormat(
-								"EEE, dd MMM yyyy hh:mm:ss");
-						Date d = df.parse(bstr);
-						Calendar c = Calendar.getInstance();
-						c.setTime(d);
-						BirthDate bd = new BirthDate();
-						bd.setDay(c.get(Calendar.DAY_OF_MONTH));
-						bd.setYear(c.get(Calendar.YEAR));
-						bd.setMonth(c.get(Calendar.MONTH) + 1);
-						p.setDob(bd);
-					}
-				}
-			}
-			if (resp.containsKey("gender")) {
-				p.setGender(resp.getString("gender"));
-			}
-			if (resp.containsKey("normal_picture")) {
-				p.setProfileImageURL(resp.getString("normal_picture"));
+			Profile p = PROFILE_MAPPING.readJson(response, new Profile());
+			LogUtil.fine(LOG, "User Profile : ", p);
+			if (p.getValidatedId() == null) {
+				throw new ServerDataException("No id in the user profile");
 			}
 			p.setProviderId(getProviderId());
 			userProfile = p;
@@ -238,7 +230,8 @@ public class RunkeeperImpl extends AbstractProvider {
 
 		} catch (Exception ex) {
 			throw new ServerDataException(
-					"Failed to parse the user profile json : " + presp, ex);
+					"Failed to parse the user profile json from " + PROFILE_URL,
+					ex);
 		}
 	}
 
@@ -289,7 +282,7 @@ public class RunkeeperImpl extends AbstractProvider {
 	 */
 	@Override
 	public void setPermission(final Permission p) {
-		LOG.fine("Permission requested : " + p.toString());
+		LogUtil.fine(LOG, "Permission requested : ", p);
 		this.scope = p;
 		authenticationStrategy.setPermission(this.scope);
 		authenticationStrategy.setScope(getScope());
@@ -316,7 +309,7 @@ public class RunkeeperImpl extends AbstractProvider {
 			final Map<String, String> params,
 			final Map<String, String> headerParams, final String body)
 			throws Exception {
-		LOG.info("Calling api function for url	:	" + url);
+		LogUtil.info(LOG, "Calling api function for url	:	", url);
 		Response response = null;
 		try {
 			response = authenticationStrategy.executeFeed(url, methodType,
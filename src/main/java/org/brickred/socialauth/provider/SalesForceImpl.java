@@ -27,7 +27,6 @@ package org.brickred.socialauth.provider;
 
 import java.io.InputStream;
 import java.io.Serializable;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -35,21 +34,21 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
-import javax.json.Json;
-import javax.json.JsonObject;
-
 import org.brickred.socialauth.AbstractProvider;
 import org.brickred.socialauth.AuthProvider;
 import org.brickred.socialauth.Contact;
 import org.brickred.socialauth.Permission;
 import org.brickred.socialauth.Profile;
 import org.brickred.socialauth.exception.AccessTokenExpireException;
+import org.brickred.socialauth.exception.ServerDataException;
 import org.brickred.socialauth.exception.SocialAuthException;
 import org.brickred.socialauth.exception.UserDeniedPermissionException;
 import org.brickred.socialauth.oauthstrategy.OAuth2;
 import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.FieldMapping;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.Response;
@@ -65,7 +64,21 @@ public class SalesForceImpl extends AbstractProvider implements AuthProvider,
 
 	private static final long serialVersionUID = 6929330230703360670L;
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger LOG = Logger.getLogger(SalesForceImpl.class.getName());
+	private static final FieldMapping<Profile> PROFILE_MAPPING = FieldMapping
+			.builder(Profile.class).map("user_id", "validatedId")
+			.map("first_name", "firstName").map("last_name", "lastName")
+			.map("display_name", "displayName").map("email", "email")
+			.map("locale", new FieldMapping.Setter<Profile>() {
+				@Override
+				public void set(final Profile p, final String locale) {
+					String a[] = locale.split("_");
+					p.setLanguage(a[0]);
+					if (a.length > 1) {
+						p.setCountry(a[1]);
+					}
+				}
+			}).map("photos.thumbnail", "profileImageURL").build();
+	private static final Logger LOG = Logger.getLogger(SalesForceImpl.class.getName());
 
 	private OAuthConfig config;
 	private Permission scope;
@@ -128,7 +141,7 @@ public class SalesForceImpl extends AbstractProvider implements AuthProvider,
 	 * @throws AccessTokenExpireException
 	 */
 	@Override
-	public void setAccessGrant(final AccessGrant accessGrant)
+	public synchronized void setAccessGrant(final AccessGrant accessGrant)
 			throws AccessTokenExpireException {
 		this.accessGrant = accessGrant;
 		authenticationStrategy.setAccessGrant(accessGrant);
@@ -243,8 +256,7 @@ public class SalesForceImpl extends AbstractProvider implements AuthProvider,
 		if (accessGrant.getAttribute("id") != null) {
 			profileURL = (String) accessGrant.getAttribute("id");
 		}
-		LOG.fine("Profile URL : " + profileURL);
-		Profile p = new Profile();
+		LogUtil.fine(LOG, "Profile URL : ", profileURL);
 		Map<String, String> headerParam = new HashMap<String, String>();
 		headerParam.put("Authorization", "OAuth " + accessGrant.getKey());
 		headerParam.put("Content-Type", "application/json");
@@ -260,50 +272,19 @@ public class SalesForceImpl extends AbstractProvider implements AuthProvider,
 					e);
 		}
 
-		String result;
-		try {
-			result = serviceResponse
-					.getResponseBodyAsString(Constants.ENCODING);
-			LOG.fine("User Profile :" + result);
-		} catch (Exception e) {
-			throw new SocialAuthException("Failed to read response from  "
-					+ profileURL, e);
-		}
 		try {
-			JsonObject resp = Json.createReader(new StringReader(result)).readObject();
-			if (resp.containsKey("user_id")) {
-				p.setValidatedId(resp.getString("user_id"));
-			}
-			if (resp.containsKey("first_name")) {
-				p.setFirstName(resp.getString("first_name"));
+			Profile p = PROFILE_MAPPING.readJson(serviceResponse, new Profile());
+			LogUtil.fine(LOG, "User Profile :", p);
+			if (p.getValidatedId() == null) {
+				throw new ServerDataException("No id in the user profile");
 			}
-			if (resp.containsKey("last_name")) {
-				p.setLastName(resp.getString("last_name"));
-			}
-			p.setDisplayName(resp.getString("display_name"));
-
-			p.setEmail(resp.getString("email"));
-			String locale = resp.getString("locale");
-			if (locale != null) {
-				String a[] = locale.split("_");
-				p.setLanguage(a[0]);
-				p.setCountry(a[1]);
-			}
-			if (resp.containsKey("photos")) {
-				JsonObject photosResp = resp.getJsonObject("photos");
-
-				if (p.getProfileImageURL() == null
-						|| p.getProfileImageURL().length() <= 0) {
-					p.setProfileImageURL(photosResp.getString("thumbnail"));
-				}
-			}
-			serviceResponse.close();
 			p.setProviderId(getProviderId());
 			userProfile = p;
 			return p;
 		} catch (Exception e) {
 			throw new SocialAuthException(
-					"Failed to parse the user profile json : " + result, e);
+					"Failed to parse the user profile json from " + profileURL,
+					e);
 
 		}
 	}
@@ -316,7 +297,7 @@ public class SalesForceImpl extends AbstractProvider implements AuthProvider,
 	 */
 	@Override
 	public void setPermission(final Permission p) {
-		LOG.fine("Permission requested : " + p.toString());
+		LogUtil.fine(LOG, "Permission requested : ", p);
 		this.scope = p;
 		authenticationStrategy.setPermission(scope);
 		authenticationStrategy.setScope(getScope());
@@ -342,7 +323,7 @@ public class SalesForceImpl extends AbstractProvider implements AuthProvider,
 			final Map<String, String> params,
 			final Map<String, String> headerParams, final String body)
 			throws Exception {
-		LOG.info("Calling api function for url	:	" + url);
+		LogUtil.info(LOG, "Calling api function for url	:	", url);
 		Response response = null;
 		try {
 			response = authenticationStrategy.executeFeed(url, methodType,
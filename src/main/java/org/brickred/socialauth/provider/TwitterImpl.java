@@ -27,23 +27,29 @@ package org.brickred.socialauth.provider;
 
 import java.io.InputStream;
 import java.io.Serializable;
-import java.io.StringReader;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
-import javax.json.Json;
-import javax.json.JsonArray;
 import javax.json.JsonObject;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
 
 import org.brickred.socialauth.AbstractProvider;
 import org.brickred.socialauth.AuthProvider;
 import org.brickred.socialauth.Contact;
+import org.brickred.socialauth.ContactStream;
 import org.brickred.socialauth.Permission;
 import org.brickred.socialauth.Profile;
 import org.brickred.socialauth.exception.AccessTokenExpireException;
@@ -53,7 +59,11 @@ import org.brickred.socialauth.exception.UserDeniedPermissionException;
 import org.brickred.socialauth.oauthstrategy.OAuth1;
 import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
 import org.brickred.socialauth.util.AccessGrant;
+import org.brickred.socialauth.util.AsyncExecutor;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.FieldMapping;
+import org.brickred.socialauth.util.JsonStreamUtil;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.Response;
@@ -70,24 +80,42 @@ public class TwitterImpl extends AbstractProvider implements AuthProvider,
 
 	private static final long serialVersionUID = 1908393649053616794L;
 	private static final String PROFILE_URL = "http://api.twitter.com/1.1/users/show.json?screen_name=";
-	private static final String CONTACTS_URL = "http://api.twitter.com/1.1/friends/ids.json?screen_name=%1$s&cursor=-1";
+	private static final String FRIENDS_IDS_URL = "http://api.twitter.com/1.1/friends/ids.json?screen_name=%1$s&cursor=%2$d";
 	private static final String LOOKUP_URL = "http://api.twitter.com/1.1/users/lookup.json?user_id=";
+	private static final int LOOKUP_BATCH_SIZE = 100;
+	private static final int DEFAULT_LOOKUP_PARALLELISM = 4;
 	private static final String UPDATE_STATUS_URL = "http://api.twitter.com/1.1/statuses/update.json?status=";
 	private static final String IMAGE_UPLOAD_URL = "https://api.twitter.com/1.1/statuses/update_with_media.json";
 
 	private static final String PROPERTY_DOMAIN = "twitter.com";
 	private static final Map<String, String> ENDPOINTS;
+	private static final FieldMapping<Profile> PROFILE_MAPPING = FieldMapping
+			.builder(Profile.class).map("id_str", "validatedId")
+			.map("name", "fullName").map("location", "location")
+			.map("screen_name", "displayName").map("lang", "language")
+			.map("profile_image_url", "profileImageURL").build();
+	private static final FieldMapping<Contact> CONTACT_MAPPING = FieldMapping
+			.builder(Contact.class).map("name", "firstName")
+			.map("screen_name", "displayName")
+			.map("screen_name", new FieldMapping.Setter<Contact>() {
+				@Override
+				public void set(final Contact cont, final String screenName) {
+					cont.setProfileUrl("http://" + PROPERTY_DOMAIN + "/"
+							+ screenName);
+				}
+			}).map("profile_image_url", "profileImageURL")
+			.map("id_str", "id").build();
 	private static final Pattern IMAGE_FILE_PATTERN = Pattern.compile(
 			"(jpg|jpeg|gif|png)$", Pattern.CASE_INSENSITIVE);
 
-	private final Logger LOG = Logger.getLogger(TwitterImpl.class.getName());
+	private static final Logger LOG = Logger.getLogger(TwitterImpl.class.getName());
 
 	private Permission scope;
 	private boolean isVerify;
 	private AccessGrant accessToken;
 	private OAuthConfig config;
 	private Profile userProfile;
-	private OAuthStrategyBase authenticationStrategy;
+	private OAuth1 authenticationStrategy;
 
 	static {
 		ENDPOINTS = new HashMap<String, String>();
@@ -143,7 +171,7 @@ public class TwitterImpl extends AbstractProvider implements AuthProvider,
 	 * @throws AccessTokenExpireException
 	 */
 	@Override
-	public void setAccessGrant(final AccessGrant accessGrant)
+	public synchronized void setAccessGrant(final AccessGrant accessGrant)
 			throws AccessTokenExpireException {
 		accessToken = accessGrant;
 		isVerify = true;
@@ -191,9 +219,8 @@ public class TwitterImpl extends AbstractProvider implements AuthProvider,
 	}
 
 	private Profile getProfile() throws Exception {
-		Profile profile = new Profile();
 		String url = PROFILE_URL + accessToken.getAttribute("screen_name");
-		LOG.fine("Obtaining user profile. Profile URL : " + url);
+		LogUtil.fine(LOG, "Obtaining user profile. Profile URL : ", url);
 		Response serviceResponse = null;
 		try {
 			serviceResponse = authenticationStrategy.executeFeed(url);
@@ -201,46 +228,26 @@ public class TwitterImpl extends AbstractProvider implements AuthProvider,
 			throw new SocialAuthException(
 					"Failed to retrieve the user profile from  " + url, e);
 		}
-		if (serviceResponse.getStatus() != 200) {
+		int status = serviceResponse.getStatus();
+		if (status != 200) {
+			serviceResponse.close();
 			throw new SocialAuthException(
 					"Failed to retrieve the user profile from  " + url
-							+ ". Status :" + serviceResponse.getStatus());
-		}
-		String result;
-		try {
-			result = serviceResponse
-					.getResponseBodyAsString(Constants.ENCODING);
-			LOG.fine("User Profile :" + result);
-		} catch (Exception exc) {
-			throw new SocialAuthException("Failed to read response from  "
-					+ url, exc);
+							+ ". Status :" + status);
 		}
 		try {
-			JsonObject pObj = Json.createReader(new StringReader(result)).readObject();
-			if (pObj.containsKey("id_str")) {
-				profile.setValidatedId(pObj.getString("id_str"));
-			}
-			if (pObj.containsKey("name")) {
-				profile.setFullName(pObj.getString("name"));
-			}
-			if (pObj.containsKey("location")) {
-				profile.setLocation(pObj.getString("location"));
-			}
-			if (pObj.containsKey("screen_name")) {
-				profile.setDisplayName(pObj.getString("screen_name"));
-			}
-			if (pObj.containsKey("lang")) {
-				profile.setLanguage(pObj.getString("lang"));
-			}
-			if (pObj.containsKey("profile_image_url")) {
-				profile.setProfileImageURL(pObj.getString("profile_image_url"));
+			Profile profile = PROFILE_MAPPING.readJson(serviceResponse,
+					new Profile());
+			LogUtil.fine(LOG, "User Profile :", profile);
+			if (profile.getValidatedId() == null) {
+				throw new ServerDataException("No id in the user profile");
 			}
 			profile.setProviderId(getProviderId());
 			userProfile = profile;
 			return profile;
 		} catch (Exception e) {
 			throw new ServerDataException(
-					"Failed to parse the user profile json : " + result, e);
+					"Failed to parse the user profile json from " + url, e);
 
 		}
 	}
@@ -254,7 +261,7 @@ public class TwitterImpl extends AbstractProvider implements AuthProvider,
 	 */
 	@Override
 	public Response updateStatus(final String msg) throws Exception {
-		LOG.info("Updatting status " + msg);
+		LogUtil.info(LOG, "Updatting status ", msg);
 		if (!isVerify) {
 			throw new SocialAuthException(
 					"Please call verifyResponse function first to get Access Token");
@@ -297,118 +304,205 @@ public class TwitterImpl extends AbstractProvider implements AuthProvider,
 			throw new SocialAuthException(
 					"Please call verifyResponse function first to get Access Token");
 		}
-		String url = String.format(CONTACTS_URL,
-				accessToken.getAttribute("screen_name"));
-		List<Contact> plist = new ArrayList<Contact>();
-		LOG.info("Fetching contacts from " + url);
-		Response serviceResponse = null;
+		long ids[] = new long[0];
+		int count = 0;
+		long cursor = -1;
+		do {
+			FriendIds page = fetchFriendIds(cursor);
+			if (count + page.ids.length > ids.length) {
+				ids = Arrays.copyOf(ids,
+						Math.max(count + page.ids.length, ids.length * 2));
+			}
+			System.arraycopy(page.ids, 0, ids, count, page.ids.length);
+			count += page.ids.length;
+			cursor = page.nextCursor;
+		} while (cursor != 0);
+		LogUtil.fine(LOG, "Found friends : ", count);
+		return lookupUsers(ids, count);
+	}
+
+	/**
+	 * Looks up the users by batches of 100. Up to the configured number of
+	 * batches are sent in parallel and the contacts are returned in the order
+	 * of the ids. Each batch is signed with the access token read before
+	 * starting, so the workers do not use the state of this provider.
+	 */
+	private List<Contact> lookupUsers(final long ids[], final int count)
+			throws Exception {
+		final AccessGrant token = authenticationStrategy.getAccessGrant();
+		int batches = (count + LOOKUP_BATCH_SIZE - 1) / LOOKUP_BATCH_SIZE;
+		int parallelism = config.getMaxParallelRequests() > 0 ? config
+				.getMaxParallelRequests() : DEFAULT_LOOKUP_PARALLELISM;
+		List<FutureTask<List<Contact>>> tasks = new ArrayList<FutureTask<List<Contact>>>(
+				batches);
+		List<Contact> plist = new ArrayList<Contact>(count);
+		Executor executor = AsyncExecutor.getExecutor();
+		for (int i = 0; i < batches; i++) {
+			final int from = i * LOOKUP_BATCH_SIZE;
+			final int to = Math.min(from + LOOKUP_BATCH_SIZE, count);
+			FutureTask<List<Contact>> task = new FutureTask<List<Contact>>(
+					new Callable<List<Contact>>() {
+						@Override
+						public List<Contact> call() throws Exception {
+							return lookupUsers(ids, from, to, token);
+						}
+					});
+			tasks.add(task);
+			if (i > 0) {
+				try {
+					executor.execute(task);
+				} catch (RejectedExecutionException e) {
+					// collected in the calling thread
+				}
+			}
+			if (i + 1 >= parallelism) {
+				collect(tasks.get(i + 1 - parallelism), plist);
+			}
+		}
+		for (int i = Math.max(0, batches + 1 - parallelism); i < batches; i++) {
+			collect(tasks.get(i), plist);
+		}
+		return plist;
+	}
+
+	private void collect(final FutureTask<List<Contact>> task,
+			final List<Contact> plist) throws Exception {
+		// runs the batch in the calling thread if no worker picked it up yet
+		task.run();
+		try {
+			plist.addAll(task.get());
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Gets the contacts of the user lazily. Friend ids are fetched one cursor
+	 * page at a time and users are looked up by batches of 100 as the caller
+	 * iterates.
+	 * 
+	 * @return ContactStream over the contacts of the user
+	 */
+	@Override
+	public ContactStream getContactStream() throws Exception {
+		if (!isVerify) {
+			throw new SocialAuthException(
+					"Please call verifyResponse function first to get Access Token");
+		}
+		return new ContactStream() {
+			private long cursor = -1;
+			private long[] ids = new long[0];
+			private int pos;
+
+			@Override
+			protected List<Contact> fetchNextPage() throws Exception {
+				while (pos >= ids.length) {
+					if (cursor == 0) {
+						return null;
+					}
+					FriendIds page = fetchFriendIds(cursor);
+					ids = page.ids;
+					cursor = page.nextCursor;
+					pos = 0;
+				}
+				int end = Math.min(pos + LOOKUP_BATCH_SIZE, ids.length);
+				List<Contact> contacts = lookupUsers(ids, pos, end,
+						authenticationStrategy.getAccessGrant());
+				pos = end;
+				return contacts;
+			}
+		};
+	}
+
+	private FriendIds fetchFriendIds(final long cursor) throws Exception {
+		String url = String.format(FRIENDS_IDS_URL,
+				accessToken.getAttribute("screen_name"), cursor);
+		LogUtil.info(LOG, "Fetching contacts from ", url);
+		Response serviceResponse;
 		try {
 			serviceResponse = authenticationStrategy.executeFeed(url);
 		} catch (Exception ie) {
 			throw new SocialAuthException(
 					"Failed to retrieve the contacts from " + url, ie);
 		}
-		String result;
-		try {
-			result = serviceResponse
-					.getResponseBodyAsString(Constants.ENCODING);
-		} catch (Exception e) {
-			throw new ServerDataException("Failed to get response from " + url);
-		}
-		LOG.fine("User friends ids : " + result);
+		FriendIds page = new FriendIds();
+		JsonParser parser = null;
 		try {
-			JsonObject jobj = Json.createReader(new StringReader(result)).readObject();
-			if (jobj.containsKey("ids")) {
-				JsonArray idList = jobj.getJsonArray("ids");
-				int flength = idList.size();
-				int ids[] = new int[flength];
-				for (int i = 0; i < idList.size(); i++) {
-					ids[i] = idList.getInt(i);
-				}
-				if (flength > 0) {
-					if (flength > 100) {
-						int i = flength / 100;
-						int temparr[];
-						for (int j = 1; j <= i; j++) {
-							temparr = new int[100];
-							for (int k = (j - 1) * 100, c = 0; k < j * 100; k++, c++) {
-								temparr[c] = ids[k];
-							}
-							plist.addAll(lookupUsers(temparr));
-						}
-						if (flength > i * 100) {
-							temparr = new int[flength - i * 100];
-							for (int k = i * 100, c = 0; k < flength; k++, c++) {
-								temparr[c] = ids[k];
-							}
-							plist.addAll(lookupUsers(temparr));
-						}
-					} else {
-						plist.addAll(lookupUsers(ids));
-					}
+			parser = JsonStreamUtil.createParser(serviceResponse);
+			int depth = 0;
+			String key = null;
+			while (parser.hasNext()) {
+				Event event = parser.next();
+				if (event == Event.START_OBJECT) {
+					depth++;
+				} else if (event == Event.END_OBJECT) {
+					depth--;
+				} else if (event == Event.KEY_NAME) {
+					key = parser.getString();
+				} else if (depth == 1 && "ids".equals(key)
+						&& event == Event.START_ARRAY) {
+					page.ids = JsonStreamUtil.readLongArray(parser);
+				} else if (depth == 1 && "next_cursor".equals(key)
+						&& event == Event.VALUE_NUMBER) {
+					page.nextCursor = parser.getLong();
+				} else {
+					JsonStreamUtil.skipValue(parser, event);
 				}
 			}
 		} catch (Exception e) {
 			throw new ServerDataException(
-					"Failed to parse the user friends json : " + result, e);
+					"Failed to parse the user friends json from " + url, e);
+		} finally {
+			if (parser != null) {
+				parser.close();
+			}
+			serviceResponse.close();
 		}
-		return plist;
+		return page;
 	}
 
-	private List<Contact> lookupUsers(final int fids[]) throws Exception {
+	private List<Contact> lookupUsers(final long ids[], final int from,
+			final int to, final AccessGrant token) throws Exception {
 		StringBuilder strb = new StringBuilder();
-		List<Contact> plist = new ArrayList<Contact>();
-		for (int value : fids) {
+		final List<Contact> plist = new ArrayList<Contact>();
+		for (int i = from; i < to; i++) {
 			if (strb.length() != 0) {
 				strb.append(",");
 			}
-			strb.append(value);
+			strb.append(ids[i]);
 		}
 		String url = LOOKUP_URL + strb.toString();
-		LOG.fine("Fetching info of following users : " + url);
+		LogUtil.fine(LOG, "Fetching info of following users : ", url);
 		Response serviceResponse = null;
 		try {
-			serviceResponse = authenticationStrategy.executeFeed(url);
+			serviceResponse = authenticationStrategy.executeFeed(url, token);
 		} catch (Exception ie) {
 			throw new SocialAuthException(
 					"Failed to retrieve the contacts from " + url, ie);
 		}
-		String result;
-		try {
-			result = serviceResponse
-					.getResponseBodyAsString(Constants.ENCODING);
-		} catch (Exception e) {
-			throw new ServerDataException("Failed to get response from " + url,
-					e);
-		}
-		LOG.fine("Users info : " + result);
-		try {
-			JsonArray jarr = Json.createReader(new StringReader(result)).readArray();
-			for (int i = 0; i < jarr.size(); i++) {
-				JsonObject jobj = jarr.getJsonObject(i);
-				Contact cont = new Contact();
-				if (jobj.containsKey("name")) {
-					cont.setFirstName(jobj.getString("name"));
-				}
-				if (jobj.containsKey("screen_name")) {
-					cont.setDisplayName(jobj.getString("screen_name"));
-					cont.setProfileUrl("http://" + PROPERTY_DOMAIN + "/"
-							+ jobj.getString("screen_name"));
-				}
-				if (jobj.containsKey("profile_image_url")) {
-				    cont.setProfileImageURL(jobj.getString("profile_image_url"));
-				}
-				if (jobj.containsKey("id_str")) {
-					cont.setId(jobj.getString("id_str"));
-				}
-				plist.add(cont);
-			}
-		} catch (Exception e) {
-			throw e;
-		}
+		JsonStreamUtil.streamArray(serviceResponse,
+				new JsonStreamUtil.ElementHandler() {
+					@Override
+					public void handle(final JsonObject jobj)
+							throws Exception {
+						plist.add(toContact(jobj));
+					}
+				});
 		return plist;
 	}
 
+	private static class FriendIds {
+		private long[] ids = new long[0];
+		private long nextCursor;
+	}
+
+	private Contact toContact(final JsonObject jobj) throws Exception {
+		return CONTACT_MAPPING.apply(jobj, new Contact());
+	}
+
 	/**
 	 * Logout
 	 */
@@ -426,7 +520,7 @@ public class TwitterImpl extends AbstractProvider implements AuthProvider,
 	 */
 	@Override
 	public void setPermission(final Permission p) {
-		LOG.fine("Permission requested : " + p.toString());
+		LogUtil.fine(LOG, "Permission requested : ", p);
 		this.scope = p;
 	}
 
@@ -458,7 +552,7 @@ public class TwitterImpl extends AbstractProvider implements AuthProvider,
 					"Please call verifyResponse function first to get Access Token");
 		}
 		Response response = null;
-		LOG.fine("Calling URL : " + url);
+		LogUtil.fine(LOG, "Calling URL : ", url);
 		response = authenticationStrategy.executeFeed(url, methodType, params,
 				headerParams, body);
 		return response;
@@ -503,7 +597,10 @@ public class TwitterImpl extends AbstractProvider implements AuthProvider,
 	@Override
 	public Response uploadImage(final String message, final String fileName,
 			final InputStream inputStream) throws Exception {
-		LOG.info("Uploading Image :: " + fileName + ", message :: " + message);
+		if (LOG.isLoggable(Level.INFO)) {
+			LOG.info(LogUtil.redact("Uploading Image :: " + fileName
+					+ ", message :: " + message));
+		}
 		if (!IMAGE_FILE_PATTERN.matcher(fileName).find()) {
 			throw new SocialAuthException(
 					"Twitter supports only PNG, JPG and GIF image formats");
@@ -514,7 +611,7 @@ public class TwitterImpl extends AbstractProvider implements AuthProvider,
 		Response response = authenticationStrategy.uploadImage(
 				IMAGE_UPLOAD_URL, MethodType.POST.toString(), map, null,
 				fileName, inputStream, fileNameParam);
-		LOG.info("Upload Image status::" + response.getStatus());
+		LogUtil.info(LOG, "Upload Image status::", response.getStatus());
 		return response;
 	}
 
@@ -27,17 +27,17 @@ package org.brickred.socialauth.provider;
 
 import java.io.InputStream;
 import java.io.Serializable;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.json.Json;
 import javax.json.JsonArray;
 import javax.json.JsonObject;
+import javax.json.JsonValue;
 
 import org.brickred.socialauth.AbstractProvider;
 import org.brickred.socialauth.AuthProvider;
@@ -52,12 +52,13 @@ import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.BirthDate;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.FieldMapping;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.Response;
-import org.brickred.socialauth.util.XMLParseUtil;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import org.brickred.socialauth.util.XMLStreamUtil;
+import org.brickred.socialauth.util.XMLStreamUtil.XMLRecord;
 
 /**
  * Provider implementation for Yahoo. This uses the oAuth API provided by Yahoo
@@ -72,9 +73,54 @@ public class YahooImpl extends AbstractProvider implements AuthProvider,
 	private static final long serialVersionUID = 903564874550419470L;
 	private static final String PROFILE_URL = "http://social.yahooapis.com/v1/user/%1$s/profile?format=json";
 	private static final String CONTACTS_URL = "http://social.yahooapis.com/v1/user/%1$s/contacts;count=max";
+	private static final String[] CONTACT_FIELDS = { "fields", "type",
+			"value", "givenName", "familyName" };
 	private static final String UPDATE_STATUS_URL = "http://social.yahooapis.com/v1/user/%1$s/profile/status";
-	private final Logger LOG = Logger.getLogger(YahooImpl.class.getName());
+	private static final Logger LOG = Logger.getLogger(YahooImpl.class.getName());
 	private static final Map<String, String> ENDPOINTS;
+	private static final FieldMapping<Profile> PROFILE_MAPPING = FieldMapping
+			.builder(Profile.class).map("profile.guid", "validatedId")
+			.map("profile.familyName", "lastName")
+			.map("profile.gender", "gender")
+			.map("profile.givenName", "firstName")
+			.map("profile.location", "location")
+			.map("profile.nickname", "displayName")
+			.map("profile.lang", "language")
+			.map("profile.birthdate", new FieldMapping.Setter<Profile>() {
+				@Override
+				public void set(final Profile profile, final String dstr) {
+					String arr[] = dstr.split("/");
+					BirthDate bd = new BirthDate();
+					if (arr.length > 0) {
+						bd.setMonth(Integer.parseInt(arr[0]));
+					}
+					if (arr.length > 1) {
+						bd.setDay(Integer.parseInt(arr[1]));
+					}
+					profile.setDob(bd);
+				}
+			}).map("profile.image.imageUrl", "profileImageURL")
+			.mapJson("profile.emails", new FieldMapping.JsonSetter<Profile>() {
+				@Override
+				public void set(final Profile profile, final JsonValue emails) {
+					if (!(emails instanceof JsonArray)) {
+						return;
+					}
+					for (JsonValue value : (JsonArray) emails) {
+						if (!(value instanceof JsonObject)) {
+							continue;
+						}
+						JsonObject eobj = (JsonObject) value;
+						if (eobj.getBoolean("primary", false)) {
+							if (eobj.containsKey("handle")
+									&& !eobj.isNull("handle")) {
+								profile.setEmail(eobj.getString("handle"));
+							}
+							break;
+						}
+					}
+				}
+			}).build();
 
 	private Permission scope;
 	private AccessGrant accessToken;
@@ -136,7 +182,7 @@ public class YahooImpl extends AbstractProvider implements AuthProvider,
 	 * @throws AccessTokenExpireException
 	 */
 	@Override
-	public void setAccessGrant(final AccessGrant accessGrant)
+	public synchronized void setAccessGrant(final AccessGrant accessGrant)
 			throws AccessTokenExpireException {
 		accessToken = accessGrant;
 		authenticationStrategy.setAccessGrant(accessGrant);
@@ -190,7 +236,6 @@ public class YahooImpl extends AbstractProvider implements AuthProvider,
 
 	private Profile getProfile() throws Exception {
 		LOG.fine("Obtaining user profile");
-		Profile profile = new Profile();
 		String guid = (String) accessToken.getAttribute("xoauth_yahoo_guid");
 		if (guid.indexOf("<") != -1) {
 			guid = guid.substring(0, guid.indexOf("<")).trim();
@@ -204,87 +249,26 @@ public class YahooImpl extends AbstractProvider implements AuthProvider,
 			throw new SocialAuthException(
 					"Failed to retrieve the user profile from  " + url, e);
 		}
-		if (serviceResponse.getStatus() != 200) {
+		int status = serviceResponse.getStatus();
+		if (status != 200) {
+			serviceResponse.close();
 			throw new SocialAuthException(
 					"Failed to retrieve the user profile from  " + url
-							+ ". Staus :" + serviceResponse.getStatus());
+							+ ". Staus :" + status);
 		}
-		String result;
 		try {
-			result = serviceResponse
-					.getResponseBodyAsString(Constants.ENCODING);
-			LOG.fine("User Profile :" + result);
-		} catch (Exception exc) {
-			throw new SocialAuthException("Failed to read response from  "
-					+ url, exc);
-		}
-		try {
-			JsonObject jobj = Json.createReader(new StringReader(result)).readObject();
-			if (jobj.containsKey("profile")) {
-				JsonObject pObj = jobj.getJsonObject("profile");
-				if (pObj.containsKey("guid")) {
-					profile.setValidatedId(pObj.getString("guid"));
-				}
-				if (pObj.containsKey("familyName")&&!pObj.isNull("familyName")) {
-					profile.setLastName(pObj.getString("familyName"));
-				}
-				if (pObj.containsKey("gender")&&!pObj.isNull("gender")) {
-					profile.setGender(pObj.getString("gender"));
-				}
-				if (pObj.containsKey("givenName")&&!pObj.isNull("givenName")) {
-					profile.setFirstName(pObj.getString("givenName"));
-				}
-				if (pObj.containsKey("location")&&!pObj.isNull("location")) {
-					profile.setLocation(pObj.getString("location"));
-				}
-				if (pObj.containsKey("nickname")&&!pObj.isNull("nickname")) {
-					profile.setDisplayName(pObj.getString("nickname"));
-				}
-				if (pObj.containsKey("lang")&&!pObj.isNull("lang")) {
-					profile.setLanguage(pObj.getString("lang"));
-				}
-				if (pObj.containsKey("birthdate")&&!pObj.isNull("birthdate")) {
-					String dstr = pObj.getString("birthdate");
-					if (dstr != null) {
-						String arr[] = dstr.split("/");
-						BirthDate bd = new BirthDate();
-						if (arr.length > 0) {
-							bd.setMonth(Integer.parseInt(arr[0]));
-						}
-						if (arr.length > 1) {
-							bd.setDay(Integer.parseInt(arr[1]));
-						}
-						profile.setDob(bd);
-					}
-				}
-				if (pObj.containsKey("image")&&!pObj.isNull("image")) {
-					JsonObject imgObj = pObj.getJsonObject("image");
-					if (imgObj.containsKey("imageUrl")) {
-						profile.setProfileImageURL(imgObj.getString("imageUrl"));
-					}
-				}
-				if (pObj.containsKey("emails")) {
-					JsonArray earr = pObj.getJsonArray("emails");
-					for (int i = 0; i < earr.size(); i++) {
-						JsonObject eobj = earr.getJsonObject(i);
-						if (eobj.containsKey("primary")
-						        && !eobj.isNull("primary")
-								&& eobj.getBoolean("primary")) {
-							if (eobj.containsKey("handle")&&!eobj.isNull("handle")) {
-								profile.setEmail(eobj.getString("handle"));
-							}
-							break;
-						}
-					}
-				}
-
+			Profile profile = PROFILE_MAPPING.readJson(serviceResponse,
+					new Profile());
+			LogUtil.fine(LOG, "User Profile :", profile);
+			if (profile.getValidatedId() == null) {
+				throw new ServerDataException("No id in the user profile");
 			}
 			profile.setProviderId(getProviderId());
 			userProfile = profile;
 			return profile;
 		} catch (Exception e) {
 			throw new ServerDataException(
-					"Failed to parse the user profile json : " + result, e);
+					"Failed to parse the user profile json from " + url, e);
 
 		}
 	}
@@ -300,7 +284,7 @@ public class YahooImpl extends AbstractProvider implements AuthProvider,
 	public List<Contact> getContactList() throws Exception {
 		String url = String.format(CONTACTS_URL,
 				accessToken.getAttribute("xoauth_yahoo_guid"));
-		LOG.info("Fetching contacts from " + url);
+		LogUtil.info(LOG, "Fetching contacts from ", url);
 
 		Response serviceResponse = null;
 		try {
@@ -310,76 +294,72 @@ public class YahooImpl extends AbstractProvider implements AuthProvider,
 					"Failed to retrieve the contacts from " + url, ie);
 		}
 
-		List<Contact> plist = new ArrayList<Contact>();
-		Element root;
+		final List<Contact> plist = new ArrayList<Contact>();
+		int count;
 		try {
-			root = XMLParseUtil.loadXmlResource(serviceResponse
-					.getInputStream());
+			count = XMLStreamUtil.streamElements(serviceResponse, "contact",
+					CONTACT_FIELDS, new XMLStreamUtil.ElementHandler() {
+						@Override
+						public void handle(final XMLRecord contact) {
+							Contact p = toContact(contact);
+							if (p != null) {
+								plist.add(p);
+							}
+						}
+					});
 		} catch (Exception e) {
 			throw new ServerDataException(
 					"Failed to parse the contacts from response." + url, e);
 		}
-		NodeList contactsList = root.getElementsByTagName("contact");
-		if (contactsList != null && contactsList.getLength() > 0) {
-			LOG.fine("Found contacts : " + contactsList.getLength());
-			for (int i = 0; i < contactsList.getLength(); i++) {
-				Element contact = (Element) contactsList.item(i);
-				NodeList fieldList = contact.getElementsByTagName("fields");
-				if (fieldList != null && fieldList.getLength() > 0) {
-					String fname = "";
-					String lname = "";
-					String dispName = "";
-					String address = "";
-					List<String> emailArr = new ArrayList<String>();
-					for (int j = 0; j < fieldList.getLength(); j++) {
-						Element field = (Element) fieldList.item(j);
-						String type = XMLParseUtil
-								.getElementData(field, "type");
-
-						if ("email".equalsIgnoreCase(type)) {
-							if (address.length() > 0) {
-								emailArr.add(XMLParseUtil.getElementData(field,
-										"value"));
-							} else {
-								address = XMLParseUtil.getElementData(field,
-										"value");
-							}
-						} else if ("name".equals(type)) {
-							fname = XMLParseUtil.getElementData(field,
-									"givenName");
-							lname = XMLParseUtil.getElementData(field,
-									"familyName");
-						} else if ("yahooid".equalsIgnoreCase(type)) {
-							dispName = XMLParseUtil.getElementData(field,
-									"value");
-						}
-					}
-					if (address != null && address.length() > 0) {
-						Contact p = new Contact();
-						p.setFirstName(fname);
-						p.setLastName(lname);
-						p.setEmail(address);
-						p.setDisplayName(dispName);
-						if (emailArr.size() > 0) {
-							String arr[] = new String[emailArr.size()];
-							int k = 0;
-							for (String s : emailArr) {
-								arr[k] = s;
-								k++;
-							}
-							p.setOtherEmails(arr);
-						}
-						p.setId(contact.getAttribute("yahoo:uri"));
-						plist.add(p);
-					}
-				}
-			}
+		if (count > 0) {
+			LogUtil.fine(LOG, "Found contacts : ", count);
 		} else {
-			LOG.fine("No contacts were obtained from : " + CONTACTS_URL);
+			LogUtil.fine(LOG, "No contacts were obtained from : ",
+					CONTACTS_URL);
 		}
 		return plist;
 	}
 
+	/**
+	 * Maps a contact of the contacts feed, null if it has no email.
+	 */
+	private static Contact toContact(final XMLRecord contact) {
+		String fname = "";
+		String lname = "";
+		String dispName = "";
+		String address = "";
+		List<String> emailArr = new ArrayList<String>();
+		for (XMLRecord field : contact.getElements("fields")) {
+			String type = field.getElementData("type");
+
+			if ("email".equalsIgnoreCase(type)) {
+				if (address.length() > 0) {
+					emailArr.add(field.getElementData("value"));
+				} else {
+					address = field.getElementData("value");
+				}
+			} else if ("name".equals(type)) {
+				fname = field.getElementData("givenName");
+				lname = field.getElementData("familyName");
+			} else if ("yahooid".equalsIgnoreCase(type)) {
+				dispName = field.getElementData("value");
+			}
+		}
+		if (address == null || address.length() == 0) {
+			return null;
+		}
+		Contact p = new Contact();
+		p.setFirstName(fname);
+		p.setLastName(lname);
+		p.setEmail(address);
+		p.setDisplayName(dispName);
+		if (emailArr.size() > 0) {
+			p.setOtherEmails(emailArr.toArray(new String[emailArr.size()]));
+		}
+		p.setId(contact.getAttribute("yahoo:uri"));
+		return p;
+	}
+
 	/**
 	 * Updates the status on the chosen provider if available. This may not be
 	 * implemented for all providers.
@@ -395,7 +375,9 @@ public class YahooImpl extends AbstractProvider implements AuthProvider,
 		}
 		String url = String.format(UPDATE_STATUS_URL,
 				accessToken.getAttribute("xoauth_yahoo_guid"));
-		LOG.info("Updating status " + msg + " on " + url);
+		if (LOG.isLoggable(Level.INFO)) {
+			LOG.info(LogUtil.redact("Updating status " + msg + " on " + url));
+		}
 		String msgBody = "{\"status\":{\"message\":\"" + msg + "\"}}";
 		Response serviceResponse = null;
 		try {
@@ -411,8 +393,8 @@ public class YahooImpl extends AbstractProvider implements AuthProvider,
 					"Failed to update status. Return status code :"
 							+ serviceResponse.getStatus());
 		}
-		LOG.fine("Status Updated and return status code is : "
-				+ serviceResponse.getStatus());
+		LogUtil.fine(LOG, "Status Updated and return status code is : ",
+				serviceResponse.getStatus());
 		// return 204
 		return serviceResponse;
 	}
@@ -434,7 +416,7 @@ public class YahooImpl extends AbstractProvider implements AuthProvider,
 	 */
 	@Override
 	public void setPermission(final Permission p) {
-		LOG.fine("Permission requested : " + p.toString());
+		LogUtil.fine(LOG, "Permission requested : ", p);
 		this.scope = p;
 	}
 
@@ -469,7 +451,7 @@ public class YahooImpl extends AbstractProvider implements AuthProvider,
 
 		String urlStr = String.format(url,
 				accessToken.getAttribute("xoauth_yahoo_guid"));
-		LOG.fine("Calling URL : " + urlStr);
+		LogUtil.fine(LOG, "Calling URL : ", urlStr);
 
 		return authenticationStrategy.executeFeed(urlStr, methodType, params,
 				headerParams, body);
@@ -36,10 +36,10 @@ import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.json.Json;
-import javax.json.JsonArray;
 import javax.json.JsonObject;
 
 import org.brickred.socialauth.AbstractProvider;
@@ -57,7 +57,10 @@ import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.BirthDate;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.FieldMapping;
 import org.brickred.socialauth.util.HttpUtil;
+import org.brickred.socialauth.util.JsonStreamUtil;
+import org.brickred.socialauth.util.LogUtil;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.Response;
@@ -71,8 +74,31 @@ public class YammerImpl extends AbstractProvider implements AuthProvider,
 	private static final String UPDATE_STATUS_URL = "https://www.yammer.com/api/v1/messages.json";
 	private static final String PROFILE_URL = "https://www.yammer.com/api/v1/users/%1$s.json?access_token=%2$s";
 	private static final String CONTACTS_URL = "https://www.yammer.com/api/v1/users.json?sort_by=followers&access_token=%1$s";
+	private static final FieldMapping<Profile> PROFILE_MAPPING = FieldMapping
+			.builder(Profile.class).map("full_name", "fullName")
+			.map("location", "location").map("mugshot_url", "profileImageURL")
+			.map("birth_date", new FieldMapping.Setter<Profile>() {
+				@Override
+				public void set(final Profile p, final String dstr) {
+					String arr[] = dstr.split("\\s+");
+					BirthDate bd = new BirthDate();
+					if (arr.length == 1) {
+						Calendar currentDate = Calendar.getInstance();
+						bd.setMonth(currentDate.get(Calendar.MONTH) + 1);
+						bd.setDay(currentDate.get(Calendar.DAY_OF_MONTH));
+					} else {
+						bd.setDay(Integer.parseInt(arr[1]));
+						bd.setMonth(SocialAuthUtil.getMonthInInt(arr[0]));
+					}
+					p.setDob(bd);
+				}
+			}).map("contact.email_addresses.0.address", "email").build();
+	private static final FieldMapping<Contact> CONTACT_MAPPING = FieldMapping
+			.builder(Contact.class).map("full_name", "displayName")
+			.map("contact.email_addresses.0.address", "email")
+			.map("id", "id").map("web_url", "profileUrl").build();
 
-	private final Logger LOG = Logger.getLogger(YammerImpl.class.getName());
+	private static final Logger LOG = Logger.getLogger(YammerImpl.class.getName());
 
 	private String accessToken;
 	private String successUrl;
@@ -107,7 +133,7 @@ public class YammerImpl extends AbstractProvider implements AuthProvider,
 	 * @throws AccessTokenExpireException
 	 */
 	@Override
-	public void setAccessGrant(final AccessGrant accessGrant)
+	public synchronized void setAccessGrant(final AccessGrant accessGrant)
 			throws AccessTokenExpireException {
 		this.accessGrant = accessGrant;
 		accessToken = accessGrant.getKey();
@@ -137,7 +163,7 @@ public class YammerImpl extends AbstractProvider implements AuthProvider,
 		if (scopeStr != null) {
 			url += "&scope=" + scopeStr;
 		}
-		LOG.info("Redirection to following URL should happen : " + url);
+		LogUtil.info(LOG, "Redirection to following URL should happen : ", url);
 		return url;
 	}
 
@@ -179,12 +205,12 @@ public class YammerImpl extends AbstractProvider implements AuthProvider,
 		}
 		String url = String.format(ACCESS_TOKEN_URL, config.get_consumerKey(),
 				config.get_consumerSecret(), code);
-		LOG.fine("Verification Code : " + code);
+		LogUtil.fine(LOG, "Verification Code : ", code);
 		StringBuilder strb = new StringBuilder();
 		strb.append("code=").append(code);
 		strb.append("&client_secret=").append(config.get_consumerSecret());
 
-		LOG.fine("Parameters for access token : " + strb.toString());
+		LogUtil.fine(LOG, "Parameters for access token : ", strb);
 		Response response;
 		try {
 			response = HttpUtil.doHttpRequest(url, MethodType.GET.toString(),
@@ -209,7 +235,7 @@ public class YammerImpl extends AbstractProvider implements AuthProvider,
 		JsonObject resp = Json.createReader(new StringReader(result)).readObject();
 		JsonObject accessTokenObject = resp.getJsonObject("access_token");
 		accessToken = accessTokenObject.getString("token");
-		LOG.fine("Access Token : " + accessToken);
+		LogUtil.fine(LOG, "Access Token : ", accessToken);
 
 		if (accessToken != null) {
 			isVerify = true;
@@ -249,45 +275,39 @@ public class YammerImpl extends AbstractProvider implements AuthProvider,
 			throw new SocialAuthException(
 					"Please call verifyResponse function first to get Access Token");
 		}
-		List<Contact> plist = new ArrayList<Contact>();
+		final List<Contact> plist = new ArrayList<Contact>();
 		String contactURL = String.format(CONTACTS_URL, accessToken);
-		LOG.info("Fetching contacts from " + contactURL);
-		String respStr;
+		LogUtil.info(LOG, "Fetching contacts from ", contactURL);
+		Response response;
 		try {
-			Response response = HttpUtil.doHttpRequest(contactURL,
+			response = HttpUtil.doHttpRequest(contactURL,
 					MethodType.GET.toString(), null, null);
-			respStr = response.getResponseBodyAsString(Constants.ENCODING);
 		} catch (Exception e) {
 			throw new SocialAuthException("Error while getting contacts from "
 					+ contactURL, e);
 		}
 		try {
-			LOG.fine("User Contacts list in json : " + respStr);
-			JsonArray resp = Json.createReader(new StringReader(respStr)).readArray();
-			for (int i = 0; i < resp.size(); i++) {
-				JsonObject obj = resp.getJsonObject(i);
-				Contact p = new Contact();
-				String name = obj.getString("full_name");
-				p.setDisplayName(name);
-				JsonObject userContactDetails = obj.getJsonObject("contact");
-				JsonArray emailArr = userContactDetails
-						.getJsonArray("email_addresses");
-				JsonObject eobj = emailArr.getJsonObject(0);
-				if (eobj.containsKey("address")) {
-					p.setEmail(eobj.getString("address"));
-				}
-				p.setId(obj.getString("id"));
-				p.setProfileUrl(obj.getString("web_url"));
-				plist.add(p);
-			}
+			JsonStreamUtil.streamArray(response,
+					new JsonStreamUtil.ElementHandler() {
+						@Override
+						public void handle(final JsonObject obj)
+								throws Exception {
+							plist.add(toContact(obj));
+						}
+					});
 		} catch (Exception e) {
 			throw new ServerDataException(
-					"Failed to parse the user profile json : " + respStr, e);
+					"Failed to parse the user contacts json from "
+							+ contactURL, e);
 		}
 		return plist;
 
 	}
 
+	private Contact toContact(final JsonObject obj) throws Exception {
+		return CONTACT_MAPPING.apply(obj, new Contact());
+	}
+
 	/**
 	 * Updates the status on the chosen provider if available. This may not be
 	 * implemented for all providers.
@@ -299,7 +319,7 @@ public class YammerImpl extends AbstractProvider implements AuthProvider,
 
 	@Override
 	public Response updateStatus(final String msg) throws Exception {
-		LOG.info("Updating status : " + msg);
+		LogUtil.info(LOG, "Updating status : ", msg);
 		if (!isVerify || accessToken == null) {
 			throw new SocialAuthException(
 					"Please call verifyResponse function first to get Access Token and then update status");
@@ -346,7 +366,6 @@ public class YammerImpl extends AbstractProvider implements AuthProvider,
 			throw new SocialAuthException(
 					"Please call verifyResponse function first to get Access Token and then update status");
 		}
-		Profile p = new Profile();
 		Response serviceResponse;
 		if (profileId == null) {
 			profileId = (String) accessGrant.getAttribute("profileId");
@@ -362,62 +381,19 @@ public class YammerImpl extends AbstractProvider implements AuthProvider,
 					e);
 		}
 
-		String result;
 		try {
-			result = serviceResponse
-					.getResponseBodyAsString(Constants.ENCODING);
-			LOG.fine("User Profile :" + result);
-		} catch (Exception e) {
-			throw new SocialAuthException("Failed to read response from  "
-					+ profileURL, e);
-		}
-		try {
-			JsonObject resp = Json.createReader(new StringReader(result)).readObject();
-			if (resp.containsKey("full_name")) {
-				p.setFullName(resp.getString("full_name"));
-			}
-			if (resp.containsKey("location")) {
-				p.setLocation(resp.getString("location"));
+			Profile p = PROFILE_MAPPING.readJson(serviceResponse, new Profile());
+			LogUtil.fine(LOG, "User Profile :", p);
+			if (p.getValidatedId() == null) {
+				throw new ServerDataException("No id in the user profile");
 			}
-			if (resp.containsKey("mugshot_url")) {
-				p.setProfileImageURL(resp.getString("mugshot_url"));
-			}
-			if (resp.containsKey("birth_date")) {
-				String dstr = resp.getString("birth_date");
-				if (dstr != null) {
-					String arr[] = dstr.split("\\s+");
-					BirthDate bd = new BirthDate();
-					if (arr.length == 1) {
-						Calendar currentDate = Calendar.getInstance();
-						bd.setMonth(currentDate.get(Calendar.MONTH) + 1);
-						bd.setDay(currentDate.get(Calendar.DAY_OF_MONTH));
-					} else {
-						if (arr.length > 0) {
-							bd.setDay(Integer.parseInt(arr[1]));
-						}
-						if (arr.length > 1) {
-							bd.setMonth(new Integer(SocialAuthUtil
-									.getMonthInInt(arr[0])));
-						}
-					}
-					p.setDob(bd);
-				}
-			}
-			JsonObject userContactDetails = resp.getJsonObject("contact");
-			JsonArray emailArr = userContactDetails
-					.getJsonArray("email_addresses");
-
-			JsonObject eobj = emailArr.getJsonObject(0);
-			if (eobj.containsKey("address")) {
-				p.setEmail(eobj.getString("address"));
-			}
-
 			p.setProviderId(getProviderId());
 			userProfile = p;
 			return userProfile;
 		} catch (Exception e) {
 			throw new SocialAuthException(
-					"Failed to parse the user profile json : " + result, e);
+					"Failed to parse the user profile json from " + profileURL,
+					e);
 
 		}
 	}
@@ -430,7 +406,7 @@ public class YammerImpl extends AbstractProvider implements AuthProvider,
 	 */
 	@Override
 	public void setPermission(final Permission p) {
-		LOG.fine("Permission requested : " + p.toString());
+		LogUtil.fine(LOG, "Permission requested : ", p);
 		this.scope = p;
 	}
 
@@ -466,8 +442,8 @@ public class YammerImpl extends AbstractProvider implements AuthProvider,
 		}
 		headerParam.put("Authorization", "Bearer " + accessToken);
 		Response serviceResponse;
-		LOG.fine("Calling URL : " + url);
-		LOG.fine("Header Params : " + headerParam.toString());
+		LogUtil.fine(LOG, "Calling URL : ", url);
+		LogUtil.fine(LOG, "Header Params : ", headerParam);
 		try {
 			serviceResponse = HttpUtil.doHttpRequest(url, methodType, body,
 					headerParam);
@@ -477,8 +453,10 @@ public class YammerImpl extends AbstractProvider implements AuthProvider,
 		}
 		if (serviceResponse.getStatus() != 200
 				&& serviceResponse.getStatus() != 201) {
-			LOG.fine("Return statuc for URL " + url + " is "
-					+ serviceResponse.getStatus());
+			if (LOG.isLoggable(Level.FINE)) {
+				LOG.fine(LogUtil.redact("Return statuc for URL " + url + " is "
+						+ serviceResponse.getStatus()));
+			}
 			throw new SocialAuthException("Error while making request to URL :"
 					+ url + "Status : " + serviceResponse.getStatus());
 		}
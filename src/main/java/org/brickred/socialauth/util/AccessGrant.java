@@ -135,6 +135,34 @@ public class AccessGrant implements Serializable {
 		_attributes.putAll(attributes);
 	}
 
+	/**
+	 * Updates the lifetime of the token, counted from now. Both the lifetime
+	 * and the resulting expiry time are stored as attributes.
+	 * 
+	 * @param seconds
+	 *            the lifetime in seconds, null if the token does not expire
+	 */
+	public void setExpiresIn(final Integer seconds) {
+		setAttribute(Constants.EXPIRES, seconds);
+		if (seconds != null) {
+			setAttribute(Constants.EXPIRES_AT, System.currentTimeMillis()
+					+ seconds * 1000L);
+		} else if (_attributes != null) {
+			_attributes.remove(Constants.EXPIRES_AT);
+		}
+	}
+
+	/**
+	 * Retrieves the time at which the token expires.
+	 * 
+	 * @return the expiry time in milliseconds since the epoch, or null if it
+	 *         is not known
+	 */
+	public Long getExpiresAt() {
+		Object value = getAttribute(Constants.EXPIRES_AT);
+		return value instanceof Long ? (Long) value : null;
+	}
+
 	/**
 	 * Retrieves the provider id.
 	 * 
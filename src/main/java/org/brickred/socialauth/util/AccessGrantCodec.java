@@ -0,0 +1,205 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.brickred.socialauth.Permission;
+import org.brickred.socialauth.exception.SocialAuthException;
+
+/**
+ * Converts an {@link AccessGrant} to a compact binary form and back, for
+ * storing grants outside of the HTTP session. Only the token, secret,
+ * provider id, permission and the attributes of type String, Integer, Long,
+ * Boolean and Double are kept; other attribute values are stored as strings.
+ */
+public final class AccessGrantCodec {
+
+	private static final Logger LOG = Logger.getLogger(AccessGrantCodec.class
+			.getName());
+	private static final int VERSION = 1;
+	private static final int STRING = 0;
+	private static final int INTEGER = 1;
+	private static final int LONG = 2;
+	private static final int BOOLEAN = 3;
+	private static final int DOUBLE = 4;
+	private static final Permission[] PERMISSIONS = { Permission.ALL,
+			Permission.AUTHENTICATE_ONLY, Permission.DEFAULT, Permission.CUSTOM };
+
+	private AccessGrantCodec() {
+	}
+
+	/**
+	 * Encodes the given grant.
+	 * 
+	 * @param grant
+	 *            the access grant
+	 * @return the encoded grant
+	 */
+	public static byte[] encode(final AccessGrant grant) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeByte(VERSION);
+			writeString(out, grant.getProviderId());
+			writeString(out, grant.getKey());
+			writeString(out, grant.getSecret());
+			Permission permission = grant.getPermission();
+			writeString(out, permission == null ? null : permission.getScope());
+			Map<String, Object> attributes = grant.getAttributes();
+			int count = 0;
+			if (attributes != null) {
+				for (Object value : attributes.values()) {
+					if (value != null) {
+						count++;
+					}
+				}
+			}
+			out.writeShort(count);
+			if (count > 0) {
+				for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+					if (entry.getValue() != null) {
+						out.writeUTF(entry.getKey());
+						writeValue(out, entry.getKey(), entry.getValue());
+					}
+				}
+			}
+			out.flush();
+		} catch (IOException e) {
+			// only a value longer than 64 KB in UTF-8 fails
+			throw new IllegalArgumentException(
+					"Access grant cannot be encoded", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decodes a grant encoded by {@link #encode(AccessGrant)}.
+	 * 
+	 * @param data
+	 *            the encoded grant
+	 * @return the access grant
+	 * @throws SocialAuthException
+	 *             if the data is not a valid encoded grant
+	 */
+	public static AccessGrant decode(final byte[] data)
+			throws SocialAuthException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				data));
+		try {
+			int version = in.readUnsignedByte();
+			if (version != VERSION) {
+				throw new SocialAuthException(
+						"Unsupported access grant format " + version);
+			}
+			AccessGrant grant = new AccessGrant();
+			grant.setProviderId(readString(in));
+			grant.setKey(readString(in));
+			grant.setSecret(readString(in));
+			String scope = readString(in);
+			if (scope != null) {
+				grant.setPermission(toPermission(scope));
+			}
+			int count = in.readUnsignedShort();
+			for (int i = 0; i < count; i++) {
+				String name = in.readUTF();
+				grant.setAttribute(name, readValue(in));
+			}
+			return grant;
+		} catch (IOException e) {
+			throw new SocialAuthException("Invalid access grant data", e);
+		}
+	}
+
+	private static Permission toPermission(final String scope) {
+		for (Permission p : PERMISSIONS) {
+			if (p.getScope().equals(scope)) {
+				return p;
+			}
+		}
+		return new Permission(scope);
+	}
+
+	private static void writeString(final DataOutputStream out,
+			final String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(final DataInputStream in)
+			throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeValue(final DataOutputStream out,
+			final String name, final Object value) throws IOException {
+		if (value instanceof Integer) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		} else {
+			if (!(value instanceof String)) {
+				LOG.fine("Storing attribute " + name + " as a string");
+			}
+			out.writeByte(STRING);
+			out.writeUTF(value.toString());
+		}
+	}
+
+	private static Object readValue(final DataInputStream in)
+			throws IOException {
+		int type = in.readUnsignedByte();
+		switch (type) {
+		case STRING:
+			return in.readUTF();
+		case INTEGER:
+			return in.readInt();
+		case LONG:
+			return in.readLong();
+		case BOOLEAN:
+			return in.readBoolean();
+		case DOUBLE:
+			return in.readDouble();
+		default:
+			throw new IOException("Unknown attribute type " + type);
+		}
+	}
+}
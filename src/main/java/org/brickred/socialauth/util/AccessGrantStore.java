@@ -0,0 +1,75 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import org.brickred.socialauth.exception.SocialAuthException;
+
+/**
+ * Stores the access grants of the users outside of the HTTP session, so that
+ * any node of a cluster can rebuild a connected provider with
+ * {@link org.brickred.socialauth.SocialAuthManager#connect(AccessGrant)}.
+ * Implementations must be thread safe.
+ */
+public interface AccessGrantStore {
+
+	/**
+	 * Stores the grant of a user for the provider of the grant, replacing the
+	 * previous one.
+	 * 
+	 * @param userId
+	 *            the user id
+	 * @param grant
+	 *            the access grant
+	 * @throws SocialAuthException
+	 */
+	public void save(String userId, AccessGrant grant)
+			throws SocialAuthException;
+
+	/**
+	 * Retrieves the grant of a user for a provider.
+	 * 
+	 * @param userId
+	 *            the user id
+	 * @param providerId
+	 *            the provider id
+	 * @return the access grant, or null if there is none
+	 * @throws SocialAuthException
+	 */
+	public AccessGrant load(String userId, String providerId)
+			throws SocialAuthException;
+
+	/**
+	 * Removes the grant of a user for a provider.
+	 * 
+	 * @param userId
+	 *            the user id
+	 * @param providerId
+	 *            the provider id
+	 * @return true if a grant was removed
+	 * @throws SocialAuthException
+	 */
+	public boolean remove(String userId, String providerId)
+			throws SocialAuthException;
+}
@@ -0,0 +1,265 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the asynchronous provider calls. Inside an application server the
+ * container managed executor (javax.enterprise.concurrent) should be given
+ * through {@link #setExecutor(ExecutorService)}; otherwise a small pool of
+ * daemon threads is created on first use. Its queue is bounded: once it is
+ * full, a call is rejected and its Future fails with a
+ * RejectedExecutionException, so a caller is never blocked by a call meant
+ * to run in the background.
+ * <p>
+ * The calls still use the blocking HttpURLConnection, a worker thread is
+ * held for the duration of each of them.
+ * </p>
+ * 
+ */
+public final class AsyncExecutor {
+
+	private static final Logger LOG = Logger.getLogger(AsyncExecutor.class
+			.getName());
+	private static final int MAX_QUEUED_TASKS = 256;
+	private static volatile ExecutorService executor;
+
+	private AsyncExecutor() {
+	}
+
+	/**
+	 * Sets the executor used to run asynchronous calls.
+	 * 
+	 * @param executorService
+	 *            the executor
+	 */
+	public static void setExecutor(final ExecutorService executorService) {
+		executor = executorService;
+	}
+
+	/**
+	 * Retrieves the executor used to run asynchronous calls.
+	 * 
+	 * @return the executor
+	 */
+	public static ExecutorService getExecutor() {
+		ExecutorService es = executor;
+		if (es == null) {
+			synchronized (AsyncExecutor.class) {
+				es = executor;
+				if (es == null) {
+					int size = Math.max(2, Runtime.getRuntime()
+							.availableProcessors() * 2);
+					ThreadPoolExecutor pool = new ThreadPoolExecutor(size,
+							size, 60L, TimeUnit.SECONDS,
+							new ArrayBlockingQueue<Runnable>(MAX_QUEUED_TASKS),
+							new DaemonThreadFactory(),
+							new ThreadPoolExecutor.AbortPolicy());
+					pool.allowCoreThreadTimeOut(true);
+					es = pool;
+					executor = es;
+				}
+			}
+		}
+		return es;
+	}
+
+	/**
+	 * Submits the given call and notifies the callback, if any, when it
+	 * completes.
+	 * 
+	 * @param call
+	 *            the call to run
+	 * @param callback
+	 *            the callback to notify, may be null
+	 * @return Future of the result, failed with a RejectedExecutionException
+	 *         if the executor is saturated
+	 */
+	public static <T> Future<T> submit(final Callable<T> call,
+			final AsyncCallback<T> callback) {
+		return submit(call, callback, getExecutor());
+	}
+
+	/**
+	 * Submits the given call to an executor, such as one returned by
+	 * {@link #newSerialExecutor()}, and notifies the callback, if any, when it
+	 * completes.
+	 * 
+	 * @param call
+	 *            the call to run
+	 * @param callback
+	 *            the callback to notify, may be null
+	 * @param executor
+	 *            the executor running the call
+	 * @return Future of the result, failed with a RejectedExecutionException
+	 *         if the executor is saturated
+	 */
+	public static <T> Future<T> submit(final Callable<T> call,
+			final AsyncCallback<T> callback, final Executor executor) {
+		Task<T> task = new Task<T>(call, callback);
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			task.reject(e);
+		}
+		return task;
+	}
+
+	/**
+	 * Creates an executor which runs its tasks one after the other on the
+	 * shared executor, e.g. for the calls made on a provider, whose state is
+	 * not thread safe. A task rejected by the shared executor fails, the next
+	 * ones are still run.
+	 * 
+	 * @return the serial executor
+	 */
+	public static Executor newSerialExecutor() {
+		return new SerialExecutor();
+	}
+
+	/**
+	 * Runs a background task, such as a cache refill, unless the executor is
+	 * saturated, in which case the task is dropped.
+	 * 
+	 * @param task
+	 *            the task to run
+	 * @return true if the task was accepted, false if it was dropped
+	 */
+	public static boolean trySubmit(final Runnable task) {
+		try {
+			getExecutor().execute(task);
+			return true;
+		} catch (RejectedExecutionException e) {
+			LOG.fine("Executor is saturated, dropping a background task");
+			return false;
+		}
+	}
+
+	private static void reject(final Runnable task,
+			final RejectedExecutionException e) {
+		if (task instanceof Task) {
+			((Task<?>) task).reject(e);
+		} else {
+			LOG.fine("Executor is saturated, dropping a background task");
+		}
+	}
+
+	private static final class Task<T> extends FutureTask<T> {
+		private final AsyncCallback<T> callback;
+
+		Task(final Callable<T> call, final AsyncCallback<T> callback) {
+			super(call);
+			this.callback = callback;
+		}
+
+		void reject(final RejectedExecutionException e) {
+			LOG.fine("Executor is saturated, rejecting an asynchronous call");
+			setException(e);
+		}
+
+		@Override
+		protected void done() {
+			if (callback == null || isCancelled()) {
+				return;
+			}
+			try {
+				callback.onSuccess(get());
+			} catch (ExecutionException e) {
+				callback.onFailure(e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				callback.onFailure(e);
+			} catch (RuntimeException e) {
+				LOG.log(Level.WARNING, "Asynchronous callback failed", e);
+			}
+		}
+	}
+
+	private static final class SerialExecutor implements Executor {
+		private final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+		private boolean active;
+
+		@Override
+		public synchronized void execute(final Runnable task) {
+			tasks.add(task);
+			if (!active) {
+				scheduleNext();
+			}
+		}
+
+		private synchronized void scheduleNext() {
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				final Runnable next = task;
+				active = true;
+				try {
+					getExecutor().execute(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								next.run();
+							} finally {
+								scheduleNext();
+							}
+						}
+					});
+					return;
+				} catch (RejectedExecutionException e) {
+					active = false;
+					reject(next, e);
+				}
+			}
+			active = false;
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(final Runnable r) {
+			Thread t = new Thread(r, "socialauth-async-"
+					+ count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import org.brickred.socialauth.exception.SocialAuthException;
+
+/**
+ * Stops calling a provider domain which keeps failing, so a slow or
+ * unavailable social network fails fast instead of holding request threads.
+ * After a number of consecutive failures (I/O errors and HTTP 5xx), or when
+ * the provider answers a 5xx with a <code>Retry-After</code> header, the
+ * circuit of the domain opens and requests are rejected until the open time
+ * has elapsed. A single trial request is then let through: its success closes
+ * the circuit, its failure opens it again.
+ * <p>
+ * A HTTP 429 is the quota of one access token, which the {@link RateLimiter}
+ * tracks, and neither opens nor closes the circuit.
+ * </p>
+ */
+public class CircuitBreaker {
+
+	/**
+	 * Default number of consecutive failures opening the circuit.
+	 */
+	public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+	/**
+	 * Default time the circuit stays open, in milliseconds.
+	 */
+	public static final long DEFAULT_OPEN_TIME = 30 * 1000L;
+
+	private static final Logger LOG = Logger.getLogger(CircuitBreaker.class
+			.getName());
+
+	private static volatile CircuitBreaker instance = new CircuitBreaker();
+
+	private final ConcurrentMap<String, State> states = new ConcurrentHashMap<String, State>();
+	private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+	private volatile long openTime = DEFAULT_OPEN_TIME;
+
+	/**
+	 * Gets the circuit breaker used by {@link HttpUtil}.
+	 * 
+	 * @return the circuit breaker
+	 */
+	public static CircuitBreaker getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Replaces the circuit breaker used by {@link HttpUtil}.
+	 * 
+	 * @param breaker
+	 *            the circuit breaker
+	 */
+	public static void setInstance(final CircuitBreaker breaker) {
+		instance = breaker;
+	}
+
+	/**
+	 * Sets the number of consecutive failures opening the circuit. 0 only
+	 * opens it on a Retry-After header.
+	 * 
+	 * @param failureThreshold
+	 *            the number of failures
+	 */
+	public void setFailureThreshold(final int failureThreshold) {
+		this.failureThreshold = failureThreshold;
+	}
+
+	/**
+	 * @return the number of consecutive failures opening the circuit
+	 */
+	public int getFailureThreshold() {
+		return failureThreshold;
+	}
+
+	/**
+	 * Sets the time the circuit stays open when no Retry-After is given.
+	 * 
+	 * @param millis
+	 *            the open time in milliseconds
+	 */
+	public void setOpenTime(final long millis) {
+		openTime = millis;
+	}
+
+	/**
+	 * Checks that a request can be made to the given domain.
+	 * 
+	 * @param domain
+	 *            the provider domain
+	 * @throws SocialAuthException
+	 *             if the circuit of the domain is open
+	 */
+	public void check(final String domain) throws SocialAuthException {
+		State state = states.get(domain);
+		if (state == null) {
+			return;
+		}
+		synchronized (state) {
+			if (state.openUntil == 0) {
+				return;
+			}
+			long now = currentTimeMillis();
+			long wait = state.openUntil - now;
+			if (wait <= 0) {
+				// half open: this request is the trial, the others wait for
+				// its outcome, or for another open time if it never comes
+				state.trial = true;
+				state.openUntil = now + openTime;
+				return;
+			}
+			throw new SocialAuthException("Calls to " + domain
+					+ " are suspended, retry in " + wait + " ms");
+		}
+	}
+
+	/**
+	 * Records a successful call, which closes the circuit.
+	 * 
+	 * @param domain
+	 *            the provider domain
+	 */
+	public void onSuccess(final String domain) {
+		State state = states.get(domain);
+		if (state == null) {
+			return;
+		}
+		synchronized (state) {
+			if (state.openUntil != 0) {
+				LOG.info("Calls to " + domain + " are resumed");
+			}
+			state.failures = 0;
+			state.openUntil = 0;
+			state.trial = false;
+		}
+	}
+
+	/**
+	 * Records a failed call.
+	 * 
+	 * @param domain
+	 *            the provider domain
+	 * @param retryAfter
+	 *            the delay asked by the provider in milliseconds, 0 if none
+	 */
+	public void onFailure(final String domain, final long retryAfter) {
+		State state = states.get(domain);
+		if (state == null) {
+			state = new State();
+			State previous = states.putIfAbsent(domain, state);
+			if (previous != null) {
+				state = previous;
+			}
+		}
+		synchronized (state) {
+			state.failures++;
+			long now = currentTimeMillis();
+			long until = 0;
+			if (retryAfter > 0) {
+				until = now + retryAfter;
+			} else if (state.trial
+					|| (failureThreshold > 0 && state.failures >= failureThreshold)) {
+				until = now + openTime;
+			}
+			// a failed trial replaces the open time it was given
+			boolean trial = state.trial;
+			state.trial = false;
+			if (until > state.openUntil || trial && until > 0) {
+				if (state.openUntil == 0) {
+					LOG.warning("Suspending calls to " + domain + " for "
+							+ (until - now) + " ms after " + state.failures
+							+ " failures");
+				}
+				state.openUntil = until;
+			}
+		}
+	}
+
+	/**
+	 * Tells whether requests to the given domain are currently rejected.
+	 * 
+	 * @param domain
+	 *            the provider domain
+	 * @return true if the circuit is open
+	 */
+	public boolean isOpen(final String domain) {
+		State state = states.get(domain);
+		if (state == null) {
+			return false;
+		}
+		synchronized (state) {
+			return state.openUntil > currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Closes all the circuits.
+	 */
+	public void reset() {
+		states.clear();
+	}
+
+	/**
+	 * Returns the current time of the open times. Subclasses may override it
+	 * to use another clock.
+	 * 
+	 * @return the current time in milliseconds
+	 */
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	private static class State {
+		private int failures;
+		private long openUntil;
+		private boolean trial;
+	}
+}
@@ -117,6 +117,16 @@ public interface Constants {
 	 */
 	public static final String EXPIRES = "expires";
 
+	/**
+	 * token expiry time, in milliseconds since the epoch
+	 */
+	public static final String EXPIRES_AT = "expires_at";
+
+	/**
+	 * OAuth 2.0 refresh token
+	 */
+	public static final String REFRESH_TOKEN = "refresh_token";
+
 	/**
 	 * openid
 	 */
@@ -223,6 +233,137 @@ public interface Constants {
 	 */
 	public static final String HTTP_CONNECTION_TIMEOUT = "http.connectionTimeOut";
 
+	/**
+	 * HTTP maximum connections per host property
+	 */
+	public static final String HTTP_MAX_CONNECTIONS_PER_ROUTE = "http.maxConnectionsPerRoute";
+
+	/**
+	 * HTTP connection idle timeout property
+	 */
+	public static final String HTTP_CONNECTION_IDLE_TIMEOUT = "http.connectionIdleTimeOut";
+
+	/**
+	 * HTTP transport implementation class property
+	 */
+	public static final String HTTP_TRANSPORT = "http.transport";
+
+	/**
+	 * Instrumentation of the HTTP requests property, "jmx" or the
+	 * implementation class
+	 */
+	public static final String METRICS_INSTRUMENTATION = "metrics.instrumentation";
+
+	/**
+	 * Comma separated metrics exporter classes property
+	 */
+	public static final String METRICS_EXPORTERS = "metrics.exporters";
+
+	/**
+	 * Interval in milliseconds between two metrics exports property
+	 */
+	public static final String METRICS_EXPORT_INTERVAL = "metrics.exportInterval";
+
+	/**
+	 * HTTP read timeout property
+	 */
+	public static final String HTTP_READ_TIMEOUT = "http.readTimeOut";
+
+	/**
+	 * Number of retries of the GET requests property
+	 */
+	public static final String HTTP_MAX_RETRIES = "http.maxRetries";
+
+	/**
+	 * Base delay in milliseconds between retries property
+	 */
+	public static final String HTTP_RETRY_BACKOFF = "http.retryBackoff";
+
+	/**
+	 * Number of consecutive failures suspending the calls to a provider
+	 * property
+	 */
+	public static final String HTTP_CIRCUIT_BREAKER_FAILURES = "http.circuitBreaker.failures";
+
+	/**
+	 * Time in milliseconds during which the calls to a failing provider are
+	 * suspended property
+	 */
+	public static final String HTTP_CIRCUIT_BREAKER_OPEN_TIME = "http.circuitBreaker.openTime";
+
+	/**
+	 * Time in milliseconds a call may wait for the reset of a used up rate
+	 * limit property
+	 */
+	public static final String HTTP_RATE_LIMIT_MAX_WAIT = "http.rateLimit.maxWait";
+
+	/**
+	 * Number of calls of each rate limit kept unused property
+	 */
+	public static final String HTTP_RATE_LIMIT_RESERVE = "http.rateLimit.reserve";
+
+	/**
+	 * Retry-After header
+	 */
+	public static final String RETRY_AFTER_HEADER = "Retry-After";
+
+	/**
+	 * Maximum size in bytes of a response body property
+	 */
+	public static final String HTTP_MAX_RESPONSE_BODY_SIZE = "http.maxResponseBodySize";
+
+	/**
+	 * Maximum number of cached GET responses property, 0 disables the cache
+	 */
+	public static final String HTTP_CACHE_MAX_ENTRIES = "http.cache.maxEntries";
+
+	/**
+	 * Default time to live in seconds of cached responses property. Suffixed
+	 * by <code>.host/path</code> it gives the time to live of an endpoint.
+	 */
+	public static final String HTTP_CACHE_TTL = "http.cache.ttl";
+
+	/**
+	 * Directory of the file access grant store property
+	 */
+	public static final String GRANT_STORE_DIRECTORY = "grantStore.directory";
+
+	/**
+	 * Maximum number of grants of the in-memory access grant store property
+	 */
+	public static final String GRANT_STORE_MAX_ENTRIES = "grantStore.maxEntries";
+
+	/**
+	 * Number of OAuth 1.0a request tokens kept ready per provider and callback
+	 * URL property, 0 disables the prefetching
+	 */
+	public static final String OAUTH1_REQUEST_TOKEN_POOL_SIZE = "oauth1.requestTokenPool.size";
+
+	/**
+	 * Time in milliseconds after which a prefetched request token is not
+	 * given out anymore property
+	 */
+	public static final String OAUTH1_REQUEST_TOKEN_POOL_MAX_AGE = "oauth1.requestTokenPool.maxAge";
+
+	/**
+	 * Refreshes the access grants of the connected providers before they
+	 * expire, if set to true
+	 */
+	public static final String TOKEN_REFRESH_ENABLED = "tokenRefresh.enabled";
+
+	/**
+	 * Time in milliseconds before expiry at which access grants are
+	 * refreshed property
+	 */
+	public static final String TOKEN_REFRESH_MARGIN = "tokenRefresh.margin";
+
+	/**
+	 * Reloads the configuration when the properties file loaded from the
+	 * class path changes, if set to true. The watch is stopped by
+	 * SocialAuthConfig.close()
+	 */
+	public static final String CONFIG_WATCH = "config.watch";
+
 	/**
 	 * Content Encoding Header
 	 */
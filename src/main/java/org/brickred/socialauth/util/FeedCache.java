@@ -0,0 +1,366 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Caches the content of the GET requests made by the OAuth strategies
+ * <code>executeFeed</code> methods. Entries are keyed by URL, request headers and a hash of the access
+ * token, so users never share a cached content. The cache is disabled until a
+ * maximum number of entries is set, and then evicts the least recently used
+ * entries.
+ * <p>
+ * The time to live is given per endpoint, as the longest matching prefix of
+ * <code>host/path</code>, and falls back to the default time to live. The
+ * provider can shorten it with <code>Cache-Control: max-age</code> or forbid
+ * caching with <code>no-store</code>. Expired entries having an
+ * <code>ETag</code> are revalidated with <code>If-None-Match</code>, so an
+ * unchanged content only costs a 304.
+ * </p>
+ * <p>
+ * A fetched content is copied while the caller reads it, and stored once it
+ * has been read to the end. The copy stops as soon as the content is larger
+ * than {@link #MAX_ENTRY_SIZE}.
+ * </p>
+ */
+public class FeedCache {
+
+	/**
+	 * Makes the actual request, with the given headers.
+	 */
+	public interface Fetcher {
+		Response fetch(Map<String, String> headerParams) throws Exception;
+	}
+
+	/**
+	 * Largest content kept in the cache, in bytes.
+	 */
+	public static final int MAX_ENTRY_SIZE = 512 * 1024;
+
+	private static final String ETAG_HEADER = "ETag";
+	private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+	private static final String CACHE_CONTROL_HEADER = "Cache-Control";
+
+	private static final Logger LOG = Logger.getLogger(FeedCache.class
+			.getName());
+
+	private static volatile FeedCache instance = new FeedCache();
+
+	private final Map<String, Long> timeToLives = new ConcurrentHashMap<String, Long>();
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				final Map.Entry<String, Entry> eldest) {
+			return size() > maxEntries;
+		}
+	};
+	private volatile int maxEntries;
+	private volatile long defaultTimeToLive;
+
+	/**
+	 * Gets the cache used by the OAuth strategies.
+	 * 
+	 * @return the response cache
+	 */
+	public static FeedCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Replaces the cache used by the OAuth strategies.
+	 * 
+	 * @param cache
+	 *            the response cache
+	 */
+	public static void setInstance(final FeedCache cache) {
+		instance = cache;
+	}
+
+	/**
+	 * Sets the maximum number of cached responses. 0 disables the cache.
+	 * 
+	 * @param maxEntries
+	 *            the maximum number of entries
+	 */
+	public void setMaxEntries(final int maxEntries) {
+		this.maxEntries = maxEntries;
+		if (maxEntries <= 0) {
+			clear();
+		}
+	}
+
+	/**
+	 * Sets the time to live of the endpoints which have no time to live of
+	 * their own.
+	 * 
+	 * @param seconds
+	 *            the time to live in seconds
+	 */
+	public void setDefaultTimeToLive(final long seconds) {
+		defaultTimeToLive = seconds * 1000;
+	}
+
+	/**
+	 * Sets the time to live of an endpoint. 0 disables the caching of this
+	 * endpoint.
+	 * 
+	 * @param endpoint
+	 *            the endpoint as <code>host/path</code>, matched as a prefix
+	 * @param seconds
+	 *            the time to live in seconds
+	 */
+	public void setTimeToLive(final String endpoint, final long seconds) {
+		timeToLives.put(endpoint, seconds * 1000);
+	}
+
+	/**
+	 * Removes the time to live of every endpoint, which then use the default
+	 * time to live.
+	 */
+	public void clearTimeToLives() {
+		timeToLives.clear();
+	}
+
+	/**
+	 * Checks if the cache is enabled
+	 * 
+	 * @return true if responses are cached
+	 */
+	public boolean isEnabled() {
+		return maxEntries > 0;
+	}
+
+	/**
+	 * Removes all the cached responses.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Gets the response of a GET request from the cache, or from the fetcher
+	 * when it is missing or stale.
+	 * 
+	 * @param url
+	 *            the URL of the request, without the access token
+	 * @param token
+	 *            the access token sent with the request
+	 * @param headerParams
+	 *            the request headers
+	 * @param fetcher
+	 *            makes the request
+	 * @return the response
+	 * @throws Exception
+	 */
+	public Response execute(final String url, final AccessGrant token,
+			final Map<String, String> headerParams, final Fetcher fetcher)
+			throws Exception {
+		long timeToLive = isEnabled() ? getTimeToLive(url) : 0;
+		if (timeToLive <= 0) {
+			return fetcher.fetch(headerParams);
+		}
+		final String key = getKey(url, token, headerParams);
+		long now = System.currentTimeMillis();
+		Entry entry = get(key);
+		if (entry != null && entry.expires > now) {
+			LOG.fine("Cached response for URL : " + url);
+			return entry.toResponse();
+		}
+		Map<String, String> requestHeaders = headerParams;
+		if (entry != null && entry.etag != null) {
+			requestHeaders = new HashMap<String, String>();
+			if (headerParams != null) {
+				requestHeaders.putAll(headerParams);
+			}
+			requestHeaders.put(IF_NONE_MATCH_HEADER, entry.etag);
+		}
+		Response response = fetcher.fetch(requestHeaders);
+		final int status = response.getStatus();
+		if (status == 304 && entry != null) {
+			response.close();
+			long maxAge = getMaxAge(
+					response.getHeader(CACHE_CONTROL_HEADER), timeToLive);
+			LOG.fine("Revalidated response for URL : " + url);
+			entry = new Entry(entry.status, entry.headers, entry.body,
+					entry.etag, now + maxAge);
+			put(key, entry);
+			return entry.toResponse();
+		}
+		long maxAge = status == 200 ? getMaxAge(
+				response.getHeader(CACHE_CONTROL_HEADER), timeToLive) : -1;
+		final String etag = response.getHeader(ETAG_HEADER);
+		if (maxAge < 0 || (maxAge == 0 && etag == null)) {
+			if (entry != null) {
+				remove(key);
+			}
+			return response;
+		}
+		if (getContentLength(response) > MAX_ENTRY_SIZE) {
+			if (entry != null) {
+				remove(key);
+			}
+			return response;
+		}
+		final Map<String, String> headers = response.getHeaders();
+		final long expires = now + maxAge;
+		// the content is stored once the caller has read it
+		response.copyBody(MAX_ENTRY_SIZE, new Response.BodyListener() {
+			@Override
+			public void bodyRead(final byte[] body) {
+				if (body == null) {
+					remove(key);
+				} else {
+					put(key, new Entry(status, headers, body, etag, expires));
+				}
+			}
+		});
+		return response;
+	}
+
+	private static long getContentLength(final Response response) {
+		String length = response.getHeader("Content-Length");
+		if (length != null) {
+			try {
+				return Long.parseLong(length.trim());
+			} catch (NumberFormatException e) {
+				LOG.fine("Ignoring Content-Length : " + length);
+			}
+		}
+		return -1;
+	}
+
+	private long getTimeToLive(final String url) {
+		if (timeToLives.isEmpty()) {
+			return defaultTimeToLive;
+		}
+		String endpoint;
+		try {
+			URL u = new URL(url);
+			endpoint = u.getHost() + u.getPath();
+		} catch (Exception e) {
+			return defaultTimeToLive;
+		}
+		String match = null;
+		for (String prefix : timeToLives.keySet()) {
+			if (endpoint.startsWith(prefix)
+					&& (match == null || prefix.length() > match.length())) {
+				match = prefix;
+			}
+		}
+		if (match == null) {
+			return defaultTimeToLive;
+		}
+		Long ttl = timeToLives.get(match);
+		return ttl == null ? defaultTimeToLive : ttl;
+	}
+
+	/**
+	 * Applies the Cache-Control directives of the provider to the configured
+	 * time to live. A stored response having no time to live left is always
+	 * revalidated.
+	 */
+	private static long getMaxAge(final String cacheControl,
+			final long timeToLive) {
+		if (cacheControl == null) {
+			return timeToLive;
+		}
+		long maxAge = timeToLive;
+		for (String directive : cacheControl.split(",")) {
+			String d = directive.trim().toLowerCase();
+			if ("no-store".equals(d)) {
+				return -1;
+			} else if ("no-cache".equals(d)) {
+				maxAge = 0;
+			} else if (d.startsWith("max-age=")) {
+				try {
+					maxAge = Math.min(maxAge,
+							Long.parseLong(d.substring(8).trim()) * 1000);
+				} catch (NumberFormatException e) {
+					maxAge = 0;
+				}
+			}
+		}
+		return maxAge;
+	}
+
+	private static String getKey(final String url, final AccessGrant token,
+			final Map<String, String> headerParams) throws Exception {
+		StringBuilder sb = new StringBuilder(url);
+		if (headerParams != null && !headerParams.isEmpty()) {
+			sb.append('|').append(new TreeMap<String, String>(headerParams));
+		}
+		if (token != null && token.getKey() != null) {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			sb.append('|').append(
+					Base64.encodeBytes(md.digest(token.getKey().getBytes(
+							"UTF-8"))));
+		}
+		return sb.toString();
+	}
+
+	private synchronized Entry get(final String key) {
+		return entries.get(key);
+	}
+
+	private synchronized void put(final String key, final Entry entry) {
+		entries.put(key, entry);
+	}
+
+	private synchronized void remove(final String key) {
+		entries.remove(key);
+	}
+
+	private static class Entry {
+		final int status;
+		final Map<String, String> headers;
+		final byte[] body;
+		final String etag;
+		final long expires;
+
+		Entry(final int status, final Map<String, String> headers,
+				final byte[] body, final String etag, final long expires) {
+			this.status = status;
+			this.headers = headers;
+			this.body = body;
+			this.etag = etag;
+			this.expires = expires;
+		}
+
+		Response toResponse() {
+			return new Response(status, headers, body);
+		}
+	}
+}
@@ -0,0 +1,658 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.brickred.socialauth.util.XMLStreamUtil.XMLRecord;
+
+/**
+ * Maps the values of a JSON or XML document to the fields of an object, like
+ * a {@link org.brickred.socialauth.Profile} or a
+ * {@link org.brickred.socialauth.Contact}. A provider declares its mapping
+ * once, as document paths and the properties they set, and it is compiled
+ * into a tree walked in a single pass over the parser events. The members
+ * which are not mapped are skipped without being built.
+ * 
+ * <pre>
+ * private static final FieldMapping&lt;Profile&gt; PROFILE_MAPPING = FieldMapping
+ * 		.builder(Profile.class).map(&quot;id&quot;, &quot;validatedId&quot;)
+ * 		.map(&quot;name&quot;, &quot;fullName&quot;)
+ * 		.map(&quot;location.name&quot;, &quot;location&quot;).build();
+ * </pre>
+ * 
+ * A path is made of the names of the nested members separated by dots. A
+ * JSON array element is named by its index, like "emails.0.value". In XML
+ * the path starts below the document element, and an attribute is named with
+ * a leading '@', like "person.@nsid". Null JSON values are ignored, numbers
+ * and booleans are given as their text.
+ * 
+ * @param <T>
+ *            the type of the mapped objects
+ */
+public final class FieldMapping<T> {
+
+	/**
+	 * Sets a mapped value on the target object.
+	 * 
+	 * @param <T>
+	 *            the type of the mapped objects
+	 */
+	public interface Setter<T> {
+
+		/**
+		 * Called with the value found at the mapped path.
+		 * 
+		 * @param target
+		 *            the object being mapped
+		 * @param value
+		 *            the value, never null
+		 * @throws Exception
+		 */
+		public void set(T target, String value) throws Exception;
+	}
+
+	/**
+	 * Receives a JSON object or array found at a mapped path, for values whose
+	 * members must be read together, like the primary one of a list of
+	 * emails. Only this value is built, the rest of the document is still
+	 * streamed.
+	 * 
+	 * @param <T>
+	 *            the type of the mapped objects
+	 */
+	public interface JsonSetter<T> {
+
+		/**
+		 * Called with the object or array found at the mapped path.
+		 * 
+		 * @param target
+		 *            the object being mapped
+		 * @param value
+		 *            the JSON object or array
+		 * @throws Exception
+		 */
+		public void set(T target, JsonValue value) throws Exception;
+	}
+
+	/**
+	 * Receives an XML element found at a mapped path, with all its
+	 * descendants, for values which must be read together, like the type and
+	 * the number of a phone. Only this element is built, the rest of the
+	 * document is still streamed.
+	 * 
+	 * @param <T>
+	 *            the type of the mapped objects
+	 */
+	public interface XMLSetter<T> {
+
+		/**
+		 * Called with the element found at the mapped path.
+		 * 
+		 * @param target
+		 *            the object being mapped
+		 * @param element
+		 *            the element
+		 * @throws Exception
+		 */
+		public void set(T target, XMLRecord element) throws Exception;
+	}
+
+	private final Node<T> root;
+
+	private FieldMapping(final Node<T> root) {
+		this.root = root;
+	}
+
+	/**
+	 * Starts the mapping of the given type.
+	 * 
+	 * @param type
+	 *            the type of the mapped objects, whose String setters are
+	 *            looked up for the properties
+	 * @return the Builder
+	 */
+	public static <T> Builder<T> builder(final Class<T> type) {
+		return new Builder<T>(type);
+	}
+
+	/**
+	 * Maps the JSON body of the response to the target. The response is
+	 * closed once it has been read.
+	 * 
+	 * @param response
+	 *            the response to read
+	 * @param target
+	 *            the object to fill
+	 * @return the target
+	 * @throws Exception
+	 */
+	public T readJson(final Response response, final T target)
+			throws Exception {
+		try {
+			return readJson(JsonStreamUtil.getContentStream(response), target);
+		} finally {
+			response.close();
+		}
+	}
+
+	/**
+	 * Maps the given JSON document to the target.
+	 * 
+	 * @param in
+	 *            the JSON document, not closed
+	 * @param target
+	 *            the object to fill
+	 * @return the target
+	 * @throws Exception
+	 */
+	public T readJson(final InputStream in, final T target) throws Exception {
+		JsonParser parser = JsonStreamUtil.createParser(in);
+		try {
+			if (!parser.hasNext()) {
+				throw new JsonException("Empty JSON document");
+			}
+			Event event = parser.next();
+			if (event != Event.START_OBJECT && event != Event.START_ARRAY) {
+				throw new JsonException("Unexpected JSON event : " + event);
+			}
+			readValue(parser, event, root, target);
+			return target;
+		} finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * Maps an object which has already been read, like an element handed by
+	 * {@link JsonStreamUtil#streamArray(Response, JsonStreamUtil.ElementHandler, String...)}
+	 * , to the target. Only the mapped members are looked up.
+	 * 
+	 * @param object
+	 *            the JSON object
+	 * @param target
+	 *            the object to fill
+	 * @return the target
+	 * @throws Exception
+	 */
+	public T apply(final JsonObject object, final T target) throws Exception {
+		apply(object, root, target);
+		return target;
+	}
+
+	/**
+	 * Maps the XML body of the response to the target. The response is closed
+	 * once it has been read.
+	 * 
+	 * @param response
+	 *            the response to read
+	 * @param target
+	 *            the object to fill
+	 * @return the target
+	 * @throws Exception
+	 */
+	public T readXml(final Response response, final T target) throws Exception {
+		InputStream in = response.asInputStream();
+		try {
+			return readXml(in, target);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Maps the given XML document to the target.
+	 * 
+	 * @param in
+	 *            the XML document, not closed
+	 * @param target
+	 *            the object to fill
+	 * @return the target
+	 * @throws Exception
+	 */
+	public T readXml(final InputStream in, final T target) throws Exception {
+		XMLStreamReader reader = XMLStreamUtil.createReader(in);
+		try {
+			List<Node<T>> stack = new ArrayList<Node<T>>();
+			Node<T> node = null;
+			int skipped = 0;
+			StringBuilder text = new StringBuilder();
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					Node<T> child = stack.isEmpty() && node == null ? root
+							: skipped > 0 ? null : node.getChild(reader
+									.getLocalName());
+					if (child == null) {
+						skipped++;
+						continue;
+					}
+					if (child.xmlSetter != null) {
+						child.xmlSetter.set(target,
+								XMLStreamUtil.readElement(reader));
+						continue;
+					}
+					if (node != null) {
+						stack.add(node);
+					}
+					node = child;
+					text.setLength(0);
+					if (node.attributes != null) {
+						for (int i = 0; i < reader.getAttributeCount(); i++) {
+							Node<T> attribute = node.attributes.get(reader
+									.getAttributeLocalName(i));
+							if (attribute != null) {
+								attribute.set(target, reader.getAttributeValue(i));
+							}
+						}
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					if (skipped > 0) {
+						skipped--;
+						continue;
+					}
+					if (node.setters != null) {
+						node.set(target, text.toString());
+					}
+					node = stack.isEmpty() ? null : stack
+							.remove(stack.size() - 1);
+				} else if (skipped == 0
+						&& node != null
+						&& node.setters != null
+						&& (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)) {
+					text.append(reader.getTextCharacters(),
+							reader.getTextStart(), reader.getTextLength());
+				}
+			}
+			return target;
+		} catch (XMLStreamException e) {
+			throw new IOException("Invalid XML content : " + e.getMessage(), e);
+		} finally {
+			reader.close();
+		}
+	}
+
+	private void readObject(final JsonParser parser, final Node<T> node,
+			final T target) throws Exception {
+		Node<T> child = null;
+		while (parser.hasNext()) {
+			Event event = parser.next();
+			if (event == Event.END_OBJECT) {
+				return;
+			} else if (event == Event.KEY_NAME) {
+				child = node.getChild(parser.getString());
+			} else {
+				readValue(parser, event, child, target);
+			}
+		}
+		throw new JsonException("Unexpected end of JSON document");
+	}
+
+	private void readArray(final JsonParser parser, final Node<T> node,
+			final T target) throws Exception {
+		int index = 0;
+		while (parser.hasNext()) {
+			Event event = parser.next();
+			if (event == Event.END_ARRAY) {
+				return;
+			}
+			readValue(parser, event, node.getChild(index++), target);
+		}
+		throw new JsonException("Unexpected end of JSON document");
+	}
+
+	private void readValue(final JsonParser parser, final Event event,
+			final Node<T> node, final T target) throws Exception {
+		if (node == null) {
+			JsonStreamUtil.skipValue(parser, event);
+			return;
+		}
+		if (node.jsonSetter != null) {
+			if (event == Event.START_OBJECT) {
+				node.jsonSetter.set(target, JsonStreamUtil.readObject(parser));
+			} else if (event == Event.START_ARRAY) {
+				node.jsonSetter.set(target, JsonStreamUtil.readArray(parser));
+			}
+			return;
+		}
+		switch (event) {
+		case START_OBJECT:
+			readObject(parser, node, target);
+			break;
+		case START_ARRAY:
+			readArray(parser, node, target);
+			break;
+		case VALUE_STRING:
+		case VALUE_NUMBER:
+			node.set(target, parser.getString());
+			break;
+		case VALUE_TRUE:
+			node.set(target, "true");
+			break;
+		case VALUE_FALSE:
+			node.set(target, "false");
+			break;
+		default:
+			break;
+		}
+	}
+
+	private void apply(final JsonValue value, final Node<T> node,
+			final T target) throws Exception {
+		if (node.jsonSetter != null) {
+			if (value instanceof JsonObject || value instanceof JsonArray) {
+				node.jsonSetter.set(target, value);
+			}
+			return;
+		}
+		switch (value.getValueType()) {
+		case OBJECT:
+			if (node.children != null) {
+				JsonObject object = (JsonObject) value;
+				for (Map.Entry<String, Node<T>> entry : node.children
+						.entrySet()) {
+					JsonValue member = object.get(entry.getKey());
+					if (member != null) {
+						apply(member, entry.getValue(), target);
+					}
+				}
+			}
+			break;
+		case ARRAY:
+			JsonArray array = (JsonArray) value;
+			for (int i = 0; i < array.size(); i++) {
+				Node<T> child = node.getChild(i);
+				if (child != null) {
+					apply(array.get(i), child, target);
+				}
+			}
+			break;
+		case STRING:
+			node.set(target, ((JsonString) value).getString());
+			break;
+		case NUMBER:
+			node.set(target, ((JsonNumber) value).toString());
+			break;
+		case TRUE:
+			node.set(target, "true");
+			break;
+		case FALSE:
+			node.set(target, "false");
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Builds a {@link FieldMapping}. The mappings are usually declared in a
+	 * static field of the provider, so they are compiled once.
+	 * 
+	 * @param <T>
+	 *            the type of the mapped objects
+	 */
+	public static final class Builder<T> {
+
+		private final Class<T> type;
+		private final Node<T> root = new Node<T>();
+
+		private Builder(final Class<T> type) {
+			this.type = type;
+		}
+
+		/**
+		 * Maps the value at the given path to a String property of the
+		 * target, like "validatedId" for setValidatedId.
+		 * 
+		 * @param path
+		 *            the path of the value
+		 * @param property
+		 *            the name of the property
+		 * @return this Builder
+		 * @throws IllegalArgumentException
+		 *             if the type has no String setter for the property
+		 */
+		public Builder<T> map(final String path, final String property) {
+			String name = "set" + Character.toUpperCase(property.charAt(0))
+					+ property.substring(1);
+			final Method method;
+			try {
+				method = type.getMethod(name, String.class);
+			} catch (NoSuchMethodException e) {
+				throw new IllegalArgumentException(type.getName()
+						+ " has no String property " + property, e);
+			}
+			return map(path, new Setter<T>() {
+				@Override
+				public void set(final T target, final String value)
+						throws Exception {
+					try {
+						method.invoke(target, value);
+					} catch (InvocationTargetException e) {
+						Throwable cause = e.getCause();
+						throw cause instanceof Exception ? (Exception) cause : e;
+					}
+				}
+			});
+		}
+
+		/**
+		 * Maps the value at the given path to a setter, for values which need
+		 * to be converted or combined.
+		 * 
+		 * @param path
+		 *            the path of the value
+		 * @param setter
+		 *            the setter called with the value
+		 * @return this Builder
+		 */
+		public Builder<T> map(final String path, final Setter<T> setter) {
+			Node<T> node = root;
+			for (String name : path.split("\\.")) {
+				node = node.addChild(name);
+			}
+			if (node.setters == null) {
+				node.setters = new ArrayList<Setter<T>>(1);
+			}
+			node.setters.add(setter);
+			return this;
+		}
+
+		/**
+		 * Maps the JSON object or array at the given path to a setter. The
+		 * members below this path can not be mapped by other paths.
+		 * 
+		 * @param path
+		 *            the path of the value
+		 * @param setter
+		 *            the setter called with the value
+		 * @return this Builder
+		 */
+		public Builder<T> mapJson(final String path, final JsonSetter<T> setter) {
+			Node<T> node = root;
+			for (String name : path.split("\\.")) {
+				node = node.addChild(name);
+			}
+			node.jsonSetter = setter;
+			return this;
+		}
+
+		/**
+		 * Maps the XML element at the given path to a setter. The descendants
+		 * of this element can not be mapped by other paths.
+		 * 
+		 * @param path
+		 *            the path of the element
+		 * @param setter
+		 *            the setter called with the element
+		 * @return this Builder
+		 */
+		public Builder<T> mapXml(final String path, final XMLSetter<T> setter) {
+			Node<T> node = root;
+			for (String name : path.split("\\.")) {
+				node = node.addChild(name);
+			}
+			node.xmlSetter = setter;
+			return this;
+		}
+
+		/**
+		 * @return the compiled FieldMapping
+		 */
+		public FieldMapping<T> build() {
+			return new FieldMapping<T>(root.copy());
+		}
+	}
+
+	/**
+	 * A node of the compiled mapping, one per mapped path segment.
+	 */
+	private static final class Node<T> {
+
+		private Map<String, Node<T>> children;
+		private List<Node<T>> elements;
+		private Map<String, Node<T>> attributes;
+		private List<Setter<T>> setters;
+		private JsonSetter<T> jsonSetter;
+		private XMLSetter<T> xmlSetter;
+
+		Node<T> getChild(final String name) {
+			return children == null ? null : children.get(name);
+		}
+
+		Node<T> getChild(final int index) {
+			return elements == null || index >= elements.size() ? null
+					: elements.get(index);
+		}
+
+		void set(final T target, final String value) throws Exception {
+			if (setters != null) {
+				for (Setter<T> setter : setters) {
+					setter.set(target, value);
+				}
+			}
+		}
+
+		Node<T> addChild(final String name) {
+			boolean attribute = name.startsWith("@");
+			Map<String, Node<T>> map = attribute ? attributes : children;
+			if (map == null) {
+				map = new HashMap<String, Node<T>>();
+				if (attribute) {
+					attributes = map;
+				} else {
+					children = map;
+				}
+			}
+			String key = attribute ? name.substring(1) : name;
+			Node<T> child = map.get(key);
+			if (child == null) {
+				child = new Node<T>();
+				map.put(key, child);
+			}
+			return child;
+		}
+
+		/**
+		 * Copies the tree built so far, so a Builder reused after
+		 * {@link Builder#build()} does not change the compiled mapping, and
+		 * indexes the array elements.
+		 */
+		@SuppressWarnings("unchecked")
+		Node<T> copy() {
+			Node<T> node = new Node<T>();
+			if (setters != null) {
+				node.setters = new ArrayList<Setter<T>>(setters);
+			}
+			node.jsonSetter = jsonSetter;
+			node.xmlSetter = xmlSetter;
+			if (attributes != null) {
+				node.attributes = copy(attributes);
+			}
+			if (children != null) {
+				node.children = copy(children);
+				int size = 0;
+				for (String name : children.keySet()) {
+					int index = getIndex(name);
+					if (index >= size) {
+						size = index + 1;
+					}
+				}
+				if (size > 0) {
+					node.elements = new ArrayList<Node<T>>(
+							Collections.<Node<T>> nCopies(size, null));
+					for (Map.Entry<String, Node<T>> entry : node.children
+							.entrySet()) {
+						int index = getIndex(entry.getKey());
+						if (index >= 0) {
+							node.elements.set(index, entry.getValue());
+						}
+					}
+				}
+			}
+			return node;
+		}
+
+		private static <T> Map<String, Node<T>> copy(
+				final Map<String, Node<T>> map) {
+			Map<String, Node<T>> result = new HashMap<String, Node<T>>(
+					map.size() * 2);
+			for (Map.Entry<String, Node<T>> entry : map.entrySet()) {
+				result.put(entry.getKey(), entry.getValue().copy());
+			}
+			return result;
+		}
+
+		private static int getIndex(final String name) {
+			for (int i = 0; i < name.length(); i++) {
+				if (!Character.isDigit(name.charAt(i))) {
+					return -1;
+				}
+			}
+			return name.isEmpty() || name.length() > 4 ? -1 : Integer
+					.parseInt(name);
+		}
+	}
+}
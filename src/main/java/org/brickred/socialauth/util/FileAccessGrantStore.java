@@ -0,0 +1,139 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.brickred.socialauth.exception.SocialAuthException;
+
+/**
+ * Stores each encoded access grant in its own file of a directory, which may
+ * be shared by the nodes of a cluster. File names are hashes of the user and
+ * provider ids, and files are replaced atomically.
+ */
+public class FileAccessGrantStore implements AccessGrantStore {
+
+	private static final String SUFFIX = ".grant";
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private final Path directory;
+
+	/**
+	 * @param directory
+	 *            the directory of the grant files, created if needed
+	 * @throws SocialAuthException
+	 *             if the directory cannot be created
+	 */
+	public FileAccessGrantStore(final Path directory)
+			throws SocialAuthException {
+		this.directory = directory;
+		try {
+			Files.createDirectories(directory);
+		} catch (IOException e) {
+			throw new SocialAuthException("Cannot create directory "
+					+ directory, e);
+		}
+	}
+
+	@Override
+	public void save(final String userId, final AccessGrant grant)
+			throws SocialAuthException {
+		Path file = getFile(userId, grant.getProviderId());
+		byte[] data = AccessGrantCodec.encode(grant);
+		Path tmp = null;
+		try {
+			tmp = Files.createTempFile(directory, null, ".tmp");
+			Files.write(tmp, data);
+			try {
+				Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+			tmp = null;
+		} catch (IOException e) {
+			throw new SocialAuthException("Cannot write " + file, e);
+		} finally {
+			if (tmp != null) {
+				try {
+					Files.deleteIfExists(tmp);
+				} catch (IOException e) {
+					// nothing more to do
+				}
+			}
+		}
+	}
+
+	@Override
+	public AccessGrant load(final String userId, final String providerId)
+			throws SocialAuthException {
+		Path file = getFile(userId, providerId);
+		byte[] data;
+		try {
+			data = Files.readAllBytes(file);
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			throw new SocialAuthException("Cannot read " + file, e);
+		}
+		return AccessGrantCodec.decode(data);
+	}
+
+	@Override
+	public boolean remove(final String userId, final String providerId)
+			throws SocialAuthException {
+		Path file = getFile(userId, providerId);
+		try {
+			return Files.deleteIfExists(file);
+		} catch (IOException e) {
+			throw new SocialAuthException("Cannot delete " + file, e);
+		}
+	}
+
+	private Path getFile(final String userId, final String providerId) {
+		byte[] hash;
+		try {
+			hash = MessageDigest.getInstance("SHA-256").digest(
+					InMemoryAccessGrantStore.key(userId, providerId).getBytes(
+							StandardCharsets.UTF_8));
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform provides SHA-256
+			throw new IllegalStateException(e);
+		}
+		char[] name = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++) {
+			name[2 * i] = HEX[(hash[i] >> 4) & 0xF];
+			name[2 * i + 1] = HEX[hash[i] & 0xF];
+		}
+		return directory.resolve(new String(name) + SUFFIX);
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+
+/**
+ * Supplies the connections used by {@link HttpUtil} to talk to the providers.
+ * Every connection obtained through {@link #openConnection(URL, Proxy)} is
+ * handed back through {@link #releaseConnection(HttpURLConnection, boolean)}
+ * once its {@link Response} has been consumed or closed, so implementations
+ * can bound and reuse connections per host.
+ * 
+ * A custom implementation can be registered with
+ * {@link HttpUtil#setTransport(HttpTransport)} or through the
+ * "http.transport" property in the configuration file.
+ * 
+ */
+public interface HttpTransport {
+
+	/**
+	 * Opens a connection to the given URL.
+	 * 
+	 * @param url
+	 *            the URL to connect to
+	 * @param proxy
+	 *            the proxy to go through or null for a direct connection
+	 * @return the unconnected HttpURLConnection
+	 * @throws IOException
+	 */
+	public HttpURLConnection openConnection(URL url, Proxy proxy)
+			throws IOException;
+
+	/**
+	 * Tells that the status and headers of a connection have been received.
+	 * The connection stays leased until it is released.
+	 * 
+	 * @param connection
+	 *            a connection obtained from this transport and not released
+	 */
+	public void responseReceived(HttpURLConnection connection);
+
+	/**
+	 * Gives back a connection obtained from this transport.
+	 * 
+	 * @param connection
+	 *            the connection to release
+	 * @param reusable
+	 *            true if the response has been fully read and the underlying
+	 *            socket can be kept alive, false if it must be dropped
+	 */
+	public void releaseConnection(HttpURLConnection connection,
+			boolean reusable);
+
+	/**
+	 * Releases all the resources held by this transport.
+	 */
+	public void shutdown();
+}
@@ -25,6 +25,7 @@
 package org.brickred.socialauth.util;
 
 import java.io.DataOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -35,7 +36,9 @@ import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.net.Proxy.Type;
 import java.net.URL;
-import java.net.URLEncoder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
@@ -43,9 +46,14 @@ import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ThreadLocalRandom;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
@@ -58,6 +66,8 @@ import javax.net.ssl.X509TrustManager;
 import java.util.logging.Logger;
 
 import org.brickred.socialauth.exception.SocialAuthException;
+import org.brickred.socialauth.metrics.Instrumentation;
+import org.brickred.socialauth.metrics.NoOpInstrumentation;
 
 /**
  * This class is used to make HTTP requests. We did try NOT writing this class
@@ -74,9 +84,39 @@ import org.brickred.socialauth.exception.SocialAuthException;
  */
 public class HttpUtil {
 
+	/**
+	 * Default read timeout, in milliseconds.
+	 */
+	public static final int DEFAULT_READ_TIMEOUT = 30 * 1000;
+
+	/**
+	 * Default number of retries of a GET request: none.
+	 */
+	public static final int DEFAULT_MAX_RETRIES = 0;
+
+	/**
+	 * Default base delay between retries, in milliseconds.
+	 */
+	public static final int DEFAULT_RETRY_BACKOFF = 250;
+
+	/**
+	 * Default maximum size of the response bodies, in bytes.
+	 */
+	public static final int DEFAULT_MAX_RESPONSE_BODY_SIZE = 32 * 1024 * 1024;
+
 	private static final Logger LOG = Logger.getLogger(HttpUtil.class.getName());
-	private static Proxy proxyObj = null;
-	private static int timeoutValue = 0;
+	private static volatile Proxy proxyObj = null;
+	private static volatile int timeoutValue = 0;
+	private static volatile int readTimeoutValue = DEFAULT_READ_TIMEOUT;
+	private static volatile int maxRetries = DEFAULT_MAX_RETRIES;
+	private static volatile int retryBackoff = DEFAULT_RETRY_BACKOFF;
+	private static final int MAX_RETRY_DELAY = 5000;
+	private static final Set<String> domains = new CopyOnWriteArraySet<String>();
+	private static final ConcurrentMap<String, Integer> readTimeouts = new ConcurrentHashMap<String, Integer>();
+	private static final ConcurrentMap<String, String> hostDomains = new ConcurrentHashMap<String, String>();
+	private static volatile int maxResponseBodySize = DEFAULT_MAX_RESPONSE_BODY_SIZE;
+	private static volatile HttpTransport transport = new PooledHttpTransport();
+	private static volatile Instrumentation instrumentation = NoOpInstrumentation.INSTANCE;
 	static {
 
 		boolean isAndroidFroyo = false;
@@ -171,15 +211,132 @@ public class HttpUtil {
 	public static Response doHttpRequest(final String urlStr,
 			final String requestMethod, final String body,
 			final Map<String, String> header) throws SocialAuthException {
-		HttpURLConnection conn;
-		try {
+		return doHttpRequest(urlStr, requestMethod, body, header, null);
+	}
 
-			URL url = new URL(urlStr);
-			if (proxyObj != null) {
-				conn = (HttpURLConnection) url.openConnection(proxyObj);
-			} else {
-				conn = (HttpURLConnection) url.openConnection();
+	/**
+	 * Makes HTTP request using java.net.HTTPURLConnection, signing each
+	 * attempt. A GET request is retried on a connection failure or on a 429
+	 * or 5xx status, and a retry must not replay the nonce and timestamp of
+	 * the previous attempt.
+	 * 
+	 * @param urlStr
+	 *            the URL String, before signing
+	 * @param requestMethod
+	 *            Method type
+	 * @param body
+	 *            Body to pass in request.
+	 * @param header
+	 *            Header parameters
+	 * @param signer
+	 *            the signer of each attempt, or null to send the request as
+	 *            it is
+	 * @return Response Object
+	 * @throws SocialAuthException
+	 */
+	public static Response doHttpRequest(final String urlStr,
+			final String requestMethod, final String body,
+			final Map<String, String> header, final RequestSigner signer)
+			throws SocialAuthException {
+		URL url = toURL(urlStr);
+		// If use POST or PUT must use this
+		byte[] data = null;
+		if (body != null && requestMethod != null
+				&& !MethodType.GET.toString().equals(requestMethod)
+				&& !MethodType.DELETE.toString().equals(requestMethod)) {
+			try {
+				data = body.getBytes(Constants.ENCODING);
+			} catch (UnsupportedEncodingException e) {
+				throw new SocialAuthException(e);
+			}
+		}
+		long sent = data == null ? 0 : data.length;
+		String domain = getDomain(url.getHost());
+		CircuitBreaker breaker = CircuitBreaker.getInstance();
+		Instrumentation metrics = instrumentation;
+		long start = metrics == NoOpInstrumentation.INSTANCE ? 0 : System
+				.nanoTime();
+		int attempts = 1;
+		if (requestMethod == null
+				|| MethodType.GET.toString().equalsIgnoreCase(requestMethod)) {
+			attempts += maxRetries;
+		}
+		// the breaker counts one failure per request, not per attempt
+		for (int attempt = 1;; attempt++) {
+			breaker.check(domain);
+			Map<String, String> headers = header;
+			if (signer != null) {
+				headers = new HashMap<String, String>();
+				if (header != null) {
+					headers.putAll(header);
+				}
+				url = toURL(signer.sign(headers));
+			}
+			Response response;
+			try {
+				response = send(url, requestMethod, data, headers,
+						getReadTimeout(domain));
+			} catch (SocialAuthException e) {
+				if (attempt >= attempts || breaker.isOpen(domain)) {
+					breaker.onFailure(domain, 0);
+					record(metrics, domain, url, null, start, sent, attempt - 1);
+					throw e;
+				}
+				LogUtil.fine(LOG, "Retrying " + url.getHost() + " after : ",
+						e.getMessage());
+				sleep(backoff(attempt));
+				continue;
+			}
+			int status = response.getStatus();
+			if (status != 429 && status < 500) {
+				breaker.onSuccess(domain);
+				record(metrics, domain, url, response, start, sent,
+						attempt - 1);
+				return response;
+			}
+			long retryAfter = getRetryAfter(response
+					.getHeader(Constants.RETRY_AFTER_HEADER));
+			if (attempt >= attempts || retryAfter > MAX_RETRY_DELAY
+					|| retryAfter == 0 && breaker.isOpen(domain)) {
+				// a 429 is the quota of a token, paced by the RateLimiter,
+				// not an outage of the domain
+				if (status != 429) {
+					breaker.onFailure(domain, retryAfter);
+				}
+				record(metrics, domain, url, response, start, sent,
+						attempt - 1);
+				return response;
+			}
+			try {
+				response.close();
+			} catch (IOException e) {
+				// the connection is dropped
 			}
+			LogUtil.fine(LOG, "Retrying " + url.getHost() + " after status ",
+					status);
+			sleep(Math.max(retryAfter, backoff(attempt)));
+		}
+	}
+
+	private static URL toURL(final String urlStr) throws SocialAuthException {
+		try {
+			return new URL(urlStr);
+		} catch (IOException e) {
+			throw new SocialAuthException(e);
+		}
+	}
+
+	/**
+	 * Sends the request, waiting for the response status.
+	 */
+	private static Response send(final URL url, final String requestMethod,
+			final byte[] body, final Map<String, String> header,
+			final int readTimeout) throws SocialAuthException {
+		HttpTransport httpTransport = transport;
+		HttpURLConnection conn = null;
+		try {
+
+			conn = httpTransport.openConnection(url, proxyObj);
 
 			if (MethodType.POST.toString().equalsIgnoreCase(requestMethod)
 					|| MethodType.PUT.toString()
@@ -194,6 +351,9 @@ public class HttpUtil {
 				LOG.fine("Setting connection timeout : " + timeoutValue);
 				conn.setConnectTimeout(timeoutValue);
 			}
+			if (readTimeout > 0) {
+				conn.setReadTimeout(readTimeout);
+			}
 			if (requestMethod != null) {
 				conn.setRequestMethod(requestMethod);
 			}
@@ -203,24 +363,43 @@ public class HttpUtil {
 				}
 			}
 
-			// If use POST or PUT must use this
-			OutputStream os = null;
 			if (body != null) {
-				if (requestMethod != null
-						&& !MethodType.GET.toString().equals(requestMethod)
-						&& !MethodType.DELETE.toString().equals(requestMethod)) {
-					os = conn.getOutputStream();
-					DataOutputStream out = new DataOutputStream(os);
-					out.write(body.getBytes("UTF-8"));
-					out.flush();
-				}
+				OutputStream os = conn.getOutputStream();
+				os.write(body);
+				os.flush();
 			}
 			conn.connect();
+			conn.getResponseCode();
+			httpTransport.responseReceived(conn);
 		} catch (Exception e) {
+			if (conn != null) {
+				httpTransport.releaseConnection(conn, false);
+			}
 			throw new SocialAuthException(e);
 		}
-		return new Response(conn);
+		return new Response(conn, httpTransport);
+
+	}
 
+	/**
+	 * Reports a request to the instrumentation, unless it is the no-op one.
+	 */
+	private static void record(final Instrumentation metrics,
+			final String domain, final URL url, final Response response,
+			final long start, final long sent, final int retries) {
+		if (metrics == NoOpInstrumentation.INSTANCE) {
+			return;
+		}
+		long nanos = System.nanoTime() - start;
+		if (response == null) {
+			metrics.requestCompleted(domain, url.getPath(), 0, nanos, sent,
+					retries, false);
+		} else {
+			metrics.requestCompleted(domain, url.getPath(),
+					response.getStatus(), nanos, sent, retries,
+					response.isConnectionReused());
+			response.instrument(metrics, domain, url.getPath());
+		}
 	}
 
 	/**
@@ -247,15 +426,79 @@ public class HttpUtil {
 			final Map<String, String> header, final InputStream inputStream,
 			final String fileName, final String fileParamName)
 			throws SocialAuthException {
-		HttpURLConnection conn;
-		try {
+		return doMultipartRequest(urlStr, requestMethod, params, header,
+				inputStream, null, fileName, fileParamName);
+	}
 
-			URL url = new URL(urlStr);
-			if (proxyObj != null) {
-				conn = (HttpURLConnection) url.openConnection(proxyObj);
-			} else {
-				conn = (HttpURLConnection) url.openConnection();
+	/**
+	 * Makes HTTP request to upload a file. The file is transferred from its
+	 * channel with a known length.
+	 * 
+	 * @param urlStr
+	 *            the URL String
+	 * @param requestMethod
+	 *            Method type
+	 * @param params
+	 *            Parameters to pass in request
+	 * @param header
+	 *            Header parameters
+	 * @param file
+	 *            the file to upload
+	 * @param fileParamName
+	 *            Image Filename parameter. It requires in some provider.
+	 * @return Response object
+	 * @throws SocialAuthException
+	 */
+	public static Response doHttpRequest(final String urlStr,
+			final String requestMethod, final Map<String, String> params,
+			final Map<String, String> header, final Path file,
+			final String fileParamName) throws SocialAuthException {
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(file, StandardOpenOption.READ);
+		} catch (IOException e) {
+			throw new SocialAuthException(e);
+		}
+		try {
+			return doMultipartRequest(urlStr, requestMethod, params, header,
+					null, channel, file.getFileName().toString(),
+					fileParamName);
+		} finally {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				LOG.warning("Unable to close " + file);
 			}
+		}
+	}
+
+	/**
+	 * Sends the file from the channel when there is one, which is the case of
+	 * files and FileInputStreams, with fixed-length streaming. Other streams
+	 * are sent with chunked streaming, so the body is never buffered in
+	 * memory.
+	 */
+	private static Response doMultipartRequest(final String urlStr,
+			final String requestMethod, final Map<String, String> params,
+			final Map<String, String> header, final InputStream inputStream,
+			final FileChannel fileChannel, final String fileName,
+			final String fileParamName) throws SocialAuthException {
+		HttpTransport httpTransport = transport;
+		HttpURLConnection conn = null;
+		String domain = null;
+		CircuitBreaker breaker = CircuitBreaker.getInstance();
+		Instrumentation metrics = instrumentation;
+		long start = metrics == NoOpInstrumentation.INSTANCE ? 0 : System
+				.nanoTime();
+		URL url = null;
+		long sent = 0;
+		Response response;
+		try {
+
+			url = new URL(urlStr);
+			domain = getDomain(url.getHost());
+			breaker.check(domain);
+			conn = httpTransport.openConnection(url, proxyObj);
 
 			if (requestMethod.equalsIgnoreCase(MethodType.POST.toString())
 					|| requestMethod
@@ -270,6 +513,10 @@ public class HttpUtil {
 				LOG.fine("Setting connection timeout : " + timeoutValue);
 				conn.setConnectTimeout(timeoutValue);
 			}
+			int readTimeout = getReadTimeout(domain);
+			if (readTimeout > 0) {
+				conn.setReadTimeout(readTimeout);
+			}
 			if (requestMethod != null) {
 				conn.setRequestMethod(requestMethod);
 			}
@@ -280,63 +527,67 @@ public class HttpUtil {
 			}
 
 			// If use POST or PUT must use this
-			OutputStream os = null;
-			if (inputStream != null) {
+			if (inputStream != null || fileChannel != null) {
 				if (requestMethod != null
 						&& !MethodType.GET.toString().equals(requestMethod)
 						&& !MethodType.DELETE.toString().equals(requestMethod)) {
 					LOG.fine(requestMethod + " request");
-					String boundary = "----Socialauth-posting"
-							+ System.currentTimeMillis();
+					MultipartWriter multipart = new MultipartWriter(fileName,
+							fileParamName, params);
 					conn.setRequestProperty("Content-Type",
-							"multipart/form-data; boundary=" + boundary);
-					boundary = "--" + boundary;
-
-					os = conn.getOutputStream();
-					DataOutputStream out = new DataOutputStream(os);
-					write(out, boundary + "\r\n");
-
-					if (fileParamName != null) {
-						write(out, "Content-Disposition: form-data; name=\""
-								+ fileParamName + "\"; filename=\"" + fileName
-								+ "\"\r\n");
-					} else {
-						write(out,
-								"Content-Disposition: form-data;  filename=\""
-										+ fileName + "\"\r\n");
-					}
-					write(out, "Content-Type: " + "multipart/form-data"
-							+ "\r\n\r\n");
-					int b;
-					while ((b = inputStream.read()) != -1) {
-						out.write(b);
+							multipart.getContentType());
+					FileChannel channel = fileChannel;
+					if (channel == null
+							&& inputStream instanceof FileInputStream) {
+						channel = ((FileInputStream) inputStream).getChannel();
 					}
-					// out.write(imageFile);
-					write(out, "\r\n");
-
-					Iterator<Map.Entry<String, String>> entries = params
-							.entrySet().iterator();
-					while (entries.hasNext()) {
-						Map.Entry<String, String> entry = entries.next();
-						write(out, boundary + "\r\n");
-						write(out, "Content-Disposition: form-data; name=\""
-								+ entry.getKey() + "\"\r\n\r\n");
-						// write(out,
-						// "Content-Type: text/plain;charset=UTF-8 \r\n\r\n");
-						LOG.fine(entry.getValue());
-						out.write(entry.getValue().getBytes("UTF-8"));
-						write(out, "\r\n");
+					OutputStream os;
+					if (channel != null) {
+						long position = channel.position();
+						long count = channel.size() - position;
+						sent = multipart.getLength(count);
+						conn.setFixedLengthStreamingMode(sent);
+						os = conn.getOutputStream();
+						try {
+							multipart.write(os, channel, position, count);
+						} finally {
+							os.close();
+						}
+					} else {
+						conn.setChunkedStreamingMode(MultipartWriter.BUFFER_SIZE);
+						os = conn.getOutputStream();
+						try {
+							multipart.write(os, inputStream);
+						} finally {
+							os.close();
+						}
 					}
-
-					write(out, boundary + "--\r\n");
-					write(out, "\r\n");
 				}
 			}
 			conn.connect();
+			int status = conn.getResponseCode();
+			httpTransport.responseReceived(conn);
+			if (status >= 500) {
+				breaker.onFailure(domain, getRetryAfter(conn
+						.getHeaderField(Constants.RETRY_AFTER_HEADER)));
+			} else if (status != 429) {
+				breaker.onSuccess(domain);
+			}
+		} catch (SocialAuthException e) {
+			throw e;
 		} catch (Exception e) {
+			if (conn != null) {
+				httpTransport.releaseConnection(conn, false);
+			}
+			if (domain != null) {
+				breaker.onFailure(domain, 0);
+				record(metrics, domain, url, null, start, sent, 0);
+			}
 			throw new SocialAuthException(e);
 		}
-		return new Response(conn);
+		response = new Response(conn, httpTransport);
+		record(metrics, domain, url, response, start, sent, 0);
+		return response;
 
 	}
 
@@ -375,19 +626,7 @@ public class HttpUtil {
 
 	public static String encodeURIComponent(final String value)
 			throws Exception {
-		if (value == null) {
-			return "";
-		}
-
-		try {
-			return URLEncoder.encode(value, "utf-8")
-					// OAuth encodes some characters differently:
-					.replace("+", "%20").replace("*", "%2A")
-					.replace("%7E", "~");
-			// This could be done faster with more hand-crafted code.
-		} catch (UnsupportedEncodingException wow) {
-			throw new SocialAuthException(wow.getMessage(), wow);
-		}
+		return OAuthSigner.percentEncode(value);
 	}
 
 	/*
@@ -516,6 +755,13 @@ public class HttpUtil {
 		}
 	}
 
+	/**
+	 * Removes the proxy, the requests are sent directly.
+	 */
+	public static void removeProxyConfig() {
+		proxyObj = null;
+	}
+
 	/**
 	 * Sets the connection time out. This will be implicitly called if
 	 * "http.connectionTimeOut" property is given in properties file
@@ -527,6 +773,234 @@ public class HttpUtil {
 		timeoutValue = timeout;
 	}
 
+	/**
+	 * Sets the read time out of all the providers. This will be implicitly
+	 * called if "http.readTimeOut" property is given in properties file
+	 * 
+	 * @param timeout
+	 *            read timeout in milliseconds, 0 for none. Defaults to
+	 *            {@link #DEFAULT_READ_TIMEOUT}.
+	 */
+	public static void setReadTimeout(final int timeout) {
+		readTimeoutValue = timeout;
+	}
+
+	/**
+	 * Sets the read time out of the requests to a provider domain and its
+	 * sub-domains. This will be implicitly called if the
+	 * "&lt;domain&gt;.read_timeout" property is given in properties file
+	 * 
+	 * @param domain
+	 *            the provider domain, such as twitter.com
+	 * @param timeout
+	 *            read timeout in milliseconds, 0 to use the one of all the
+	 *            providers
+	 */
+	public static void setReadTimeout(final String domain, final int timeout) {
+		addDomain(domain);
+		if (timeout > 0) {
+			readTimeouts.put(domain, timeout);
+		} else {
+			readTimeouts.remove(domain);
+		}
+	}
+
+	/**
+	 * Declares a provider domain. Requests to the domain and its sub-domains
+	 * share their read timeout and their circuit in the
+	 * {@link CircuitBreaker}; requests to other hosts are keyed by host.
+	 * 
+	 * @param domain
+	 *            the provider domain, such as twitter.com
+	 */
+	public static void addDomain(final String domain) {
+		if (domains.add(domain)) {
+			hostDomains.clear();
+		}
+	}
+
+	/**
+	 * Sets the number of times a GET request is retried after an I/O error or
+	 * a HTTP 429 or 5xx status. This will be implicitly called if
+	 * "http.maxRetries" property is given in properties file
+	 * 
+	 * @param retries
+	 *            the number of retries, 0, the default, to disable them
+	 */
+	public static void setMaxRetries(final int retries) {
+		maxRetries = Math.max(0, retries);
+	}
+
+	/**
+	 * @return the number of times a GET request is retried
+	 */
+	public static int getMaxRetries() {
+		return maxRetries;
+	}
+
+	/**
+	 * Sets the base delay between retries, doubled at each retry with a
+	 * random jitter and limited to 5 seconds. This will be implicitly called
+	 * if "http.retryBackoff" property is given in properties file
+	 * 
+	 * @param millis
+	 *            the base delay in milliseconds
+	 */
+	public static void setRetryBackoff(final int millis) {
+		retryBackoff = millis;
+	}
+
+	/**
+	 * Sets the transport used to open connections. The previous transport is
+	 * shut down.
+	 * 
+	 * @param httpTransport
+	 *            the transport to use
+	 */
+	public static void setTransport(final HttpTransport httpTransport) {
+		if (httpTransport != null && httpTransport != transport) {
+			HttpTransport old = transport;
+			transport = httpTransport;
+			old.shutdown();
+		}
+	}
+
+	/**
+	 * Sets the instrumentation receiving the measures of every request. This
+	 * will be implicitly called if "metrics.instrumentation" property is given
+	 * in properties file
+	 * 
+	 * @param metrics
+	 *            the instrumentation, null for none
+	 */
+	public static void setInstrumentation(final Instrumentation metrics) {
+		instrumentation = metrics == null ? NoOpInstrumentation.INSTANCE
+				: metrics;
+	}
+
+	/**
+	 * @return the instrumentation receiving the measures of every request
+	 */
+	public static Instrumentation getInstrumentation() {
+		return instrumentation;
+	}
+
+	/**
+	 * Retrieves the transport used to open connections.
+	 * 
+	 * @return the HttpTransport
+	 */
+	public static HttpTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Sets the maximum number of simultaneous connections per host. This will
+	 * be implicitly called if "http.maxConnectionsPerRoute" property is given
+	 * in properties file
+	 * 
+	 * @param max
+	 *            maximum number of connections per host
+	 */
+	public static void setMaxConnectionsPerRoute(final int max) {
+		if (transport instanceof PooledHttpTransport) {
+			((PooledHttpTransport) transport).setMaxPerRoute(max);
+		}
+	}
+
+	/**
+	 * Sets the time after which an unreleased connection is evicted. This
+	 * will be implicitly called if "http.connectionIdleTimeOut" property is
+	 * given in properties file
+	 * 
+	 * @param timeout
+	 *            idle timeout in milliseconds
+	 */
+	public static void setConnectionIdleTimeout(final int timeout) {
+		if (transport instanceof PooledHttpTransport) {
+			((PooledHttpTransport) transport).setIdleTimeout(timeout);
+		}
+	}
+
+	/**
+	 * Sets the maximum size of the response bodies read by
+	 * {@link Response#asBytes()} and {@link Response#asInputStream()}. This
+	 * will be implicitly called if "http.maxResponseBodySize" property is
+	 * given in properties file
+	 * 
+	 * @param size
+	 *            maximum size in bytes, 0 for no limit
+	 */
+	public static void setMaxResponseBodySize(final int size) {
+		maxResponseBodySize = size;
+	}
+
+	/**
+	 * Retrieves the maximum size of the response bodies.
+	 * 
+	 * @return maximum size in bytes, 0 for no limit
+	 */
+	public static int getMaxResponseBodySize() {
+		return maxResponseBodySize;
+	}
+
+	static String getDomain(final String host) {
+		String domain = hostDomains.get(host);
+		if (domain == null) {
+			domain = host;
+			int length = 0;
+			for (String d : domains) {
+				if (d.length() > length
+						&& (host.equals(d) || host.endsWith("." + d))) {
+					domain = d;
+					length = d.length();
+				}
+			}
+			hostDomains.put(host, domain);
+		}
+		return domain;
+	}
+
+	private static int getReadTimeout(final String domain) {
+		Integer timeout = domain == null ? null : readTimeouts.get(domain);
+		return timeout != null ? timeout.intValue() : readTimeoutValue;
+	}
+
+	/**
+	 * Full jitter: a random delay up to the exponentially growing backoff.
+	 */
+	private static long backoff(final int attempt) {
+		long max = Math.min(MAX_RETRY_DELAY,
+				(long) retryBackoff << Math.min(attempt - 1, 16));
+		return max <= 0 ? 0 : ThreadLocalRandom.current().nextLong(max + 1);
+	}
+
+	/**
+	 * Parses a Retry-After header given in seconds. The HTTP date form is
+	 * ignored.
+	 * 
+	 * @return the delay in milliseconds, 0 if none
+	 */
+	private static long getRetryAfter(final String value) {
+		if (value != null) {
+			try {
+				return Math.max(0L, Long.parseLong(value.trim()) * 1000L);
+			} catch (NumberFormatException e) {
+				LOG.fine("Ignoring Retry-After : " + value);
+			}
+		}
+		return 0;
+	}
+
+	private static void sleep(final long millis) throws SocialAuthException {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SocialAuthException(e);
+		}
+	}
+
 	public static void write(final DataOutputStream out, final String outStr)
 			throws IOException {
 		out.writeBytes(outStr);
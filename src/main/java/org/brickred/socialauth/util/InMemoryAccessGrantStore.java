@@ -0,0 +1,130 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import org.brickred.socialauth.exception.SocialAuthException;
+
+/**
+ * Keeps the encoded access grants in memory. When the store is full, the
+ * grants saved first are evicted. It suits a single node, or tests.
+ */
+public class InMemoryAccessGrantStore implements AccessGrantStore {
+
+	/**
+	 * Default maximum number of grants.
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+	private final ConcurrentMap<String, Entry> grants = new ConcurrentHashMap<String, Entry>();
+	private final Queue<Entry> order = new ConcurrentLinkedQueue<Entry>();
+	private final int maxEntries;
+
+	public InMemoryAccessGrantStore() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * @param maxEntries
+	 *            the maximum number of grants kept
+	 */
+	public InMemoryAccessGrantStore(final int maxEntries) {
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("maxEntries must be positive");
+		}
+		this.maxEntries = maxEntries;
+	}
+
+	@Override
+	public void save(final String userId, final AccessGrant grant)
+			throws SocialAuthException {
+		Entry entry = new Entry(key(userId, grant.getProviderId()),
+				AccessGrantCodec.encode(grant));
+		grants.put(entry.key, entry);
+		order.add(entry);
+		while (grants.size() > maxEntries) {
+			Entry eldest = order.poll();
+			if (eldest == null) {
+				break;
+			}
+			// replaced entries stay queued, only the current one is evicted
+			grants.remove(eldest.key, eldest);
+		}
+		if (order.size() > 2 * maxEntries) {
+			purge();
+		}
+	}
+
+	@Override
+	public AccessGrant load(final String userId, final String providerId)
+			throws SocialAuthException {
+		Entry entry = grants.get(key(userId, providerId));
+		return entry == null ? null : AccessGrantCodec.decode(entry.data);
+	}
+
+	@Override
+	public boolean remove(final String userId, final String providerId) {
+		return grants.remove(key(userId, providerId)) != null;
+	}
+
+	/**
+	 * Retrieves the number of stored grants.
+	 * 
+	 * @return the number of grants
+	 */
+	public int size() {
+		return grants.size();
+	}
+
+	private void purge() {
+		for (Entry entry : order) {
+			if (grants.get(entry.key) != entry) {
+				order.remove(entry);
+			}
+		}
+	}
+
+	static String key(final String userId, final String providerId) {
+		if (userId == null || providerId == null) {
+			throw new IllegalArgumentException(
+					"user id and provider id are required");
+		}
+		return userId + '\u0000' + providerId;
+	}
+
+	private static class Entry {
+		private final String key;
+		private final byte[] data;
+
+		Entry(final String key, final byte[] data) {
+			this.key = key;
+			this.data = data;
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.brickred.socialauth.exception.SocialAuthException;
+
+/**
+ * Stores the encoded access grants in a database table, shared by the nodes
+ * of a cluster. The table is expected to be created as:
+ * 
+ * <pre>
+ * CREATE TABLE socialauth_grant (
+ *   user_id VARCHAR(255) NOT NULL,
+ *   provider_id VARCHAR(64) NOT NULL,
+ *   grant_data VARBINARY(4096) NOT NULL,
+ *   PRIMARY KEY (user_id, provider_id)
+ * )
+ * </pre>
+ */
+public class JdbcAccessGrantStore implements AccessGrantStore {
+
+	/**
+	 * Default table name.
+	 */
+	public static final String DEFAULT_TABLE = "socialauth_grant";
+
+	private final DataSource dataSource;
+	private final String selectSql;
+	private final String updateSql;
+	private final String insertSql;
+	private final String deleteSql;
+
+	public JdbcAccessGrantStore(final DataSource dataSource) {
+		this(dataSource, DEFAULT_TABLE);
+	}
+
+	/**
+	 * @param dataSource
+	 *            the data source, for example looked up from JNDI
+	 * @param table
+	 *            the table name
+	 */
+	public JdbcAccessGrantStore(final DataSource dataSource, final String table) {
+		this.dataSource = dataSource;
+		selectSql = "SELECT grant_data FROM " + table
+				+ " WHERE user_id = ? AND provider_id = ?";
+		updateSql = "UPDATE " + table
+				+ " SET grant_data = ? WHERE user_id = ? AND provider_id = ?";
+		insertSql = "INSERT INTO " + table
+				+ " (grant_data, user_id, provider_id) VALUES (?, ?, ?)";
+		deleteSql = "DELETE FROM " + table
+				+ " WHERE user_id = ? AND provider_id = ?";
+	}
+
+	@Override
+	public void save(final String userId, final AccessGrant grant)
+			throws SocialAuthException {
+		byte[] data = AccessGrantCodec.encode(grant);
+		try (Connection con = dataSource.getConnection()) {
+			if (execute(con, updateSql, data, userId, grant.getProviderId()) == 0) {
+				try {
+					execute(con, insertSql, data, userId, grant.getProviderId());
+				} catch (SQLException e) {
+					// inserted concurrently by another node
+					if (execute(con, updateSql, data, userId,
+							grant.getProviderId()) == 0) {
+						throw e;
+					}
+				}
+			}
+		} catch (SQLException e) {
+			throw new SocialAuthException("Cannot save access grant", e);
+		}
+	}
+
+	@Override
+	public AccessGrant load(final String userId, final String providerId)
+			throws SocialAuthException {
+		byte[] data = null;
+		try (Connection con = dataSource.getConnection();
+				PreparedStatement st = con.prepareStatement(selectSql)) {
+			st.setString(1, userId);
+			st.setString(2, providerId);
+			try (ResultSet rs = st.executeQuery()) {
+				if (rs.next()) {
+					data = rs.getBytes(1);
+				}
+			}
+		} catch (SQLException e) {
+			throw new SocialAuthException("Cannot load access grant", e);
+		}
+		return data == null ? null : AccessGrantCodec.decode(data);
+	}
+
+	@Override
+	public boolean remove(final String userId, final String providerId)
+			throws SocialAuthException {
+		try (Connection con = dataSource.getConnection();
+				PreparedStatement st = con.prepareStatement(deleteSql)) {
+			st.setString(1, userId);
+			st.setString(2, providerId);
+			return st.executeUpdate() > 0;
+		} catch (SQLException e) {
+			throw new SocialAuthException("Cannot remove access grant", e);
+		}
+	}
+
+	private static int execute(final Connection con, final String sql,
+			final byte[] data, final String userId, final String providerId)
+			throws SQLException {
+		try (PreparedStatement st = con.prepareStatement(sql)) {
+			st.setBytes(1, data);
+			st.setString(2, userId);
+			st.setString(3, providerId);
+			return st.executeUpdate();
+		}
+	}
+}
@@ -0,0 +1,391 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParserFactory;
+
+/**
+ * Reads JSON responses with a streaming parser. The elements of a large
+ * array, like a friend list, are handed one at a time to an
+ * {@link ElementHandler} straight from the response stream, so neither the
+ * body as a String nor the whole object tree is ever held in memory.
+ * 
+ */
+public final class JsonStreamUtil {
+
+	private static final JsonParserFactory PARSER_FACTORY = Json
+			.createParserFactory(null);
+
+	private JsonStreamUtil() {
+	}
+
+	/**
+	 * Receives the elements of a streamed JSON array.
+	 */
+	public interface ElementHandler {
+
+		/**
+		 * Called for each object element of the array.
+		 * 
+		 * @param element
+		 *            the element
+		 * @throws Exception
+		 */
+		public void handle(JsonObject element) throws Exception;
+	}
+
+	/**
+	 * Streams the array found at the given path of the response body. The
+	 * response is closed once it has been read.
+	 * 
+	 * @param response
+	 *            the response to read
+	 * @param handler
+	 *            the handler receiving the object elements of the array
+	 * @param path
+	 *            names of the nested members leading to the array, none if
+	 *            the body itself is the array
+	 * @return the rest of the document, the streamed array being replaced by
+	 *         an empty array
+	 * @throws Exception
+	 */
+	public static JsonObject streamArray(final Response response,
+			final ElementHandler handler, final String... path)
+			throws Exception {
+		try {
+			return streamArray(getContentStream(response), handler, path);
+		} finally {
+			response.close();
+		}
+	}
+
+	/**
+	 * Streams the array found at the given path of the given JSON document.
+	 * 
+	 * @param in
+	 *            the JSON document
+	 * @param handler
+	 *            the handler receiving the object elements of the array
+	 * @param path
+	 *            names of the nested members leading to the array, none if
+	 *            the document itself is the array
+	 * @return the rest of the document, the streamed array being replaced by
+	 *         an empty array
+	 * @throws Exception
+	 */
+	public static JsonObject streamArray(final InputStream in,
+			final ElementHandler handler, final String... path)
+			throws Exception {
+		JsonParser parser = PARSER_FACTORY.createParser(in);
+		try {
+			if (!parser.hasNext()) {
+				throw new JsonException("Empty JSON document");
+			}
+			Event event = parser.next();
+			if (event == Event.START_ARRAY) {
+				if (path.length == 0) {
+					streamElements(parser, handler);
+				} else {
+					skipArray(parser);
+				}
+				return Json.createObjectBuilder().build();
+			} else if (event == Event.START_OBJECT) {
+				return streamObject(parser, handler, path, 0).build();
+			}
+			throw new JsonException("Unexpected JSON event : " + event);
+		} finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * Creates a streaming parser over the response body.
+	 * 
+	 * @param response
+	 *            the response to read
+	 * @return the JsonParser
+	 * @throws IOException
+	 */
+	public static JsonParser createParser(final Response response)
+			throws IOException {
+		return PARSER_FACTORY.createParser(getContentStream(response));
+	}
+
+	/**
+	 * Creates a streaming parser over the given JSON document.
+	 * 
+	 * @param in
+	 *            the JSON document
+	 * @return the JsonParser
+	 */
+	public static JsonParser createParser(final InputStream in) {
+		return PARSER_FACTORY.createParser(in);
+	}
+
+	/**
+	 * Reads the numbers of the array whose START_ARRAY event has just been
+	 * consumed, without boxing them.
+	 * 
+	 * @param parser
+	 *            the parser
+	 * @return the numbers of the array
+	 */
+	public static long[] readLongArray(final JsonParser parser) {
+		long[] values = new long[64];
+		int size = 0;
+		while (parser.hasNext()) {
+			Event event = parser.next();
+			if (event == Event.END_ARRAY) {
+				return Arrays.copyOf(values, size);
+			} else if (event == Event.VALUE_NUMBER) {
+				if (size == values.length) {
+					values = Arrays.copyOf(values, size * 2);
+				}
+				values[size++] = parser.getLong();
+			} else if (event == Event.START_OBJECT) {
+				skipObject(parser);
+			} else if (event == Event.START_ARRAY) {
+				skipArray(parser);
+			}
+		}
+		throw new JsonException("Unexpected end of JSON document");
+	}
+
+	/**
+	 * Skips the value whose first event has just been consumed.
+	 * 
+	 * @param parser
+	 *            the parser
+	 * @param event
+	 *            the first event of the value
+	 */
+	public static void skipValue(final JsonParser parser, final Event event) {
+		if (event == Event.START_ARRAY) {
+			skipArray(parser);
+		} else if (event == Event.START_OBJECT) {
+			skipObject(parser);
+		}
+	}
+
+	/**
+	 * Returns the response body stream, decompressed if needed and bounded by
+	 * the maximum response body size.
+	 * 
+	 * @param response
+	 *            the response
+	 * @return the body stream
+	 * @throws IOException
+	 */
+	public static InputStream getContentStream(final Response response)
+			throws IOException {
+		return response.asInputStream();
+	}
+
+	private static JsonObjectBuilder streamObject(final JsonParser parser,
+			final ElementHandler handler, final String[] path, final int depth)
+			throws Exception {
+		JsonObjectBuilder builder = Json.createObjectBuilder();
+		String key = null;
+		while (parser.hasNext()) {
+			Event event = parser.next();
+			if (event == Event.END_OBJECT) {
+				return builder;
+			} else if (event == Event.KEY_NAME) {
+				key = parser.getString();
+			} else if (depth < path.length && path[depth].equals(key)
+					&& event == Event.START_OBJECT) {
+				builder.add(key, streamObject(parser, handler, path, depth + 1));
+			} else if (depth == path.length - 1 && path[depth].equals(key)
+					&& event == Event.START_ARRAY) {
+				streamElements(parser, handler);
+				builder.add(key, Json.createArrayBuilder());
+			} else {
+				add(parser, event, builder, key);
+			}
+		}
+		throw new JsonException("Unexpected end of JSON document");
+	}
+
+	private static void streamElements(final JsonParser parser,
+			final ElementHandler handler) throws Exception {
+		while (parser.hasNext()) {
+			Event event = parser.next();
+			if (event == Event.END_ARRAY) {
+				return;
+			} else if (event == Event.START_OBJECT) {
+				handler.handle(readObject(parser));
+			} else if (event == Event.START_ARRAY) {
+				skipArray(parser);
+			}
+		}
+		throw new JsonException("Unexpected end of JSON document");
+	}
+
+	/**
+	 * Reads the object whose START_OBJECT event has just been consumed.
+	 * 
+	 * @param parser
+	 *            the parser
+	 * @return the object
+	 */
+	public static JsonObject readObject(final JsonParser parser) {
+		return readObjectBuilder(parser).build();
+	}
+
+	/**
+	 * Reads the array whose START_ARRAY event has just been consumed.
+	 * 
+	 * @param parser
+	 *            the parser
+	 * @return the array
+	 */
+	public static JsonArray readArray(final JsonParser parser) {
+		return readArrayBuilder(parser).build();
+	}
+
+	private static JsonObjectBuilder readObjectBuilder(final JsonParser parser) {
+		JsonObjectBuilder builder = Json.createObjectBuilder();
+		String key = null;
+		while (parser.hasNext()) {
+			Event event = parser.next();
+			if (event == Event.END_OBJECT) {
+				return builder;
+			} else if (event == Event.KEY_NAME) {
+				key = parser.getString();
+			} else {
+				add(parser, event, builder, key);
+			}
+		}
+		throw new JsonException("Unexpected end of JSON document");
+	}
+
+	private static JsonArrayBuilder readArrayBuilder(final JsonParser parser) {
+		JsonArrayBuilder builder = Json.createArrayBuilder();
+		while (parser.hasNext()) {
+			Event event = parser.next();
+			switch (event) {
+			case END_ARRAY:
+				return builder;
+			case START_OBJECT:
+				builder.add(readObjectBuilder(parser));
+				break;
+			case START_ARRAY:
+				builder.add(readArrayBuilder(parser));
+				break;
+			case VALUE_STRING:
+				builder.add(parser.getString());
+				break;
+			case VALUE_NUMBER:
+				if (parser.isIntegralNumber()) {
+					builder.add(parser.getLong());
+				} else {
+					builder.add(parser.getBigDecimal());
+				}
+				break;
+			case VALUE_TRUE:
+				builder.add(true);
+				break;
+			case VALUE_FALSE:
+				builder.add(false);
+				break;
+			case VALUE_NULL:
+				builder.addNull();
+				break;
+			default:
+				break;
+			}
+		}
+		throw new JsonException("Unexpected end of JSON document");
+	}
+
+	private static void add(final JsonParser parser, final Event event,
+			final JsonObjectBuilder builder, final String key) {
+		switch (event) {
+		case START_OBJECT:
+			builder.add(key, readObjectBuilder(parser));
+			break;
+		case START_ARRAY:
+			builder.add(key, readArrayBuilder(parser));
+			break;
+		case VALUE_STRING:
+			builder.add(key, parser.getString());
+			break;
+		case VALUE_NUMBER:
+			if (parser.isIntegralNumber()) {
+				builder.add(key, parser.getLong());
+			} else {
+				builder.add(key, parser.getBigDecimal());
+			}
+			break;
+		case VALUE_TRUE:
+			builder.add(key, true);
+			break;
+		case VALUE_FALSE:
+			builder.add(key, false);
+			break;
+		case VALUE_NULL:
+			builder.addNull(key);
+			break;
+		default:
+			break;
+		}
+	}
+
+	private static void skipArray(final JsonParser parser) {
+		int level = 1;
+		while (level > 0 && parser.hasNext()) {
+			Event event = parser.next();
+			if (event == Event.START_ARRAY) {
+				level++;
+			} else if (event == Event.END_ARRAY) {
+				level--;
+			}
+		}
+	}
+
+	private static void skipObject(final JsonParser parser) {
+		int level = 1;
+		while (level > 0 && parser.hasNext()) {
+			Event event = parser.next();
+			if (event == Event.START_OBJECT) {
+				level++;
+			} else if (event == Event.END_OBJECT) {
+				level--;
+			}
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Logging helpers for the strategies, providers and plugins. A message is
+ * built only when its level is enabled, and the tokens, secrets, codes and
+ * signatures it holds are masked, whether they appear as URL or form
+ * parameters, JSON members, OAuth header parameters or labelled values such
+ * as "Access Token : ...".
+ * <p>
+ * Messages with a single variable part are logged with
+ * {@link #fine(Logger, String, Object)} and
+ * {@link #info(Logger, String, Object)}; the value is only converted to a
+ * string when the message is logged. Other messages are guarded with
+ * {@link Logger#isLoggable(Level)} and passed through {@link #redact(String)}.
+ * </p>
+ */
+public final class LogUtil {
+
+	private static final String MASK = "****";
+
+	private static final Pattern SECRETS = Pattern
+			.compile("(?i)((?<![\\w.-])(?:access_token|refresh_token|client_secret|oauth_token_secret|oauth_token|oauth_signature|oauth_verifier|openid\\.sig|mac_key|assoc_handle|password|secret|token|key|code|signature)[\"']?\\s*(?:=|:|%3D)\\s*[\"']?)([^&\"',;}\\s]+)");
+
+	private static final Pattern BEARER = Pattern
+			.compile("(?i)(\\bBearer\\s+)([^\"',;}\\s]+)");
+
+	private LogUtil() {
+	}
+
+	/**
+	 * Logs a message at FINE level.
+	 * 
+	 * @param log
+	 *            the logger
+	 * @param message
+	 *            the constant part of the message
+	 * @param value
+	 *            the variable part of the message, appended to it
+	 */
+	public static void fine(final Logger log, final String message,
+			final Object value) {
+		if (log.isLoggable(Level.FINE)) {
+			log.fine(redact(message + value));
+		}
+	}
+
+	/**
+	 * Logs a message at INFO level.
+	 * 
+	 * @param log
+	 *            the logger
+	 * @param message
+	 *            the constant part of the message
+	 * @param value
+	 *            the variable part of the message, appended to it
+	 */
+	public static void info(final Logger log, final String message,
+			final Object value) {
+		if (log.isLoggable(Level.INFO)) {
+			log.info(redact(message + value));
+		}
+	}
+
+	/**
+	 * Masks the secret values of a message.
+	 * 
+	 * @param message
+	 *            the message
+	 * @return the message without secrets
+	 */
+	public static String redact(final String message) {
+		if (message == null) {
+			return null;
+		}
+		String result = message;
+		Matcher m = SECRETS.matcher(result);
+		if (m.find()) {
+			result = m.replaceAll("$1" + MASK);
+		}
+		m = BEARER.matcher(result);
+		if (m.find()) {
+			result = m.replaceAll("$1" + MASK);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Writes a multipart/form-data body made of one file part followed by text
+ * parts. The parts around the file are encoded up front, so the length of the
+ * body is known as soon as the length of the file is, and the file content is
+ * streamed with bulk copies.
+ */
+final class MultipartWriter {
+
+	static final int BUFFER_SIZE = 8192;
+
+	private static final byte[] CRLF = { '\r', '\n' };
+
+	private static final Logger LOG = Logger.getLogger(MultipartWriter.class
+			.getName());
+
+	private final String boundary;
+	private final byte[] head;
+	private final byte[] tail;
+
+	/**
+	 * 
+	 * @param fileName
+	 *            the file name
+	 * @param fileParamName
+	 *            the name of the file part, can be null
+	 * @param params
+	 *            the text parts, can be null
+	 * @throws IOException
+	 */
+	MultipartWriter(final String fileName, final String fileParamName,
+			final Map<String, String> params) throws IOException {
+		boundary = "----Socialauth-posting" + System.currentTimeMillis();
+		String delimiter = "--" + boundary;
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+		write(out, delimiter);
+		out.write(CRLF);
+		if (fileParamName != null) {
+			write(out, "Content-Disposition: form-data; name=\""
+					+ fileParamName + "\"; filename=\"" + fileName + "\"");
+		} else {
+			write(out, "Content-Disposition: form-data;  filename=\""
+					+ fileName + "\"");
+		}
+		out.write(CRLF);
+		write(out, "Content-Type: multipart/form-data");
+		out.write(CRLF);
+		out.write(CRLF);
+		head = out.toByteArray();
+
+		out.reset();
+		out.write(CRLF);
+		if (params != null) {
+			for (Map.Entry<String, String> entry : params.entrySet()) {
+				write(out, delimiter);
+				out.write(CRLF);
+				write(out, "Content-Disposition: form-data; name=\""
+						+ entry.getKey() + "\"");
+				out.write(CRLF);
+				out.write(CRLF);
+				write(out, entry.getValue());
+				out.write(CRLF);
+			}
+		}
+		write(out, delimiter + "--");
+		out.write(CRLF);
+		out.write(CRLF);
+		tail = out.toByteArray();
+	}
+
+	/**
+	 * Gets the value of the Content-Type header
+	 * 
+	 * @return the multipart content type with its boundary
+	 */
+	String getContentType() {
+		return "multipart/form-data; boundary=" + boundary;
+	}
+
+	/**
+	 * Gets the length of the body.
+	 * 
+	 * @param fileLength
+	 *            the length of the file content
+	 * @return the length of the body
+	 */
+	long getLength(final long fileLength) {
+		return head.length + fileLength + tail.length;
+	}
+
+	/**
+	 * Writes the body, copying the file content from a stream.
+	 * 
+	 * @param os
+	 *            the request output stream
+	 * @param in
+	 *            the file content
+	 * @throws IOException
+	 */
+	void write(final OutputStream os, final InputStream in) throws IOException {
+		os.write(head);
+		byte[] buf = new byte[BUFFER_SIZE];
+		int n;
+		while ((n = in.read(buf)) != -1) {
+			os.write(buf, 0, n);
+		}
+		os.write(tail);
+		os.flush();
+	}
+
+	/**
+	 * Writes the body, transferring the file content from a channel without
+	 * going through an intermediate stream.
+	 * 
+	 * @param os
+	 *            the request output stream
+	 * @param channel
+	 *            the file
+	 * @param position
+	 *            the position of the content in the file
+	 * @param count
+	 *            the length of the content
+	 * @throws IOException
+	 */
+	void write(final OutputStream os, final FileChannel channel,
+			final long position, final long count) throws IOException {
+		os.write(head);
+		WritableByteChannel target = Channels.newChannel(os);
+		long done = 0;
+		while (done < count) {
+			long n = channel.transferTo(position + done, count - done, target);
+			if (n <= 0) {
+				throw new IOException("File truncated while uploading it, "
+						+ done + " of " + count + " bytes sent");
+			}
+			done += n;
+		}
+		os.write(tail);
+		os.flush();
+	}
+
+	private static void write(final ByteArrayOutputStream out,
+			final String str) throws IOException {
+		LOG.fine(str);
+		out.write(str.getBytes(Constants.ENCODING));
+	}
+}
@@ -49,6 +49,7 @@ public class OAuthConfig implements Serializable {
 	private String accessTokenUrl;
 	private String[] registeredPlugins;
 	private List<String> pluginsScopes;
+	private int maxParallelRequests;
 
 	/**
 	 * 
@@ -274,6 +275,28 @@ public class OAuthConfig implements Serializable {
 		this.pluginsScopes = pluginsScopes;
 	}
 
+	/**
+	 * Retrieves the maximum number of requests a provider may send in
+	 * parallel when a call needs several round trips, like the Twitter
+	 * friends lookup.
+	 * 
+	 * @return the maximum number of parallel requests, 0 if not configured
+	 */
+	public int getMaxParallelRequests() {
+		return maxParallelRequests;
+	}
+
+	/**
+	 * Updates the maximum number of requests a provider may send in
+	 * parallel.
+	 * 
+	 * @param maxParallelRequests
+	 *            the maximum number of parallel requests
+	 */
+	public void setMaxParallelRequests(final int maxParallelRequests) {
+		this.maxParallelRequests = maxParallelRequests;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder result = new StringBuilder();
@@ -291,6 +314,8 @@ public class OAuthConfig implements Serializable {
 		result.append(" accessTokenUrl: " + accessTokenUrl + NEW_LINE);
 		result.append(" registeredPlugins: " + registeredPlugins + NEW_LINE);
 		result.append(" pluginsScopes: " + pluginsScopes + NEW_LINE);
+		result.append(" maxParallelRequests: " + maxParallelRequests
+				+ NEW_LINE);
 		result.append("}");
 		return result.toString();
 	}
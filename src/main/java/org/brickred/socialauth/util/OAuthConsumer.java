@@ -30,11 +30,10 @@ import java.io.InputStreamReader;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.brickred.socialauth.exception.SignatureException;
@@ -51,7 +50,8 @@ public class OAuthConsumer implements Serializable, Constants {
 
 	private static final long serialVersionUID = -4560115102581632124L;
 	private static final Pattern AMPERSAND = Pattern.compile("&");
-	private final Logger LOG = Logger.getLogger(OAuthConsumer.class.getName());
+	private static final AtomicInteger NONCE_SEQUENCE = new AtomicInteger();
+	private static final Logger LOG = Logger.getLogger(OAuthConsumer.class.getName());
 	private OAuthConfig config;
 
 	/**
@@ -88,11 +88,13 @@ public class OAuthConsumer implements Serializable, Constants {
 			final String method, final String url,
 			final Map<String, String> args, final AccessGrant token)
 			throws Exception {
-		LOG.fine("Generating OAUTH Signature");
-		LOG.fine("Given Signature Type : " + signatureType);
-		LOG.fine("Given Method Type : " + method);
-		LOG.fine("Given URL : " + url);
-		LOG.fine("Given Parameters : " + args);
+		if (LOG.isLoggable(Level.FINE)) {
+			LOG.fine("Generating OAUTH Signature");
+			LogUtil.fine(LOG, "Given Signature Type : ", signatureType);
+			LogUtil.fine(LOG, "Given Method Type : ", method);
+			LogUtil.fine(LOG, "Given URL : ", url);
+			LogUtil.fine(LOG, "Given Parameters : ", args);
+		}
 		if (HMACSHA1_SIGNATURE.equals(signatureType)) {
 			return getHMACSHA1(method, url, args, token);
 		} else {
@@ -117,35 +119,13 @@ public class OAuthConsumer implements Serializable, Constants {
 		if (url.length() == 0) {
 			throw new SignatureException("Please check URL");
 		}
-		String key = HttpUtil.encodeURIComponent(config.get_consumerSecret())
-				+ "&";
-		if (token != null && token.getSecret() != null) {
-			key += HttpUtil.encodeURIComponent(token.getSecret());
-		}
-		try {
-			// get an hmac_sha1 key from the raw key bytes
-			SecretKeySpec signingKey = new SecretKeySpec(key.getBytes("UTF-8"),
-					"HMAC-SHA1");
-
-			// get an hmac_sha1 Mac instance and initialize with the signing key
-			Mac mac = Mac.getInstance("HmacSHA1");
-			mac.init(signingKey);
-
-			String data = HttpUtil.encodeURIComponent(method) + "&"
-					+ HttpUtil.encodeURIComponent(url) + "&"
-					+ HttpUtil.encodeURIComponent(HttpUtil.buildParams(args));
-			LOG.fine("Signature data : " + data);
-			// compute the hmac on input data bytes
-			byte[] rawHmac = mac.doFinal(data.getBytes("UTF-8"));
-
-			// base64-encode the hmac
-			LOG.fine("Encoding raw HMAC to Base64");
-			String sig = Base64.encodeBytes(rawHmac);
-
-			return sig;
-		} catch (Exception e) {
-			throw new SignatureException("Unable to generate HMAC-SHA1", e);
+		if (LOG.isLoggable(Level.FINE)) {
+			LOG.fine(LogUtil.redact("Signature data : "
+					+ OAuthSigner.getBaseString(method, url, args)));
 		}
+		return OAuthSigner.signHmacSha1(method, url, args,
+				config.get_consumerSecret(),
+				token == null ? null : token.getSecret());
 	}
 
 	/**
@@ -162,8 +142,8 @@ public class OAuthConsumer implements Serializable, Constants {
 	public AccessGrant getRequestToken(final String reqTokenURL,
 			final String callbackURL) throws Exception {
 		LOG.fine("Preparing to get Request Token");
-		LOG.fine("Given Request Token URL : " + reqTokenURL);
-		LOG.fine("Given CallBack URL : " + callbackURL);
+		LogUtil.fine(LOG, "Given Request Token URL : ", reqTokenURL);
+		LogUtil.fine(LOG, "Given CallBack URL : ", callbackURL);
 		AccessGrant token = null;
 
 		// Changes for LinkedIn. We have to pass scope while fetching
@@ -186,17 +166,11 @@ public class OAuthConsumer implements Serializable, Constants {
 
 		params.put(OAUTH_CALLBACK, callbackURL);
 		putOauthParams(params);
-
-		String sig = generateSignature(config.get_signatureMethod(),
-				config.get_transportName(), reqURL, params, null);
-		LOG.fine(config.get_signatureMethod()
-				+ " Signature for request token : " + sig);
-		params.put(OAUTH_SIGNATURE, sig);
-		reqURL += "?" + HttpUtil.buildParams(params);
-		LOG.fine("URL to get Request Token : " + reqURL);
+		LogUtil.fine(LOG, "URL to get Request Token : ", reqURL);
 
 		Response response = HttpUtil.doHttpRequest(reqURL,
-				config.get_transportName(), null, null);
+				config.get_transportName(), null, null,
+				signer(config.get_transportName(), reqURL, params, null, null));
 
 		if (response.getStatus() == 200) {
 			token = new AccessGrant();
@@ -224,8 +198,8 @@ public class OAuthConsumer implements Serializable, Constants {
 	public AccessGrant getAccessToken(final String accessTokenURL,
 			final AccessGrant reqToken) throws Exception {
 		LOG.fine("Preparing to get Access Token");
-		LOG.fine("Given Access Token URL : " + accessTokenURL);
-		LOG.fine("Given Request Token : " + reqToken.toString());
+		LogUtil.fine(LOG, "Given Access Token URL : ", accessTokenURL);
+		LogUtil.fine(LOG, "Given Request Token : ", reqToken);
 
 		if (reqToken.getKey() == null || reqToken.getKey().length() == 0) {
 			throw new SocialAuthException(
@@ -241,22 +215,22 @@ public class OAuthConsumer implements Serializable, Constants {
 		putOauthParams(params);
 
 		String reqURL = accessTokenURL;
-		String sig = generateSignature(config.get_signatureMethod(),
-				config.get_transportName(), reqURL, params, reqToken);
-		LOG.fine(config.get_signatureMethod()
-				+ " Signature for access token : " + sig);
-		params.put(OAUTH_SIGNATURE, sig);
-		String body = null;
-		if (MethodType.GET.toString().equals(config.get_transportName())) {
-			reqURL += "?" + HttpUtil.buildParams(params);
-		} else {
-			body = HttpUtil.buildParams(params);
-		}
-		LOG.fine("Access Token URL : " + reqURL);
+		LogUtil.fine(LOG, "Access Token URL : ", reqURL);
 		Response response = null;
 		try {
-			response = HttpUtil.doHttpRequest(reqURL,
-					config.get_transportName(), body, null);
+			if (MethodType.GET.toString().equals(config.get_transportName())) {
+				response = HttpUtil.doHttpRequest(reqURL,
+						config.get_transportName(), null, null,
+						signer(config.get_transportName(), reqURL, params,
+								reqToken, null));
+			} else {
+				String sig = generateSignature(config.get_signatureMethod(),
+						config.get_transportName(), reqURL, params, reqToken);
+				params.put(OAUTH_SIGNATURE, sig);
+				response = HttpUtil.doHttpRequest(reqURL,
+						config.get_transportName(),
+						HttpUtil.buildParams(params), null);
+			}
 		} catch (Exception e) {
 			LOG.fine("Error while getting Access Token");
 			throw new SocialAuthException("Error while getting Access Token", e);
@@ -404,24 +378,45 @@ public class OAuthConsumer implements Serializable, Constants {
 		} else {
 			url = reqURL;
 		}
-		String sig = generateSignature(config.get_signatureMethod(),
-				methodName, url, params, token);
-		params.put(OAUTH_SIGNATURE, sig);
-		Map<String, String> headerMap = null;
-		if (isHeaderRequired) {
-			String headerVal = getAuthHeaderValue(params);
-			headerMap = new HashMap<String, String>();
-			headerMap.put("Authorization", headerVal);
-			if (headerParams != null) {
-				for (String key : headerParams.keySet()) {
-					headerMap.put(key, headerParams.get(key));
+		if (!isHeaderRequired) {
+			return HttpUtil.doHttpRequest(url, methodName, body, null,
+					signer(methodName, url, params, token, null));
+		}
+		return HttpUtil.doHttpRequest(url, methodName, body, headerParams,
+				signer(methodName, url, params, token, reqURL));
+	}
+
+	/**
+	 * Signs each attempt of a request with a new nonce and timestamp, in the
+	 * query string, or in the Authorization header when the URL to send is
+	 * given.
+	 */
+	private RequestSigner signer(final String methodName, final String url,
+			final Map<String, String> params, final AccessGrant token,
+			final String signedURL) {
+		return new RequestSigner() {
+			@Override
+			public String sign(final Map<String, String> header)
+					throws SocialAuthException {
+				Map<String, String> attempt = new HashMap<String, String>(
+						params);
+				putNonceAndTimestamp(attempt);
+				try {
+					attempt.put(OAUTH_SIGNATURE, generateSignature(
+							config.get_signatureMethod(), methodName, url,
+							attempt, token));
+					if (signedURL != null) {
+						header.put("Authorization", getAuthHeaderValue(attempt));
+						return signedURL;
+					}
+					return url + "?" + HttpUtil.buildParams(attempt);
+				} catch (SocialAuthException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new SocialAuthException(e);
 				}
 			}
-			url = reqURL;
-		} else {
-			url += "?" + HttpUtil.buildParams(params);
-		}
-		return HttpUtil.doHttpRequest(url, methodName, body, headerMap);
+		};
 	}
 
 	private void parse(final InputStream in, final AccessGrant token)
@@ -449,10 +444,10 @@ public class OAuthConsumer implements Serializable, Constants {
 			String v = HttpUtil.decodeURIComponent(pair.substring(idx + 1));
 			if (key == null && OAUTH_TOKEN.equals(k)) {
 				key = v;
-				LOG.fine("KEY : " + key);
+				LogUtil.fine(LOG, "KEY : ", key);
 			} else if (secret == null && OAUTH_TOKEN_SECRET.equals(k)) {
 				secret = v;
-				LOG.fine("SECRET : " + secret);
+				LogUtil.fine(LOG, "SECRET : ", secret);
 			} else {
 				token.setAttribute(k, v);
 			}
@@ -471,7 +466,11 @@ public class OAuthConsumer implements Serializable, Constants {
 	public void putNonceAndTimestamp(final Map<String, String> params) {
 		long ts = System.currentTimeMillis();
 		params.put(OAUTH_TIMESTAMP, String.valueOf(ts / 1000));
-		params.put(OAUTH_NONCE, String.valueOf(ts));
+		// requests sent in parallel within the same millisecond need
+		// distinct nonces
+		params.put(OAUTH_NONCE,
+				String.valueOf(ts)
+						+ (NONCE_SEQUENCE.incrementAndGet() & Integer.MAX_VALUE));
 	}
 
 	/**
@@ -516,8 +515,8 @@ public class OAuthConsumer implements Serializable, Constants {
 	 */
 	public String getAuthHeaderValue(final Map<String, String> params)
 			throws Exception {
-		LOG.fine("Genrating Authorization header for given parameters : "
-				+ params);
+		LogUtil.fine(LOG, "Genrating Authorization header for given parameters : ",
+				params);
 		StringBuilder headerStr = new StringBuilder();
 		String[] REQUIRED_OAUTH_HEADERS_TO_SIGN = new String[] {
 				OAUTH_CONSUMER_KEY, OAUTH_NONCE, OAUTH_TIMESTAMP,
@@ -556,7 +555,7 @@ public class OAuthConsumer implements Serializable, Constants {
 		}
 		headerStr.setCharAt(0, ' ');
 		headerStr.insert(0, "OAuth");
-		LOG.fine("Authorize Header : " + headerStr.toString());
+		LogUtil.fine(LOG, "Authorize Header : ", headerStr);
 		return headerStr.toString();
 	}
 
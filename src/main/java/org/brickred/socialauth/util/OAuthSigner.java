@@ -0,0 +1,325 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.brickred.socialauth.exception.SignatureException;
+
+/**
+ * Computes OAuth 1.0a HMAC-SHA1 signatures. The signature base string is
+ * percent-encoded with a lookup table straight into a reused buffer. The
+ * buffers and <code>Mac</code> instances come from a small pool shared by
+ * the threads; a <code>Mac</code> is initialized with the key of each request
+ * and no secret is kept per thread.
+ */
+public final class OAuthSigner {
+
+	private static final String HMAC_SHA1 = "HmacSHA1";
+
+	private static final int MAX_POOLED_STATES = 16;
+
+	/**
+	 * Buffers grown beyond this size by a large request are not kept.
+	 */
+	private static final int MAX_BUFFER_SIZE = 8 * 1024;
+
+	private static final int INITIAL_BUFFER_SIZE = 512;
+
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	/**
+	 * Characters left as is by the percent-encoding of RFC 3986.
+	 */
+	private static final boolean[] UNRESERVED = new boolean[128];
+
+	static {
+		for (char c = 'a'; c <= 'z'; c++) {
+			UNRESERVED[c] = true;
+		}
+		for (char c = 'A'; c <= 'Z'; c++) {
+			UNRESERVED[c] = true;
+		}
+		for (char c = '0'; c <= '9'; c++) {
+			UNRESERVED[c] = true;
+		}
+		UNRESERVED['-'] = true;
+		UNRESERVED['.'] = true;
+		UNRESERVED['_'] = true;
+		UNRESERVED['~'] = true;
+	}
+
+	/**
+	 * Orders the encoded parameters by name, then by value (RFC 5849 section
+	 * 3.4.1.3.2).
+	 */
+	private static final Comparator<String[]> PARAMETER_ORDER = new Comparator<String[]>() {
+		@Override
+		public int compare(final String[] p1, final String[] p2) {
+			int c = p1[0].compareTo(p2[0]);
+			return c != 0 ? c : p1[1].compareTo(p2[1]);
+		}
+	};
+
+	private static final BlockingQueue<State> STATES = new ArrayBlockingQueue<State>(
+			MAX_POOLED_STATES);
+
+	private OAuthSigner() {
+	}
+
+	/**
+	 * Computes the HMAC-SHA1 signature of a request. Parameters having an
+	 * empty value are not signed.
+	 * 
+	 * @param method
+	 *            the HTTP method
+	 * @param url
+	 *            the request URL, without query string
+	 * @param params
+	 *            the query, body and oauth parameters
+	 * @param consumerSecret
+	 *            the consumer secret
+	 * @param tokenSecret
+	 *            the token secret, can be null
+	 * @return the base64 encoded signature
+	 * @throws SignatureException
+	 */
+	public static String signHmacSha1(final String method, final String url,
+			final Map<String, String> params, final String consumerSecret,
+			final String tokenSecret) throws SignatureException {
+		State state = STATES.poll();
+		if (state == null) {
+			state = new State();
+		}
+		try {
+			StringBuilder sb = state.buffer;
+			sb.setLength(0);
+			appendBaseString(method, url, params, sb);
+			int length = sb.length();
+			byte[] data = state.getBytes(length);
+			// the base string is only made of ASCII characters
+			for (int i = 0; i < length; i++) {
+				data[i] = (byte) sb.charAt(i);
+			}
+			Mac mac = state.getMac();
+			mac.init(new SecretKeySpec(getKey(consumerSecret, tokenSecret),
+					HMAC_SHA1));
+			mac.update(data, 0, length);
+			return Base64.encodeBytes(mac.doFinal());
+		} catch (Exception e) {
+			throw new SignatureException("Unable to generate HMAC-SHA1", e);
+		} finally {
+			state.trim();
+			STATES.offer(state);
+		}
+	}
+
+	/**
+	 * Gets the signature base string of a request, as signed by
+	 * {@link #signHmacSha1(String, String, Map, String, String)}.
+	 * 
+	 * @param method
+	 *            the HTTP method
+	 * @param url
+	 *            the request URL, without query string
+	 * @param params
+	 *            the query, body and oauth parameters
+	 * @return the signature base string
+	 */
+	public static String getBaseString(final String method, final String url,
+			final Map<String, String> params) {
+		StringBuilder sb = new StringBuilder();
+		appendBaseString(method, url, params, sb);
+		return sb.toString();
+	}
+
+	/**
+	 * Percent-encodes a value as required by OAuth (RFC 3986), in UTF-8.
+	 * 
+	 * @param value
+	 *            the value to encode, can be null
+	 * @return the encoded value, or the value itself if it has nothing to
+	 *         encode
+	 */
+	public static String percentEncode(final String value) {
+		if (value == null) {
+			return "";
+		}
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c >= 128 || !UNRESERVED[c]) {
+				StringBuilder sb = new StringBuilder(length + 16);
+				sb.append(value, 0, i);
+				encode(value, i, sb);
+				return sb.toString();
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Appends a value percent-encoded as required by OAuth (RFC 3986), in
+	 * UTF-8.
+	 * 
+	 * @param value
+	 *            the value to encode, can be null
+	 * @param out
+	 *            the buffer receiving the encoded value
+	 */
+	public static void percentEncode(final String value, final StringBuilder out) {
+		if (value != null) {
+			encode(value, 0, out);
+		}
+	}
+
+	private static void appendBaseString(final String method,
+			final String url, final Map<String, String> params,
+			final StringBuilder sb) {
+		percentEncode(method, sb);
+		sb.append('&');
+		percentEncode(url, sb);
+		sb.append('&');
+		appendParameters(params, sb);
+	}
+
+	/**
+	 * Appends the normalized parameters: encoded, sorted on their encoded
+	 * form, then encoded once more for the base string.
+	 */
+	private static void appendParameters(final Map<String, String> params,
+			final StringBuilder sb) {
+		if (params == null || params.isEmpty()) {
+			return;
+		}
+		String[][] encoded = new String[params.size()][];
+		int count = 0;
+		for (Map.Entry<String, String> entry : params.entrySet()) {
+			String value = entry.getValue();
+			if (value != null && value.length() > 0) {
+				encoded[count++] = new String[] {
+						percentEncode(entry.getKey()), percentEncode(value) };
+			}
+		}
+		Arrays.sort(encoded, 0, count, PARAMETER_ORDER);
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				// encoded '&'
+				sb.append("%26");
+			}
+			encode(encoded[i][0], 0, sb);
+			// encoded '='
+			sb.append("%3D");
+			encode(encoded[i][1], 0, sb);
+		}
+	}
+
+	private static byte[] getKey(final String consumerSecret,
+			final String tokenSecret) throws Exception {
+		StringBuilder sb = new StringBuilder();
+		percentEncode(consumerSecret, sb);
+		sb.append('&');
+		percentEncode(tokenSecret, sb);
+		return sb.toString().getBytes("UTF-8");
+	}
+
+	/**
+	 * Percent-encodes the characters of value from the given index.
+	 */
+	private static void encode(final String value, final int from,
+			final StringBuilder out) {
+		int length = value.length();
+		for (int i = from; i < length; i++) {
+			int c = value.charAt(i);
+			if (c < 128) {
+				if (UNRESERVED[c]) {
+					out.append((char) c);
+				} else {
+					appendEscaped(c, out);
+				}
+			} else if (c < 0x800) {
+				appendEscaped(0xC0 | (c >> 6), out);
+				appendEscaped(0x80 | (c & 0x3F), out);
+			} else if (Character.isHighSurrogate((char) c) && i + 1 < length
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				int cp = Character.toCodePoint((char) c, value.charAt(++i));
+				appendEscaped(0xF0 | (cp >> 18), out);
+				appendEscaped(0x80 | ((cp >> 12) & 0x3F), out);
+				appendEscaped(0x80 | ((cp >> 6) & 0x3F), out);
+				appendEscaped(0x80 | (cp & 0x3F), out);
+			} else if (Character.isSurrogate((char) c)) {
+				// malformed, encoded as '?' like URLEncoder does
+				appendEscaped('?', out);
+			} else {
+				appendEscaped(0xE0 | (c >> 12), out);
+				appendEscaped(0x80 | ((c >> 6) & 0x3F), out);
+				appendEscaped(0x80 | (c & 0x3F), out);
+			}
+		}
+	}
+
+	private static void appendEscaped(final int b, final StringBuilder out) {
+		out.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+	}
+
+	/**
+	 * Buffers and Mac instance of a signature in progress.
+	 */
+	private static class State {
+		StringBuilder buffer = new StringBuilder(INITIAL_BUFFER_SIZE);
+		private byte[] bytes = new byte[INITIAL_BUFFER_SIZE];
+		private Mac mac;
+
+		Mac getMac() throws Exception {
+			if (mac == null) {
+				mac = Mac.getInstance(HMAC_SHA1);
+			}
+			return mac;
+		}
+
+		byte[] getBytes(final int length) {
+			if (bytes.length < length) {
+				bytes = new byte[Math.max(length, bytes.length * 2)];
+			}
+			return bytes;
+		}
+
+		void trim() {
+			if (buffer.capacity() > MAX_BUFFER_SIZE) {
+				buffer = new StringBuilder(INITIAL_BUFFER_SIZE);
+			}
+			if (bytes.length > MAX_BUFFER_SIZE) {
+				bytes = new byte[INITIAL_BUFFER_SIZE];
+			}
+		}
+	}
+}
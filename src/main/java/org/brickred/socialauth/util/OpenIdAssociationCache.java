@@ -0,0 +1,246 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.brickred.socialauth.exception.SocialAuthException;
+
+/**
+ * Shares the OpenID associations of the Hybrid strategy between the logins.
+ * An association is made once per endpoint and its handle reused until
+ * shortly before its <code>expires_in</code>, so the redirect step does not
+ * wait for the provider. Once three quarters of that time have passed, the
+ * next login renews it in the background while the current handle is still
+ * given out. Concurrent logins missing the same endpoint wait for a single
+ * association request.
+ */
+public class OpenIdAssociationCache {
+
+	/**
+	 * Time in milliseconds before the expiry from which a handle is not given
+	 * out anymore, as the user still has to log in with it.
+	 */
+	private static final long LOGIN_MARGIN = TimeUnit.MINUTES.toMillis(10);
+
+	private static final String ASSOC_HANDLE = "assoc_handle";
+	private static final String EXPIRES_IN = "expires_in";
+
+	private static final Logger LOG = Logger
+			.getLogger(OpenIdAssociationCache.class.getName());
+
+	private static volatile OpenIdAssociationCache instance = new OpenIdAssociationCache();
+
+	private final ConcurrentMap<String, Association> associations = new ConcurrentHashMap<String, Association>();
+	private final ConcurrentMap<String, FutureTask<Association>> pending = new ConcurrentHashMap<String, FutureTask<Association>>();
+
+	/**
+	 * Gets the cache used by the Hybrid strategy.
+	 * 
+	 * @return the association cache
+	 */
+	public static OpenIdAssociationCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Replaces the cache used by the Hybrid strategy.
+	 * 
+	 * @param cache
+	 *            the association cache
+	 */
+	public static void setInstance(final OpenIdAssociationCache cache) {
+		instance = cache;
+	}
+
+	/**
+	 * Retrieves a handle of an association with an OpenID endpoint, making the
+	 * association if there is no usable one.
+	 * 
+	 * @param endpoint
+	 *            the OpenID endpoint URL
+	 * @return the association handle, empty if the provider made none, in
+	 *         which case the login goes on in stateless mode
+	 * @throws Exception
+	 */
+	public String getAssociationHandle(final String endpoint) throws Exception {
+		Association association = associations.get(endpoint);
+		long now = currentTimeMillis();
+		if (association != null && now < association.usableUntil) {
+			if (now >= association.renewAt) {
+				renewInBackground(endpoint);
+			}
+			return association.handle;
+		}
+		return associate(endpoint).handle;
+	}
+
+	/**
+	 * Forgets the association with an endpoint, e.g. when the provider
+	 * reports its handle as invalid.
+	 * 
+	 * @param endpoint
+	 *            the OpenID endpoint URL
+	 */
+	public void invalidate(final String endpoint) {
+		associations.remove(endpoint);
+	}
+
+	/**
+	 * Forgets all the associations.
+	 */
+	public void clear() {
+		associations.clear();
+	}
+
+	/**
+	 * Returns the current time of the association lifetimes. Subclasses may
+	 * override it to use another clock.
+	 * 
+	 * @return the current time in milliseconds
+	 */
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	private void renewInBackground(final String endpoint) {
+		if (pending.containsKey(endpoint)) {
+			return;
+		}
+		AsyncExecutor.trySubmit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					associate(endpoint);
+				} catch (Exception e) {
+					LOG.log(Level.WARNING, "Unable to renew the association with "
+							+ endpoint, e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Makes an association, or waits for the one being made for the same
+	 * endpoint.
+	 */
+	private Association associate(final String endpoint) throws Exception {
+		FutureTask<Association> task = new FutureTask<Association>(
+				new Callable<Association>() {
+					@Override
+					public Association call() throws Exception {
+						return fetch(endpoint);
+					}
+				});
+		FutureTask<Association> running = pending.putIfAbsent(endpoint, task);
+		if (running == null) {
+			try {
+				task.run();
+			} finally {
+				pending.remove(endpoint, task);
+			}
+			running = task;
+		}
+		try {
+			return running.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw new SocialAuthException(cause);
+		}
+	}
+
+	private Association fetch(final String endpoint) throws Exception {
+		String associationURL = OpenIdConsumer.getAssociationURL(endpoint);
+		long now = currentTimeMillis();
+		Response r = HttpUtil.doHttpRequest(associationURL,
+				MethodType.GET.toString(), null, null);
+		String handle = "";
+		long lifetime = 0;
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					r.getInputStream(), Constants.ENCODING));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int idx = line.indexOf(':');
+				if (idx < 0) {
+					continue;
+				}
+				String key = line.substring(0, idx);
+				if (ASSOC_HANDLE.equals(key)) {
+					handle = line.substring(idx + 1);
+				} else if (EXPIRES_IN.equals(key)) {
+					try {
+						lifetime = TimeUnit.SECONDS.toMillis(Long
+								.parseLong(line.substring(idx + 1).trim()));
+					} catch (NumberFormatException e) {
+						LOG.fine("Invalid expires_in : " + line);
+					}
+				}
+			}
+		} catch (Exception exc) {
+			throw new SocialAuthException("Failed to read response from  "
+					+ endpoint, exc);
+		} finally {
+			r.close();
+		}
+		Association association = new Association(handle, now, lifetime);
+		if (handle.isEmpty() || association.usableUntil <= now) {
+			associations.remove(endpoint);
+		} else {
+			associations.put(endpoint, association);
+		}
+		if (LOG.isLoggable(Level.FINE)) {
+			LOG.fine(LogUtil.redact("Association with " + endpoint
+					+ " : assoc_handle=" + handle + ", expires_in=" + lifetime));
+		}
+		return association;
+	}
+
+	private static final class Association {
+		private final String handle;
+		private final long usableUntil;
+		private final long renewAt;
+
+		Association(final String handle, final long created,
+				final long lifetime) {
+			this.handle = handle;
+			usableUntil = created + lifetime
+					- Math.min(lifetime / 2, LOGIN_MARGIN);
+			renewAt = created + (usableUntil - created) * 3 / 4;
+		}
+	}
+}
@@ -42,6 +42,7 @@ public class OpenIdConsumer {
 	private static Map<String, String> associationMap;
 	private static Map<String, String> requestTokenMap;
 	public static final String OPENID_REQUEST_TOKEN = "openid.ext2.request_token";
+	public static final String OPENID_INVALIDATE_HANDLE = "openid.invalidate_handle";
 	static {
 		associationMap = new HashMap<String, String>();
 		associationMap.put("openid.ns", "http://specs.openid.net/auth/2.0");
@@ -126,7 +127,7 @@ public class OpenIdConsumer {
 		String paramStr = HttpUtil.buildParams(params);
 		char separator = requestTokenUrl.indexOf('?') == -1 ? '?' : '&';
 		String url = requestTokenUrl + separator + paramStr;
-		LOG.fine("Request Token URL : " + url);
+		LogUtil.fine(LOG, "Request Token URL : ", url);
 		return url;
 	}
 
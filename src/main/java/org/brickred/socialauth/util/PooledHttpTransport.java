@@ -0,0 +1,391 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Default {@link HttpTransport}. It bounds the number of connections that can
+ * be in use at the same time for each route (scheme, host and port) and lets
+ * the JVM keep-alive cache reuse the sockets once a response has been fully
+ * read. HTTPS connections share a single SSLSocketFactory so TLS sessions are
+ * resumed instead of renegotiated.
+ * 
+ * A connection counts against its route until its response is released,
+ * that is fully read or closed. A daemon thread forgets the responses left
+ * unread and unclosed for longer than the idle timeout, so a leaked response
+ * does not hold its route forever: its connection stops counting against the
+ * route, without being disconnected as it may still be read. The same thread
+ * retires the routes which are not used anymore.
+ * 
+ */
+public class PooledHttpTransport implements HttpTransport {
+
+	/**
+	 * Default maximum number of connections per route
+	 */
+	public static final int DEFAULT_MAX_PER_ROUTE = 20;
+
+	/**
+	 * Default idle timeout in milliseconds
+	 */
+	public static final int DEFAULT_IDLE_TIMEOUT = 60000;
+
+	private static final int TLS_SESSION_TIMEOUT = 3600;
+
+	/**
+	 * Defaults of the JVM keep-alive cache: idle sockets kept per destination
+	 * and how long in milliseconds.
+	 */
+	private static final int KEEP_ALIVE_MAX = 5;
+	private static final int KEEP_ALIVE_TIME = 5000;
+
+	private static final Logger LOG = Logger
+			.getLogger(PooledHttpTransport.class.getName());
+
+	private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<String, Route>();
+	private final Map<HttpURLConnection, Lease> leases = new ConcurrentHashMap<HttpURLConnection, Lease>();
+	private volatile int maxPerRoute = DEFAULT_MAX_PER_ROUTE;
+	private volatile int idleTimeout = DEFAULT_IDLE_TIMEOUT;
+	private volatile SSLSocketFactory sslSocketFactory;
+	private volatile Thread evictor;
+	private volatile boolean shutdown;
+
+	/**
+	 * Sets the maximum number of connections which can be leased at the same
+	 * time for a given route, from the request until the response is
+	 * released. It only applies to the routes created after the call.
+	 * 
+	 * @param maxPerRoute
+	 *            maximum number of connections per route
+	 */
+	public void setMaxPerRoute(final int maxPerRoute) {
+		if (maxPerRoute > 0) {
+			this.maxPerRoute = maxPerRoute;
+		}
+	}
+
+	public int getMaxPerRoute() {
+		return maxPerRoute;
+	}
+
+	/**
+	 * Sets the time after which a received response which has not been
+	 * released is forgotten. It is also the time to wait for a free connection
+	 * when the route is exhausted.
+	 * 
+	 * @param idleTimeout
+	 *            idle timeout in milliseconds
+	 */
+	public void setIdleTimeout(final int idleTimeout) {
+		if (idleTimeout > 0) {
+			this.idleTimeout = idleTimeout;
+		}
+	}
+
+	public int getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	@Override
+	public HttpURLConnection openConnection(final URL url, final Proxy proxy)
+			throws IOException {
+		if (shutdown) {
+			throw new IOException("Transport has been shut down");
+		}
+		startEvictor();
+		Route route;
+		while (true) {
+			route = getRoute(url);
+			boolean acquired;
+			try {
+				acquired = route.permits.tryAcquire(idleTimeout,
+						TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(
+						"Interrupted while waiting for a connection");
+			}
+			if (!acquired) {
+				throw new IOException("Timeout waiting for a connection to "
+						+ route.name);
+			}
+			if (!route.retired) {
+				break;
+			}
+			// retired by the evictor after the lookup, get the new route
+			route.permits.release();
+		}
+		HttpURLConnection conn;
+		try {
+			if (proxy != null) {
+				conn = (HttpURLConnection) url.openConnection(proxy);
+			} else {
+				conn = (HttpURLConnection) url.openConnection();
+			}
+			if (conn instanceof HttpsURLConnection) {
+				SSLSocketFactory factory = getSSLSocketFactory();
+				if (factory != null) {
+					((HttpsURLConnection) conn).setSSLSocketFactory(factory);
+				}
+			}
+		} catch (IOException e) {
+			route.permits.release();
+			throw e;
+		} catch (RuntimeException e) {
+			route.permits.release();
+			throw e;
+		}
+		route.lastUsed = System.currentTimeMillis();
+		leases.put(conn, new Lease(route, route.takeIdle(route.lastUsed)));
+		return conn;
+	}
+
+	/**
+	 * Tells whether a leased connection was opened while a kept-alive socket
+	 * of its route was available. The JVM does not expose the socket reuse
+	 * itself, so it is inferred from the connections previously released as
+	 * reusable.
+	 * 
+	 * @param connection
+	 *            a connection obtained from this transport and not released
+	 * @return true if the connection most likely reuses a socket
+	 */
+	public boolean isReused(final HttpURLConnection connection) {
+		Lease lease = leases.get(connection);
+		return lease != null && lease.reused;
+	}
+
+	@Override
+	public void responseReceived(final HttpURLConnection connection) {
+		Lease lease = leases.get(connection);
+		if (lease != null) {
+			lease.receivedAt = System.currentTimeMillis();
+		}
+	}
+
+	@Override
+	public void releaseConnection(final HttpURLConnection connection,
+			final boolean reusable) {
+		Lease lease = leases.remove(connection);
+		if (!reusable) {
+			connection.disconnect();
+		}
+		if (lease != null) {
+			lease.route.lastUsed = System.currentTimeMillis();
+			if (reusable) {
+				lease.route.addIdle(lease.route.lastUsed);
+			}
+			lease.releasePermit();
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		Thread t = evictor;
+		if (t != null) {
+			t.interrupt();
+		}
+		for (HttpURLConnection conn : leases.keySet()) {
+			releaseConnection(conn, false);
+		}
+		routes.clear();
+	}
+
+	private Route getRoute(final URL url) {
+		int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+		String name = url.getProtocol() + "://" + url.getHost() + ":" + port;
+		Route route = routes.get(name);
+		if (route == null) {
+			Route created = new Route(name, maxPerRoute);
+			route = routes.putIfAbsent(name, created);
+			if (route == null) {
+				route = created;
+			}
+		}
+		return route;
+	}
+
+	private SSLSocketFactory getSSLSocketFactory() {
+		SSLSocketFactory factory = sslSocketFactory;
+		if (factory == null) {
+			try {
+				SSLContext ctx = SSLContext.getDefault();
+				SSLSessionContext sessions = ctx.getClientSessionContext();
+				if (sessions != null) {
+					sessions.setSessionTimeout(TLS_SESSION_TIMEOUT);
+				}
+				factory = ctx.getSocketFactory();
+			} catch (Exception e) {
+				LOG.warning("Unable to get the default SSLContext : "
+						+ e.getMessage());
+				factory = HttpsURLConnection.getDefaultSSLSocketFactory();
+			}
+			sslSocketFactory = factory;
+		}
+		return factory;
+	}
+
+	private void startEvictor() {
+		if (evictor == null) {
+			synchronized (this) {
+				if (evictor == null && !shutdown) {
+					Thread t = new Thread(new Runnable() {
+						@Override
+						public void run() {
+							evict();
+						}
+					}, "socialauth-connection-evictor");
+					t.setDaemon(true);
+					t.start();
+					evictor = t;
+				}
+			}
+		}
+	}
+
+	private void evict() {
+		while (!shutdown) {
+			try {
+				Thread.sleep(Math.max(1000, idleTimeout / 2));
+			} catch (InterruptedException e) {
+				return;
+			}
+			long now = System.currentTimeMillis();
+			Iterator<Lease> leased = leases.values().iterator();
+			while (leased.hasNext()) {
+				Lease lease = leased.next();
+				// a request still waiting for its response keeps its lease
+				if (lease.receivedAt > 0
+						&& now - lease.receivedAt > idleTimeout) {
+					if (LOG.isLoggable(Level.FINE)) {
+						LOG.fine("Forgetting unreleased response of "
+								+ lease.route.name);
+					}
+					leased.remove();
+					lease.releasePermit();
+				}
+			}
+			Iterator<Route> it = routes.values().iterator();
+			while (it.hasNext()) {
+				Route route = it.next();
+				if (now - route.lastUsed > idleTimeout && route.retire()) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	private static class Route {
+		private final String name;
+		private final int max;
+		private final Semaphore permits;
+		private final AtomicInteger idle = new AtomicInteger();
+		private volatile long lastUsed;
+		private volatile long lastIdle;
+		private volatile boolean retired;
+
+		Route(final String name, final int max) {
+			this.name = name;
+			this.max = max;
+			permits = new Semaphore(max, true);
+			lastUsed = System.currentTimeMillis();
+		}
+
+		/**
+		 * Retires the route if none of its connections is leased. The
+		 * threads which looked it up before see it retired once they get a
+		 * permit and look the route up again.
+		 */
+		boolean retire() {
+			if (!permits.tryAcquire(max)) {
+				return false;
+			}
+			retired = true;
+			permits.release(max);
+			return true;
+		}
+
+		void addIdle(final long now) {
+			lastIdle = now;
+			int n = idle.get();
+			while (n < KEEP_ALIVE_MAX && !idle.compareAndSet(n, n + 1)) {
+				n = idle.get();
+			}
+		}
+
+		boolean takeIdle(final long now) {
+			if (now - lastIdle > KEEP_ALIVE_TIME) {
+				idle.set(0);
+				return false;
+			}
+			int n = idle.get();
+			while (n > 0) {
+				if (idle.compareAndSet(n, n - 1)) {
+					return true;
+				}
+				n = idle.get();
+			}
+			return false;
+		}
+	}
+
+	private static class Lease {
+		private final Route route;
+		private final boolean reused;
+		private final AtomicBoolean permit = new AtomicBoolean(true);
+		private volatile long receivedAt;
+
+		Lease(final Route route, final boolean reused) {
+			this.route = route;
+			this.reused = reused;
+		}
+
+		void releasePermit() {
+			if (permit.compareAndSet(true, false)) {
+				route.permits.release();
+			}
+		}
+	}
+}
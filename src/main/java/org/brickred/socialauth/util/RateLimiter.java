@@ -0,0 +1,417 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import org.brickred.socialauth.exception.SocialAuthException;
+
+/**
+ * Paces the calls of the OAuth strategies with the rate limit headers sent by
+ * the providers (<code>X-RateLimit-Remaining</code>,
+ * <code>x-rate-limit-reset</code>...). The remaining quota is tracked per
+ * provider, access token and endpoint (<code>host/path</code>), and reserved
+ * before each call. When a quota is used up, calls wait for its reset if it
+ * comes within the maximum wait, and are rejected otherwise, before the
+ * provider answers with a 429.
+ * <p>
+ * Batch jobs can read the current budgets with
+ * {@link #getBudgets(String, AccessGrant)} to pace themselves.
+ * </p>
+ */
+public class RateLimiter {
+
+	/**
+	 * The known quota of an endpoint.
+	 */
+	public static final class Budget {
+		private final String endpoint;
+		private final int limit;
+		private final int remaining;
+		private final long resetTime;
+
+		Budget(final String endpoint, final Window window) {
+			this.endpoint = endpoint;
+			limit = window.limit;
+			remaining = window.remaining;
+			resetTime = window.reset;
+		}
+
+		/**
+		 * @return the endpoint, as host/path
+		 */
+		public String getEndpoint() {
+			return endpoint;
+		}
+
+		/**
+		 * @return the number of calls allowed per window, -1 if unknown
+		 */
+		public int getLimit() {
+			return limit;
+		}
+
+		/**
+		 * @return the number of calls left in the current window
+		 */
+		public int getRemaining() {
+			return remaining;
+		}
+
+		/**
+		 * @return the time at which the quota is reset, in milliseconds since
+		 *         the epoch
+		 */
+		public long getResetTime() {
+			return resetTime;
+		}
+
+		@Override
+		public String toString() {
+			return endpoint + " " + remaining + "/" + limit + " until "
+					+ resetTime;
+		}
+	}
+
+	private static final String[] REMAINING_HEADERS = {
+			"X-RateLimit-Remaining", "X-Rate-Limit-Remaining" };
+	private static final String[] LIMIT_HEADERS = { "X-RateLimit-Limit",
+			"X-Rate-Limit-Limit" };
+	private static final String[] RESET_HEADERS = { "X-RateLimit-Reset",
+			"X-Rate-Limit-Reset" };
+
+	/**
+	 * Window assumed when a provider gives no reset time, in milliseconds.
+	 */
+	private static final long DEFAULT_WINDOW = 60 * 1000L;
+	private static final int PURGE_INTERVAL = 1024;
+
+	private static final Logger LOG = Logger.getLogger(RateLimiter.class
+			.getName());
+
+	private static volatile RateLimiter instance = new RateLimiter();
+
+	private final ConcurrentMap<String, AtomicReference<Window>> windows = new ConcurrentHashMap<String, AtomicReference<Window>>();
+	private final AtomicInteger updates = new AtomicInteger();
+	private volatile long maxWait;
+	private volatile int reserve;
+
+	/**
+	 * Gets the rate limiter used by the OAuth strategies.
+	 * 
+	 * @return the rate limiter
+	 */
+	public static RateLimiter getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Replaces the rate limiter used by the OAuth strategies.
+	 * 
+	 * @param limiter
+	 *            the rate limiter
+	 */
+	public static void setInstance(final RateLimiter limiter) {
+		instance = limiter;
+	}
+
+	/**
+	 * Sets how long a call may wait for the reset of a used up quota before
+	 * being rejected. 0, the default, rejects it at once.
+	 * 
+	 * @param millis
+	 *            the maximum wait in milliseconds
+	 */
+	public void setMaxWait(final long millis) {
+		maxWait = millis;
+	}
+
+	/**
+	 * Sets the number of calls of each quota kept unused, as a margin for
+	 * the calls made outside of this application.
+	 * 
+	 * @param reserve
+	 *            the number of calls kept
+	 */
+	public void setReserve(final int reserve) {
+		this.reserve = reserve;
+	}
+
+	/**
+	 * Makes a call within the quota of its endpoint, and updates the quota
+	 * from the response headers.
+	 * 
+	 * @param providerId
+	 *            the provider id
+	 * @param token
+	 *            the access token, may be null
+	 * @param url
+	 *            the URL called
+	 * @param call
+	 *            the actual call
+	 * @return the response
+	 * @throws SocialAuthException
+	 *             if the quota is used up until after the maximum wait
+	 * @throws Exception
+	 *             thrown by the call
+	 */
+	public Response execute(final String providerId, final AccessGrant token,
+			final String url, final Callable<Response> call) throws Exception {
+		String endpoint = getEndpoint(url);
+		String key = getKey(providerId, token, endpoint);
+		AtomicReference<Window> ref = windows.get(key);
+		if (ref != null) {
+			acquire(ref, providerId, endpoint);
+		}
+		Response response = call.call();
+		if (response != null) {
+			update(key, ref, response);
+		}
+		return response;
+	}
+
+	/**
+	 * Retrieves the known quota of an endpoint.
+	 * 
+	 * @param providerId
+	 *            the provider id
+	 * @param token
+	 *            the access token, may be null
+	 * @param url
+	 *            a URL of the endpoint
+	 * @return the budget, or null if the provider has not sent one or it is
+	 *         reset
+	 */
+	public Budget getBudget(final String providerId, final AccessGrant token,
+			final String url) {
+		String endpoint = getEndpoint(url);
+		AtomicReference<Window> ref = windows.get(getKey(providerId, token,
+				endpoint));
+		Window w = ref == null ? null : ref.get();
+		if (w == null || w.reset <= currentTimeMillis()) {
+			return null;
+		}
+		return new Budget(endpoint, w);
+	}
+
+	/**
+	 * Retrieves the known quotas of all the endpoints called with a token.
+	 * 
+	 * @param providerId
+	 *            the provider id
+	 * @param token
+	 *            the access token, may be null
+	 * @return the budgets not reset yet
+	 */
+	public List<Budget> getBudgets(final String providerId,
+			final AccessGrant token) {
+		String prefix = getKey(providerId, token, "");
+		long now = currentTimeMillis();
+		List<Budget> budgets = new ArrayList<Budget>();
+		for (ConcurrentMap.Entry<String, AtomicReference<Window>> entry : windows
+				.entrySet()) {
+			if (entry.getKey().startsWith(prefix)) {
+				Window w = entry.getValue().get();
+				if (w.reset > now) {
+					budgets.add(new Budget(entry.getKey().substring(
+							prefix.length()), w));
+				}
+			}
+		}
+		return budgets;
+	}
+
+	/**
+	 * Forgets all the quotas.
+	 */
+	public void clear() {
+		windows.clear();
+	}
+
+	private void acquire(final AtomicReference<Window> ref,
+			final String providerId, final String endpoint)
+			throws SocialAuthException {
+		while (true) {
+			Window w = ref.get();
+			long now = currentTimeMillis();
+			if (w.reset <= now) {
+				// new window, its quota comes with the response
+				return;
+			}
+			if (w.remaining > reserve) {
+				if (ref.compareAndSet(w, w.withRemaining(w.remaining - 1))) {
+					return;
+				}
+				continue;
+			}
+			long wait = w.reset - now;
+			if (wait > maxWait) {
+				throw new SocialAuthException("Rate limit of " + providerId
+						+ " reached for " + endpoint + ", reset in " + wait
+						+ " ms");
+			}
+			LOG.fine("Waiting " + wait + " ms for the rate limit of "
+					+ endpoint);
+			try {
+				Thread.sleep(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SocialAuthException(e);
+			}
+		}
+	}
+
+	private void update(final String key, final AtomicReference<Window> known,
+			final Response response) {
+		Window fresh = parse(response);
+		if (fresh == null) {
+			return;
+		}
+		AtomicReference<Window> ref = known;
+		if (ref == null) {
+			ref = windows.putIfAbsent(key, new AtomicReference<Window>(fresh));
+			if (ref == null) {
+				purge();
+				return;
+			}
+		}
+		while (true) {
+			Window w = ref.get();
+			Window next = fresh;
+			if (w.reset == fresh.reset && w.remaining < fresh.remaining) {
+				// an older response of the same window
+				next = w;
+			}
+			if (next == w || ref.compareAndSet(w, next)) {
+				break;
+			}
+		}
+		purge();
+	}
+
+	private void purge() {
+		if (updates.incrementAndGet() % PURGE_INTERVAL != 0) {
+			return;
+		}
+		long now = currentTimeMillis();
+		Iterator<AtomicReference<Window>> it = windows.values().iterator();
+		while (it.hasNext()) {
+			if (it.next().get().reset <= now) {
+				it.remove();
+			}
+		}
+	}
+
+	private Window parse(final Response response) {
+		long now = currentTimeMillis();
+		int status = response.getStatus();
+		int remaining = getInt(response, REMAINING_HEADERS);
+		if (remaining < 0 && status != 429) {
+			return null;
+		}
+		long reset = getInt(response, RESET_HEADERS);
+		if (reset > 1000000000L) {
+			// epoch seconds
+			reset *= 1000L;
+		} else if (reset >= 0) {
+			// seconds from now
+			reset = now + reset * 1000L;
+		}
+		if (status == 429) {
+			remaining = 0;
+			int retryAfter = getInt(response,
+					new String[] { Constants.RETRY_AFTER_HEADER });
+			if (retryAfter >= 0) {
+				reset = now + retryAfter * 1000L;
+			}
+		}
+		if (reset <= now) {
+			reset = now + DEFAULT_WINDOW;
+		}
+		return new Window(getInt(response, LIMIT_HEADERS), remaining, reset);
+	}
+
+	/**
+	 * Returns the current time of the quota windows. Subclasses may override
+	 * it to use another clock.
+	 * 
+	 * @return the current time in milliseconds
+	 */
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	private static int getInt(final Response response, final String[] names) {
+		for (String name : names) {
+			String value = response.getHeader(name);
+			if (value != null) {
+				try {
+					return Integer.parseInt(value.trim());
+				} catch (NumberFormatException e) {
+					LOG.fine("Ignoring " + name + " : " + value);
+				}
+			}
+		}
+		return -1;
+	}
+
+	private static String getEndpoint(final String url) {
+		int start = url.indexOf("://");
+		start = start < 0 ? 0 : start + 3;
+		int end = url.indexOf('?', start);
+		return end < 0 ? url.substring(start) : url.substring(start, end);
+	}
+
+	private static String getKey(final String providerId,
+			final AccessGrant token, final String endpoint) {
+		String tokenKey = token == null || token.getKey() == null ? ""
+				: token.getKey();
+		return providerId + '\u0000' + tokenKey + '\u0000' + endpoint;
+	}
+
+	private static final class Window {
+		private final int limit;
+		private final int remaining;
+		private final long reset;
+
+		Window(final int limit, final int remaining, final long reset) {
+			this.limit = limit;
+			this.remaining = remaining;
+			this.reset = reset;
+		}
+
+		Window withRemaining(final int value) {
+			return new Window(limit, value, reset);
+		}
+	}
+}
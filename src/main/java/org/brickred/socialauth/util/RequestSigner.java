@@ -0,0 +1,48 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.util.Map;
+
+import org.brickred.socialauth.exception.SocialAuthException;
+
+/**
+ * Signs each attempt of a request sent by
+ * {@link HttpUtil#doHttpRequest(String, String, String, Map, RequestSigner)}.
+ * A retried request is signed again, so it gets a new nonce and timestamp.
+ * 
+ */
+public interface RequestSigner {
+
+	/**
+	 * Signs an attempt of the request.
+	 * 
+	 * @param header
+	 *            the headers of the attempt, the signer can add to them
+	 * @return the URL of the attempt
+	 * @throws SocialAuthException
+	 */
+	public String sign(Map<String, String> header) throws SocialAuthException;
+}
@@ -0,0 +1,282 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps OAuth 1.0a request tokens ready for the OAuth1 strategy, so the login
+ * redirect does not wait for the provider. Each provider and callback URL has
+ * its own pool of fresh, unused tokens, refilled in the background when a
+ * token is taken. A token is given out once, and not after the maximum age.
+ * <p>
+ * The pools are disabled until a size is set. A pool is only filled once its
+ * callback URL has been used twice, so callback URLs carrying a per-login
+ * state do not waste tokens. When a pool is empty the token is fetched
+ * during the call, as without the pool.
+ */
+public class RequestTokenPool {
+
+	/** Default maximum age of a prefetched token, in milliseconds. */
+	public static final long DEFAULT_MAX_AGE = TimeUnit.MINUTES.toMillis(5);
+
+	/** Maximum number of pools, the other callback URLs are not pooled. */
+	public static final int MAX_POOLS = 256;
+
+	private static final Logger LOG = Logger.getLogger(RequestTokenPool.class
+			.getName());
+
+	private static volatile RequestTokenPool instance = new RequestTokenPool();
+
+	private final ConcurrentMap<String, Pool> pools = new ConcurrentHashMap<String, Pool>();
+	private volatile int size;
+	private volatile long maxAge = DEFAULT_MAX_AGE;
+
+	/**
+	 * Gets the pool used by the OAuth1 strategy.
+	 * 
+	 * @return the request token pool
+	 */
+	public static RequestTokenPool getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Replaces the pool used by the OAuth1 strategy.
+	 * 
+	 * @param pool
+	 *            the request token pool
+	 */
+	public static void setInstance(final RequestTokenPool pool) {
+		instance = pool;
+	}
+
+	/**
+	 * Sets the number of tokens kept ready per provider and callback URL. 0
+	 * disables the prefetching and drops the tokens kept.
+	 * 
+	 * @param size
+	 *            the number of tokens
+	 */
+	public void setSize(final int size) {
+		this.size = Math.max(size, 0);
+		if (this.size == 0) {
+			clear();
+		}
+	}
+
+	/**
+	 * @return the number of tokens kept ready per provider and callback URL
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Sets the age after which a prefetched token is dropped.
+	 * 
+	 * @param maxAge
+	 *            the maximum age in milliseconds, the default one if not
+	 *            positive
+	 */
+	public void setMaxAge(final long maxAge) {
+		this.maxAge = maxAge > 0 ? maxAge : DEFAULT_MAX_AGE;
+	}
+
+	/**
+	 * @return the age in milliseconds after which a prefetched token is
+	 *         dropped
+	 */
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	/**
+	 * Gets a request token, from the pool if there is a fresh one, otherwise
+	 * from the provider.
+	 * 
+	 * @param oauth
+	 *            the consumer of the provider
+	 * @param reqTokenURL
+	 *            Request Token URL
+	 * @param callbackURL
+	 *            Callback URL
+	 * @return the request token, not given to any other caller
+	 * @throws Exception
+	 */
+	public AccessGrant getRequestToken(final OAuthConsumer oauth,
+			final String reqTokenURL, final String callbackURL)
+			throws Exception {
+		if (size <= 0) {
+			return oauth.getRequestToken(reqTokenURL, callbackURL);
+		}
+		OAuthConfig config = oauth.getConfig();
+		String key = config.getId() + '\0' + config.get_consumerKey() + '\0'
+				+ reqTokenURL + '\0' + callbackURL;
+		Pool pool = pools.get(key);
+		if (pool == null) {
+			if (pools.size() >= MAX_POOLS) {
+				return oauth.getRequestToken(reqTokenURL, callbackURL);
+			}
+			pool = new Pool(key, oauth, reqTokenURL, callbackURL);
+			Pool existing = pools.putIfAbsent(key, pool);
+			if (existing != null) {
+				pool = existing;
+			}
+		}
+		AccessGrant token = pool.poll();
+		if (pool.requests.incrementAndGet() > 1) {
+			pool.refill();
+		}
+		if (token != null) {
+			LOG.fine("Request token taken from the pool");
+			return token;
+		}
+		return oauth.getRequestToken(reqTokenURL, callbackURL);
+	}
+
+	/**
+	 * @return the number of fresh tokens kept in all the pools
+	 */
+	public int getAvailable() {
+		int available = 0;
+		for (Pool pool : pools.values()) {
+			pool.purge();
+			available += pool.tokens.size();
+		}
+		return available;
+	}
+
+	/**
+	 * Drops all the tokens kept.
+	 */
+	public void clear() {
+		pools.clear();
+	}
+
+	/**
+	 * Returns the current time of the token ages. Subclasses may override it
+	 * to use another clock.
+	 * 
+	 * @return the current time in milliseconds
+	 */
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	private static final class Entry {
+		private final AccessGrant token;
+		private final long created;
+
+		Entry(final AccessGrant token, final long created) {
+			this.token = token;
+			this.created = created;
+		}
+	}
+
+	private final class Pool {
+		private final String key;
+		private final OAuthConsumer oauth;
+		private final String reqTokenURL;
+		private final String callbackURL;
+		private final Queue<Entry> tokens = new ConcurrentLinkedQueue<Entry>();
+		private final AtomicInteger requests = new AtomicInteger();
+		private final AtomicBoolean refilling = new AtomicBoolean();
+
+		Pool(final String key, final OAuthConsumer oauth,
+				final String reqTokenURL, final String callbackURL) {
+			this.key = key;
+			this.oauth = oauth;
+			this.reqTokenURL = reqTokenURL;
+			this.callbackURL = callbackURL;
+		}
+
+		AccessGrant poll() {
+			long oldest = currentTimeMillis() - maxAge;
+			Entry entry;
+			while ((entry = tokens.poll()) != null) {
+				if (entry.created > oldest) {
+					return entry.token;
+				}
+			}
+			return null;
+		}
+
+		void purge() {
+			long oldest = currentTimeMillis() - maxAge;
+			for (Iterator<Entry> it = tokens.iterator(); it.hasNext();) {
+				if (it.next().created <= oldest) {
+					it.remove();
+				}
+			}
+		}
+
+		/**
+		 * Starts filling the pool in the background, unless it is already
+		 * being filled.
+		 */
+		void refill() {
+			if (tokens.size() >= size || !refilling.compareAndSet(false, true)) {
+				return;
+			}
+			boolean submitted = AsyncExecutor.trySubmit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						fill();
+					} catch (Exception e) {
+						LOG.log(Level.WARNING,
+								"Unable to prefetch a request token from "
+										+ reqTokenURL, e);
+					} finally {
+						refilling.set(false);
+					}
+				}
+			});
+			if (!submitted) {
+				refilling.set(false);
+			}
+		}
+
+		private void fill() throws Exception {
+			purge();
+			while (tokens.size() < size && pools.get(key) == this) {
+				long now = currentTimeMillis();
+				AccessGrant token = oauth.getRequestToken(reqTokenURL,
+						callbackURL);
+				tokens.offer(new Entry(token, now));
+			}
+		}
+	}
+}
@@ -25,12 +25,23 @@
 package org.brickred.socialauth.util;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.GZIPInputStream;
 
+import org.brickred.socialauth.metrics.Instrumentation;
+
 /**
  * Encapsulates the HTTP status, headers and the content.
  * 
@@ -38,22 +49,133 @@ import java.util.zip.GZIPInputStream;
  * 
  */
 public class Response {
+
+	/**
+	 * Receives a copy of the raw content once it has been fully read.
+	 */
+	interface BodyListener {
+		/**
+		 * @param body
+		 *            the raw content, or null if it was larger than the
+		 *            maximum size of the copy
+		 */
+		void bodyRead(byte[] body);
+	}
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Largest remaining content read by {@link #close()} to keep the
+	 * connection alive; a longer one is dropped.
+	 */
+	private static final int MAX_DRAIN_SIZE = 64 * 1024;
+	private static final Charset UTF_8 = Charset.forName(Constants.ENCODING);
+
 	private final HttpURLConnection _connection;
+	private final HttpTransport _transport;
+	private final int _status;
+	private final Map<String, String> _headers;
+	private final byte[] _body;
+	private final AtomicBoolean _released = new AtomicBoolean();
+	private InputStream _inputStream;
+	private Instrumentation _metrics;
+	private String _provider;
+	private String _endpoint;
+	private BodyListener _bodyListener;
+	private int _maxCopySize;
 
 	Response(final HttpURLConnection connection) {
+		this(connection, null);
+	}
+
+	Response(final HttpURLConnection connection, final HttpTransport transport) {
 		_connection = connection;
+		_transport = transport;
+		_status = 0;
+		_headers = null;
+		_body = null;
+	}
+
+	/**
+	 * Creates a response backed by an already read content, as replayed by
+	 * the {@link FeedCache}.
+	 * 
+	 * @param status
+	 *            the HTTP status
+	 * @param headers
+	 *            the response headers, looked up case insensitively
+	 * @param body
+	 *            the raw content, still encoded as sent by the server
+	 */
+	Response(final int status, final Map<String, String> headers,
+			final byte[] body) {
+		_connection = null;
+		_transport = null;
+		_status = status;
+		_headers = headers;
+		_body = body;
 	}
 
 	/**
-	 * Closes the connection
+	 * Reports the size of the content to the instrumentation once it is read.
+	 */
+	void instrument(final Instrumentation metrics, final String provider,
+			final String endpoint) {
+		_metrics = metrics;
+		_provider = provider;
+		_endpoint = endpoint;
+	}
+
+	/**
+	 * @return true if the request was most likely sent on a kept-alive
+	 *         connection, which is only known with the
+	 *         {@link PooledHttpTransport}
+	 */
+	boolean isConnectionReused() {
+		return _transport instanceof PooledHttpTransport
+				&& ((PooledHttpTransport) _transport).isReused(_connection);
+	}
+
+	/**
+	 * Closes the response. Up to 64 KB of remaining content are consumed so
+	 * the underlying connection can be reused by the transport; the
+	 * connection is dropped when more remains.
 	 * 
 	 * @throws IOException
 	 */
 	public void close() throws IOException {
-		_connection.disconnect();
+		if (_released.get()) {
+			return;
+		}
+		boolean reusable = true;
+		InputStream in = null;
+		try {
+			try {
+				in = getInputStream();
+			} catch (IOException e) {
+				in = _connection.getErrorStream();
+			}
+			if (in != null) {
+				reusable = drain(in);
+			}
+		} catch (IOException e) {
+			reusable = false;
+		}
+		// dropped before the stream is closed, which would release it
+		release(reusable);
+		if (in != null) {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// the connection is released
+			}
+		}
 	}
 
 	public String getHeader(final String name) {
+		if (_connection == null) {
+			return _headers.get(name);
+		}
 		return _connection.getHeaderField(name);
 	}
 
@@ -64,7 +186,15 @@ public class Response {
 	 * @throws IOException
 	 */
 	public InputStream getInputStream() throws IOException {
-		return _connection.getInputStream();
+		if (_inputStream == null) {
+			if (_connection == null) {
+				_inputStream = new ByteArrayInputStream(_body);
+			} else {
+				_inputStream = new ReleasingInputStream(
+						_connection.getInputStream());
+			}
+		}
+		return _inputStream;
 	}
 
 	/**
@@ -73,6 +203,9 @@ public class Response {
 	 * @return the HTTP status
 	 */
 	public int getStatus() {
+		if (_connection == null) {
+			return _status;
+		}
 		try {
 			return _connection.getResponseCode();
 		} catch (IOException e) {
@@ -80,6 +213,127 @@ public class Response {
 		}
 	}
 
+	/**
+	 * Gets the response content, decompressed if needed. The content is
+	 * limited to {@link HttpUtil#getMaxResponseBodySize()} bytes, and closing
+	 * the stream releases the connection.
+	 * 
+	 * @return response content stream
+	 * @throws IOException
+	 */
+	public InputStream asInputStream() throws IOException {
+		InputStream in = getInputStream();
+		if (isGzip()) {
+			in = new GZIPInputStream(in, BUFFER_SIZE);
+		}
+		return new BoundedInputStream(in, HttpUtil.getMaxResponseBodySize());
+	}
+
+	/**
+	 * Reads the whole response content, decompressed if needed, and closes
+	 * the response. When the length of the content is known, it is read
+	 * straight into an array of that size.
+	 * 
+	 * @return response content
+	 * @throws IOException
+	 *             if the content can not be read or is larger than
+	 *             {@link HttpUtil#getMaxResponseBodySize()}
+	 */
+	public byte[] asBytes() throws IOException {
+		int max = HttpUtil.getMaxResponseBodySize();
+		if (max <= 0) {
+			max = Integer.MAX_VALUE - 8;
+		}
+		boolean gzip = isGzip();
+		if (_connection == null && !gzip) {
+			checkSize(_body.length, max);
+			return _body.clone();
+		}
+		try {
+			InputStream in = getInputStream();
+			long length = -1;
+			if (gzip) {
+				in = new GZIPInputStream(in, BUFFER_SIZE);
+			} else {
+				length = _connection.getContentLengthLong();
+				checkSize(length, max);
+			}
+			byte[] buf = new byte[length >= 0 ? (int) length : BUFFER_SIZE];
+			int count = 0;
+			int n;
+			while (true) {
+				if (count == buf.length) {
+					if (length >= 0) {
+						break;
+					}
+					// one more byte than allowed to detect a larger body
+					buf = Arrays.copyOf(buf,
+							(int) Math.min(buf.length * 2L, max + 1L));
+				}
+				n = in.read(buf, count, buf.length - count);
+				if (n == -1) {
+					break;
+				}
+				count += n;
+				checkSize(count, max);
+			}
+			return count == buf.length ? buf : Arrays.copyOf(buf, count);
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * Reads the whole response content as a String, decoded once with the
+	 * given charset, and closes the response.
+	 * 
+	 * @param charset
+	 *            the charset of the content
+	 * @return response content
+	 * @throws IOException
+	 */
+	public String asString(final Charset charset) throws IOException {
+		return new String(asBytes(), charset);
+	}
+
+	/**
+	 * Reads the whole response content as a String, decoded with the charset
+	 * of the Content-Type header, and closes the response.
+	 * 
+	 * @return response content
+	 * @throws IOException
+	 */
+	public String asString() throws IOException {
+		return asString(getCharset());
+	}
+
+	/**
+	 * Gets the charset given by the Content-Type header.
+	 * 
+	 * @return the charset of the content, UTF-8 if none is given or if it is
+	 *         not supported
+	 */
+	public Charset getCharset() {
+		String contentType = getHeader("Content-Type");
+		if (contentType != null) {
+			for (String param : contentType.split(";")) {
+				String p = param.trim();
+				if (p.regionMatches(true, 0, "charset=", 0, 8)) {
+					String name = p.substring(8).trim();
+					if (name.length() > 1 && name.charAt(0) == '"') {
+						name = name.substring(1, name.length() - 1);
+					}
+					try {
+						return Charset.forName(name);
+					} catch (IllegalArgumentException e) {
+						break;
+					}
+				}
+			}
+		}
+		return UTF_8;
+	}
+
 	/**
 	 * Gets the response content as String using given encoding
 	 * 
@@ -92,19 +346,23 @@ public class Response {
 			throws Exception {
 		String line = null;
 		BufferedReader reader = null;
-		StringBuffer sb = new StringBuffer();
+		StringBuilder sb = new StringBuilder();
 
-		if (Constants.GZIP_CONTENT_ENCODING.equals(_connection
-				.getHeaderField(Constants.CONTENT_ENCODING_HEADER))) {
+		if (Constants.GZIP_CONTENT_ENCODING
+				.equals(getHeader(Constants.CONTENT_ENCODING_HEADER))) {
 			reader = new BufferedReader(
 					new InputStreamReader(new GZIPInputStream(
-							_connection.getInputStream()), encoding));
+							getInputStream()), encoding));
 		} else {
 			reader = new BufferedReader(new InputStreamReader(
-					_connection.getInputStream(), encoding));
+					getInputStream(), encoding));
 		}
-		while ((line = reader.readLine()) != null) {
-			sb.append(line);
+		try {
+			while ((line = reader.readLine()) != null) {
+				sb.append(line);
+			}
+		} finally {
+			close();
 		}
 		return sb.toString();
 	}
@@ -121,20 +379,251 @@ public class Response {
 			throws Exception {
 		String line = null;
 		BufferedReader reader = null;
-		StringBuffer sb = new StringBuffer();
+		StringBuilder sb = new StringBuilder();
+		InputStream errorStream = _connection == null ? new ByteArrayInputStream(
+				_body) : _connection.getErrorStream();
 
-		if (Constants.GZIP_CONTENT_ENCODING.equals(_connection
-				.getHeaderField(Constants.CONTENT_ENCODING_HEADER))) {
-			reader = new BufferedReader(
-					new InputStreamReader(new GZIPInputStream(
-							_connection.getErrorStream()), encoding));
-		} else {
+		if (Constants.GZIP_CONTENT_ENCODING
+				.equals(getHeader(Constants.CONTENT_ENCODING_HEADER))) {
 			reader = new BufferedReader(new InputStreamReader(
-					_connection.getErrorStream(), encoding));
+					new GZIPInputStream(errorStream), encoding));
+		} else {
+			reader = new BufferedReader(new InputStreamReader(errorStream,
+					encoding));
 		}
-		while ((line = reader.readLine()) != null) {
-			sb.append(line);
+		try {
+			while ((line = reader.readLine()) != null) {
+				sb.append(line);
+			}
+		} finally {
+			reader.close();
+			release(true);
 		}
 		return sb.toString();
 	}
+
+	/**
+	 * Gets the first value of every response header, keyed case
+	 * insensitively.
+	 * 
+	 * @return the response headers
+	 */
+	Map<String, String> getHeaders() {
+		if (_connection == null) {
+			return _headers;
+		}
+		Map<String, String> headers = new TreeMap<String, String>(
+				String.CASE_INSENSITIVE_ORDER);
+		for (Map.Entry<String, List<String>> entry : _connection
+				.getHeaderFields().entrySet()) {
+			if (entry.getKey() != null && !entry.getValue().isEmpty()) {
+				headers.put(entry.getKey(), entry.getValue().get(0));
+			}
+		}
+		return headers;
+	}
+
+	/**
+	 * Copies the raw content, without decoding it, while the caller reads it.
+	 * The listener gets the copy when the end of the content is reached, or
+	 * null as soon as the content is larger than the given size. A content
+	 * which is already in memory is given at once.
+	 * 
+	 * @param maxSize
+	 *            the largest content copied, in bytes
+	 * @param listener
+	 *            receives the copy
+	 */
+	void copyBody(final int maxSize, final BodyListener listener) {
+		if (_connection == null) {
+			listener.bodyRead(_body.length <= maxSize ? _body : null);
+			return;
+		}
+		_maxCopySize = maxSize;
+		_bodyListener = listener;
+	}
+
+	private boolean isGzip() {
+		return Constants.GZIP_CONTENT_ENCODING
+				.equals(getHeader(Constants.CONTENT_ENCODING_HEADER));
+	}
+
+	private static void checkSize(final long size, final int max)
+			throws IOException {
+		if (max > 0 && size > max) {
+			throw new IOException("Response body is larger than " + max
+					+ " bytes");
+		}
+	}
+
+	private void release(final boolean reusable) {
+		if (_connection == null) {
+			return;
+		}
+		if (_released.compareAndSet(false, true)) {
+			if (_transport != null) {
+				_transport.releaseConnection(_connection, reusable);
+			} else if (!reusable) {
+				_connection.disconnect();
+			}
+		}
+	}
+
+	/**
+	 * Reads and discards the remaining content, up to
+	 * {@link #MAX_DRAIN_SIZE} bytes.
+	 * 
+	 * @return true if the end of the content has been reached
+	 */
+	private static boolean drain(final InputStream in) throws IOException {
+		byte[] buf = new byte[4096];
+		int count = 0;
+		int n;
+		while ((n = in.read(buf)) != -1) {
+			count += n;
+			if (count > MAX_DRAIN_SIZE) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Fails when more than the maximum number of bytes are read.
+	 */
+	private static class BoundedInputStream extends FilterInputStream {
+		private final int max;
+		private long count;
+
+		BoundedInputStream(final InputStream in, final int max) {
+			super(in);
+			this.max = max;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1) {
+				checkSize(++count, max);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len)
+				throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				count += n;
+				checkSize(count, max);
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			checkSize(count, max);
+			return skipped;
+		}
+	}
+
+	/**
+	 * Gives the connection back to the transport as soon as the content has
+	 * been fully read or the stream is closed.
+	 */
+	private class ReleasingInputStream extends FilterInputStream {
+
+		private boolean closed;
+		private long count;
+		private ByteArrayOutputStream copy;
+
+		ReleasingInputStream(final InputStream in) {
+			super(in);
+			if (_bodyListener != null) {
+				int length = _connection.getContentLength();
+				copy = new ByteArrayOutputStream(length > 0
+						&& length <= _maxCopySize ? length : BUFFER_SIZE);
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (closed) {
+				return -1;
+			}
+			int b = super.read();
+			if (b == -1) {
+				ended();
+				close();
+			} else {
+				count++;
+				if (copy != null) {
+					copy.write(b);
+					checkCopySize();
+				}
+			}
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len)
+				throws IOException {
+			if (closed) {
+				return -1;
+			}
+			int n = super.read(b, off, len);
+			if (n == -1) {
+				ended();
+				close();
+			} else {
+				count += n;
+				if (copy != null) {
+					copy.write(b, off, n);
+					checkCopySize();
+				}
+			}
+			return n;
+		}
+
+		private void checkCopySize() {
+			if (copy.size() > _maxCopySize) {
+				copy = null;
+				_bodyListener.bodyRead(null);
+			}
+		}
+
+		private void ended() {
+			if (copy != null) {
+				_bodyListener.bodyRead(copy.toByteArray());
+				copy = null;
+			}
+		}
+
+		@Override
+		public int available() throws IOException {
+			return closed ? 0 : super.available();
+		}
+
+		/**
+		 * Once closed, the stream behaves as if it was at the end, as readers
+		 * may read again after having seen the end.
+		 */
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				super.close();
+			} finally {
+				release(true);
+				if (_metrics != null) {
+					_metrics.responseRead(_provider, _endpoint, count);
+				}
+			}
+		}
+	}
 }
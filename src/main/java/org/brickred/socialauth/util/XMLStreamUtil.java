@@ -0,0 +1,385 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads XML responses with a StAX parser. The elements of a feed, like the
+ * entries of a contacts feed, are handed one at a time to an
+ * {@link ElementHandler} as an {@link XMLRecord} holding only the fields
+ * mapped by the provider, so the feed is never held in memory as a DOM. DTDs
+ * and external entities are not supported.
+ * 
+ */
+public final class XMLStreamUtil {
+
+	private static final XMLInputFactory INPUT_FACTORY = createFactory();
+
+	private static final XMLRecord SKIPPED = new XMLRecord("", null, null);
+
+	private XMLStreamUtil() {
+	}
+
+	/**
+	 * Receives the elements of a streamed XML feed.
+	 */
+	public interface ElementHandler {
+
+		/**
+		 * Called for each element of the feed.
+		 * 
+		 * @param element
+		 *            the element, with its mapped fields
+		 * @throws Exception
+		 */
+		public void handle(XMLRecord element) throws Exception;
+	}
+
+	/**
+	 * An element read from a stream, with only the descendants whose name is
+	 * mapped. A mapped element nested in elements which are not is kept under
+	 * its closest mapped ancestor.
+	 */
+	public static final class XMLRecord {
+		private final String name;
+		private final String namespace;
+		private final Map<String, String> attributes;
+		private StringBuilder text;
+		private List<XMLRecord> children;
+
+		XMLRecord(final String name, final String namespace,
+				final Map<String, String> attributes) {
+			this.name = name;
+			this.namespace = namespace;
+			this.attributes = attributes;
+		}
+
+		/**
+		 * @return the local name of the element
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the namespace URI of the element, null if none
+		 */
+		public String getNamespace() {
+			return namespace;
+		}
+
+		/**
+		 * @return the text directly held by the element, empty if none
+		 */
+		public String getText() {
+			return text == null ? "" : text.toString();
+		}
+
+		/**
+		 * Retrieves an attribute by its local name, or by its prefixed name.
+		 * 
+		 * @param attribute
+		 *            the attribute name
+		 * @return the attribute value, empty if there is none, as
+		 *         {@link org.w3c.dom.Element#getAttribute(String)}
+		 */
+		public String getAttribute(final String attribute) {
+			String value = attributes == null ? null : attributes
+					.get(attribute);
+			return value == null ? "" : value;
+		}
+
+		/**
+		 * Gets the first mapped descendant of the given name, in document
+		 * order, like {@link org.w3c.dom.Element#getElementsByTagName(String)}.
+		 * 
+		 * @param elementName
+		 *            the local name of the descendant
+		 * @return the descendant, null if there is none
+		 */
+		public XMLRecord getElement(final String elementName) {
+			if (children != null) {
+				for (XMLRecord child : children) {
+					if (child.name.equals(elementName)) {
+						return child;
+					}
+					XMLRecord found = child.getElement(elementName);
+					if (found != null) {
+						return found;
+					}
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Gets the mapped descendants of the given name, in document order.
+		 * 
+		 * @param elementName
+		 *            the local name of the descendants
+		 * @return the descendants
+		 */
+		public List<XMLRecord> getElements(final String elementName) {
+			if (children == null) {
+				return Collections.emptyList();
+			}
+			List<XMLRecord> list = new ArrayList<XMLRecord>();
+			collect(elementName, list);
+			return list;
+		}
+
+		/**
+		 * Gets the text of the first mapped descendant of the given name, like
+		 * {@link XMLParseUtil#getElementData(org.w3c.dom.Element, String)}.
+		 * 
+		 * @param elementName
+		 *            the local name of the descendant
+		 * @return the text of the descendant, null if there is none
+		 */
+		public String getElementData(final String elementName) {
+			XMLRecord element = getElement(elementName);
+			return element == null ? null : element.getText();
+		}
+
+		private void collect(final String elementName,
+				final List<XMLRecord> list) {
+			if (children != null) {
+				for (XMLRecord child : children) {
+					if (child.name.equals(elementName)) {
+						list.add(child);
+					}
+					child.collect(elementName, list);
+				}
+			}
+		}
+
+		private void addChild(final XMLRecord child) {
+			if (children == null) {
+				children = new ArrayList<XMLRecord>(4);
+			}
+			children.add(child);
+		}
+
+		private void appendText(final XMLStreamReader reader) {
+			if (text == null) {
+				text = new StringBuilder();
+			}
+			text.append(reader.getTextCharacters(), reader.getTextStart(),
+					reader.getTextLength());
+		}
+	}
+
+	/**
+	 * Streams the elements of the given name found in the response body. The
+	 * response is closed once it has been read.
+	 * 
+	 * @param response
+	 *            the response to read
+	 * @param elementName
+	 *            the local name of the elements to stream, like "entry"
+	 * @param fields
+	 *            the local names of the descendants to keep
+	 * @param handler
+	 *            the handler receiving the elements
+	 * @return the number of elements read
+	 * @throws Exception
+	 */
+	public static int streamElements(final Response response,
+			final String elementName, final String[] fields,
+			final ElementHandler handler) throws Exception {
+		InputStream in = response.asInputStream();
+		try {
+			return streamElements(in, elementName, fields, handler);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Streams the elements of the given name found in the stream. Elements of
+	 * that name nested in a streamed element are not streamed themselves.
+	 * 
+	 * @param in
+	 *            the XML stream, not closed
+	 * @param elementName
+	 *            the local name of the elements to stream, like "entry"
+	 * @param fields
+	 *            the local names of the descendants to keep
+	 * @param handler
+	 *            the handler receiving the elements
+	 * @return the number of elements read
+	 * @throws Exception
+	 */
+	public static int streamElements(final InputStream in,
+			final String elementName, final String[] fields,
+			final ElementHandler handler) throws Exception {
+		Set<String> mapped = new HashSet<String>(Arrays.asList(fields));
+		XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+		int count = 0;
+		try {
+			List<XMLRecord> stack = new ArrayList<XMLRecord>();
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String name = reader.getLocalName();
+					if (stack.isEmpty()) {
+						if (name.equals(elementName)) {
+							stack.add(new XMLRecord(name, reader
+									.getNamespaceURI(), getAttributes(reader)));
+						}
+					} else if (mapped.contains(name)) {
+						XMLRecord record = new XMLRecord(name,
+								reader.getNamespaceURI(), getAttributes(reader));
+						getOwner(stack).addChild(record);
+						stack.add(record);
+					} else {
+						stack.add(SKIPPED);
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					if (!stack.isEmpty()) {
+						XMLRecord record = stack.remove(stack.size() - 1);
+						if (stack.isEmpty()) {
+							count++;
+							handler.handle(record);
+						}
+					}
+				} else if (!stack.isEmpty()
+						&& (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)) {
+					XMLRecord record = stack.get(stack.size() - 1);
+					if (record != SKIPPED) {
+						record.appendText(reader);
+					}
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Invalid XML content : " + e.getMessage(), e);
+		} finally {
+			reader.close();
+		}
+		return count;
+	}
+
+	/**
+	 * Creates a StAX reader over the given stream, with DTDs and external
+	 * entities disabled.
+	 * 
+	 * @param in
+	 *            the XML stream
+	 * @return the XMLStreamReader
+	 * @throws XMLStreamException
+	 */
+	public static XMLStreamReader createReader(final InputStream in)
+			throws XMLStreamException {
+		return INPUT_FACTORY.createXMLStreamReader(in);
+	}
+
+	/**
+	 * Reads the element the reader is positioned on, with all its
+	 * descendants. The reader is left on the end of the element.
+	 * 
+	 * @param reader
+	 *            the reader, on a START_ELEMENT event
+	 * @return the element
+	 * @throws XMLStreamException
+	 */
+	public static XMLRecord readElement(final XMLStreamReader reader)
+			throws XMLStreamException {
+		XMLRecord element = new XMLRecord(reader.getLocalName(),
+				reader.getNamespaceURI(), getAttributes(reader));
+		List<XMLRecord> stack = new ArrayList<XMLRecord>();
+		stack.add(element);
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				XMLRecord record = new XMLRecord(reader.getLocalName(),
+						reader.getNamespaceURI(), getAttributes(reader));
+				stack.get(stack.size() - 1).addChild(record);
+				stack.add(record);
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				stack.remove(stack.size() - 1);
+				if (stack.isEmpty()) {
+					return element;
+				}
+			} else if (event == XMLStreamConstants.CHARACTERS
+					|| event == XMLStreamConstants.CDATA) {
+				stack.get(stack.size() - 1).appendText(reader);
+			}
+		}
+		throw new XMLStreamException("Unexpected end of XML document");
+	}
+
+	private static XMLRecord getOwner(final List<XMLRecord> stack) {
+		for (int i = stack.size() - 1; i >= 0; i--) {
+			if (stack.get(i) != SKIPPED) {
+				return stack.get(i);
+			}
+		}
+		return stack.get(0);
+	}
+
+	private static Map<String, String> getAttributes(
+			final XMLStreamReader reader) {
+		int n = reader.getAttributeCount();
+		if (n == 0) {
+			return null;
+		}
+		Map<String, String> attributes = new HashMap<String, String>(n * 2);
+		for (int i = 0; i < n; i++) {
+			String local = reader.getAttributeLocalName(i);
+			String value = reader.getAttributeValue(i);
+			attributes.put(local, value);
+			String prefix = reader.getAttributePrefix(i);
+			if (prefix != null && !prefix.isEmpty()) {
+				attributes.put(prefix + ":" + local, value);
+			}
+		}
+		return attributes;
+	}
+
+	private static XMLInputFactory createFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+				Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		return factory;
+	}
+}
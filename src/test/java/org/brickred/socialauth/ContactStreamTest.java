@@ -0,0 +1,123 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+public class ContactStreamTest {
+
+	private static class PagedStream extends ContactStream {
+		private final List<List<Contact>> pages;
+		private Exception failure;
+		int fetched;
+
+		PagedStream(final List<List<Contact>> pages) {
+			this.pages = pages;
+		}
+
+		@Override
+		protected List<Contact> fetchNextPage() throws Exception {
+			if (fetched == pages.size()) {
+				if (failure != null) {
+					throw failure;
+				}
+				return null;
+			}
+			return pages.get(fetched++);
+		}
+	}
+
+	@Test
+	public void fetchesThePagesLazily() {
+		List<Contact> empty = Collections.emptyList();
+		PagedStream stream = new PagedStream(Arrays.asList(
+				contacts("a", "b"), empty, contacts("c")));
+		assertEquals("a", stream.next().getId());
+		assertEquals(1, stream.fetched);
+		assertEquals("b", stream.next().getId());
+		assertEquals(1, stream.fetched);
+		// the empty page is skipped
+		assertEquals("c", stream.next().getId());
+		assertEquals(3, stream.fetched);
+		assertFalse(stream.hasNext());
+		assertFalse(stream.hasNext());
+		try {
+			stream.next();
+			fail("the stream is finished");
+		} catch (NoSuchElementException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void stopsOnAFailedPage() {
+		PagedStream stream = new PagedStream(Arrays.asList(contacts("a")));
+		IOException failure = new IOException("unreachable");
+		stream.failure = failure;
+		assertEquals("a", stream.next().getId());
+		try {
+			stream.hasNext();
+			fail("the page fetch fails");
+		} catch (IllegalStateException e) {
+			assertSame(failure, e.getCause());
+		}
+		assertFalse(stream.hasNext());
+	}
+
+	@Test
+	public void streamsTheContactListByDefault() throws Exception {
+		TestProvider provider = new TestProvider();
+		provider.contacts = contacts("a", "b");
+		List<String> ids = new ArrayList<String>();
+		for (Contact contact : provider.getContactStream()) {
+			ids.add(contact.getId());
+		}
+		assertEquals(Arrays.asList("a", "b"), ids);
+		assertTrue(provider.getContactStream().hasNext());
+	}
+
+	private static List<Contact> contacts(final String... ids) {
+		List<Contact> contacts = new ArrayList<Contact>();
+		for (String id : ids) {
+			Contact contact = new Contact();
+			contact.setId(id);
+			contacts.add(contact);
+		}
+		return contacts;
+	}
+}
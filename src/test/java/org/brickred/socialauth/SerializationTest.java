@@ -0,0 +1,151 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Properties;
+
+import org.brickred.socialauth.util.AccessGrant;
+import org.brickred.socialauth.util.OAuthConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SerializationTest {
+
+	private SocialAuthConfig config;
+
+	@Before
+	public void setUp() throws Exception {
+		config = new SocialAuthConfig();
+		SocialAuthConfig.setShared(config);
+		config.load(new Properties());
+		OAuthConfig conf = new OAuthConfig("key", "secret");
+		conf.setProviderImplClass(TestProvider.class);
+		config.addProviderConfig("test", conf);
+		config.addProviderFactory("test", new ProviderFactory() {
+			@Override
+			public AuthProvider createProvider(final OAuthConfig c)
+					throws Exception {
+				return new TestProvider();
+			}
+		});
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		config.reload(new Properties());
+		SocialAuthConfig.setShared(null);
+	}
+
+	@Test
+	public void rebuildsAConnectedProviderFromItsGrant() throws Exception {
+		TestProvider provider = new TestProvider();
+		AccessGrant grant = new AccessGrant("token", "secret");
+		grant.setProviderId("test");
+		grant.setAttribute("screen_name", "someone");
+		provider.setAccessGrant(grant);
+
+		byte[] bytes = serialize(provider);
+		assertFalse(new String(bytes, "ISO-8859-1").contains("TestProvider"));
+		TestProvider copy = (TestProvider) deserialize(bytes);
+		assertNotSame(provider, copy);
+		assertEquals("token", copy.getAccessGrant().getKey());
+		assertEquals("secret", copy.getAccessGrant().getSecret());
+		assertEquals("someone",
+				copy.getAccessGrant().getAttribute("screen_name"));
+	}
+
+	@Test
+	public void keepsAProviderWaitingForItsCallback() throws Exception {
+		TestProvider provider = new TestProvider();
+		byte[] bytes = serialize(provider);
+		assertTrue(new String(bytes, "ISO-8859-1").contains("TestProvider"));
+		assertNull(((TestProvider) deserialize(bytes)).getAccessGrant());
+	}
+
+	@Test
+	public void serializesTheSharedConfigAsAReference() throws Exception {
+		assertSame(config, deserialize(serialize(config)));
+	}
+
+	@Test
+	public void restoresTheProvidersOfAContext() throws Exception {
+		SocialAuthContext context = new SocialAuthContext("user");
+		TestProvider provider = new TestProvider();
+		provider.setAccessGrant(new AccessGrant("token", "secret"));
+		context.setConnected("test", provider);
+
+		SocialAuthContext copy = (SocialAuthContext) deserialize(serialize(context));
+		assertEquals("user", copy.getUserId());
+		assertEquals("test", copy.getCurrentProviderId());
+		assertEquals("token", copy.getProvider("test").getAccessGrant()
+				.getKey());
+	}
+
+	@Test
+	public void needsASharedConfigToRebuildAProvider() throws Exception {
+		TestProvider provider = new TestProvider();
+		provider.setAccessGrant(new AccessGrant("token", "secret"));
+		byte[] bytes = serialize(provider);
+		SocialAuthConfig.setShared(null);
+		try {
+			deserialize(bytes);
+			fail("no shared configuration");
+		} catch (InvalidObjectException e) {
+			// expected
+		}
+	}
+
+	private static byte[] serialize(final Object object) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(object);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static Object deserialize(final byte[] bytes) throws Exception {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+				bytes));
+		try {
+			return in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Properties;
+
+import org.brickred.socialauth.util.CircuitBreaker;
+import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.HttpUtil;
+import org.brickred.socialauth.util.PooledHttpTransport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SocialAuthConfigTest {
+
+	public static class CustomTransport extends PooledHttpTransport {
+	}
+
+	private SocialAuthConfig config;
+
+	@Before
+	public void setUp() {
+		config = new SocialAuthConfig();
+		SocialAuthConfig.setShared(config);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		config.reload(new Properties());
+		SocialAuthConfig.setShared(null);
+	}
+
+	@Test
+	public void resetsTheRemovedSettingsOnReload() throws Exception {
+		Properties props = new Properties();
+		props.setProperty(Constants.HTTP_TRANSPORT,
+				CustomTransport.class.getName());
+		props.setProperty(Constants.HTTP_MAX_RETRIES, "3");
+		props.setProperty(Constants.HTTP_CIRCUIT_BREAKER_FAILURES, "2");
+		props.setProperty(Constants.HTTP_MAX_RESPONSE_BODY_SIZE, "1024");
+		props.setProperty(Constants.TOKEN_REFRESH_MARGIN, "1000");
+		config.load(props);
+
+		assertEquals(CustomTransport.class, HttpUtil.getTransport().getClass());
+		assertEquals(3, HttpUtil.getMaxRetries());
+		assertEquals(2, CircuitBreaker.getInstance().getFailureThreshold());
+		assertEquals(1024, HttpUtil.getMaxResponseBodySize());
+		assertEquals(1000, TokenRefreshScheduler.getInstance()
+				.getRefreshMargin());
+
+		config.reload(new Properties());
+
+		assertEquals(PooledHttpTransport.class, HttpUtil.getTransport()
+				.getClass());
+		assertEquals(HttpUtil.DEFAULT_MAX_RETRIES, HttpUtil.getMaxRetries());
+		assertEquals(CircuitBreaker.DEFAULT_FAILURE_THRESHOLD, CircuitBreaker
+				.getInstance().getFailureThreshold());
+		assertEquals(HttpUtil.DEFAULT_MAX_RESPONSE_BODY_SIZE,
+				HttpUtil.getMaxResponseBodySize());
+		assertEquals(TokenRefreshScheduler.DEFAULT_REFRESH_MARGIN,
+				TokenRefreshScheduler.getInstance().getRefreshMargin());
+	}
+
+	@Test
+	public void keepsATransportWhoseSettingIsUnchanged() throws Exception {
+		Properties props = new Properties();
+		props.setProperty(Constants.HTTP_TRANSPORT,
+				CustomTransport.class.getName());
+		config.load(props);
+		Object transport = HttpUtil.getTransport();
+
+		props.setProperty(Constants.HTTP_MAX_RETRIES, "1");
+		config.reload(props);
+
+		assertSame(transport, HttpUtil.getTransport());
+	}
+
+	@Test
+	public void onlyTheSharedConfigurationAppliesTheGlobalSettings()
+			throws Exception {
+		Properties props = new Properties();
+		props.setProperty(Constants.HTTP_MAX_RETRIES, "3");
+		config.load(props);
+
+		Properties other = new Properties();
+		other.setProperty(Constants.HTTP_MAX_RETRIES, "5");
+		new SocialAuthConfig().load(other);
+
+		assertEquals(3, HttpUtil.getMaxRetries());
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.brickred.socialauth.exception.SocialAuthException;
+import org.brickred.socialauth.util.AccessGrant;
+import org.brickred.socialauth.util.InMemoryAccessGrantStore;
+import org.brickred.socialauth.util.OAuthConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SocialAuthServiceTest {
+
+	private static class CountingStore extends InMemoryAccessGrantStore {
+		final AtomicInteger loads = new AtomicInteger();
+
+		@Override
+		public AccessGrant load(final String userId, final String providerId)
+				throws SocialAuthException {
+			loads.incrementAndGet();
+			return super.load(userId, providerId);
+		}
+	}
+
+	private SocialAuthConfig config;
+	private SocialAuthService service;
+	private CountingStore store;
+	private volatile TestProvider provider;
+
+	@Before
+	public void setUp() throws Exception {
+		config = new SocialAuthConfig();
+		SocialAuthConfig.setShared(config);
+		config.load(new Properties());
+		OAuthConfig conf = new OAuthConfig("key", "secret");
+		conf.setProviderImplClass(TestProvider.class);
+		config.addProviderConfig("test", conf);
+		config.addProviderFactory("test", new ProviderFactory() {
+			@Override
+			public AuthProvider createProvider(final OAuthConfig c)
+					throws Exception {
+				provider = new TestProvider();
+				return provider;
+			}
+		});
+		store = new CountingStore();
+		config.setAccessGrantStore(store);
+		service = new SocialAuthService(config);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		config.reload(new Properties());
+		SocialAuthConfig.setShared(null);
+	}
+
+	@Test
+	public void keepsThePendingProviderWhenVerificationFails()
+			throws Exception {
+		SocialAuthContext context = new SocialAuthContext();
+		service.getAuthenticationUrl(context, "test", "http://localhost/",
+				null);
+		TestProvider pending = provider;
+		pending.failure = new SocialAuthException("denied");
+		Map<String, String> params = new HashMap<String, String>();
+		try {
+			service.connect(context, params);
+			fail("verification should fail");
+		} catch (SocialAuthException e) {
+			assertEquals("denied", e.getMessage());
+		}
+		assertFalse(service.isConnected(context, "test"));
+
+		pending.failure = null;
+		assertSame(pending, service.connect(context, params));
+		assertTrue(service.isConnected(context, "test"));
+		assertEquals("token", pending.getAccessGrant().getKey());
+	}
+
+	@Test
+	public void queriesTheStoreOnlyOnMiss() throws Exception {
+		SocialAuthContext context = new SocialAuthContext("user");
+		assertFalse(service.isConnected(context, "test"));
+		assertFalse(service.isConnected(context, "test"));
+		assertEquals(1, store.loads.get());
+
+		AccessGrant grant = new AccessGrant("token", "secret");
+		grant.setProviderId("test");
+		service.connect(context, grant);
+		assertTrue(service.isConnected(context, "test"));
+		assertEquals(1, store.loads.get());
+
+		SocialAuthContext other = new SocialAuthContext("user");
+		assertTrue(service.isConnected(other, "test"));
+		AuthProvider restored = service.getProvider(other, "test");
+		assertEquals("token", restored.getAccessGrant().getKey());
+		assertTrue(service.isConnected(other, "test"));
+		assertEquals(2, store.loads.get());
+
+		service.disconnectProvider(other, "test");
+		assertFalse(service.isConnected(other, "test"));
+		assertEquals(3, store.loads.get());
+	}
+}
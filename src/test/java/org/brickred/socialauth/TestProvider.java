@@ -0,0 +1,160 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.brickred.socialauth.exception.SocialAuthException;
+import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
+import org.brickred.socialauth.util.AccessGrant;
+import org.brickred.socialauth.util.Response;
+
+/**
+ * Provider without network calls. Its renewal waits for {@link #release()}
+ * when {@link #block} is set.
+ */
+class TestProvider extends AbstractProvider {
+
+	private static final long serialVersionUID = 1L;
+
+	final AtomicInteger renewals = new AtomicInteger();
+	final transient CountDownLatch renewing = new CountDownLatch(1);
+	private final transient CountDownLatch released = new CountDownLatch(1);
+	volatile boolean block;
+	volatile Profile profile;
+	volatile Exception failure;
+	volatile List<Contact> contacts = Collections.emptyList();
+	private AccessGrant accessGrant;
+
+	TestProvider() throws Exception {
+	}
+
+	void release() {
+		released.countDown();
+	}
+
+	@Override
+	protected AccessGrant renewAccessGrant(final AccessGrant grant)
+			throws SocialAuthException {
+		renewals.incrementAndGet();
+		renewing.countDown();
+		if (block) {
+			try {
+				if (!released.await(10, TimeUnit.SECONDS)) {
+					throw new SocialAuthException("Not released");
+				}
+			} catch (InterruptedException e) {
+				throw new SocialAuthException(e);
+			}
+		}
+		AccessGrant renewed = new AccessGrant(grant.getKey() + "+",
+				grant.getSecret());
+		renewed.setExpiresIn(3600);
+		return renewed;
+	}
+
+	@Override
+	public String getLoginRedirectURL(final String successUrl) {
+		return successUrl;
+	}
+
+	@Override
+	public Profile verifyResponse(final Map<String, String> requestParams)
+			throws Exception {
+		if (failure != null) {
+			throw failure;
+		}
+		setAccessGrant(new AccessGrant("token", "secret"));
+		return profile;
+	}
+
+	@Override
+	public Response updateStatus(final String msg) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public List<Contact> getContactList() {
+		return contacts;
+	}
+
+	@Override
+	public Profile getUserProfile() {
+		return profile;
+	}
+
+	@Override
+	public void logout() {
+		accessGrant = null;
+	}
+
+	@Override
+	public void setPermission(final Permission p) {
+	}
+
+	@Override
+	public Response api(final String url, final String methodType,
+			final Map<String, String> params,
+			final Map<String, String> headerParams, final String body) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public synchronized AccessGrant getAccessGrant() {
+		return accessGrant;
+	}
+
+	@Override
+	public String getProviderId() {
+		return "test";
+	}
+
+	@Override
+	public synchronized void setAccessGrant(final AccessGrant accessGrant) {
+		this.accessGrant = accessGrant;
+	}
+
+	@Override
+	public Response uploadImage(final String message, final String fileName,
+			final InputStream inputStream) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	protected List<String> getPluginsList() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	protected OAuthStrategyBase getOauthStrategy() {
+		return null;
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.brickred.socialauth.util.AccessGrant;
+import org.junit.After;
+import org.junit.Test;
+
+public class TokenRefreshSchedulerTest {
+
+	private TokenRefreshScheduler scheduler;
+
+	@After
+	public void tearDown() {
+		if (scheduler != null) {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void sharesTheRefreshInProgress() throws Exception {
+		scheduler = new TokenRefreshScheduler();
+		TestProvider provider = new TestProvider();
+		provider.setAccessGrant(new AccessGrant("token", "secret"));
+		provider.block = true;
+
+		Future<AccessGrant> first = scheduler.refresh(provider);
+		assertTrue(provider.renewing.await(10, TimeUnit.SECONDS));
+		Future<AccessGrant> second = scheduler.refresh(provider);
+		assertSame(first, second);
+		provider.release();
+
+		AccessGrant renewed = first.get(10, TimeUnit.SECONDS);
+		assertEquals("token+", renewed.getKey());
+		assertSame(renewed, provider.getAccessGrant());
+		assertEquals(1, provider.renewals.get());
+		assertEquals(1, scheduler.size());
+	}
+
+	@Test
+	public void keepsAGrantSetDuringTheRefresh() throws Exception {
+		scheduler = new TokenRefreshScheduler();
+		TestProvider provider = new TestProvider();
+		provider.setAccessGrant(new AccessGrant("token", "secret"));
+		provider.block = true;
+
+		Future<AccessGrant> refresh = scheduler.refresh(provider);
+		assertTrue(provider.renewing.await(10, TimeUnit.SECONDS));
+		AccessGrant reconnected = new AccessGrant("other", "secret");
+		provider.setAccessGrant(reconnected);
+		provider.release();
+
+		assertSame(reconnected, refresh.get(10, TimeUnit.SECONDS));
+		assertSame(reconnected, provider.getAccessGrant());
+	}
+
+	@Test
+	public void failsARefreshRejectedByTheRefresher() throws Exception {
+		ThreadPoolExecutor refresher = new ThreadPoolExecutor(1, 1, 0,
+				TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+		scheduler = new TokenRefreshScheduler(
+				new ScheduledThreadPoolExecutor(1), refresher);
+		TestProvider busy = new TestProvider();
+		busy.setAccessGrant(new AccessGrant("busy", "secret"));
+		busy.block = true;
+		scheduler.refresh(busy);
+		TestProvider provider = new TestProvider();
+		provider.setAccessGrant(new AccessGrant("token", "secret"));
+
+		Future<AccessGrant> refresh = scheduler.refresh(provider);
+		try {
+			refresh.get(10, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		} finally {
+			busy.release();
+		}
+		assertEquals(0, provider.renewals.get());
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.metrics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.brickred.socialauth.util.CircuitBreaker;
+import org.brickred.socialauth.util.HttpUtil;
+import org.junit.After;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class MetricsInstrumentationTest {
+
+	private final MetricsInstrumentation metrics = new MetricsInstrumentation();
+	private HttpServer server;
+
+	@After
+	public void tearDown() {
+		HttpUtil.setInstrumentation(null);
+		if (server != null) {
+			server.stop(0);
+		}
+		CircuitBreaker.getInstance().reset();
+	}
+
+	@Test
+	public void recordsTheCallsOfAnEndpoint() {
+		metrics.requestCompleted("api.example.com", "/me", 200, millis(3), 0,
+				0, false);
+		metrics.requestCompleted("api.example.com", "/me", 404, millis(40),
+				10, 0, true);
+		metrics.requestCompleted("api.example.com", "/me", 0, millis(20000),
+				0, 2, false);
+		metrics.responseRead("api.example.com", "/me", 512);
+
+		List<EndpointStats> stats = metrics.getStats("api.example.com");
+		assertEquals(1, stats.size());
+		EndpointStats me = stats.get(0);
+		assertEquals("/me", me.getEndpoint());
+		assertEquals(3, me.getRequests());
+		assertEquals(1, me.getStatusCount(2));
+		assertEquals(1, me.getStatusCount(4));
+		assertEquals(1, me.getStatusCount(0));
+		assertEquals(10, me.getBytesSent());
+		assertEquals(512, me.getBytesReceived());
+		assertEquals(2, me.getRetries());
+		assertEquals(1, me.getReusedConnections());
+		assertEquals(20000, me.getMaxLatencyMillis(), 0.001);
+
+		long[] histogram = me.getLatencyHistogram();
+		assertEquals(EndpointStats.getLatencyBuckets().length + 1,
+				histogram.length);
+		assertEquals(1, histogram[0]);
+		assertEquals(1, histogram[3]);
+		assertEquals(1, histogram[histogram.length - 1]);
+		assertEquals(50, me.getLatencyPercentileMillis(0.5), 0.001);
+		assertEquals(20000, me.getLatencyPercentileMillis(0.99), 0.001);
+	}
+
+	@Test
+	public void groupsTheEndpointsAboveTheMaximum() {
+		metrics.setMaxEndpoints(2);
+		for (int i = 0; i < 5; i++) {
+			metrics.requestCompleted("api.example.com", "/users/" + i, 200,
+					0, 0, 0, false);
+		}
+		List<String> endpoints = new ArrayList<String>();
+		long requests = 0;
+		for (EndpointStats stats : metrics.getStats()) {
+			endpoints.add(stats.getEndpoint());
+			requests += stats.getRequests();
+		}
+		assertEquals(3, endpoints.size());
+		assertTrue(endpoints.contains(MetricsInstrumentation.OTHER_ENDPOINTS));
+		assertEquals(5, requests);
+	}
+
+	@Test
+	public void exportsToEveryExporter() {
+		final List<List<EndpointStats>> exported = new ArrayList<List<EndpointStats>>();
+		metrics.addExporter(new MetricsExporter() {
+			@Override
+			public void export(final List<EndpointStats> stats)
+					throws Exception {
+				throw new IllegalStateException("unavailable");
+			}
+		});
+		metrics.addExporter(new MetricsExporter() {
+			@Override
+			public void export(final List<EndpointStats> stats) {
+				exported.add(stats);
+			}
+		});
+		metrics.requestCompleted("api.example.com", "/me", 200, 0, 0, 0, false);
+		metrics.export();
+		assertEquals(1, exported.size());
+		assertEquals(1, exported.get(0).size());
+	}
+
+	@Test
+	public void measuresTheRequestsOfHttpUtil() throws Exception {
+		final byte[] body = new byte[100];
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		server.start();
+		HttpUtil.setInstrumentation(metrics);
+		String url = "http://127.0.0.1:" + server.getAddress().getPort()
+				+ "/stats?id=1";
+		assertArrayEquals(body, HttpUtil.doHttpRequest(url, "GET", null, null)
+				.asBytes());
+
+		List<EndpointStats> stats = metrics.getStats();
+		assertEquals(1, stats.size());
+		EndpointStats endpoint = stats.get(0);
+		assertEquals("/stats", endpoint.getEndpoint());
+		assertEquals(1, endpoint.getRequests());
+		assertEquals(1, endpoint.getStatusCount(2));
+		assertEquals(body.length, endpoint.getBytesReceived());
+	}
+
+	private static long millis(final long millis) {
+		return TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+}
@@ -0,0 +1,208 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.brickred.socialauth.Contact;
+import org.brickred.socialauth.ContactStream;
+import org.brickred.socialauth.util.AccessGrant;
+import org.brickred.socialauth.util.CircuitBreaker;
+import org.brickred.socialauth.util.HttpUtil;
+import org.brickred.socialauth.util.OAuthConfig;
+import org.brickred.socialauth.util.PooledHttpTransport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TwitterImplTest {
+
+	private static final String HOST = "127.0.0.1";
+	private static final int FRIENDS = 250;
+
+	private final AtomicInteger idRequests = new AtomicInteger();
+	private final AtomicInteger lookups = new AtomicInteger();
+	private HttpServer server;
+	private TwitterImpl provider;
+
+	@Before
+	public void setUp() throws Exception {
+		CircuitBreaker.getInstance().reset();
+		server = HttpServer.create(new InetSocketAddress(HOST, 0), 0);
+		server.createContext("/1.1/friends/ids.json", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				idRequests.incrementAndGet();
+				String cursor = parameter(exchange, "cursor");
+				if ("-1".equals(cursor)) {
+					send(exchange, ids(1, 150, 5));
+				} else if ("5".equals(cursor)) {
+					send(exchange, ids(151, FRIENDS, 0));
+				} else {
+					exchange.sendResponseHeaders(400, -1);
+					exchange.close();
+				}
+			}
+		});
+		server.createContext("/1.1/users/lookup.json", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				lookups.incrementAndGet();
+				String[] ids = parameter(exchange, "user_id").split(",");
+				if ("1".equals(ids[0])) {
+					// the first batch completes last
+					try {
+						Thread.sleep(200);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				StringBuilder json = new StringBuilder("[");
+				for (int i = 0; i < ids.length; i++) {
+					if (i > 0) {
+						json.append(',');
+					}
+					json.append("{\"id_str\":\"").append(ids[i])
+							.append("\",\"name\":\"User ").append(ids[i])
+							.append("\",\"screen_name\":\"user")
+							.append(ids[i]).append("\"}");
+				}
+				send(exchange, json.append(']').toString());
+			}
+		});
+		server.start();
+		final int port = server.getAddress().getPort();
+		HttpUtil.setTransport(new PooledHttpTransport() {
+			@Override
+			public HttpURLConnection openConnection(final URL url,
+					final Proxy proxy) throws IOException {
+				return super.openConnection(
+						new URL("http", HOST, port, url.getFile()), proxy);
+			}
+		});
+
+		OAuthConfig config = new OAuthConfig("key", "secret");
+		config.setMaxParallelRequests(3);
+		provider = new TwitterImpl(config);
+		AccessGrant grant = new AccessGrant("token", "token-secret");
+		grant.setAttribute("screen_name", "someone");
+		provider.setAccessGrant(grant);
+	}
+
+	@After
+	public void tearDown() {
+		HttpUtil.setTransport(new PooledHttpTransport());
+		server.stop(0);
+		CircuitBreaker.getInstance().reset();
+	}
+
+	@Test
+	public void followsTheCursorAndKeepsTheOrderOfParallelLookups()
+			throws Exception {
+		List<Contact> contacts = provider.getContactList();
+		assertEquals(2, idRequests.get());
+		assertEquals(3, lookups.get());
+		assertEquals(FRIENDS, contacts.size());
+		for (int i = 0; i < FRIENDS; i++) {
+			Contact contact = contacts.get(i);
+			assertEquals(String.valueOf(i + 1), contact.getId());
+			assertEquals("user" + (i + 1), contact.getDisplayName());
+			assertEquals("http://twitter.com/user" + (i + 1),
+					contact.getProfileUrl());
+		}
+	}
+
+	@Test
+	public void streamsOnePageAtATime() throws Exception {
+		ContactStream stream = provider.getContactStream();
+		assertTrue(stream.hasNext());
+		assertEquals("1", stream.next().getId());
+		assertEquals(1, idRequests.get());
+		assertEquals(1, lookups.get());
+
+		int count = 1;
+		String last = null;
+		while (stream.hasNext()) {
+			last = stream.next().getId();
+			count++;
+		}
+		assertFalse(stream.hasNext());
+		assertEquals(FRIENDS, count);
+		assertEquals(String.valueOf(FRIENDS), last);
+		assertEquals(2, idRequests.get());
+		// 100 + 50 ids of the first page, 100 ids of the second
+		assertEquals(3, lookups.get());
+	}
+
+	private static String ids(final int from, final int to, final long next) {
+		StringBuilder json = new StringBuilder("{\"ids\":[");
+		for (int i = from; i <= to; i++) {
+			if (i > from) {
+				json.append(',');
+			}
+			json.append(i);
+		}
+		return json.append("],\"next_cursor\":").append(next)
+				.append(",\"previous_cursor\":0}").toString();
+	}
+
+	private static String parameter(final HttpExchange exchange,
+			final String name) throws IOException {
+		String query = exchange.getRequestURI().getRawQuery();
+		for (String param : query.split("&")) {
+			int eq = param.indexOf('=');
+			if (eq > 0 && name.equals(param.substring(0, eq))) {
+				return URLDecoder.decode(param.substring(eq + 1), "UTF-8");
+			}
+		}
+		return null;
+	}
+
+	private static void send(final HttpExchange exchange, final String body)
+			throws IOException {
+		byte[] bytes = body.getBytes("UTF-8");
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+}
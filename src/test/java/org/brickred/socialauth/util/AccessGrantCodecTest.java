@@ -0,0 +1,99 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.brickred.socialauth.Permission;
+import org.brickred.socialauth.exception.SocialAuthException;
+import org.junit.Test;
+
+public class AccessGrantCodecTest {
+
+	@Test
+	public void roundTripsTheGrant() throws Exception {
+		AccessGrant grant = new AccessGrant("key", "secret");
+		grant.setProviderId("twitter");
+		grant.setPermission(Permission.CUSTOM);
+		grant.setAttribute("screen_name", "jdoe");
+		grant.setAttribute("expires", Integer.valueOf(3600));
+		grant.setAttribute("issued", Long.valueOf(1234567890123L));
+		grant.setAttribute("verified", Boolean.TRUE);
+		grant.setAttribute("score", Double.valueOf(0.5));
+
+		AccessGrant decoded = AccessGrantCodec.decode(AccessGrantCodec
+				.encode(grant));
+
+		assertEquals("key", decoded.getKey());
+		assertEquals("secret", decoded.getSecret());
+		assertEquals("twitter", decoded.getProviderId());
+		assertSame(Permission.CUSTOM, decoded.getPermission());
+		assertEquals("jdoe", decoded.getAttribute("screen_name"));
+		assertEquals(Integer.valueOf(3600), decoded.getAttribute("expires"));
+		assertEquals(Long.valueOf(1234567890123L),
+				decoded.getAttribute("issued"));
+		assertEquals(Boolean.TRUE, decoded.getAttribute("verified"));
+		assertEquals(Double.valueOf(0.5), decoded.getAttribute("score"));
+	}
+
+	@Test
+	public void roundTripsAnEmptyGrant() throws Exception {
+		AccessGrant decoded = AccessGrantCodec.decode(AccessGrantCodec
+				.encode(new AccessGrant()));
+
+		assertNull(decoded.getKey());
+		assertNull(decoded.getSecret());
+		assertNull(decoded.getProviderId());
+		assertNull(decoded.getPermission());
+	}
+
+	@Test
+	public void storesOtherAttributesAsStrings() throws Exception {
+		AccessGrant grant = new AccessGrant("key", null);
+		grant.setAttribute("scope", new StringBuilder("read"));
+
+		AccessGrant decoded = AccessGrantCodec.decode(AccessGrantCodec
+				.encode(grant));
+
+		assertEquals("read", decoded.getAttribute("scope"));
+	}
+
+	@Test(expected = SocialAuthException.class)
+	public void rejectsAnUnknownVersion() throws Exception {
+		byte[] data = AccessGrantCodec.encode(new AccessGrant("key", "secret"));
+		data[0] = 99;
+		AccessGrantCodec.decode(data);
+	}
+
+	@Test(expected = SocialAuthException.class)
+	public void rejectsTruncatedData() throws Exception {
+		byte[] data = AccessGrantCodec.encode(new AccessGrant("key", "secret"));
+		byte[] truncated = new byte[data.length - 3];
+		System.arraycopy(data, 0, truncated, 0, truncated.length);
+		AccessGrantCodec.decode(truncated);
+	}
+}
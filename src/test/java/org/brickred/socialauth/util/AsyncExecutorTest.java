@@ -0,0 +1,138 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class AsyncExecutorTest {
+
+	private ThreadPoolExecutor pool;
+
+	@After
+	public void tearDown() {
+		AsyncExecutor.setExecutor(null);
+		if (pool != null) {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	public void failsTheFutureOfARejectedCall() throws Exception {
+		pool = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(1));
+		AsyncExecutor.setExecutor(pool);
+		final CountDownLatch gate = new CountDownLatch(1);
+		Callable<String> blocked = new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				gate.await();
+				return "done";
+			}
+		};
+		Future<String> running = AsyncExecutor.submit(blocked, null);
+		Future<String> queued = AsyncExecutor.submit(blocked, null);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Future<String> rejected = AsyncExecutor.submit(blocked,
+				new AsyncCallback<String>() {
+					@Override
+					public void onSuccess(final String result) {
+						fail("The call should be rejected");
+					}
+
+					@Override
+					public void onFailure(final Throwable e) {
+						failure.set(e);
+					}
+				});
+
+		assertTrue(rejected.isDone());
+		assertTrue(failure.get() instanceof RejectedExecutionException);
+		try {
+			rejected.get();
+			fail("The call should be rejected");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+		gate.countDown();
+		assertEquals("done", running.get());
+		assertEquals("done", queued.get());
+	}
+
+	@Test
+	public void runsTheTasksOfASerialExecutorOneAfterTheOther()
+			throws Exception {
+		pool = new ThreadPoolExecutor(4, 4, 1, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(100));
+		AsyncExecutor.setExecutor(pool);
+		Executor serial = AsyncExecutor.newSerialExecutor();
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger overlaps = new AtomicInteger();
+		final List<Integer> order = new ArrayList<Integer>();
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < 20; i++) {
+			final int n = i;
+			futures.add(AsyncExecutor.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					if (running.incrementAndGet() > 1) {
+						overlaps.incrementAndGet();
+					}
+					Thread.sleep(1);
+					synchronized (order) {
+						order.add(n);
+					}
+					running.decrementAndGet();
+					return n;
+				}
+			}, null, serial));
+		}
+		for (int i = 0; i < futures.size(); i++) {
+			assertEquals(Integer.valueOf(i), futures.get(i).get());
+		}
+		assertEquals(0, overlaps.get());
+		for (int i = 0; i < order.size(); i++) {
+			assertEquals(Integer.valueOf(i), order.get(i));
+		}
+	}
+}
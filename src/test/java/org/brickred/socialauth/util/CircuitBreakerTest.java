@@ -0,0 +1,136 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.brickred.socialauth.exception.SocialAuthException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+	private static final String DOMAIN = "example.com";
+	private static final long OPEN_TIME = 100;
+
+	private CircuitBreaker breaker;
+	private long now = 1000;
+
+	@Before
+	public void setUp() {
+		breaker = new CircuitBreaker() {
+			@Override
+			protected long currentTimeMillis() {
+				return now;
+			}
+		};
+		breaker.setFailureThreshold(2);
+		breaker.setOpenTime(OPEN_TIME);
+	}
+
+	@Test
+	public void opensAfterTheFailureThreshold() throws Exception {
+		breaker.onFailure(DOMAIN, 0);
+		breaker.check(DOMAIN);
+		assertFalse(breaker.isOpen(DOMAIN));
+
+		breaker.onFailure(DOMAIN, 0);
+		assertTrue(breaker.isOpen(DOMAIN));
+		assertRejected();
+	}
+
+	@Test
+	public void successResetsTheFailures() throws Exception {
+		breaker.onFailure(DOMAIN, 0);
+		breaker.onSuccess(DOMAIN);
+		breaker.onFailure(DOMAIN, 0);
+		assertFalse(breaker.isOpen(DOMAIN));
+	}
+
+	@Test
+	public void letsOneTrialThroughOnceHalfOpen() throws Exception {
+		open();
+		now += OPEN_TIME;
+
+		breaker.check(DOMAIN);
+		// the other requests wait for the outcome of the trial
+		assertRejected();
+	}
+
+	@Test
+	public void closesWhenTheTrialSucceeds() throws Exception {
+		open();
+		now += OPEN_TIME;
+
+		breaker.check(DOMAIN);
+		breaker.onSuccess(DOMAIN);
+
+		assertFalse(breaker.isOpen(DOMAIN));
+		breaker.check(DOMAIN);
+		breaker.check(DOMAIN);
+	}
+
+	@Test
+	public void reopensWhenTheTrialFails() throws Exception {
+		open();
+		now += OPEN_TIME;
+
+		breaker.check(DOMAIN);
+		breaker.onFailure(DOMAIN, 0);
+
+		assertTrue(breaker.isOpen(DOMAIN));
+		assertRejected();
+		now += OPEN_TIME - 1;
+		assertRejected();
+		now++;
+		breaker.check(DOMAIN);
+	}
+
+	@Test
+	public void opensForTheRetryAfterDelay() throws Exception {
+		breaker.onFailure(DOMAIN, 4 * OPEN_TIME);
+		now += 4 * OPEN_TIME - 1;
+		assertRejected();
+		now++;
+		breaker.check(DOMAIN);
+	}
+
+	private void open() {
+		breaker.onFailure(DOMAIN, 0);
+		breaker.onFailure(DOMAIN, 0);
+		assertTrue(breaker.isOpen(DOMAIN));
+	}
+
+	private void assertRejected() {
+		try {
+			breaker.check(DOMAIN);
+			fail("Calls to " + DOMAIN + " should be suspended");
+		} catch (SocialAuthException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,265 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class FeedCacheTest {
+
+	private static final String URL = "https://api.example.com/feed";
+
+	private FeedCache cache;
+	private RecordingFetcher fetcher;
+
+	@Before
+	public void setUp() {
+		cache = new FeedCache();
+		cache.setMaxEntries(10);
+		cache.setDefaultTimeToLive(60);
+		fetcher = new RecordingFetcher();
+	}
+
+	@Test
+	public void servesAFreshEntryFromTheCache() throws Exception {
+		fetcher.add(response(200, "v1", null, "first"));
+
+		assertEquals("first", cache.execute(URL, null, null, fetcher)
+				.asString());
+		assertEquals("first", cache.execute(URL, null, null, fetcher)
+				.asString());
+		assertEquals(1, fetcher.requests.size());
+	}
+
+	@Test
+	public void revalidatesAnExpiredEntryWithItsETag() throws Exception {
+		fetcher.add(response(200, "v1", "max-age=0", "first"));
+		fetcher.add(response(304, null, null, ""));
+
+		assertEquals("first", cache.execute(URL, null, null, fetcher)
+				.asString());
+		Response revalidated = cache.execute(URL, null, null, fetcher);
+
+		assertEquals(2, fetcher.requests.size());
+		assertNull(fetcher.requests.get(0).get("If-None-Match"));
+		assertEquals("v1", fetcher.requests.get(1).get("If-None-Match"));
+		assertEquals(200, revalidated.getStatus());
+		assertEquals("first", revalidated.asString());
+	}
+
+	@Test
+	public void replacesAnEntryWhenTheContentChanged() throws Exception {
+		fetcher.add(response(200, "v1", "max-age=0", "first"));
+		fetcher.add(response(200, "v2", "max-age=0", "second"));
+		fetcher.add(response(304, null, null, ""));
+
+		cache.execute(URL, null, null, fetcher);
+		assertEquals("second", cache.execute(URL, null, null, fetcher)
+				.asString());
+		assertEquals("second", cache.execute(URL, null, null, fetcher)
+				.asString());
+		assertEquals("v2", fetcher.requests.get(2).get("If-None-Match"));
+	}
+
+	@Test
+	public void keepsTheEntriesOfAccessTokensApart() throws Exception {
+		fetcher.add(response(200, null, null, "alice"));
+		fetcher.add(response(200, null, null, "bob"));
+
+		assertEquals("alice", cache.execute(URL,
+				new AccessGrant("alice", null), null, fetcher).asString());
+		assertEquals("bob", cache.execute(URL, new AccessGrant("bob", null),
+				null, fetcher).asString());
+	}
+
+	@Test
+	public void doesNotStoreNoStoreResponses() throws Exception {
+		fetcher.add(response(200, "v1", "no-store", "first"));
+		fetcher.add(response(200, "v1", "no-store", "second"));
+
+		cache.execute(URL, null, null, fetcher);
+		assertEquals("second", cache.execute(URL, null, null, fetcher)
+				.asString());
+		assertNull(fetcher.requests.get(1).get("If-None-Match"));
+	}
+
+	@Test
+	public void ignoresAMalformedContentLength() throws Exception {
+		Response first = response(200, null, null, "first");
+		first.getHeaders().put("Content-Length", "five");
+		fetcher.add(first);
+
+		cache.execute(URL, null, null, fetcher);
+		assertEquals("first", cache.execute(URL, null, null, fetcher)
+				.asString());
+		assertEquals(1, fetcher.requests.size());
+	}
+
+	@Test
+	public void doesNotStoreAContentLargerThanTheMaximum() throws Exception {
+		char[] large = new char[FeedCache.MAX_ENTRY_SIZE + 1];
+		Arrays.fill(large, 'a');
+		fetcher.add(response(200, null, null, new String(large)));
+		fetcher.add(response(200, null, null, "second"));
+
+		cache.execute(URL, null, null, fetcher);
+		assertEquals("second", cache.execute(URL, null, null, fetcher)
+				.asString());
+	}
+
+	@Test
+	public void fallsBackToTheDefaultTimeToLiveOnceCleared() throws Exception {
+		cache.setTimeToLive("api.example.com/feed", 0);
+		fetcher.add(response(200, null, null, "first"));
+		fetcher.add(response(200, null, null, "second"));
+		cache.execute(URL, null, null, fetcher);
+		cache.clearTimeToLives();
+
+		cache.execute(URL, null, null, fetcher);
+		assertEquals("second", cache.execute(URL, null, null, fetcher)
+				.asString());
+		assertEquals(2, fetcher.requests.size());
+	}
+
+	@Test
+	public void storesAStreamedContentOnceRead() throws Exception {
+		HttpServer server = start(5);
+		try {
+			HttpFetcher http = new HttpFetcher(server);
+			String url = http.url;
+			Response response = cache.execute(url, null, null, http);
+			// not stored before it is read
+			assertEquals(2, cache.execute(url, null, null, http).asBytes().length);
+			assertEquals(5, response.asBytes().length);
+			assertEquals(2, http.requests.get());
+
+			assertEquals(5, cache.execute(url, null, null, http).asBytes().length);
+			assertEquals(2, http.requests.get());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void stopsCopyingALargeStreamedContent() throws Exception {
+		HttpServer server = start(FeedCache.MAX_ENTRY_SIZE + 1);
+		try {
+			HttpFetcher http = new HttpFetcher(server);
+			cache.execute(http.url, null, null, http).asBytes();
+			cache.execute(http.url, null, null, http).asBytes();
+			assertEquals(2, http.requests.get());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	/**
+	 * Starts a server sending the given number of bytes without a
+	 * Content-Length, then 2 bytes to the next requests.
+	 */
+	private static HttpServer start(final int size) throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress(
+				"127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				byte[] body = new byte[count.getAndIncrement() == 0 ? size : 2];
+				exchange.sendResponseHeaders(200, 0);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		server.start();
+		return server;
+	}
+
+	private static class HttpFetcher implements FeedCache.Fetcher {
+		private final String url;
+		private final AtomicInteger requests = new AtomicInteger();
+
+		HttpFetcher(final HttpServer server) {
+			url = "http://127.0.0.1:" + server.getAddress().getPort() + "/feed";
+		}
+
+		@Override
+		public Response fetch(final Map<String, String> headerParams)
+				throws Exception {
+			requests.incrementAndGet();
+			return HttpUtil.doHttpRequest(url, "GET", null, headerParams);
+		}
+	}
+
+	private static Response response(final int status, final String etag,
+			final String cacheControl, final String body) throws Exception {
+		Map<String, String> headers = new TreeMap<String, String>(
+				String.CASE_INSENSITIVE_ORDER);
+		if (etag != null) {
+			headers.put("ETag", etag);
+		}
+		if (cacheControl != null) {
+			headers.put("Cache-Control", cacheControl);
+		}
+		return new Response(status, headers, body.getBytes("UTF-8"));
+	}
+
+	private static class RecordingFetcher implements FeedCache.Fetcher {
+		private final List<Response> responses = new ArrayList<Response>();
+		private final List<Map<String, String>> requests = new ArrayList<Map<String, String>>();
+
+		void add(final Response response) {
+			responses.add(response);
+		}
+
+		@Override
+		public Response fetch(final Map<String, String> headerParams) {
+			Map<String, String> headers = new TreeMap<String, String>();
+			if (headerParams != null) {
+				headers.putAll(headerParams);
+			}
+			requests.add(headers);
+			return responses.remove(0);
+		}
+	}
+}
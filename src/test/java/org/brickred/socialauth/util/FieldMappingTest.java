@@ -0,0 +1,121 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import org.brickred.socialauth.Profile;
+import org.brickred.socialauth.util.XMLStreamUtil.XMLRecord;
+import org.junit.Test;
+
+public class FieldMappingTest {
+
+	private static final FieldMapping<Profile> JSON_MAPPING = FieldMapping
+			.builder(Profile.class).map("id", "validatedId")
+			.map("name", "fullName").map("location.name", "location")
+			.map("emails.1.value", "email").map("age", "gender")
+			.mapJson("names", new FieldMapping.JsonSetter<Profile>() {
+				@Override
+				public void set(final Profile profile, final JsonValue value) {
+					JsonArray names = (JsonArray) value;
+					JsonObject first = names.getJsonObject(0);
+					profile.setFirstName(first.getString("given"));
+				}
+			}).build();
+
+	private static final FieldMapping<Profile> XML_MAPPING = FieldMapping
+			.builder(Profile.class).map("person.@nsid", "validatedId")
+			.map("person.realname", "fullName")
+			.map("person.location.city", "location")
+			.mapXml("person.emails", new FieldMapping.XMLSetter<Profile>() {
+				@Override
+				public void set(final Profile profile, final XMLRecord emails) {
+					profile.setEmail(emails.getElementData("primary"));
+				}
+			}).build();
+
+	@Test
+	public void mapsJsonPaths() throws Exception {
+		Profile p = JSON_MAPPING.readJson(stream("{\"id\":\"42\","
+				+ "\"name\":\"Jane Doe\",\"skipped\":{\"name\":\"x\"},"
+				+ "\"location\":{\"id\":7,\"name\":\"Paris\"},"
+				+ "\"emails\":[{\"value\":\"a@example.com\"},"
+				+ "{\"value\":\"b@example.com\"}],\"age\":30,"
+				+ "\"names\":[{\"given\":\"Jane\"}]}"), new Profile());
+
+		assertEquals("42", p.getValidatedId());
+		assertEquals("Jane Doe", p.getFullName());
+		assertEquals("Paris", p.getLocation());
+		assertEquals("b@example.com", p.getEmail());
+		assertEquals("30", p.getGender());
+		assertEquals("Jane", p.getFirstName());
+	}
+
+	@Test
+	public void ignoresNullJsonValues() throws Exception {
+		Profile p = JSON_MAPPING.readJson(
+				stream("{\"id\":\"42\",\"name\":null}"), new Profile());
+
+		assertEquals("42", p.getValidatedId());
+		assertNull(p.getFullName());
+	}
+
+	@Test
+	public void leavesTheIdUnsetOnAnErrorDocument() throws Exception {
+		Profile p = JSON_MAPPING.readJson(
+				stream("{\"error\":{\"message\":\"Invalid token\"}}"),
+				new Profile());
+
+		assertNull(p.getValidatedId());
+	}
+
+	@Test
+	public void mapsXmlPaths() throws Exception {
+		Profile p = XML_MAPPING.readXml(stream("<?xml version=\"1.0\"?>"
+				+ "<rsp stat=\"ok\"><person nsid=\"12@N01\">"
+				+ "<realname>Jane Doe</realname>"
+				+ "<skipped><realname>x</realname></skipped>"
+				+ "<location><city>Paris</city></location>"
+				+ "<emails><primary>a@example.com</primary></emails>"
+				+ "</person></rsp>"), new Profile());
+
+		assertEquals("12@N01", p.getValidatedId());
+		assertEquals("Jane Doe", p.getFullName());
+		assertEquals("Paris", p.getLocation());
+		assertEquals("a@example.com", p.getEmail());
+	}
+
+	private static InputStream stream(final String content) throws Exception {
+		return new ByteArrayInputStream(content.getBytes("UTF-8"));
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpUtilTest {
+
+	private static final String HOST = "127.0.0.1";
+
+	private final AtomicInteger requests = new AtomicInteger();
+	private volatile int status;
+	private HttpServer server;
+	private String url;
+
+	@Before
+	public void setUp() throws IOException {
+		CircuitBreaker.getInstance().reset();
+		server = HttpServer.create(new InetSocketAddress(HOST, 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				requests.incrementAndGet();
+				exchange.getResponseHeaders().add("Retry-After", "60");
+				exchange.sendResponseHeaders(status, -1);
+				exchange.close();
+			}
+		});
+		server.start();
+		url = "http://" + HOST + ":" + server.getAddress().getPort() + "/";
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+		CircuitBreaker.getInstance().reset();
+	}
+
+	@Test
+	public void doesNotRetryByDefault() throws Exception {
+		status = 503;
+		HttpUtil.doHttpRequest(url, "GET", null, null).close();
+		assertEquals(1, requests.get());
+	}
+
+	@Test
+	public void keepsTheCircuitClosedOnRateLimits() throws Exception {
+		status = 429;
+		for (int i = 0; i < CircuitBreaker.DEFAULT_FAILURE_THRESHOLD + 1; i++) {
+			Response response = HttpUtil.doHttpRequest(url, "GET", null, null);
+			assertEquals(429, response.getStatus());
+			response.close();
+		}
+		assertFalse(CircuitBreaker.getInstance().isOpen(HOST));
+	}
+
+	@Test
+	public void opensTheCircuitOnServerErrors() throws Exception {
+		status = 503;
+		HttpUtil.doHttpRequest(url, "GET", null, null).close();
+		assertTrue(CircuitBreaker.getInstance().isOpen(HOST));
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+
+import org.junit.Test;
+
+public class JsonStreamUtilTest {
+
+	@Test
+	public void streamsTheElementsOfATopLevelArray() throws Exception {
+		final List<String> names = new ArrayList<String>();
+		JsonObject rest = JsonStreamUtil.streamArray(
+				stream("[{\"name\":\"a\"},[1,2],{\"name\":\"b\"}]"),
+				collect(names));
+		assertEquals(2, names.size());
+		assertEquals("a", names.get(0));
+		assertEquals("b", names.get(1));
+		assertTrue(rest.isEmpty());
+	}
+
+	@Test
+	public void streamsTheArrayAtAPathAndKeepsTheRest() throws Exception {
+		final List<String> names = new ArrayList<String>();
+		JsonObject rest = JsonStreamUtil.streamArray(
+				stream("{\"paging\":{\"next\":\"url\"},\"response\":{"
+						+ "\"count\":2,\"items\":[{\"name\":\"a\"},"
+						+ "{\"name\":\"b\"}]}}"), collect(names),
+				"response", "items");
+		assertEquals(2, names.size());
+		assertEquals("url", rest.getJsonObject("paging").getString("next"));
+		JsonObject response = rest.getJsonObject("response");
+		assertEquals(2, response.getInt("count"));
+		assertTrue(response.getJsonArray("items").isEmpty());
+	}
+
+	@Test
+	public void skipsAnArrayNotAtThePath() throws Exception {
+		final List<String> names = new ArrayList<String>();
+		JsonObject rest = JsonStreamUtil.streamArray(
+				stream("[{\"name\":\"a\"}]"), collect(names), "data");
+		assertTrue(names.isEmpty());
+		assertTrue(rest.isEmpty());
+	}
+
+	@Test
+	public void rejectsATruncatedDocument() throws Exception {
+		try {
+			JsonStreamUtil.streamArray(stream("[{\"name\":\"a\"},"),
+					collect(new ArrayList<String>()));
+			fail("the document is truncated");
+		} catch (JsonException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void readsLongArraysAndSkipsValues() throws Exception {
+		long[] values = new long[100];
+		StringBuilder json = new StringBuilder("{\"skipped\":{\"a\":[1]},"
+				+ "\"ids\":[");
+		for (int i = 0; i < values.length; i++) {
+			values[i] = 5000000000L + i;
+			json.append(i > 0 ? "," : "").append(values[i]);
+		}
+		json.append("]}");
+		JsonParser parser = JsonStreamUtil.createParser(stream(json
+				.toString()));
+		long[] ids = null;
+		String key = null;
+		assertEquals(Event.START_OBJECT, parser.next());
+		while (parser.hasNext()) {
+			Event event = parser.next();
+			if (event == Event.KEY_NAME) {
+				key = parser.getString();
+			} else if ("ids".equals(key) && event == Event.START_ARRAY) {
+				ids = JsonStreamUtil.readLongArray(parser);
+			} else {
+				JsonStreamUtil.skipValue(parser, event);
+			}
+		}
+		parser.close();
+		assertArrayEquals(values, ids);
+	}
+
+	private static JsonStreamUtil.ElementHandler collect(
+			final List<String> names) {
+		return new JsonStreamUtil.ElementHandler() {
+			@Override
+			public void handle(final JsonObject element) {
+				names.add(element.getString("name"));
+			}
+		};
+	}
+
+	private static InputStream stream(final String json) throws Exception {
+		return new ByteArrayInputStream(json.getBytes("UTF-8"));
+	}
+}
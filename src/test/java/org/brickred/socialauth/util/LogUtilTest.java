@@ -0,0 +1,75 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+public class LogUtilTest {
+
+	@Test
+	public void redactsParametersAndMembers() {
+		assertEquals("https://api/?oauth_token=****&count=10",
+				LogUtil.redact("https://api/?oauth_token=abc&count=10"));
+		assertEquals("{\"access_token\":\"****\",\"expires_in\":3600}",
+				LogUtil.redact("{\"access_token\":\"abc\",\"expires_in\":3600}"));
+		assertEquals("OAuth oauth_nonce=\"1\", oauth_signature=\"****\"",
+				LogUtil.redact("OAuth oauth_nonce=\"1\", oauth_signature=\"c2ln\""));
+		assertEquals("Access Token : ****",
+				LogUtil.redact("Access Token : abc"));
+		assertEquals("Authorization: Bearer ****",
+				LogUtil.redact("Authorization: Bearer abc"));
+		assertNull(LogUtil.redact(null));
+	}
+
+	@Test
+	public void formatsOnlyLoggedMessages() {
+		final AtomicInteger formatted = new AtomicInteger();
+		Object value = new Object() {
+			@Override
+			public String toString() {
+				formatted.incrementAndGet();
+				return "code=abc";
+			}
+		};
+		Logger log = Logger.getLogger(LogUtilTest.class.getName());
+		Level level = log.getLevel();
+		try {
+			log.setLevel(Level.INFO);
+			LogUtil.fine(log, "Verifier : ", value);
+			assertEquals(0, formatted.get());
+			LogUtil.info(log, "Verifier : ", value);
+			assertEquals(1, formatted.get());
+		} finally {
+			log.setLevel(level);
+		}
+	}
+}
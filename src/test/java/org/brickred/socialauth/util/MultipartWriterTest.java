@@ -0,0 +1,168 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class MultipartWriterTest {
+
+	private static final String HOST = "127.0.0.1";
+
+	private HttpServer server;
+	private String url;
+	private volatile byte[] received;
+	private volatile String contentLength;
+	private volatile String transferEncoding;
+	private byte[] content;
+	private Path file;
+
+	@Before
+	public void setUp() throws IOException {
+		CircuitBreaker.getInstance().reset();
+		content = new byte[3 * MultipartWriter.BUFFER_SIZE + 17];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+		file = Files.createTempFile("socialauth", ".png");
+		Files.write(file, content);
+		server = HttpServer.create(new InetSocketAddress(HOST, 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				contentLength = exchange.getRequestHeaders().getFirst(
+						"Content-Length");
+				transferEncoding = exchange.getRequestHeaders().getFirst(
+						"Transfer-Encoding");
+				received = read(exchange.getRequestBody());
+				exchange.sendResponseHeaders(200, -1);
+				exchange.close();
+			}
+		});
+		server.start();
+		url = "http://" + HOST + ":" + server.getAddress().getPort()
+				+ "/upload";
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.stop(0);
+		Files.deleteIfExists(file);
+		CircuitBreaker.getInstance().reset();
+	}
+
+	@Test
+	public void writesTheSameBodyFromAStreamAndAChannel() throws Exception {
+		MultipartWriter writer = new MultipartWriter("image.png", "media",
+				params());
+		ByteArrayOutputStream fromStream = new ByteArrayOutputStream();
+		writer.write(fromStream, new ByteArrayInputStream(content));
+		ByteArrayOutputStream fromChannel = new ByteArrayOutputStream();
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			writer.write(fromChannel, channel, 0, content.length);
+		} finally {
+			channel.close();
+		}
+		assertArrayEquals(fromStream.toByteArray(), fromChannel.toByteArray());
+		assertEquals(writer.getLength(content.length), fromStream.size());
+
+		String body = new String(fromStream.toByteArray(), "ISO-8859-1");
+		String boundary = writer.getContentType().substring(
+				"multipart/form-data; boundary=".length());
+		assertTrue(body.startsWith("--" + boundary + "\r\n"
+				+ "Content-Disposition: form-data; name=\"media\"; "
+				+ "filename=\"image.png\"\r\n"));
+		assertTrue(body.contains("\r\n--" + boundary + "\r\n"
+				+ "Content-Disposition: form-data; name=\"status\"\r\n\r\n"
+				+ "Hello\r\n"));
+		assertTrue(body.endsWith("--" + boundary + "--\r\n\r\n"));
+	}
+
+	@Test
+	public void sendsAFileWithItsLength() throws Exception {
+		HttpUtil.doHttpRequest(url, "POST", params(), null, file, "media")
+				.close();
+		assertNull(transferEncoding);
+		assertEquals(String.valueOf(received.length), contentLength);
+		assertContent();
+	}
+
+	@Test
+	public void sendsAStreamInChunks() throws Exception {
+		HttpUtil.doHttpRequest(url, "POST", params(), null,
+				new ByteArrayInputStream(content), "image.png", "media")
+				.close();
+		assertEquals("chunked", transferEncoding);
+		assertContent();
+	}
+
+	private void assertContent() throws Exception {
+		String body = new String(received, "ISO-8859-1");
+		String expected = new String(content, "ISO-8859-1");
+		int start = body.indexOf("\r\n\r\n") + 4;
+		assertEquals(expected,
+				body.substring(start, start + expected.length()));
+		assertTrue(body.contains("name=\"status\"\r\n\r\nHello\r\n"));
+	}
+
+	private static Map<String, String> params() {
+		Map<String, String> params = new LinkedHashMap<String, String>();
+		params.put("status", "Hello");
+		return params;
+	}
+
+	private static byte[] read(final InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		int n;
+		while ((n = in.read(buf)) != -1) {
+			out.write(buf, 0, n);
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class OAuthSignerTest {
+
+	private static final String URL = "https://api.twitter.com/1.1/statuses/update.json";
+
+	private static Map<String, String> twitterSample() {
+		Map<String, String> params = new HashMap<String, String>();
+		params.put("status", "Hello Ladies + Gentlemen, a signed OAuth request!");
+		params.put("include_entities", "true");
+		params.put("oauth_consumer_key", "xvz1evFS4wEEPTGEFPHBog");
+		params.put("oauth_nonce", "kYjzVBB8Y0ZFabxSWbWovY3uYSQ2pTgmZeNu2VS4cg");
+		params.put("oauth_signature_method", "HMAC-SHA1");
+		params.put("oauth_timestamp", "1318622958");
+		params.put("oauth_token",
+				"370773112-GmHxMAgYyLbNEtIKZeRNFsMKPR9EyMZeS9weJAEb");
+		params.put("oauth_version", "1.0");
+		return params;
+	}
+
+	@Test
+	public void buildsTheBaseStringOfTheTwitterSample() {
+		assertEquals("POST&https%3A%2F%2Fapi.twitter.com%2F1.1%2Fstatuses"
+				+ "%2Fupdate.json&include_entities%3Dtrue"
+				+ "%26oauth_consumer_key%3Dxvz1evFS4wEEPTGEFPHBog"
+				+ "%26oauth_nonce%3DkYjzVBB8Y0ZFabxSWbWovY3uYSQ2pTgmZeNu2VS4cg"
+				+ "%26oauth_signature_method%3DHMAC-SHA1"
+				+ "%26oauth_timestamp%3D1318622958"
+				+ "%26oauth_token%3D370773112-GmHxMAgYyLbNEtIKZeRNFsMKPR9EyMZeS9weJAEb"
+				+ "%26oauth_version%3D1.0"
+				+ "%26status%3DHello%2520Ladies%2520%252B%2520Gentlemen%252C"
+				+ "%2520a%2520signed%2520OAuth%2520request%2521",
+				OAuthSigner.getBaseString("POST", URL, twitterSample()));
+	}
+
+	@Test
+	public void signsTheTwitterSample() throws Exception {
+		assertEquals("hCtSmYh+iHYCEqBWrE7C7hYmtUk=", OAuthSigner.signHmacSha1(
+				"POST", URL, twitterSample(),
+				"kAcSOqF21Fu85e7zjz7ZN2U4ZRhfV3WpwPAoE3Z7kBw",
+				"LswwdoUaIvS8ltyTt5jkRh4J50vUPVVHtR2YPi5kE"));
+	}
+
+	@Test
+	public void sortsOnTheEncodedNames() {
+		// '-' sorts before '/', but "%2F" sorts before "-"
+		Map<String, String> params = new HashMap<String, String>();
+		params.put("a-", "1");
+		params.put("a/", "2");
+		params.put("b", "");
+		assertEquals("GET&http%3A%2F%2Fexample.com%2F&a%252F%3D2%26a-%3D1",
+				OAuthSigner.getBaseString("GET", "http://example.com/", params));
+	}
+
+	@Test
+	public void signsTheRfc5849Sample() throws Exception {
+		// RFC 5849 section 1.2, without a query string
+		Map<String, String> params = new HashMap<String, String>();
+		params.put("oauth_consumer_key", "dpf43f3p2l4k3l03");
+		params.put("oauth_token", "nnch734d00sl2jdk");
+		params.put("oauth_nonce", "chapoH");
+		params.put("oauth_timestamp", "137131202");
+		params.put("oauth_signature_method", "HMAC-SHA1");
+		params.put("file", "vacation.jpg");
+		params.put("size", "original");
+		assertEquals("GET&http%3A%2F%2Fphotos.example.net%2Fphotos"
+				+ "&file%3Dvacation.jpg%26oauth_consumer_key%3Ddpf43f3p2l4k3l03"
+				+ "%26oauth_nonce%3DchapoH%26oauth_signature_method%3DHMAC-SHA1"
+				+ "%26oauth_timestamp%3D137131202%26oauth_token%3Dnnch734d00sl2jdk"
+				+ "%26size%3Doriginal", OAuthSigner.getBaseString("GET",
+				"http://photos.example.net/photos", params));
+		assertEquals("MdpQcU8iPSUjWoN/UDMsK2sui9I=", OAuthSigner.signHmacSha1(
+				"GET", "http://photos.example.net/photos", params,
+				"kd94hf93k423kf44", "pfkkdhi9sl3r4s00"));
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class OpenIdAssociationCacheTest {
+
+	private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+	private final AtomicInteger associations = new AtomicInteger();
+	private volatile boolean stateless;
+	private volatile CountDownLatch answer;
+	private volatile long offset;
+	private final ExecutorService handlers = Executors.newCachedThreadPool();
+	private HttpServer server;
+	private String endpoint;
+	private OpenIdAssociationCache cache;
+
+	@Before
+	public void setUp() throws IOException {
+		CircuitBreaker.getInstance().reset();
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(handlers);
+		server.createContext("/openid", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				int n = associations.incrementAndGet();
+				CountDownLatch latch = answer;
+				if (latch != null) {
+					try {
+						latch.await(5, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				String body = stateless ? "ns:http://specs.openid.net/auth/2.0\n"
+						: "ns:http://specs.openid.net/auth/2.0\n"
+								+ "assoc_handle:handle" + n + "\n"
+								+ "expires_in:3600\n";
+				byte[] bytes = body.getBytes("UTF-8");
+				exchange.sendResponseHeaders(200, bytes.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(bytes);
+				out.close();
+			}
+		});
+		server.start();
+		endpoint = "http://127.0.0.1:" + server.getAddress().getPort()
+				+ "/openid";
+		cache = new OpenIdAssociationCache() {
+			@Override
+			protected long currentTimeMillis() {
+				return System.currentTimeMillis() + offset;
+			}
+		};
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+		handlers.shutdownNow();
+		CircuitBreaker.getInstance().reset();
+	}
+
+	@Test
+	public void reusesTheAssociation() throws Exception {
+		assertEquals("handle1", cache.getAssociationHandle(endpoint));
+		assertEquals("handle1", cache.getAssociationHandle(endpoint));
+		assertEquals(1, associations.get());
+
+		cache.invalidate(endpoint);
+		assertEquals("handle2", cache.getAssociationHandle(endpoint));
+		assertEquals(2, associations.get());
+	}
+
+	@Test
+	public void makesOneAssociationForConcurrentMisses() throws Exception {
+		answer = new CountDownLatch(1);
+		ExecutorService threads = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<String>> handles = new ArrayList<Future<String>>();
+			for (int i = 0; i < 4; i++) {
+				handles.add(threads.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						return cache.getAssociationHandle(endpoint);
+					}
+				}));
+			}
+			// lets the other logins reach the pending association
+			Thread.sleep(200);
+			answer.countDown();
+			for (Future<String> handle : handles) {
+				assertEquals("handle1", handle.get(5, TimeUnit.SECONDS));
+			}
+		} finally {
+			threads.shutdownNow();
+		}
+		assertEquals(1, associations.get());
+	}
+
+	@Test
+	public void renewsTheAssociationInTheBackground() throws Exception {
+		cache.getAssociationHandle(endpoint);
+		// past three quarters of the usable time of 50 minutes
+		offset = HOUR * 2 / 3;
+		assertEquals("handle1", cache.getAssociationHandle(endpoint));
+		long deadline = System.currentTimeMillis() + 5000;
+		String handle;
+		do {
+			Thread.sleep(10);
+			handle = cache.getAssociationHandle(endpoint);
+		} while (!"handle2".equals(handle)
+				&& System.currentTimeMillis() < deadline);
+		assertEquals("handle2", handle);
+		assertEquals(2, associations.get());
+	}
+
+	@Test
+	public void associatesAgainOnceTheHandleIsTooOld() throws Exception {
+		cache.getAssociationHandle(endpoint);
+		// within the login margin of the expiry
+		offset = HOUR - TimeUnit.MINUTES.toMillis(5);
+		assertEquals("handle2", cache.getAssociationHandle(endpoint));
+		assertEquals(2, associations.get());
+	}
+
+	@Test
+	public void doesNotKeepAStatelessAnswer() throws Exception {
+		stateless = true;
+		assertEquals("", cache.getAssociationHandle(endpoint));
+		assertEquals("", cache.getAssociationHandle(endpoint));
+		assertEquals(2, associations.get());
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PooledHttpTransportTest {
+
+	private PooledHttpTransport transport;
+	private URL url;
+
+	@Before
+	public void setUp() throws Exception {
+		transport = new PooledHttpTransport();
+		transport.setMaxPerRoute(1);
+		transport.setIdleTimeout(100);
+		url = new URL("http://127.0.0.1:1/feed");
+	}
+
+	@After
+	public void tearDown() {
+		transport.shutdown();
+	}
+
+	@Test
+	public void holdsTheRouteUntilTheResponseIsReleased() throws Exception {
+		HttpURLConnection conn = transport.openConnection(url, null);
+		transport.responseReceived(conn);
+		assertExhausted();
+
+		transport.releaseConnection(conn, true);
+		assertNotNull(transport.openConnection(url, null));
+	}
+
+	@Test
+	public void freesTheRouteOfALeakedResponse() throws Exception {
+		HttpURLConnection conn = transport.openConnection(url, null);
+		transport.responseReceived(conn);
+		// the evictor runs every second at most
+		long deadline = System.currentTimeMillis() + 5000;
+		while (true) {
+			try {
+				assertNotNull(transport.openConnection(url, null));
+				return;
+			} catch (IOException e) {
+				if (System.currentTimeMillis() > deadline) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	private void assertExhausted() {
+		try {
+			transport.openConnection(url, null);
+			fail("The route should be exhausted");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
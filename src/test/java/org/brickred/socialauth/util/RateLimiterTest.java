@@ -0,0 +1,176 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.brickred.socialauth.exception.SocialAuthException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+	private static final String URL = "https://api.example.com/1/friends?cursor=1";
+
+	private final AtomicInteger calls = new AtomicInteger();
+	private final AccessGrant token = new AccessGrant("token", "secret");
+	private volatile long offset;
+	private RateLimiter limiter;
+
+	@Before
+	public void setUp() {
+		limiter = new RateLimiter() {
+			@Override
+			protected long currentTimeMillis() {
+				return System.currentTimeMillis() + offset;
+			}
+		};
+	}
+
+	@Test
+	public void ignoresResponsesWithoutQuota() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			limiter.execute("test", token, URL, respond(200, null));
+		}
+		assertEquals(3, calls.get());
+		assertNull(limiter.getBudget("test", token, URL));
+	}
+
+	@Test
+	public void rejectsCallsOnceTheQuotaIsUsed() throws Exception {
+		limiter.execute("test", token, URL, respond(200, quota("10", "2", "60")));
+		RateLimiter.Budget budget = limiter.getBudget("test", token, URL);
+		assertEquals("api.example.com/1/friends", budget.getEndpoint());
+		assertEquals(10, budget.getLimit());
+		assertEquals(2, budget.getRemaining());
+
+		limiter.execute("test", token, URL, respond(200, null));
+		limiter.execute("test", token, URL, respond(200, null));
+		assertEquals(0, limiter.getBudget("test", token, URL).getRemaining());
+		assertRejected(token);
+		assertEquals(3, calls.get());
+
+		// other tokens and endpoints have their own quota
+		limiter.execute("test", new AccessGrant("other", "secret"), URL,
+				respond(200, null));
+		limiter.execute("test", token, "https://api.example.com/1/users",
+				respond(200, null));
+		assertEquals(5, calls.get());
+	}
+
+	@Test
+	public void keepsTheReserve() throws Exception {
+		limiter.setReserve(1);
+		limiter.execute("test", token, URL, respond(200, quota("10", "2", "60")));
+		limiter.execute("test", token, URL, respond(200, null));
+		assertRejected(token);
+		assertEquals(2, calls.get());
+	}
+
+	@Test
+	public void ignoresOlderResponsesOfTheSameWindow() throws Exception {
+		long reset = System.currentTimeMillis() / 1000 + 60;
+		limiter.execute("test", token, URL,
+				respond(200, quota("10", "3", String.valueOf(reset))));
+		limiter.execute("test", token, URL,
+				respond(200, quota("10", "5", String.valueOf(reset))));
+		RateLimiter.Budget budget = limiter.getBudget("test", token, URL);
+		assertEquals(2, budget.getRemaining());
+		assertEquals(reset * 1000, budget.getResetTime());
+	}
+
+	@Test
+	public void usesRetryAfterOfA429() throws Exception {
+		Map<String, String> headers = new HashMap<String, String>();
+		headers.put(Constants.RETRY_AFTER_HEADER, "30");
+		limiter.execute("test", token, URL, respond(429, headers));
+		RateLimiter.Budget budget = limiter.getBudget("test", token, URL);
+		assertEquals(0, budget.getRemaining());
+		long wait = budget.getResetTime() - System.currentTimeMillis();
+		assertTrue(wait > 25000 && wait <= 30000);
+		assertRejected(token);
+	}
+
+	@Test
+	public void opensANewWindowAtTheReset() throws Exception {
+		limiter.execute("test", token, URL, respond(200, quota("10", "0", "60")));
+		assertRejected(token);
+
+		offset = 61000;
+		assertNull(limiter.getBudget("test", token, URL));
+		assertEquals(0, limiter.getBudgets("test", token).size());
+		limiter.execute("test", token, URL, respond(200, null));
+		assertEquals(2, calls.get());
+	}
+
+	@Test
+	public void waitsForAResetWithinTheMaximumWait() throws Exception {
+		limiter.setMaxWait(1000);
+		limiter.execute("test", token, URL, respond(200, quota("10", "0", "1")));
+		offset = 900;
+		limiter.execute("test", token, URL, respond(200, null));
+		assertEquals(2, calls.get());
+	}
+
+	private void assertRejected(final AccessGrant grant) throws Exception {
+		int before = calls.get();
+		try {
+			limiter.execute("test", grant, URL, respond(200, null));
+			fail("the quota is used");
+		} catch (SocialAuthException e) {
+			assertEquals(before, calls.get());
+		}
+	}
+
+	private static Map<String, String> quota(final String limit,
+			final String remaining, final String reset) {
+		Map<String, String> headers = new HashMap<String, String>();
+		headers.put("X-RateLimit-Limit", limit);
+		headers.put("X-RateLimit-Remaining", remaining);
+		headers.put("X-RateLimit-Reset", reset);
+		return headers;
+	}
+
+	private Callable<Response> respond(final int status,
+			final Map<String, String> headers) {
+		return new Callable<Response>() {
+			@Override
+			public Response call() throws Exception {
+				calls.incrementAndGet();
+				return new Response(status,
+						headers == null ? new HashMap<String, String>()
+								: headers, new byte[0]);
+			}
+		};
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RequestTokenPoolTest {
+
+	private static final String REQUEST_TOKEN_URL = "https://api.example.com/oauth/request_token";
+	private static final String CALLBACK_URL = "https://app.example.com/callback";
+
+	private final AtomicInteger fetched = new AtomicInteger();
+	private volatile long offset;
+	private Thread caller;
+	private OAuthConsumer consumer;
+	private RequestTokenPool pool;
+
+	@Before
+	public void setUp() {
+		caller = Thread.currentThread();
+		OAuthConfig config = new OAuthConfig("key", "secret");
+		config.setId("test");
+		consumer = new OAuthConsumer(config) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public AccessGrant getRequestToken(final String reqTokenURL,
+					final String callbackURL) {
+				String source = Thread.currentThread() == caller ? "direct"
+						: "pooled";
+				return new AccessGrant(source + fetched.incrementAndGet(),
+						"secret");
+			}
+		};
+		pool = new RequestTokenPool() {
+			@Override
+			protected long currentTimeMillis() {
+				return System.currentTimeMillis() + offset;
+			}
+		};
+	}
+
+	@Test
+	public void fetchesEveryTokenWhenDisabled() throws Exception {
+		assertTrue(take().startsWith("direct"));
+		assertTrue(take().startsWith("direct"));
+		assertEquals(0, pool.getAvailable());
+	}
+
+	@Test
+	public void fillsThePoolOnceTheCallbackIsReused() throws Exception {
+		pool.setSize(2);
+		assertTrue(take().startsWith("direct"));
+		assertEquals(0, pool.getAvailable());
+
+		assertTrue(take().startsWith("direct"));
+		awaitAvailable(2);
+		String first = take();
+		String second = take();
+		assertTrue(first.startsWith("pooled"));
+		assertTrue(second.startsWith("pooled"));
+		assertFalse(first.equals(second));
+	}
+
+	@Test
+	public void dropsTokensOlderThanTheMaximumAge() throws Exception {
+		pool.setSize(2);
+		pool.setMaxAge(1000);
+		take();
+		take();
+		awaitAvailable(2);
+
+		offset = 1000;
+		assertEquals(0, pool.getAvailable());
+		assertTrue(take().startsWith("direct"));
+	}
+
+	@Test
+	public void dropsTheTokensWhenDisabled() throws Exception {
+		pool.setSize(2);
+		take();
+		take();
+		awaitAvailable(2);
+
+		pool.setSize(0);
+		assertEquals(0, pool.getAvailable());
+		assertTrue(take().startsWith("direct"));
+	}
+
+	private String take() throws Exception {
+		return pool.getRequestToken(consumer, REQUEST_TOKEN_URL, CALLBACK_URL)
+				.getKey();
+	}
+
+	private void awaitAvailable(final int available)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (pool.getAvailable() < available
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(available, pool.getAvailable());
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class ResponseTest {
+
+	private final RecordingTransport transport = new RecordingTransport();
+	private volatile int size;
+	private volatile byte[] body;
+	private volatile String contentType;
+	private HttpServer server;
+	private String url;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				byte[] content = body;
+				if (contentType != null) {
+					exchange.getResponseHeaders().add("Content-Type",
+							contentType);
+				}
+				exchange.sendResponseHeaders(200, content == null ? 0
+						: content.length);
+				OutputStream out = exchange.getResponseBody();
+				try {
+					out.write(content == null ? new byte[size] : content);
+				} catch (IOException e) {
+					// dropped by the client
+				}
+				exchange.close();
+			}
+		});
+		server.start();
+		url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+		HttpUtil.setTransport(transport);
+	}
+
+	@After
+	public void tearDown() {
+		HttpUtil.setMaxResponseBodySize(HttpUtil.DEFAULT_MAX_RESPONSE_BODY_SIZE);
+		HttpUtil.setTransport(new PooledHttpTransport());
+		server.stop(0);
+	}
+
+	@Test
+	public void keepsTheConnectionOfASmallRemainingContent() throws Exception {
+		size = 1024;
+		HttpUtil.doHttpRequest(url, "GET", null, null).close();
+		assertEquals(1, transport.released.size());
+		assertTrue(transport.released.get(0));
+	}
+
+	@Test
+	public void dropsTheConnectionOfALargeRemainingContent() throws Exception {
+		size = 1024 * 1024;
+		HttpUtil.doHttpRequest(url, "GET", null, null).close();
+		assertEquals(1, transport.released.size());
+		assertFalse(transport.released.get(0));
+	}
+
+	@Test
+	public void decodesTheBodyWithTheCharsetOfTheContentType()
+			throws Exception {
+		Charset latin1 = Charset.forName("ISO-8859-1");
+		body = "caf\u00e9".getBytes(latin1);
+		contentType = "text/plain; charset=\"ISO-8859-1\"";
+		Response response = HttpUtil.doHttpRequest(url, "GET", null, null);
+		assertEquals(latin1, response.getCharset());
+		assertEquals("caf\u00e9", response.asString());
+		assertEquals(1, transport.released.size());
+		assertTrue(transport.released.get(0));
+	}
+
+	@Test
+	public void rejectsAKnownLengthLargerThanTheLimit() throws Exception {
+		HttpUtil.setMaxResponseBodySize(1024);
+		body = new byte[2048];
+		assertTooLarge(HttpUtil.doHttpRequest(url, "GET", null, null));
+		assertEquals(1, transport.released.size());
+	}
+
+	@Test
+	public void rejectsAStreamedBodyLargerThanTheLimit() throws Exception {
+		HttpUtil.setMaxResponseBodySize(1024);
+		size = 1024;
+		assertEquals(1024,
+				HttpUtil.doHttpRequest(url, "GET", null, null).asBytes().length);
+		size = 1025;
+		assertTooLarge(HttpUtil.doHttpRequest(url, "GET", null, null));
+
+		Response response = HttpUtil.doHttpRequest(url, "GET", null, null);
+		InputStream in = response.asInputStream();
+		try {
+			while (in.read(new byte[256]) != -1) {
+				// reads until the limit is passed
+			}
+			fail("the body is larger than the limit");
+		} catch (IOException e) {
+			// expected
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void decompressesAReplayedBody() throws Exception {
+		byte[] content = "{\"id\":\"1\"}".getBytes("UTF-8");
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(gzipped);
+		gzip.write(content);
+		gzip.close();
+		Map<String, String> headers = new TreeMap<String, String>(
+				String.CASE_INSENSITIVE_ORDER);
+		headers.put("content-encoding", "gzip");
+		Response response = new Response(200, headers,
+				gzipped.toByteArray());
+		assertArrayEquals(content, response.asBytes());
+		assertEquals("{\"id\":\"1\"}", new Response(200, headers,
+				gzipped.toByteArray()).asString());
+	}
+
+	private static void assertTooLarge(final Response response) {
+		try {
+			response.asBytes();
+			fail("the body is larger than the limit");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("1024"));
+		}
+	}
+
+	private static class RecordingTransport implements HttpTransport {
+		private final List<Boolean> released = new ArrayList<Boolean>();
+
+		@Override
+		public HttpURLConnection openConnection(final URL url,
+				final Proxy proxy) throws IOException {
+			return (HttpURLConnection) url.openConnection();
+		}
+
+		@Override
+		public void responseReceived(final HttpURLConnection connection) {
+		}
+
+		@Override
+		public void releaseConnection(final HttpURLConnection connection,
+				final boolean reusable) {
+			released.add(reusable);
+			if (!reusable) {
+				connection.disconnect();
+			}
+		}
+
+		@Override
+		public void shutdown() {
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.brickred.socialauth.util.XMLStreamUtil.XMLRecord;
+import org.junit.Test;
+
+public class XMLStreamUtilTest {
+
+	@Test
+	public void streamsTheMappedFieldsOfEachElement() throws Exception {
+		final List<XMLRecord> entries = new ArrayList<XMLRecord>();
+		int count = XMLStreamUtil.streamElements(stream("<feed>"
+				+ "<entry id=\"1\"><title>First</title><body>x</body></entry>"
+				+ "<entry id=\"2\"><title>Second</title></entry></feed>"),
+				"entry", new String[] { "title" },
+				new XMLStreamUtil.ElementHandler() {
+					@Override
+					public void handle(final XMLRecord element) {
+						entries.add(element);
+					}
+				});
+
+		assertEquals(2, count);
+		assertEquals("1", entries.get(0).getAttribute("id"));
+		assertEquals("First", entries.get(0).getElementData("title"));
+		assertNull(entries.get(0).getElement("body"));
+		assertEquals("Second", entries.get(1).getElementData("title"));
+	}
+
+	@Test
+	public void rejectsADoctypeWithAnExternalEntity() throws Exception {
+		File secret = File.createTempFile("secret", ".txt");
+		secret.deleteOnExit();
+		String xml = "<?xml version=\"1.0\"?>"
+				+ "<!DOCTYPE feed [<!ENTITY xxe SYSTEM \""
+				+ secret.toURI() + "\">]>"
+				+ "<feed><entry><title>&xxe;</title></entry></feed>";
+		try {
+			XMLStreamUtil.streamElements(stream(xml), "entry",
+					new String[] { "title" }, new XMLStreamUtil.ElementHandler() {
+						@Override
+						public void handle(final XMLRecord element) {
+							throw new AssertionError("Entity was resolved : "
+									+ element.getElementData("title"));
+						}
+					});
+			fail("DOCTYPE should be rejected");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().startsWith("Invalid XML content"));
+		}
+	}
+
+	@Test(expected = XMLStreamException.class)
+	public void rejectsADoctypeWithAnInternalEntity() throws Exception {
+		XMLStreamReader reader = XMLStreamUtil.createReader(stream(
+				"<?xml version=\"1.0\"?><!DOCTYPE r [<!ENTITY a \"aaaa\">"
+						+ "<!ENTITY b \"&a;&a;&a;&a;\">]><r>&b;</r>"));
+		while (reader.hasNext()) {
+			if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+				XMLStreamUtil.readElement(reader);
+			}
+		}
+	}
+
+	private static InputStream stream(final String content) throws Exception {
+		return new ByteArrayInputStream(content.getBytes("UTF-8"));
+	}
+}